@@ -0,0 +1,176 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Builds the family trees the benchmarks run on. A tree starts with one
+ * couple; every couple has a fixed number of children, each child marries
+ * someone from outside the family, and the new couple has children in turn,
+ * until the tree holds the requested number of people. The number of
+ * children per couple sets the shape: two gives a deep, narrow tree, eight a
+ * shallow, wide one.
+ * <p>
+ * Everything is drawn from a random generator with a fixed seed, so the same
+ * size and branching always give the same tree, with the same names and
+ * dates.
+ *
+ * @author Stephen Schroer
+ *
+ */
+final class BenchmarkTrees {
+	/**
+	 * The seed of every random choice made by the benchmarks.
+	 */
+	static final long SEED = 20240411L;
+
+	private static final String[] MALE_NAMES = { "John", "William", "James",
+			"George", "Charles", "Thomas", "Henry", "Robert", "Joseph",
+			"Edward", "Samuel", "David", "Frederick", "Richard", "Walter",
+			"Arthur", "Albert", "Harry", "Frank", "Peter" };
+	private static final String[] FEMALE_NAMES = { "Mary", "Elizabeth",
+			"Sarah", "Anne", "Margaret", "Jane", "Catherine", "Emma", "Alice",
+			"Ellen", "Martha", "Hannah", "Susan", "Clara", "Grace", "Edith",
+			"Florence", "Ada", "Rose", "Agnes" };
+	private static final String[] SYLLABLES = { "ash", "ber", "by", "cro",
+			"dal", "den", "ell", "ford", "gar", "ham", "hol", "kin", "ley",
+			"man", "mor", "ros", "son", "ton", "van", "wick" };
+
+	private static final LocalDate FIRST_BIRTHDAY = LocalDate.of(1600, 1, 1);
+	private static final LocalDate TODAY = LocalDate.of(2024, 1, 1);
+
+	private BenchmarkTrees() {
+	}
+
+	/**
+	 * Builds a tree.
+	 *
+	 * @param size
+	 *            the number of people in the tree
+	 * @param branching
+	 *            the number of children of every couple
+	 * @return the tree
+	 */
+	static FamilyTree build(int size, int branching) {
+		return new Generator(size, branching).build();
+	}
+
+	/**
+	 * Picks people from a tree at random, the same ones for the same tree.
+	 *
+	 * @param tree
+	 *            the tree to pick from
+	 * @param count
+	 *            the number of people to pick, with repeats
+	 * @param salt
+	 *            mixed into the seed, so that different samples differ
+	 * @return the people picked
+	 */
+	static Person[] sample(FamilyTree tree, int count, long salt) {
+		Random random = new Random(SEED ^ salt);
+		Person[] sample = new Person[count];
+		for (int i = 0; i < count; i++) {
+			sample[i] = tree.getPeople()
+					.get(random.nextInt(tree.getPeople().size()));
+		}
+		return sample;
+	}
+
+	/**
+	 * One run of the tree generator.
+	 */
+	private static final class Generator {
+		private final int size;
+		private final int branching;
+		private final Random random = new Random(SEED);
+		private final FamilyTreeBuilder builder = new FamilyTreeBuilder();
+		private final String[] surnames;
+		private final LocalDate[] birthdays;
+		private int count;
+
+		Generator(int size, int branching) {
+			this.size = size;
+			this.branching = branching;
+			this.surnames = new String[size];
+			this.birthdays = new LocalDate[size];
+		}
+
+		FamilyTree build() {
+			// each couple is the keys of the husband and the wife
+			Queue<int[]> couples = new ArrayDeque<>();
+			int husband = add(Sex.MALE, surname(), FIRST_BIRTHDAY);
+			if (count < size) {
+				couples.add(new int[] { husband,
+						marry(husband, Sex.FEMALE, FIRST_BIRTHDAY) });
+			}
+
+			while (count < size && !couples.isEmpty()) {
+				int[] couple = couples.poll();
+				for (int i = 0; i < branching && count < size; i++) {
+					Sex gender = random.nextBoolean() ? Sex.MALE : Sex.FEMALE;
+					int child = add(gender, surnames[couple[0]],
+							birthdays[couple[1]]
+									.plusDays(7300 + random.nextInt(7300)));
+					builder.addEdge(key(couple[0]), key(child),
+							FamilyTreeBuilder.Relation.PARENT);
+					builder.addEdge(key(couple[1]), key(child),
+							FamilyTreeBuilder.Relation.PARENT);
+
+					if (count < size) {
+						int spouse = marry(child,
+								gender == Sex.MALE ? Sex.FEMALE : Sex.MALE,
+								birthdays[child]);
+						couples.add(gender == Sex.MALE
+								? new int[] { child, spouse }
+								: new int[] { spouse, child });
+					}
+				}
+			}
+			return builder.build();
+		}
+
+		/**
+		 * Adds someone from outside the family as the spouse of a person,
+		 * born within five years of them.
+		 */
+		private int marry(int person, Sex gender, LocalDate near) {
+			int spouse = add(gender, surname(),
+					near.plusDays(random.nextInt(3653) - 1826));
+			builder.addEdge(key(person), key(spouse),
+					FamilyTreeBuilder.Relation.SPOUSE);
+			return spouse;
+		}
+
+		private int add(Sex gender, String surname, LocalDate birthday) {
+			int person = count++;
+			String[] names = gender == Sex.MALE ? MALE_NAMES : FEMALE_NAMES;
+			LocalDate deathdate = birthday
+					.plusDays(18250 + random.nextInt(14600));
+			if (deathdate.isAfter(TODAY)) {
+				deathdate = null;
+			}
+
+			surnames[person] = surname;
+			birthdays[person] = birthday;
+			builder.addPerson(key(person),
+					names[random.nextInt(names.length)] + " " + surname,
+					gender, birthday, deathdate);
+			return person;
+		}
+
+		private String surname() {
+			StringBuilder surname = new StringBuilder();
+			for (int i = 2 + random.nextInt(2); i > 0; i--) {
+				surname.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			}
+			surname.setCharAt(0, Character.toUpperCase(surname.charAt(0)));
+			return surname.toString();
+		}
+
+		private static String key(int person) {
+			return Integer.toString(person);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package main;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times {@link Person#equals(Object)} and {@link Person#hashCode()}, on their
+ * own and as a hash set uses them. People from the tree are compared with
+ * copies that have the same IDs, so equal people are never the same object.
+ *
+ * @author Stephen Schroer
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PersonBenchmark {
+	private static final int PEOPLE = 100_000;
+
+	private Person[] people;
+	private Person[] copies;
+	private Set<Person> set;
+	private int next;
+
+	/**
+	 * Builds a tree and copies a sample of its people.
+	 */
+	@Setup
+	public void setUp() {
+		FamilyTree tree = BenchmarkTrees.build(PEOPLE, 4);
+		people = BenchmarkTrees.sample(tree, TreeState.SAMPLE_SIZE, 3);
+		copies = new Person[people.length];
+		for (int i = 0; i < people.length; i++) {
+			copies[i] = new Person(people[i].getId(), people[i].getName(),
+					people[i].getGender());
+		}
+		set = new HashSet<>(tree.getPeople());
+	}
+
+	/**
+	 * @return the hash code of the next person
+	 */
+	@Benchmark
+	public int hashCodeOf() {
+		return people[next++ & (TreeState.SAMPLE_SIZE - 1)].hashCode();
+	}
+
+	/**
+	 * @return whether the next person equals their copy
+	 */
+	@Benchmark
+	public boolean equalsSameId() {
+		int at = next++ & (TreeState.SAMPLE_SIZE - 1);
+		return people[at].equals(copies[at]);
+	}
+
+	/**
+	 * @return whether the next person equals the copy of someone else
+	 */
+	@Benchmark
+	public boolean equalsOtherId() {
+		int at = next++ & (TreeState.SAMPLE_SIZE - 1);
+		int other = (at + 1) & (TreeState.SAMPLE_SIZE - 1);
+		return people[at].equals(copies[other]);
+	}
+
+	/**
+	 * @return whether the set of everyone in the tree holds the copy of the
+	 *         next person
+	 */
+	@Benchmark
+	public boolean hashSetContains() {
+		return set.contains(copies[next++ & (TreeState.SAMPLE_SIZE - 1)]);
+	}
+}
@@ -0,0 +1,102 @@
+package main;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times the lookups of a family tree that do not change it. Each call asks
+ * about the next person of a fixed random sample, so every run asks the same
+ * questions in the same order.
+ *
+ * @author Stephen Schroer
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class QueryBenchmark {
+	private int next;
+
+	/**
+	 * @param state
+	 *            the tree and the sample
+	 * @return the person found
+	 */
+	@Benchmark
+	public Person findPersonById(TreeState state) {
+		return state.tree.findPerson(person(state).getId());
+	}
+
+	/**
+	 * @param state
+	 *            the tree and the sample
+	 * @return the person found
+	 */
+	@Benchmark
+	public Person findPersonByPerson(TreeState state) {
+		return state.tree.findPerson(person(state));
+	}
+
+	/**
+	 * @param state
+	 *            the tree and the sample
+	 * @return the person found
+	 */
+	@Benchmark
+	public Person findPersonByNameAndBirthday(TreeState state) {
+		Person person = person(state);
+		return state.tree.findPerson(person.getName(), person.getBirthday());
+	}
+
+	/**
+	 * @param state
+	 *            the tree and the sample
+	 * @return the people found
+	 */
+	@Benchmark
+	public List<Person> findPeople(TreeState state) {
+		return state.tree.findPeople(person(state).getName());
+	}
+
+	/**
+	 * @param state
+	 *            the tree and the sample
+	 * @return the siblings found
+	 */
+	@Benchmark
+	public Set<Person> getSiblings(TreeState state) {
+		return state.tree.getSiblings(person(state));
+	}
+
+	/**
+	 * Asks about two people picked independently, so most pairs are distant
+	 * relatives or married into different branches.
+	 *
+	 * @param state
+	 *            the tree and the sample
+	 * @return whether the two are blood-related
+	 */
+	@Benchmark
+	public boolean areBloodRelated(TreeState state) {
+		int at = next++ & (TreeState.SAMPLE_SIZE - 1);
+		return state.tree.areBloodRelated(state.people[at], state.others[at]);
+	}
+
+	private Person person(TreeState state) {
+		return state.people[next++ & (TreeState.SAMPLE_SIZE - 1)];
+	}
+}
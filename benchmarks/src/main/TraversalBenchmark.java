@@ -0,0 +1,127 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the visited-set {@link Traversal} with a plain queue walk on trees
+ * where every child has two parents. The plain walk reaches a person once per
+ * path from the head, so its time doubles with every generation, while the
+ * traversal visits every person once and grows with the size of the tree.
+ * <p>
+ * The deepest trees are left to the traversal alone, for example with
+ * {@code TraversalBenchmark.traversal -p depth=20,40}; a plain walk of 40
+ * generations would not finish.
+ *
+ * @author Stephen Schroer
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TraversalBenchmark {
+	private static final int COUPLES_PER_GENERATION = 4;
+
+	/**
+	 * The number of generations below the progenitor.
+	 */
+	@Param({ "4", "8", "12", "16", "20" })
+	public int depth;
+
+	private List<Person> start;
+
+	/**
+	 * Builds the tree. The progenitor's couple has a son and a daughter per
+	 * couple of the next generation; from there every couple has a son and a
+	 * daughter, who marry into the neighbouring couples.
+	 *
+	 * @throws GenderException
+	 *             never, the benchmark only creates valid people
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws GenderException {
+		LocalDate born = LocalDate.of(1000, 1, 1);
+		Person progenitor = new Person("man 0", "male", born);
+		FamilyTree tree = new FamilyTree(progenitor);
+		tree.marry(progenitor, new Person("woman 0", "female", born));
+
+		List<Person> sons = new ArrayList<>();
+		List<Person> daughters = new ArrayList<>();
+		for (int i = 0; i < COUPLES_PER_GENERATION; i++) {
+			sons.add(addChild(tree, progenitor, "male", 1, i));
+			daughters.add(addChild(tree, progenitor, "female", 1, i));
+		}
+
+		for (int generation = 2; generation <= depth; generation++) {
+			List<Person> nextSons = new ArrayList<>();
+			List<Person> nextDaughters = new ArrayList<>();
+
+			for (int i = 0; i < COUPLES_PER_GENERATION; i++) {
+				Person husband = sons.get(i);
+				tree.marry(husband,
+						daughters.get((i + 1) % COUPLES_PER_GENERATION));
+
+				nextSons.add(addChild(tree, husband, "male", generation, i));
+				nextDaughters
+						.add(addChild(tree, husband, "female", generation, i));
+			}
+			sons = nextSons;
+			daughters = nextDaughters;
+		}
+		start = List.of(progenitor);
+	}
+
+	/**
+	 * @return the number of people visited
+	 */
+	@Benchmark
+	public int traversal() {
+		return Traversal.overChildren().forEach(start, person -> true);
+	}
+
+	/**
+	 * Walks the tree the way the searches did before the visited set.
+	 *
+	 * @return how many times a person was taken off the queue
+	 */
+	@Benchmark
+	public long plainWalk() {
+		Queue<Person> queue = new LinkedList<>(start);
+
+		long visits = 0;
+		while (!queue.isEmpty()) {
+			Person currentPerson = queue.poll();
+			visits++;
+			queue.addAll(currentPerson.getChildren());
+		}
+		return visits;
+	}
+
+	private static Person addChild(FamilyTree tree, Person parent,
+			String gender, int generation, int couple) throws GenderException {
+		Person child = new Person(gender + " " + generation + "." + couple,
+				gender, LocalDate.of(1000 + 25 * generation, 1, 1));
+		tree.addChild(parent, parent.getSpouse(), child);
+		return child;
+	}
+}
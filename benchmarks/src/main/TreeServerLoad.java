@@ -0,0 +1,295 @@
+package main;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Puts a {@link TreeServer} under load from many open connections at once
+ * and prints how long its answers took. One thread drives every connection
+ * through a selector, so the generator itself needs no thread per
+ * connection.
+ * <p>
+ * The load is open: each connection sends a request at its own fixed
+ * interval, whether or not the answers keep up, so that together they send
+ * the rate asked for. Latency is counted from when a request was due rather
+ * than when it was sent, so a stall in the server shows up in full instead
+ * of just slowing the generator down. Requests mix person lookups, siblings,
+ * three generations of ancestors and relationships, for random IDs.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class TreeServerLoad {
+	private static final int WARMUP_SECONDS = 5;
+	private static final long NANOS = 1_000_000_000L;
+
+	/**
+	 * One connection and the request it has in flight.
+	 */
+	private static final class Connection {
+		SocketChannel channel;
+		ByteBuffer out;
+		ByteBuffer in = ByteBuffer.allocate(2048);
+		long due;
+	}
+
+	private final String host;
+	private final int port;
+	private final int ids;
+	private final Random random = new Random(42);
+	private final PriorityQueue<Connection> waiting = new PriorityQueue<>(
+			(a, b) -> Long.compare(a.due, b.due));
+
+	private long[] latencies = new long[1 << 16];
+	private int answered;
+	private int failed;
+	private int closed;
+	private long measureFrom;
+
+	private TreeServerLoad(String host, int port, int ids) {
+		this.host = host;
+		this.port = port;
+		this.ids = ids;
+	}
+
+	/**
+	 * Runs the load and prints the results.
+	 *
+	 * @param args
+	 *            the host and port of the server, the number of connections,
+	 *            the requests per second of all connections together, the
+	 *            seconds to run for after a {@value #WARMUP_SECONDS} second
+	 *            warmup, and how many IDs to pick people from, starting at 0
+	 * @throws IOException
+	 *             if the selector cannot be opened
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 6) {
+			System.out.println("usage: TreeServerLoad host port connections"
+					+ " requests-per-second seconds ids");
+			return;
+		}
+		TreeServerLoad load = new TreeServerLoad(args[0],
+				Integer.parseInt(args[1]), Integer.parseInt(args[5]));
+		load.run(Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+				Integer.parseInt(args[4]));
+	}
+
+	private void run(int connections, int rate, int seconds)
+			throws IOException {
+		long interval = NANOS * connections / rate;
+
+		try (Selector selector = Selector.open()) {
+			for (int i = 0; i < connections; i++) {
+				Connection connection = new Connection();
+				connection.channel = SocketChannel.open();
+				connection.channel.configureBlocking(false);
+				connection.channel
+						.connect(new InetSocketAddress(host, port));
+				connection.channel.register(selector,
+						SelectionKey.OP_CONNECT, connection);
+			}
+			// connect everyone before the clock starts, as connections
+			// beyond the server's backlog take seconds to get in
+			long connecting = System.nanoTime();
+			while (waiting.size() + closed < connections) {
+				selector.select(100);
+				for (SelectionKey key : selector.selectedKeys()) {
+					step(key, interval);
+				}
+				selector.selectedKeys().clear();
+			}
+			long start = System.nanoTime();
+			System.out.printf("%d connections opened in %.1f s%n",
+					waiting.size(), (start - connecting) / 1e9);
+
+			// spread the first requests over one interval
+			List<Connection> connected = new ArrayList<>(waiting);
+			waiting.clear();
+			for (Connection connection : connected) {
+				connection.due = start
+						+ (long) (random.nextDouble() * interval);
+				waiting.add(connection);
+			}
+			measureFrom = start + WARMUP_SECONDS * NANOS;
+			long end = measureFrom + seconds * NANOS;
+
+			long now;
+			while ((now = System.nanoTime()) < end) {
+				while (!waiting.isEmpty() && waiting.peek().due <= now) {
+					send(selector, waiting.poll());
+				}
+				long wait = waiting.isEmpty() ? 100
+						: Math.max(1, (waiting.peek().due - now) / 1_000_000);
+				selector.select(Math.min(wait, 100));
+				for (SelectionKey key : selector.selectedKeys()) {
+					step(key, interval);
+				}
+				selector.selectedKeys().clear();
+			}
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+		}
+		report(connections, seconds);
+	}
+
+	/**
+	 * Sends a connection's next request, once the last one was answered.
+	 */
+	private void send(Selector selector, Connection connection)
+			throws IOException {
+		SelectionKey key = connection.channel.keyFor(selector);
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		String request = "GET " + path() + " HTTP/1.1\r\nHost: " + host
+				+ "\r\n\r\n";
+		connection.out = ByteBuffer
+				.wrap(request.getBytes(StandardCharsets.US_ASCII));
+		key.interestOps(SelectionKey.OP_WRITE);
+	}
+
+	private void step(SelectionKey key, long interval) {
+		Connection connection = (Connection) key.attachment();
+		try {
+			if (key.isConnectable()) {
+				connection.channel.finishConnect();
+				key.interestOps(0);
+				waiting.add(connection);
+			} else if (key.isWritable()) {
+				connection.channel.write(connection.out);
+				if (!connection.out.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			} else if (key.isReadable()) {
+				if (connection.channel.read(connection.in) < 0) {
+					throw new IOException("closed by the server");
+				}
+				int status = answer(connection);
+				if (status != 0) {
+					record(connection, status);
+					key.interestOps(0);
+					// the next request is due one interval after this one
+					// was, however late it was answered
+					connection.due += interval;
+					waiting.add(connection);
+				}
+			}
+		} catch (IOException e) {
+			closed++;
+			key.cancel();
+			try {
+				connection.channel.close();
+			} catch (IOException ignored) {
+				// already gone
+			}
+		}
+	}
+
+	/**
+	 * @return the status of a whole answer read into the connection's
+	 *         buffer, which is then emptied, or 0 if more is to come
+	 */
+	private static int answer(Connection connection) {
+		ByteBuffer in = connection.in;
+		byte[] bytes = in.array();
+		int headerEnd = -1;
+		for (int i = 3; i < in.position(); i++) {
+			if (bytes[i] == '\n' && bytes[i - 1] == '\r'
+					&& bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+				headerEnd = i + 1;
+				break;
+			}
+		}
+		if (headerEnd < 0) {
+			grow(connection);
+			return 0;
+		}
+		String header = new String(bytes, 0, headerEnd,
+				StandardCharsets.US_ASCII);
+		int length = 0;
+		for (String line : header.split("\r\n")) {
+			if (line.regionMatches(true, 0, "content-length:", 0, 15)) {
+				length = Integer.parseInt(line.substring(15).trim());
+			}
+		}
+		if (in.position() < headerEnd + length) {
+			grow(connection);
+			return 0;
+		}
+		in.clear();
+		return Integer.parseInt(header.substring(9, 12));
+	}
+
+	private static void grow(Connection connection) {
+		if (!connection.in.hasRemaining()) {
+			ByteBuffer larger = ByteBuffer
+					.allocate(connection.in.capacity() * 2);
+			connection.in.flip();
+			connection.in = larger.put(connection.in);
+		}
+	}
+
+	private void record(Connection connection, int status) {
+		long now = System.nanoTime();
+		if (connection.due < measureFrom) {
+			return;
+		}
+		// unknown IDs are answered too, just not found
+		if (status != 200 && status != 404) {
+			failed++;
+		}
+		if (answered == latencies.length) {
+			latencies = Arrays.copyOf(latencies, answered * 2);
+		}
+		latencies[answered++] = now - connection.due;
+	}
+
+	private String path() {
+		int id = random.nextInt(ids);
+		switch (random.nextInt(4)) {
+		case 0:
+			return "/people/" + id;
+		case 1:
+			return "/people/" + id + "/siblings";
+		case 2:
+			return "/people/" + id + "/ancestors?generations=3";
+		default:
+			return "/relation?a=" + id + "&b=" + random.nextInt(ids);
+		}
+	}
+
+	private void report(int connections, int seconds) {
+		long[] sorted = Arrays.copyOf(latencies, answered);
+		Arrays.sort(sorted);
+		System.out.printf(
+				"%d connections (%d dropped): %d answers, %.0f/s, %d failed%n",
+				connections, closed, answered,
+				answered / (double) seconds, failed);
+		if (answered == 0) {
+			return;
+		}
+		System.out.printf(
+				"latency ms: p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f"
+						+ "  max %.2f%n",
+				percentile(sorted, 0.5), percentile(sorted, 0.9),
+				percentile(sorted, 0.99), percentile(sorted, 0.999),
+				sorted[sorted.length - 1] / 1e6);
+	}
+
+	private static double percentile(long[] sorted, double fraction) {
+		return sorted[(int) Math.min(sorted.length - 1,
+				(long) (fraction * sorted.length))] / 1e6;
+	}
+}
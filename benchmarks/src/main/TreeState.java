@@ -0,0 +1,54 @@
+package main;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A tree shared by every thread of a benchmark run, built once per trial,
+ * and a fixed random sample of the people in it.
+ * <p>
+ * Trees of ten million people need a large heap; run them with, for example,
+ * {@code -jvmArgsAppend -Xmx24g}, or leave them out with
+ * {@code -p size=1000,100000}.
+ *
+ * @author Stephen Schroer
+ *
+ */
+@State(Scope.Benchmark)
+public class TreeState {
+	/**
+	 * The number of people sampled; a power of two, so the next one can be
+	 * picked with a mask.
+	 */
+	static final int SAMPLE_SIZE = 1 << 10;
+
+	/**
+	 * The number of people in the tree.
+	 */
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int size;
+
+	/**
+	 * The number of children of every couple: 2 for a deep tree, 8 for a
+	 * wide one.
+	 */
+	@Param({ "2", "8" })
+	public int branching;
+
+	FamilyTree tree;
+	Person[] people;
+	Person[] others;
+
+	/**
+	 * Builds the tree and picks the people the benchmarks ask about.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		tree = BenchmarkTrees.build(size, branching);
+		people = BenchmarkTrees.sample(tree, SAMPLE_SIZE, 1);
+		others = BenchmarkTrees.sample(tree, SAMPLE_SIZE, 2);
+	}
+}
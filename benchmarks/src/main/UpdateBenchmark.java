@@ -0,0 +1,116 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times the changes that grow a family tree. Every call adds people, so a
+ * timed loop would measure an ever larger tree; instead each iteration starts
+ * from a freshly built tree and times one batch of {@value #BATCH} calls,
+ * each made on a different married person. Scores are per batch.
+ *
+ * @author Stephen Schroer
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, batchSize = 1000)
+@Measurement(iterations = 20, batchSize = UpdateBenchmark.BATCH)
+@Fork(2)
+@State(Scope.Thread)
+public class UpdateBenchmark {
+	/**
+	 * The number of calls timed together.
+	 */
+	static final int BATCH = 100;
+
+	/**
+	 * The number of people in the tree.
+	 */
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int size;
+
+	/**
+	 * The number of children of every couple.
+	 */
+	@Param({ "2", "8" })
+	public int branching;
+
+	private FamilyTree tree;
+	private List<Person> married;
+	private int next;
+
+	/**
+	 * Builds a new tree and puts its married people in a random order.
+	 */
+	@Setup(Level.Iteration)
+	public void setUp() {
+		tree = BenchmarkTrees.build(size, branching);
+		married = new ArrayList<>();
+		for (Person person : tree.getPeople()) {
+			if (person.getSpouse() != null) {
+				married.add(person);
+			}
+		}
+		Collections.shuffle(married, new Random(BenchmarkTrees.SEED));
+		next = 0;
+	}
+
+	/**
+	 * @return whether the child was added
+	 * @throws GenderException
+	 *             never
+	 */
+	@Benchmark
+	public boolean addChildToCouple() throws GenderException {
+		Person parent = nextMarried();
+		return tree.addChild(parent, parent.getSpouse(),
+				new Person("Child", "female"));
+	}
+
+	/**
+	 * @return whether the child was added
+	 * @throws GenderException
+	 *             never
+	 */
+	@Benchmark
+	public boolean addChildToParent() throws GenderException {
+		return tree.addChild(nextMarried(), new Person("Child", "male"));
+	}
+
+	/**
+	 * Marries a married person to someone new, who joins the tree.
+	 *
+	 * @return whether the marriage took place
+	 * @throws GenderException
+	 *             never
+	 */
+	@Benchmark
+	public boolean marry() throws GenderException {
+		Person person = nextMarried();
+		return tree.marry(person, new Person("Partner",
+				person.getGender() == Sex.MALE ? "female" : "male"));
+	}
+
+	private Person nextMarried() {
+		Person person = married.get(next);
+		next = next + 1 == married.size() ? 0 : next + 1;
+		return person;
+	}
+}
@@ -0,0 +1,566 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Answers ancestry questions for the people of a family tree from precomputed
+ * labels. The label of a person lists the IDs of their blood ancestors
+ * (through mothers and fathers) up to {@link #LABEL_DEPTH} generations back,
+ * sorted by ID, together with the fewest generations between the person and
+ * each ancestor. "Is A an ancestor of B" is then a binary search in B's
+ * label, and "do A and B share an ancestor within k generations" is a merge
+ * of two short sorted arrays.
+ * <p>
+ * Labels are built on first use from the labels of the person's parents and
+ * kept until a parent link above the person changes, at which point the
+ * labels of the person and their descendants are dropped and rebuilt on the
+ * next query. A label that stops short of some ancestors also keeps its edge:
+ * the ancestors {@link #LABEL_DEPTH} generations up who have parents of their
+ * own. Their labels cover the next {@link #LABEL_DEPTH} generations, so "is A
+ * an ancestor of B" further back than B's label reaches is a binary search in
+ * each edge label, band by band, visiting only the edge people rather than
+ * every ancestor. Whether two people share an ancestor beyond both labels is
+ * still a walk over the parents of at least one of them, and costs in
+ * proportion to their ancestors.
+ *
+ * @author Stephen Schroer
+ *
+ */
+class AncestryIndex {
+	/**
+	 * Number of generations a label covers.
+	 */
+	static final int LABEL_DEPTH = 8;
+
+	private static final Label EMPTY = new Label(new int[0], new Person[0],
+			new byte[0], false, new Person[0]);
+
+	// concurrent so that readers sharing a read lock can add labels
+	private final Map<Person, Label> labels = new ConcurrentHashMap<>();
+
+	/**
+	 * Checks if one person is a blood ancestor of another.
+	 *
+	 * @param ancestor
+	 *            the possible ancestor
+	 * @param descendant
+	 *            the possible descendant
+	 * @return true if the ancestor is a parent, grandparent and so on of the
+	 *         descendant
+	 */
+	boolean isAncestor(Person ancestor, Person descendant) {
+		return generationsBetween(ancestor, descendant) > 0;
+	}
+
+	/**
+	 * Counts the generations between a person and one of their ancestors,
+	 * along the shortest line of descent.
+	 *
+	 * @param ancestor
+	 *            the ancestor
+	 * @param descendant
+	 *            the descendant
+	 * @return 1 for a parent, 2 for a grandparent and so on, or -1 if the
+	 *         first person is not an ancestor of the second
+	 */
+	int generationsBetween(Person ancestor, Person descendant) {
+		if (ancestor == null || descendant == null) {
+			return -1;
+		}
+		Label label = label(descendant);
+		int found = label.depthOf(ancestor.getId());
+
+		if (found > 0 || !label.truncated) {
+			return found;
+		}
+		return beyond(ancestor.getId(), label);
+	}
+
+	/**
+	 * Looks for an ancestor further back than a truncated label reaches. Every
+	 * line of descent past the label runs through its edge, so the ancestor is
+	 * in the label of an edge person or beyond it, one band of LABEL_DEPTH
+	 * generations at a time. An ancestor found in one band is closer than
+	 * anything the next band could hold, so the search stops at the first band
+	 * that has it.
+	 */
+	private int beyond(int id, Label label) {
+		Set<Person> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<Person> band = new ArrayList<>(Arrays.asList(label.edge));
+		seen.addAll(band);
+		int maxBand = band.size();
+
+		for (int offset = LABEL_DEPTH; !band.isEmpty(); offset += LABEL_DEPTH) {
+			maxBand = Math.max(maxBand, band.size());
+			int closest = -1;
+			List<Person> next = new ArrayList<>();
+			for (Person person : band) {
+				Label above = label(person);
+				int depth = above.depthOf(id);
+				if (depth > 0 && (closest < 0 || depth < closest)) {
+					closest = depth;
+				}
+				for (Person edge : above.edge) {
+					if (seen.add(edge)) {
+						next.add(edge);
+					}
+				}
+			}
+			if (closest > 0) {
+				TreeMetrics.walked(seen.size(), maxBand);
+				return offset + closest;
+			}
+			band = next;
+		}
+		TreeMetrics.walked(seen.size(), maxBand);
+		return -1;
+	}
+
+	/**
+	 * Checks if two people share a blood ancestor at most the given number of
+	 * generations above each of them. A person counts as their own ancestor
+	 * at zero generations, so a parent and child share an ancestor within one
+	 * generation, and siblings do too.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @param generations
+	 *            how many generations above each person to look
+	 * @return true if the two people have a common ancestor that close
+	 */
+	boolean shareAncestor(Person a, Person b, int generations) {
+		if (a == null || b == null || generations < 0) {
+			return false;
+		}
+		if (a == b) {
+			return true;
+		}
+		Label first = label(a);
+		Label second = label(b);
+
+		if (generations > LABEL_DEPTH) {
+			// the labels answer for the first LABEL_DEPTH generations; past
+			// them, walk one side and check each ancestor against the other
+			if (shareAncestor(a, b, LABEL_DEPTH)) {
+				return true;
+			}
+			if (!first.truncated && !second.truncated) {
+				return false;
+			}
+			if (!first.truncated) {
+				return reaches(b, generations, ancestor -> ancestor == a
+						|| first.depthOf(ancestor.getId()) > 0);
+			}
+			if (!second.truncated) {
+				return reaches(a, generations, ancestor -> ancestor == b
+						|| second.depthOf(ancestor.getId()) > 0);
+			}
+			Map<Person, Integer> ofA = ancestors(a, generations);
+			return reaches(b, generations, ofA::containsKey);
+		}
+
+		if (first.within(b.getId(), generations)
+				|| second.within(a.getId(), generations)) {
+			return true;
+		}
+		// both labels are sorted by ID, so walk them together
+		int i = 0;
+		int j = 0;
+		while (i < first.ids.length && j < second.ids.length) {
+			if (first.ids[i] < second.ids[j]) {
+				i++;
+			} else if (first.ids[i] > second.ids[j]) {
+				j++;
+			} else if (first.depths[i] <= generations
+					&& second.depths[j] <= generations) {
+				return true;
+			} else {
+				i++;
+				j++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if two people share any blood ancestor, however far back.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return true if the two people have a common ancestor
+	 */
+	boolean shareAncestor(Person a, Person b) {
+		return shareAncestor(a, b, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds how two people are related by blood: their closest common
+	 * ancestors and the generations from each person up to them. The closest
+	 * common ancestors are those with the fewest generations in total above
+	 * the two people; full siblings and cousins have two of them, a couple,
+	 * and half siblings and half cousins one. If one person descends from the
+	 * other, the ancestor is the closest common ancestor.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return the relationship, with no common ancestors if the two people
+	 *         are not related by blood
+	 */
+	Relationship relationship(Person a, Person b) {
+		if (a == b) {
+			return new Relationship(a, b, List.of(a), 0, 0);
+		}
+		Label first = label(a);
+		Label second = label(b);
+		Closest closest = new Closest();
+
+		closest.offer(a, 0, second.depthOf(a.getId()));
+		closest.offer(b, first.depthOf(b.getId()), 0);
+		// both labels are sorted by ID, so walk them together
+		int i = 0;
+		int j = 0;
+		while (i < first.ids.length && j < second.ids.length) {
+			if (first.ids[i] < second.ids[j]) {
+				i++;
+			} else if (first.ids[i] > second.ids[j]) {
+				j++;
+			} else {
+				closest.offer(first.people[i], first.depths[i++],
+						second.depths[j++]);
+			}
+		}
+
+		// an ancestor beyond the labels is at least LABEL_DEPTH + 1
+		// generations away, so only look further if nothing closer is known
+		if ((first.truncated || second.truncated)
+				&& (closest.found.isEmpty()
+						|| closest.fromA + closest.fromB > LABEL_DEPTH)) {
+			// nothing further back than the best so far can be closer
+			int limit = closest.found.isEmpty() ? Integer.MAX_VALUE
+					: closest.fromA + closest.fromB;
+			closest = new Closest();
+			Map<Person, Integer> ofA = ancestors(a, limit);
+			for (Map.Entry<Person, Integer> ofB : ancestors(b, limit)
+					.entrySet()) {
+				Integer depth = ofA.get(ofB.getKey());
+				if (depth != null) {
+					closest.offer(ofB.getKey(), depth, ofB.getValue());
+				}
+			}
+		}
+		if (closest.found.isEmpty()) {
+			return new Relationship(a, b, List.of(), -1, -1);
+		}
+		closest.found.sort(Comparator.comparingInt(Person::getId));
+		return new Relationship(a, b, closest.found, closest.fromA,
+				closest.fromB);
+	}
+
+	/**
+	 * Drops the labels of a person whose parents changed and of everyone
+	 * descended from them.
+	 *
+	 * @param person
+	 *            the person whose mother or father changed
+	 */
+	void parentsChanged(Person person) {
+		// a person's parents are labelled before the person, so the walk can
+		// stop at anyone without a label
+		Traversal.overChildren().forEach(List.of(person),
+				descendant -> labels.remove(descendant) != null);
+	}
+
+	/**
+	 * Drops every label.
+	 */
+	void clear() {
+		labels.clear();
+	}
+
+	/**
+	 * Returns the label of a person, building it and any missing labels of
+	 * their ancestors first. The ancestors are handled with an explicit stack
+	 * so that long lines of descent do not overflow the call stack.
+	 */
+	private Label label(Person person) {
+		Label label = labels.get(person);
+		if (label != null) {
+			return label;
+		}
+
+		// people whose parents have been pushed; one that is met again
+		// before its label is built lies on a cycle in bad data
+		Set<Person> expanded = Collections
+				.newSetFromMap(new IdentityHashMap<>());
+		ArrayDeque<Person> stack = new ArrayDeque<>();
+		stack.push(person);
+		int maxStack = 1;
+
+		while (!stack.isEmpty()) {
+			maxStack = Math.max(maxStack, stack.size());
+			Person current = stack.peek();
+
+			if (labels.containsKey(current)) {
+				stack.pop();
+			} else if (expanded.add(current)) {
+				for (Person parent : parents(current)) {
+					if (!labels.containsKey(parent)
+							&& !expanded.contains(parent)) {
+						stack.push(parent);
+					}
+				}
+			} else {
+				stack.pop();
+				labels.put(current, build(current));
+			}
+		}
+		TreeMetrics.walked(expanded.size(), maxStack);
+		return labels.get(person);
+	}
+
+	/**
+	 * Builds a label by merging the labels of the person's parents, one
+	 * generation further back.
+	 */
+	private Label build(Person person) {
+		Label merged = EMPTY;
+
+		for (Person parent : parents(person)) {
+			Label above = labels.getOrDefault(parent, EMPTY);
+			merged = merge(merged, parent, above, person.getId());
+		}
+		if (!merged.truncated) {
+			return merged;
+		}
+		// every line past the label leaves it through an ancestor at the
+		// last generation it covers
+		List<Person> edge = new ArrayList<>();
+		for (int i = 0; i < merged.people.length; i++) {
+			if (merged.depths[i] == LABEL_DEPTH
+					&& !parents(merged.people[i]).isEmpty()) {
+				edge.add(merged.people[i]);
+			}
+		}
+		return new Label(merged.ids, merged.people, merged.depths, true,
+				edge.toArray(new Person[0]));
+	}
+
+	/**
+	 * Merges a parent and the parent's label into a label, keeping the fewest
+	 * generations for ancestors found along both.
+	 */
+	private static Label merge(Label label, Person parent, Label above,
+			int self) {
+		int parentId = parent.getId();
+		int[] ids = new int[label.ids.length + above.ids.length + 1];
+		Person[] people = new Person[ids.length];
+		byte[] depths = new byte[ids.length];
+		boolean truncated = label.truncated || above.truncated;
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		boolean parentDone = false;
+
+		while (i < label.ids.length || j < above.ids.length || !parentDone) {
+			// pick the smallest ID from the label, the parent's label and
+			// the parent itself
+			int id = Integer.MAX_VALUE;
+			int depth = Integer.MAX_VALUE;
+			Person ancestor = null;
+			if (i < label.ids.length) {
+				id = label.ids[i];
+			}
+			if (j < above.ids.length && above.ids[j] < id) {
+				id = above.ids[j];
+			}
+			if (!parentDone && parentId < id) {
+				id = parentId;
+			}
+			if (i < label.ids.length && label.ids[i] == id) {
+				ancestor = label.people[i];
+				depth = label.depths[i++];
+			}
+			if (j < above.ids.length && above.ids[j] == id) {
+				if (above.depths[j] == LABEL_DEPTH) {
+					truncated = true;
+				} else if (above.depths[j] + 1 < depth) {
+					ancestor = above.people[j];
+					depth = above.depths[j] + 1;
+				}
+				j++;
+			}
+			if (!parentDone && parentId == id) {
+				ancestor = parent;
+				depth = 1;
+				parentDone = true;
+			}
+			if (ancestor != null && id != self) {
+				ids[count] = id;
+				people[count] = ancestor;
+				depths[count++] = (byte) depth;
+			}
+		}
+		return new Label(Arrays.copyOf(ids, count),
+				Arrays.copyOf(people, count), Arrays.copyOf(depths, count),
+				truncated, EMPTY.edge);
+	}
+
+	/**
+	 * Finds the blood ancestors of a person up to the given number of
+	 * generations back by walking over the parents, with the fewest
+	 * generations to each. The person is included at zero generations.
+	 */
+	private static Map<Person, Integer> ancestors(Person person,
+			int generations) {
+		Map<Person, Integer> found = new IdentityHashMap<>();
+		Queue<Person> queue = new ArrayDeque<>();
+		found.put(person, 0);
+		queue.add(person);
+		int maxQueue = 1;
+
+		while (!queue.isEmpty()) {
+			Person current = queue.poll();
+			int depth = found.get(current);
+			if (depth == generations) {
+				continue;
+			}
+			for (Person parent : parents(current)) {
+				if (!found.containsKey(parent)) {
+					found.put(parent, depth + 1);
+					queue.add(parent);
+				}
+			}
+			maxQueue = Math.max(maxQueue, queue.size());
+		}
+		TreeMetrics.walked(found.size(), maxQueue);
+		return found;
+	}
+
+	/**
+	 * Walks over the parents of a person up to the given number of
+	 * generations back, stopping at the first ancestor that matches. The
+	 * person is checked first, as their own ancestor.
+	 */
+	private static boolean reaches(Person person, int generations,
+			Predicate<Person> match) {
+		Map<Person, Integer> found = new IdentityHashMap<>();
+		Queue<Person> queue = new ArrayDeque<>();
+		found.put(person, 0);
+		queue.add(person);
+		int maxQueue = 1;
+
+		try {
+			while (!queue.isEmpty()) {
+				Person current = queue.poll();
+				if (match.test(current)) {
+					return true;
+				}
+				int depth = found.get(current);
+				if (depth == generations) {
+					continue;
+				}
+				for (Person parent : parents(current)) {
+					if (!found.containsKey(parent)) {
+						found.put(parent, depth + 1);
+						queue.add(parent);
+					}
+				}
+				maxQueue = Math.max(maxQueue, queue.size());
+			}
+			return false;
+		} finally {
+			TreeMetrics.walked(found.size(), maxQueue);
+		}
+	}
+
+	/**
+	 * Collects the common ancestors with the fewest generations in total,
+	 * preferring ancestors that are about as far from both people.
+	 */
+	private static final class Closest {
+		final List<Person> found = new ArrayList<>(2);
+		int fromA = -1;
+		int fromB = -1;
+
+		void offer(Person ancestor, int depthA, int depthB) {
+			if (depthA < 0 || depthB < 0) {
+				return;
+			}
+			int order = found.isEmpty() ? -1
+					: Integer.compare(depthA + depthB, fromA + fromB);
+			if (order == 0) {
+				order = Integer.compare(Math.abs(depthA - depthB),
+						Math.abs(fromA - fromB));
+			}
+			if (order < 0) {
+				found.clear();
+				fromA = depthA;
+				fromB = depthB;
+			}
+			if (depthA == fromA && depthB == fromB) {
+				found.add(ancestor);
+			}
+		}
+	}
+
+	private static List<Person> parents(Person person) {
+		List<Person> parents = new ArrayList<>(2);
+		if (person.getMother() != null) {
+			parents.add(person.getMother());
+		}
+		if (person.getFather() != null) {
+			parents.add(person.getFather());
+		}
+		return parents;
+	}
+
+	/**
+	 * The ancestors of one person, sorted by ID, with the generations to each.
+	 * A label is truncated if some ancestor lies further back than
+	 * {@link #LABEL_DEPTH}; its edge then holds the ancestors exactly
+	 * {@link #LABEL_DEPTH} generations back who have parents.
+	 */
+	private static final class Label {
+		final int[] ids;
+		final Person[] people;
+		final byte[] depths;
+		final boolean truncated;
+		final Person[] edge;
+
+		Label(int[] ids, Person[] people, byte[] depths, boolean truncated,
+				Person[] edge) {
+			this.ids = ids;
+			this.people = people;
+			this.depths = depths;
+			this.truncated = truncated;
+			this.edge = edge;
+		}
+
+		int depthOf(int id) {
+			int found = Arrays.binarySearch(ids, id);
+			return found < 0 ? -1 : depths[found];
+		}
+
+		boolean within(int id, int generations) {
+			int depth = depthOf(id);
+			return depth > 0 && depth <= generations;
+		}
+	}
+}
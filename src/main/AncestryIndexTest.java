@@ -0,0 +1,112 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class AncestryIndexTest {
+	/**
+	 * Builds a tree far deeper than the labels reach, with cousins marrying
+	 * now and then as a small founding population grows.
+	 */
+	private static FamilyTree deep() {
+		return new TreeGenerator().setSeed(7).setGenerations(30)
+				.setFounders(4).setMaxPeople(800)
+				.setDates(LocalDate.of(1000, 1, 1), LocalDate.of(2000, 1, 1))
+				.build();
+	}
+
+	/**
+	 * Walks over the parents, for comparison with the labels.
+	 */
+	private static Map<Person, Integer> ancestors(Person person) {
+		Map<Person, Integer> found = new IdentityHashMap<>();
+		Queue<Person> queue = new ArrayDeque<>();
+		found.put(person, 0);
+		queue.add(person);
+		while (!queue.isEmpty()) {
+			Person current = queue.poll();
+			for (Person parent : new Person[] { current.getMother(),
+					current.getFather() }) {
+				if (parent != null && !found.containsKey(parent)) {
+					found.put(parent, found.get(current) + 1);
+					queue.add(parent);
+				}
+			}
+		}
+		return found;
+	}
+
+	private static boolean share(Map<Person, Integer> ofA,
+			Map<Person, Integer> ofB, int generations) {
+		for (Map.Entry<Person, Integer> entry : ofA.entrySet()) {
+			Integer depth = ofB.get(entry.getKey());
+			if (depth != null && depth <= generations
+					&& entry.getValue() <= generations) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	void answersBeyondTheLabelsMatchAWalk() {
+		FamilyTree tree = deep();
+		List<Person> people = tree.getPeople();
+		Random random = new Random(1);
+		int deepest = 0;
+		for (Person person : people) {
+			deepest = Math.max(deepest, tree.getGeneration(person));
+		}
+		assertTrue(deepest > 2 * AncestryIndex.LABEL_DEPTH,
+				"tree is " + deepest + " generations deep");
+
+		for (int n = 0; n < 2000; n++) {
+			Person a = people.get(random.nextInt(people.size()));
+			Person b = people.get(random.nextInt(people.size()));
+			Map<Person, Integer> ofA = ancestors(a);
+			Map<Person, Integer> ofB = ancestors(b);
+			Integer depth = a == b ? null : ofB.get(a);
+			String pair = a.getId() + " and " + b.getId();
+
+			assertEquals(depth != null, tree.isAncestor(a, b), pair);
+			assertEquals(depth == null ? -1 : depth,
+					tree.generationsBetween(a, b), pair);
+			assertEquals(share(ofA, ofB, Integer.MAX_VALUE),
+					tree.areBloodRelated(a, b), pair);
+			for (int generations : new int[] { 3, 8, 12, 20 }) {
+				assertEquals(share(ofA, ofB, generations),
+						tree.shareAncestor(a, b, generations),
+						pair + " within " + generations);
+			}
+		}
+	}
+
+	@Test
+	void everyAncestorOfTheDeepestPersonIsFound() {
+		FamilyTree tree = deep();
+		Person deepest = tree.getPeople().get(0);
+		for (Person person : tree.getPeople()) {
+			if (tree.getGeneration(person) > tree.getGeneration(deepest)) {
+				deepest = person;
+			}
+		}
+
+		for (Map.Entry<Person, Integer> entry : ancestors(deepest)
+				.entrySet()) {
+			if (entry.getKey() != deepest) {
+				assertTrue(tree.isAncestor(entry.getKey(), deepest));
+				assertEquals(entry.getValue().intValue(),
+						tree.generationsBetween(entry.getKey(), deepest));
+			}
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package main;
 
+import java.io.IOException;
 import java.time.DateTimeException;
 import java.time.LocalDate;
 
@@ -11,15 +12,35 @@ import java.time.LocalDate;
  */
 public class Application {
 
+	// port served on unless another is given
+	private static final int DEFAULT_PORT = 8080;
+
 	/**
-	 * This is the main code for the application.
+	 * This is the main code for the application. It serves a family tree
+	 * over HTTP until the process is stopped; see {@link TreeServer} for the
+	 * endpoints.
 	 * 
 	 * @param args
-	 *            The command-line arguments passed to the application.
+	 *            The command-line arguments passed to the application: the
+	 *            port to listen on, and the number of people of a made-up
+	 *            tree to start with instead of an empty one.
+	 * @throws IOException
+	 *             if the port cannot be opened
 	 */
-	public static void main(String[] args) {
-		System.out.println("Application Comming soon");
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int people = args.length > 1 ? Integer.parseInt(args[1]) : 0;
 
+		FamilyTree tree = people > 0
+				? new TreeGenerator().setMaxPeople(people)
+						.setFounders(Math.max(2, people / 20)).build()
+				: new FamilyTree();
+		TreeServer server = TreeServer
+				.start(new ConcurrentFamilyTree(tree), port);
+		System.out.printf("Serving %d people on port %d, %s%n",
+				tree.getPeople().size(), server.getPort(),
+				server.usesVirtualThreads() ? "on virtual threads"
+						: "on a thread pool");
 	}
 
 	/**
@@ -33,22 +54,13 @@ public class Application {
 	 */
 	protected static LocalDate parseDate(String date) {
 		try {
-			String[] parts = date.split("-");
-			if (parts.length != 3) {
+			LocalDate parsed = parseDate(date, 0, date.length());
+			if (parsed == null) {
 				throw new IllegalArgumentException(
 						"Invalid date format. Expected YYYY-MM-DD.");
 			}
-
-			int year = Integer.parseInt(parts[0]);
-			int month = Integer.parseInt(parts[1]);
-			int day = Integer.parseInt(parts[2]);
-
-			// Input validation
-			LocalDate.of(year, month, day); // This will throw an exception if
-											// the date is invalid
-
-			return LocalDate.of(year, month, day);
-		} catch (DateTimeException | NumberFormatException e) {
+			return parsed;
+		} catch (DateTimeException | IllegalArgumentException e) {
 			// Handle invalid date format or values
 			System.out.println(
 					"Invalid date format or values. Please provide date in YYYY-MM-DD format.");
@@ -56,4 +68,51 @@ public class Application {
 		}
 	}
 
+	/**
+	 * Parses a date in the format "YYYY-MM-DD" from part of a character
+	 * sequence without splitting it into strings.
+	 *
+	 * @param text
+	 *            the characters holding the date
+	 * @param from
+	 *            the index of the first character of the date
+	 * @param to
+	 *            the index after the last character of the date
+	 * @return the parsed date, or null if the characters are not three
+	 *         dash-separated numbers
+	 * @throws DateTimeException
+	 *             if the numbers are not a valid date
+	 */
+	static LocalDate parseDate(CharSequence text, int from, int to) {
+		int year = 0;
+		int month = 0;
+		int value = 0;
+		int field = 0;
+		int digits = 0;
+
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+
+			if (c >= '0' && c <= '9' && digits < 9) {
+				value = value * 10 + (c - '0');
+				digits++;
+			} else if (c == '-' && digits > 0 && field < 2) {
+				if (field++ == 0) {
+					year = value;
+				} else {
+					month = value;
+				}
+				value = 0;
+				digits = 0;
+			} else {
+				return null;
+			}
+		}
+		if (field != 2 || digits == 0) {
+			return null;
+		}
+		// LocalDate.of throws an exception if the date is invalid
+		return LocalDate.of(year, month, value);
+	}
+
 }
@@ -0,0 +1,234 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes primitive values and text to a channel through one reusable buffer,
+ * encoding text straight into the buffer instead of building byte arrays.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class ChannelWriter implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	private long written;
+
+	/**
+	 * Creates a writer for the given channel. Numbers are written little
+	 * endian.
+	 *
+	 * @param channel
+	 *            the channel to write to
+	 */
+	public ChannelWriter(WritableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return the number of bytes written so far, including buffered bytes
+	 */
+	public long position() {
+		return written + buffer.position();
+	}
+
+	/**
+	 * @param value
+	 *            the byte to write
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void writeByte(int value) throws IOException {
+		ensure(1);
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * @param value
+	 *            the int to write
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void writeInt(int value) throws IOException {
+		ensure(Integer.BYTES);
+		buffer.putInt(value);
+	}
+
+	/**
+	 * @param value
+	 *            the long to write
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void writeLong(long value) throws IOException {
+		ensure(Long.BYTES);
+		buffer.putLong(value);
+	}
+
+	/**
+	 * Writes a number as decimal digits without creating a string.
+	 *
+	 * @param value
+	 *            the number to write
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void writeNumber(long value) throws IOException {
+		writeNumber(value, 1);
+	}
+
+	/**
+	 * Writes a number as decimal digits without creating a string, padding
+	 * it with leading zeros to the given number of digits.
+	 *
+	 * @param value
+	 *            the number to write
+	 * @param minDigits
+	 *            the smallest number of digits to write
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void writeNumber(long value, int minDigits) throws IOException {
+		ensure(Math.max(minDigits, 19) + 1);
+		if (value < 0) {
+			buffer.put((byte) '-');
+		}
+		int digits = 1;
+		long scale = 1;
+		// digits are counted on the negative value so Long.MIN_VALUE works
+		long negative = value < 0 ? value : -value;
+		while (scale <= Long.MAX_VALUE / 10 && -(scale * 10) >= negative) {
+			scale *= 10;
+			digits++;
+		}
+		for (int i = digits; i < minDigits; i++) {
+			buffer.put((byte) '0');
+		}
+		for (; scale > 0; scale /= 10) {
+			buffer.put((byte) ('0' - negative / scale % 10));
+		}
+	}
+
+	/**
+	 * Writes zero bytes until the position is a multiple of the alignment.
+	 *
+	 * @param alignment
+	 *            the alignment in bytes
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void align(int alignment) throws IOException {
+		while (position() % alignment != 0) {
+			writeByte(0);
+		}
+	}
+
+	/**
+	 * Writes text encoded as UTF-8.
+	 *
+	 * @param text
+	 *            the text to write, null writes nothing
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void writeUtf8(CharSequence text) throws IOException {
+		if (text == null) {
+			return;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c < 0x80) {
+				ensure(1);
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				ensure(2);
+				buffer.put((byte) (0xC0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				ensure(4);
+				buffer.put((byte) (0xF0 | codePoint >> 18));
+				buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+				buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | codePoint & 0x3F));
+			} else {
+				ensure(3);
+				buffer.put((byte) (0xE0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Counts the bytes {@link #writeUtf8(CharSequence)} would write.
+	 *
+	 * @param text
+	 *            the text to measure, may be null
+	 * @return the length of the text in UTF-8
+	 */
+	public static int utf8Length(CharSequence text) {
+		if (text == null) {
+			return 0;
+		}
+		int length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c < 0x80) {
+				length += 1;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Writes any buffered bytes to the channel.
+	 *
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			written += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Flushes the buffer and closes the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+}
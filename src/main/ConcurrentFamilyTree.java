@@ -0,0 +1,527 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A family tree that can be queried from many threads while other threads
+ * change it. Every change runs under an exclusive write lock, so readers
+ * never see a marriage or a new child half made.
+ * <p>
+ * Lookups of one person by ID, {@link #findPerson(int)},
+ * {@link #findPerson(Person)} and {@link #contains(Person)}, first run as
+ * optimistic reads that take no lock at all, and are repeated under the read
+ * lock only if a writer got in the way. Every other query walks lists and
+ * indexes a writer may be changing, and relatedness queries fill the tree's
+ * ancestry cache as they go, so they hold the read lock, which is still
+ * shared between readers.
+ * <p>
+ * Long reports that must see the whole tree at one point in time should
+ * read a {@link #snapshot()} instead, which needs no lock at all.
+ * <p>
+ * The people handed out by this tree are the tree's own objects. Change them
+ * only through this class, and read their fields inside {@link #read} if
+ * writers may be running.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class ConcurrentFamilyTree {
+	private final FamilyTree tree;
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * Creates an empty concurrent family tree.
+	 */
+	public ConcurrentFamilyTree() {
+		this(new FamilyTree());
+	}
+
+	/**
+	 * Creates a concurrent family tree around an existing tree. The tree must
+	 * not be used directly afterwards.
+	 *
+	 * @param tree
+	 *            the tree to guard
+	 */
+	public ConcurrentFamilyTree(FamilyTree tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * Runs a query against the tree under the read lock. The query must not
+	 * change the tree or the people in it.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 * @param query
+	 *            the query to run
+	 * @return the result of the query
+	 */
+	public <T> T read(Function<? super FamilyTree, T> query) {
+		return locked(() -> query.apply(tree));
+	}
+
+	/**
+	 * Runs a change to the tree, or to the people in it, under the write
+	 * lock. Other threads see either none of the change or all of it.
+	 *
+	 * @param change
+	 *            the change to make
+	 */
+	public void write(Consumer<? super FamilyTree> change) {
+		long stamp = lock.writeLock();
+		try {
+			change.accept(tree);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the tree that can be read for as long as needed
+	 * without holding up writers. Only the first snapshot takes a lock, to
+	 * record every person; after that the latest version is handed out
+	 * without locking.
+	 *
+	 * @return the people of the tree as they are now
+	 * @see FamilyTree#snapshot()
+	 */
+	public TreeSnapshot snapshot() {
+		TreeSnapshot latest = tree.latestSnapshot();
+		return latest != null ? latest : exclusive(tree::snapshot);
+	}
+
+	/**
+	 * @return a copy of the people in the tree, in the order they joined it
+	 * @see FamilyTree#getPeople()
+	 */
+	public List<Person> getPeople() {
+		return locked(() -> List.copyOf(tree.getPeople()));
+	}
+
+	/**
+	 * @param target
+	 *            the person to look for
+	 * @return true if the person is in the tree
+	 * @see FamilyTree#contains(Person)
+	 */
+	public boolean contains(Person target) {
+		return optimistic(() -> tree.contains(target));
+	}
+
+	/**
+	 * @param name
+	 *            the name of the person to search for
+	 * @param birthday
+	 *            the birthday of the person to search for
+	 * @return the Person object if found, or null if not found
+	 * @see FamilyTree#findPerson(String, LocalDate)
+	 */
+	public Person findPerson(String name, LocalDate birthday) {
+		return locked(() -> tree.findPerson(name, birthday));
+	}
+
+	/**
+	 * @param target
+	 *            the person object to search for
+	 * @return the Person object if found, or null if not found
+	 * @see FamilyTree#findPerson(Person)
+	 */
+	public Person findPerson(Person target) {
+		return optimistic(() -> tree.findPerson(target));
+	}
+
+	/**
+	 * @param id
+	 *            the ID of the person to search for
+	 * @return the Person object if found, or null if not found
+	 * @see FamilyTree#findPerson(int)
+	 */
+	public Person findPerson(int id) {
+		return optimistic(() -> tree.findPerson(id));
+	}
+
+	/**
+	 * @param name
+	 *            the name of the people to search for
+	 * @return the people with that name, or an empty list
+	 * @see FamilyTree#findPeople(String)
+	 */
+	public List<Person> findPeople(String name) {
+		return locked(() -> tree.findPeople(name));
+	}
+
+	/**
+	 * @param prefix
+	 *            the start of a word of the name
+	 * @param limit
+	 *            the most people to return
+	 * @return the matching people, ordered by the matching word
+	 * @see FamilyTree#findPeopleByPrefix(String, int)
+	 */
+	public List<Person> findPeopleByPrefix(String prefix, int limit) {
+		return locked(() -> tree.findPeopleByPrefix(prefix, limit));
+	}
+
+	/**
+	 * @param name
+	 *            the name to sound out
+	 * @return the people with names that sound alike
+	 * @see FamilyTree#findPeopleSoundingLike(String)
+	 */
+	public List<Person> findPeopleSoundingLike(String name) {
+		return locked(() -> tree.findPeopleSoundingLike(name));
+	}
+
+	/**
+	 * @param name
+	 *            the name to match
+	 * @param limit
+	 *            the most people to return
+	 * @return the matching people, closest spelling first
+	 * @see FamilyTree#findSimilar(String, int)
+	 */
+	public List<Person> findSimilar(String name, int limit) {
+		return locked(() -> tree.findSimilar(name, limit));
+	}
+
+	/**
+	 * @param from
+	 *            the first birthday to match, or null for no lower bound
+	 * @param to
+	 *            the last birthday to match, or null for no upper bound
+	 * @return the people born in the range, inclusive, earliest first
+	 * @see FamilyTree#findBornBetween(LocalDate, LocalDate)
+	 */
+	public List<Person> findBornBetween(LocalDate from, LocalDate to) {
+		// the date index is a tree rotated by writers, so never read it
+		// without the lock
+		return locked(() -> tree.findBornBetween(from, to));
+	}
+
+	/**
+	 * @param from
+	 *            the first deathdate to match, or null for no lower bound
+	 * @param to
+	 *            the last deathdate to match, or null for no upper bound
+	 * @return the people who died in the range, inclusive, earliest first
+	 * @see FamilyTree#findDiedBetween(LocalDate, LocalDate)
+	 */
+	public List<Person> findDiedBetween(LocalDate from, LocalDate to) {
+		return locked(() -> tree.findDiedBetween(from, to));
+	}
+
+	/**
+	 * @param date
+	 *            the day
+	 * @return the people alive on the day, earliest born first
+	 * @see FamilyTree#findAliveOn(LocalDate)
+	 */
+	public List<Person> findAliveOn(LocalDate date) {
+		return locked(() -> tree.findAliveOn(date));
+	}
+
+	/**
+	 * @param ancestor
+	 *            the person whose descendants are searched
+	 * @param date
+	 *            the day
+	 * @return the descendants alive on the day
+	 * @see FamilyTree#findDescendantsAliveOn(Person, LocalDate)
+	 */
+	public List<Person> findDescendantsAliveOn(Person ancestor,
+			LocalDate date) {
+		return locked(() -> tree.findDescendantsAliveOn(ancestor, date));
+	}
+
+	/**
+	 * @param match
+	 *            the condition to test, called from several threads at once
+	 * @return the matching people
+	 * @see FamilyTree#findAll(Predicate)
+	 */
+	public List<Person> findAll(Predicate<? super Person> match) {
+		return locked(() -> tree.findAll(match));
+	}
+
+	/**
+	 * @param target
+	 *            the person whose siblings are wanted
+	 * @return the siblings of the person, or an empty set
+	 * @see FamilyTree#getSiblings(Person)
+	 */
+	public Set<Person> getSiblings(Person target) {
+		return locked(() -> tree.getSiblings(target));
+	}
+
+	/**
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return true if both are in the tree and blood-related
+	 * @see FamilyTree#areBloodRelated(Person, Person)
+	 */
+	public boolean areBloodRelated(Person a, Person b) {
+		return locked(() -> tree.areBloodRelated(a, b));
+	}
+
+	/**
+	 * @param ancestor
+	 *            the ancestor
+	 * @param descendant
+	 *            the descendant
+	 * @return the generations between them, or -1
+	 * @see FamilyTree#generationsBetween(Person, Person)
+	 */
+	public int generationsBetween(Person ancestor, Person descendant) {
+		return locked(() -> tree.generationsBetween(ancestor, descendant));
+	}
+
+	/**
+	 * @param person
+	 *            the person whose ancestor is found
+	 * @return the earliest known blood ancestor of the person
+	 * @see FamilyTree#findHighestRoot(Person)
+	 */
+	public Person findHighestRoot(Person person) {
+		return locked(() -> tree.findHighestRoot(person));
+	}
+
+	/**
+	 * @return the root of the longest line of descent in the tree
+	 * @see FamilyTree#findHighestRoot()
+	 */
+	public Person findHighestRoot() {
+		return locked(tree::findHighestRoot);
+	}
+
+	/**
+	 * @param person
+	 *            the person
+	 * @return the generations below their earliest known ancestor
+	 * @see FamilyTree#getGeneration(Person)
+	 */
+	public int getGeneration(Person person) {
+		return locked(() -> tree.getGeneration(person));
+	}
+
+	/**
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return true if both are in the tree and in the same family
+	 * @see FamilyTree#areInSameFamily(Person, Person)
+	 */
+	public boolean areInSameFamily(Person a, Person b) {
+		return locked(() -> tree.areInSameFamily(a, b));
+	}
+
+	/**
+	 * @param person
+	 *            the person whose family is listed
+	 * @return the family of the person
+	 * @see FamilyTree#getFamily(Person)
+	 */
+	public List<Person> getFamily(Person person) {
+		return locked(() -> tree.getFamily(person));
+	}
+
+	/**
+	 * @return the number of separate families in the tree
+	 * @see FamilyTree#getFamilyCount()
+	 */
+	public int getFamilyCount() {
+		return locked(tree::getFamilyCount);
+	}
+
+	/**
+	 * @return the people with no parent or guardian in the tree
+	 * @see FamilyTree#getRoots()
+	 */
+	public List<Person> getRoots() {
+		return locked(tree::getRoots);
+	}
+
+	/**
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return true if both are in the tree and closely related
+	 * @see FamilyTree#areCloselyRelated(Person, Person)
+	 */
+	public boolean areCloselyRelated(Person a, Person b) {
+		return locked(() -> tree.areCloselyRelated(a, b));
+	}
+
+	/**
+	 * @param ancestor
+	 *            the possible ancestor
+	 * @param descendant
+	 *            the possible descendant
+	 * @return true if both are in the tree and the first is an ancestor of
+	 *         the second
+	 * @see FamilyTree#isAncestor(Person, Person)
+	 */
+	public boolean isAncestor(Person ancestor, Person descendant) {
+		return locked(() -> tree.isAncestor(ancestor, descendant));
+	}
+
+	/**
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @param generations
+	 *            how many generations to look back
+	 * @return true if both are in the tree and share an ancestor that close
+	 * @see FamilyTree#shareAncestor(Person, Person, int)
+	 */
+	public boolean shareAncestor(Person a, Person b, int generations) {
+		return locked(() -> tree.shareAncestor(a, b, generations));
+	}
+
+	/**
+	 * @param a
+	 *            the person whose relationship is described
+	 * @param b
+	 *            the person they are related to
+	 * @return the relationship, or null if either is not in the tree
+	 * @see FamilyTree#checkRelation(Person, Person)
+	 */
+	public Relationship checkRelation(Person a, Person b) {
+		return locked(() -> tree.checkRelation(a, b));
+	}
+
+	/**
+	 * @param person
+	 *            the person to add
+	 * @return true if the person was added
+	 * @see FamilyTree#addPerson(Person)
+	 */
+	public boolean addPerson(Person person) {
+		return exclusive(() -> tree.addPerson(person));
+	}
+
+	/**
+	 * @param parent
+	 *            the parent to whom the child will be added
+	 * @param currentSpouse
+	 *            the current spouse of the parent
+	 * @param child
+	 *            the child to be added
+	 * @return true if the child was added to both parents
+	 * @see FamilyTree#addChild(Person, Person, Person)
+	 */
+	public boolean addChild(Person parent, Person currentSpouse, Person child) {
+		return exclusive(() -> tree.addChild(parent, currentSpouse, child));
+	}
+
+	/**
+	 * @param parent
+	 *            the parent to whom the child will be added
+	 * @param child
+	 *            the child to be added
+	 * @return true if the child was added
+	 * @see FamilyTree#addChild(Person, Person)
+	 */
+	public boolean addChild(Person parent, Person child) {
+		return exclusive(() -> tree.addChild(parent, child));
+	}
+
+	/**
+	 * @param parent
+	 *            the parent to assign
+	 * @param child
+	 *            the child to assign the parent to
+	 * @return true if the parent was assigned
+	 * @see FamilyTree#assignParent(Person, Person)
+	 */
+	public boolean assignParent(Person parent, Person child) {
+		return exclusive(() -> tree.assignParent(parent, child));
+	}
+
+	/**
+	 * @param spouseA
+	 *            the first person to be married
+	 * @param spouseB
+	 *            the second person to be married
+	 * @return true if the marriage is successful
+	 * @see FamilyTree#marry(Person, Person)
+	 */
+	public boolean marry(Person spouseA, Person spouseB) {
+		return exclusive(() -> tree.marry(spouseA, spouseB));
+	}
+
+	/**
+	 * @param target
+	 *            the person who wants to get divorced
+	 * @return true if the divorce was processed
+	 * @see FamilyTree#divorce(Person)
+	 */
+	public boolean divorce(Person target) {
+		return exclusive(() -> tree.divorce(target));
+	}
+
+	/**
+	 * @param newParent
+	 *            the person adopting the child
+	 * @param child
+	 *            the person being adopted
+	 * @return true if the adoption is successful
+	 * @see FamilyTree#adopt(Person, Person)
+	 */
+	public boolean adopt(Person newParent, Person child) {
+		return exclusive(() -> tree.adopt(newParent, child));
+	}
+
+	/**
+	 * Runs a query without locking, then checks that no writer ran in the
+	 * meantime. If one did, whatever the query saw may be inconsistent (it
+	 * may even have failed), so it is run again under the read lock. Only
+	 * for single lookups in the ID map: a query that walks a collection could
+	 * loop or allocate without bound while a writer changes it.
+	 */
+	private <T> T optimistic(Supplier<T> query) {
+		long stamp = lock.tryOptimisticRead();
+
+		if (stamp != 0) {
+			try {
+				T result = query.get();
+				if (lock.validate(stamp)) {
+					return result;
+				}
+			} catch (RuntimeException e) {
+				// a writer changed the tree under the query; try again locked
+			}
+		}
+		return locked(query);
+	}
+
+	private <T> T locked(Supplier<T> query) {
+		long stamp = lock.readLock();
+		try {
+			return query.get();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private <T> T exclusive(Supplier<T> change) {
+		long stamp = lock.writeLock();
+		try {
+			return change.get();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentFamilyTreeTest {
+	private static final int COUPLES = 200;
+	private static final int WRITERS = 4;
+	private static final int READERS = 4;
+	private static final int WRITES_PER_WRITER = 3000;
+
+	private ConcurrentFamilyTree tree;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		tree = new ConcurrentFamilyTree();
+		for (int i = 0; i < COUPLES; i++) {
+			Person husband = new Person("Husband " + i, "male");
+			tree.addPerson(husband);
+			tree.marry(husband, new Person("Wife " + i, "female"));
+		}
+	}
+
+	@Test
+	void linksStayConsistentUnderConcurrentWrites() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicInteger reads = new AtomicInteger();
+		List<Future<?>> writers = new ArrayList<>();
+		List<Future<?>> readers = new ArrayList<>();
+
+		for (int w = 0; w < WRITERS; w++) {
+			long seed = w;
+			writers.add(pool.submit(() -> {
+				start.await();
+				write(new Random(seed));
+				return null;
+			}));
+		}
+		for (int r = 0; r < READERS; r++) {
+			long seed = 100 + r;
+			readers.add(pool.submit(() -> {
+				start.await();
+				Random random = new Random(seed);
+				while (writing.get()) {
+					read(random);
+					reads.incrementAndGet();
+				}
+				return null;
+			}));
+		}
+
+		start.countDown();
+		for (Future<?> writer : writers) {
+			writer.get(60, TimeUnit.SECONDS);
+		}
+		writing.set(false);
+		for (Future<?> reader : readers) {
+			reader.get(60, TimeUnit.SECONDS);
+		}
+		pool.shutdown();
+
+		assertTrue(reads.get() > 0, "readers ran alongside the writers");
+		List<Person> people = tree.getPeople();
+		assertTrue(people.size() > 2 * COUPLES, "writers added people");
+		for (Person person : people) {
+			assertSame(person, tree.findPerson(person.getId()));
+			checkLinks(person);
+		}
+	}
+
+	/**
+	 * Marries, has children and adopts, choosing people from the tree as it
+	 * is at the time.
+	 */
+	private void write(Random random) throws GenderException {
+		for (int i = 0; i < WRITES_PER_WRITER; i++) {
+			Person person = anyone(random);
+
+			switch (random.nextInt(3)) {
+			case 0:
+				tree.marry(person, new Person("Partner", "female"));
+				break;
+			case 1:
+				Person spouse = tree.read(t -> person.getSpouse());
+				if (spouse != null) {
+					tree.addChild(person, spouse, new Person("Child",
+							random.nextBoolean() ? "male" : "female"));
+				}
+				break;
+			default:
+				Person orphan = new Person("Orphan", "female");
+				tree.addPerson(orphan);
+				tree.adopt(person, orphan);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Runs lock-free and locked queries, and checks the links around a
+	 * person under the read lock, where no write can be half done.
+	 */
+	private void read(Random random) {
+		Person person = anyone(random);
+		Person other = anyone(random);
+
+		assertSame(person, tree.findPerson(person.getId()));
+		assertFalse(tree.getSiblings(person).contains(person));
+		Relationship relationship = tree.checkRelation(person, other);
+		assertNotNull(relationship);
+		assertEquals(relationship.isBloodRelated(),
+				tree.areBloodRelated(person, other));
+
+		tree.read(t -> {
+			checkLinks(person);
+			if (person.getFather() != null) {
+				assertTrue(t.isAncestor(person.getFather(), person));
+			}
+			return null;
+		});
+	}
+
+	private Person anyone(Random random) {
+		return tree.read(t -> {
+			List<Person> people = t.getPeople();
+			return people.get(random.nextInt(people.size()));
+		});
+	}
+
+	/**
+	 * Checks that the links around a person agree in both directions.
+	 */
+	private static void checkLinks(Person person) {
+		for (Person child : person.getChildren()) {
+			assertTrue(child.getMother() == person
+					|| child.getFather() == person
+					|| child.getGuardian() == person,
+					"child links back to " + person.getId());
+		}
+		for (Person parent : new Person[] { person.getMother(),
+				person.getFather(), person.getGuardian() }) {
+			if (parent != null) {
+				assertTrue(parent.getChildren().contains(person),
+						"parent lists child " + person.getId());
+			}
+		}
+		for (Person partner : person.getPartners()) {
+			assertTrue(partner.getPartners().contains(person),
+					"partner lists " + person.getId());
+		}
+		Person spouse = person.getSpouse();
+		if (spouse != null) {
+			assertTrue(spouse.isMarried(), "spouse is married");
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package main;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes people as they arrive into the two CSV tables of
+ * {@link TreeExporter#writeCsv(WritableByteChannel, WritableByteChannel)},
+ * in the same format, so generated trees of any size can go straight to
+ * disk.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class CsvTreeSink implements TreeSink {
+	private final ChannelWriter people;
+	private final ChannelWriter relationships;
+
+	/**
+	 * Creates a sink and writes the header lines of both tables.
+	 *
+	 * @param people
+	 *            the channel for the person table, closed with the sink
+	 * @param relationships
+	 *            the channel for the relationship table, closed with the
+	 *            sink
+	 * @throws IOException
+	 *             if the headers cannot be written
+	 */
+	public CsvTreeSink(WritableByteChannel people,
+			WritableByteChannel relationships) throws IOException {
+		this.people = new ChannelWriter(people);
+		this.relationships = new ChannelWriter(relationships);
+		TreeExporter.line(this.people, TreeExporter.PERSON_HEADER);
+		TreeExporter.line(this.relationships,
+				TreeExporter.RELATIONSHIP_HEADER);
+	}
+
+	@Override
+	public void person(Row row) throws IOException {
+		people.writeNumber(row.id());
+		people.writeByte(',');
+		TreeExporter.csvText(people, row.name());
+		people.writeByte(',');
+		people.writeUtf8(row.gender() == Sex.FEMALE ? "F" : "M");
+		people.writeByte(',');
+		TreeExporter.isoDate(people, row.birthday());
+		people.writeByte(',');
+		TreeExporter.isoDate(people, row.deathdate());
+		people.writeByte(',');
+		id(people, row.mother());
+		people.writeByte(',');
+		id(people, row.father());
+		people.writeByte(',');
+		id(people, row.guardian());
+		people.writeByte(',');
+		people.writeUtf8(row.guardian() != 0 ? "true" : "false");
+		people.writeByte(',');
+		people.writeUtf8(row.married() ? "true" : "false");
+		TreeExporter.line(people, "");
+
+		relationship(row.father(), row.id(), "PARENT", 0);
+		relationship(row.mother(), row.id(), "PARENT", 0);
+		relationship(row.guardian(), row.id(), "GUARDIAN", 0);
+		int[] partners = row.partners();
+		for (int i = 0; i < partners.length; i++) {
+			relationship(row.id(), partners[i], "PARTNER", i);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			people.close();
+		} finally {
+			relationships.close();
+		}
+	}
+
+	private void relationship(int from, int to, String type, int position)
+			throws IOException {
+		if (from == 0 || to == 0) {
+			return;
+		}
+		relationships.writeNumber(from);
+		relationships.writeByte(',');
+		relationships.writeNumber(to);
+		relationships.writeByte(',');
+		relationships.writeUtf8(type);
+		relationships.writeByte(',');
+		relationships.writeNumber(position);
+		TreeExporter.line(relationships, "");
+	}
+
+	private static void id(ChannelWriter out, int id) throws IOException {
+		if (id != 0) {
+			out.writeNumber(id);
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Looks people up by their dates of birth and death.
+ * <p>
+ * Birthdays and deathdates are each kept in a sorted map from epoch day to
+ * the people with that date, so a range of dates is found in logarithmic time
+ * plus the number of people in it.
+ * <p>
+ * Lifespans, from the birthday up to but not including the deathdate, are
+ * kept in an interval tree: a treap ordered by birthday in which every node
+ * also records the latest deathdate below it. Finding the people alive on a
+ * day skips every subtree whose latest deathdate has passed and every
+ * subtree born after the day. People without a deathdate are taken to be
+ * still alive; people without a birthday have no lifespan and are left out.
+ *
+ * @author Stephen Schroer
+ *
+ */
+class DateIndex {
+	// End of the lifespan of someone who has not died
+	private static final long STILL_ALIVE = Long.MAX_VALUE;
+
+	private final NavigableMap<Integer, List<Person>> births = new TreeMap<>();
+	private final NavigableMap<Integer, List<Person>> deaths = new TreeMap<>();
+	private final Random priorities = new Random(0);
+	private Span lifespans;
+
+	/**
+	 * Adds a person under their dates.
+	 *
+	 * @param person
+	 *            the person to add
+	 * @param birthday
+	 *            the birthday to add them under, may be null
+	 * @param deathdate
+	 *            the deathdate to add them under, may be null
+	 */
+	void add(Person person, LocalDate birthday, LocalDate deathdate) {
+		if (birthday != null) {
+			births.computeIfAbsent(PersonTable.toEpochDay(birthday),
+					k -> new ArrayList<>(1)).add(person);
+			lifespans = insert(lifespans, new Span(person,
+					PersonTable.toEpochDay(birthday), end(deathdate),
+					priorities.nextInt()));
+		}
+		if (deathdate != null) {
+			deaths.computeIfAbsent(PersonTable.toEpochDay(deathdate),
+					k -> new ArrayList<>(1)).add(person);
+		}
+	}
+
+	/**
+	 * Removes a person from under the dates they were added with, comparing
+	 * by identity.
+	 *
+	 * @param person
+	 *            the person to remove
+	 * @param birthday
+	 *            the birthday they were added under
+	 * @param deathdate
+	 *            the deathdate they were added under
+	 */
+	void remove(Person person, LocalDate birthday, LocalDate deathdate) {
+		if (birthday != null) {
+			removeFrom(births, PersonTable.toEpochDay(birthday), person);
+			lifespans = delete(lifespans, PersonTable.toEpochDay(birthday),
+					person);
+		}
+		if (deathdate != null) {
+			removeFrom(deaths, PersonTable.toEpochDay(deathdate), person);
+		}
+	}
+
+	/**
+	 * Finds the people born in a range of dates, inclusive.
+	 *
+	 * @param from
+	 *            the first birthday to match, or null for no lower bound
+	 * @param to
+	 *            the last birthday to match, or null for no upper bound
+	 * @return the people born in the range, earliest first
+	 */
+	List<Person> bornBetween(LocalDate from, LocalDate to) {
+		return between(births, from, to);
+	}
+
+	/**
+	 * Finds the people who died in a range of dates, inclusive.
+	 *
+	 * @param from
+	 *            the first deathdate to match, or null for no lower bound
+	 * @param to
+	 *            the last deathdate to match, or null for no upper bound
+	 * @return the people who died in the range, earliest first
+	 */
+	List<Person> diedBetween(LocalDate from, LocalDate to) {
+		return between(deaths, from, to);
+	}
+
+	/**
+	 * Finds the people alive on a day: born on or before it, and not dead
+	 * before or on it.
+	 *
+	 * @param date
+	 *            the day
+	 * @return the people alive on the day, earliest born first
+	 */
+	List<Person> aliveOn(LocalDate date) {
+		List<Person> found = new ArrayList<>();
+		collectAlive(lifespans, PersonTable.toEpochDay(date), found);
+		return found;
+	}
+
+	/**
+	 * Tells whether a person with the given dates was alive on a day, by the
+	 * same rule as {@link #aliveOn(LocalDate)}.
+	 */
+	static boolean isAlive(LocalDate birthday, LocalDate deathdate,
+			LocalDate date) {
+		return birthday != null && !birthday.isAfter(date)
+				&& (deathdate == null || deathdate.isAfter(date));
+	}
+
+	private static List<Person> between(
+			NavigableMap<Integer, List<Person>> index, LocalDate from,
+			LocalDate to) {
+		int low = from == null ? Integer.MIN_VALUE
+				: PersonTable.toEpochDay(from);
+		int high = to == null ? Integer.MAX_VALUE : PersonTable.toEpochDay(to);
+		List<Person> found = new ArrayList<>();
+		if (low > high) {
+			return found;
+		}
+		for (Collection<Person> people : index.subMap(low, true, high, true)
+				.values()) {
+			found.addAll(people);
+		}
+		return found;
+	}
+
+	private static long end(LocalDate deathdate) {
+		return deathdate == null ? STILL_ALIVE
+				: PersonTable.toEpochDay(deathdate);
+	}
+
+	/**
+	 * Removes a person from one bucket of a date map, comparing by identity.
+	 */
+	private static void removeFrom(NavigableMap<Integer, List<Person>> index,
+			int day, Person person) {
+		List<Person> bucket = index.get(day);
+		if (bucket == null) {
+			return;
+		}
+		for (int i = 0; i < bucket.size(); i++) {
+			if (bucket.get(i) == person) {
+				bucket.remove(i);
+				break;
+			}
+		}
+		if (bucket.isEmpty()) {
+			index.remove(day);
+		}
+	}
+
+	/**
+	 * Adds the people alive on a day below a node, in order of birth.
+	 */
+	private static void collectAlive(Span node, long day, List<Person> found) {
+		while (node != null && node.latestEnd > day) {
+			collectAlive(node.left, day, found);
+			if (node.start > day) {
+				// everyone to the right was born later still
+				return;
+			}
+			if (node.end > day) {
+				found.add(node.person);
+			}
+			node = node.right;
+		}
+	}
+
+	/**
+	 * Inserts a lifespan below a node, and returns the new top node.
+	 */
+	private static Span insert(Span node, Span span) {
+		if (node == null) {
+			return span;
+		}
+		if (span.compareTo(node) < 0) {
+			node.left = insert(node.left, span);
+			if (node.left.priority > node.priority) {
+				node = rotateRight(node);
+			}
+		} else {
+			node.right = insert(node.right, span);
+			if (node.right.priority > node.priority) {
+				node = rotateLeft(node);
+			}
+		}
+		node.update();
+		return node;
+	}
+
+	/**
+	 * Deletes the lifespan of a person below a node, and returns the new top
+	 * node.
+	 */
+	private static Span delete(Span node, int start, Person person) {
+		if (node == null) {
+			return null;
+		}
+		if (node.person == person) {
+			if (node.left == null) {
+				return node.right;
+			}
+			if (node.right == null) {
+				return node.left;
+			}
+			// rotate the node down below its higher child, then try again
+			if (node.left.priority > node.right.priority) {
+				node = rotateRight(node);
+				node.right = delete(node.right, start, person);
+			} else {
+				node = rotateLeft(node);
+				node.left = delete(node.left, start, person);
+			}
+		} else if (Span.compare(start, person.getId(), node) < 0) {
+			node.left = delete(node.left, start, person);
+		} else {
+			node.right = delete(node.right, start, person);
+		}
+		node.update();
+		return node;
+	}
+
+	private static Span rotateRight(Span node) {
+		Span top = node.left;
+		node.left = top.right;
+		top.right = node;
+		node.update();
+		top.update();
+		return top;
+	}
+
+	private static Span rotateLeft(Span node) {
+		Span top = node.right;
+		node.right = top.left;
+		top.left = node;
+		node.update();
+		top.update();
+		return top;
+	}
+
+	/**
+	 * A node of the lifespan treap. Nodes are ordered by birthday, then by
+	 * ID so that every person has one place; a parent's priority is never
+	 * below its children's, which keeps the treap balanced on average.
+	 */
+	private static final class Span implements Comparable<Span> {
+		final Person person;
+		final int id;
+		final long start;
+		final long end;
+		final int priority;
+		long latestEnd;
+		Span left;
+		Span right;
+
+		Span(Person person, long start, long end, int priority) {
+			this.person = person;
+			this.id = person.getId();
+			this.start = start;
+			this.end = end;
+			this.priority = priority;
+			this.latestEnd = end;
+		}
+
+		void update() {
+			latestEnd = end;
+			if (left != null) {
+				latestEnd = Math.max(latestEnd, left.latestEnd);
+			}
+			if (right != null) {
+				latestEnd = Math.max(latestEnd, right.latestEnd);
+			}
+		}
+
+		static int compare(long start, int id, Span node) {
+			int order = Long.compare(start, node.start);
+			return order != 0 ? order : Integer.compare(id, node.id);
+		}
+
+		@Override
+		public int compareTo(Span other) {
+			return compare(start, id, other);
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds people who were entered into a family tree more than once, for
+ * example by importing two files that overlap, and merges them.
+ * <p>
+ * Comparing everyone with everyone would take forever on a large tree, so
+ * people are first put into blocks by the Soundex codes of the first and
+ * last words of their name and by the year they were born, and only people
+ * in the same block are compared. Names that sound alike, like "Jon Smyth"
+ * and "John Smith", land in the same block; people whose birthday is not
+ * known are only compared with each other. A block too large to compare
+ * every pair is sorted by name and each person is compared with the next
+ * {@value #WINDOW} people. Blocks are compared in parallel on all cores.
+ * <p>
+ * A pair is scored from 0 to 1 on how alike their names are, whether their
+ * dates agree and whether they share a parent, partner or child. People of
+ * different genders, with different deathdates or who are parent and child
+ * or partners are never the same person.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public final class DuplicateFinder {
+	/**
+	 * The score above which two people are taken to be the same unless
+	 * another is set.
+	 */
+	public static final double DEFAULT_MIN_SCORE = 0.8;
+
+	// blocks larger than this are compared through a sliding window
+	private static final int MAX_BLOCK = 512;
+	private static final int WINDOW = 32;
+
+	private static final double NAME_WEIGHT = 0.5;
+	private static final double DATE_WEIGHT = 0.25;
+	private static final double RELATIVE_WEIGHT = 0.25;
+
+	/**
+	 * Two people found to be the same person.
+	 *
+	 * @param keep
+	 *            the person to keep, the one who joined the tree first
+	 * @param duplicate
+	 *            the person to merge into them
+	 * @param score
+	 *            how sure the match is, from 0 to 1
+	 */
+	public record Match(Person keep, Person duplicate, double score) {
+	}
+
+	private final FamilyTree tree;
+	private double minScore = DEFAULT_MIN_SCORE;
+
+	/**
+	 * Creates a finder for the duplicates of a tree.
+	 *
+	 * @param tree
+	 *            the tree to search; must not change during a search
+	 */
+	public DuplicateFinder(FamilyTree tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * Sets how alike two people must be to be taken as the same person.
+	 *
+	 * @param minScore
+	 *            the lowest score of a match, from 0 to 1
+	 * @return this finder
+	 */
+	public DuplicateFinder setMinScore(double minScore) {
+		if (minScore < 0 || minScore > 1) {
+			throw new IllegalArgumentException(
+					"minScore must be between 0 and 1");
+		}
+		this.minScore = minScore;
+		return this;
+	}
+
+	/**
+	 * Finds the pairs of people in the tree who are probably the same
+	 * person. A person may be in several pairs; {@link #merge(List)} follows
+	 * them all to one person.
+	 *
+	 * @return the matches, with the most likely first
+	 */
+	public List<Match> findDuplicates() {
+		List<Person> people = tree.getPeople();
+
+		// block key in the high half, row in the low half, so sorting
+		// brings each block together in row order
+		long[] keys = new long[people.size()];
+		ParallelScan.findRows(keys.length, row -> {
+			keys[row] = (long) blockKey(people.get(row)) << 32 | row;
+			return false;
+		});
+		Arrays.parallelSort(keys);
+
+		int[] starts = new int[16];
+		int blocks = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (i == 0 || keys[i] >>> 32 != keys[i - 1] >>> 32) {
+				if (blocks == starts.length) {
+					starts = Arrays.copyOf(starts, blocks * 2);
+				}
+				starts[blocks++] = i;
+			}
+		}
+		int[] bounds = Arrays.copyOf(starts, blocks + 1);
+		bounds[blocks] = keys.length;
+
+		// each block sets only its own slot
+		List<List<Match>> found = new ArrayList<>(
+				Collections.nCopies(blocks, null));
+		int[] matched = ParallelScan.findRows(blocks, block -> {
+			Person[] members = new Person[bounds[block + 1] - bounds[block]];
+			for (int i = 0; i < members.length; i++) {
+				members[i] = people.get((int) keys[bounds[block] + i]);
+			}
+			List<Match> inBlock = compare(members);
+			found.set(block, inBlock);
+			return !inBlock.isEmpty();
+		});
+
+		List<Match> matches = new ArrayList<>();
+		for (int block : matched) {
+			matches.addAll(found.get(block));
+		}
+		matches.sort(Comparator.comparingDouble(Match::score).reversed());
+		return matches;
+	}
+
+	/**
+	 * Scores how likely two people are to be the same person.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return a score from 0 to 1, or 0 if they cannot be the same person
+	 */
+	public double score(Person a, Person b) {
+		return score(a, b, NameIndex.trigrams(NameIndex.fold(a.getName())),
+				NameIndex.trigrams(NameIndex.fold(b.getName())));
+	}
+
+	/**
+	 * Merges each duplicate into the person kept in its place: their facts
+	 * fill in what the kept person lacks, their parents, children and
+	 * partners are moved over, and the duplicate is taken out of the tree.
+	 * Pairs whose people were already merged into one are skipped. All the
+	 * merges are one change of the tree.
+	 * <p>
+	 * On a {@link ConcurrentFamilyTree}, call this inside
+	 * {@link ConcurrentFamilyTree#write}.
+	 *
+	 * @param matches
+	 *            the pairs to merge, for example from
+	 *            {@link #findDuplicates()}
+	 * @return the number of people merged away
+	 */
+	public int merge(List<Match> matches) {
+		// who each merged person went into, to follow chains of matches
+		Map<Person, Person> mergedInto = new HashMap<>();
+		int merged = 0;
+
+		tree.beginChange();
+		try {
+			for (Match match : matches) {
+				Person keep = follow(mergedInto, match.keep());
+				Person duplicate = follow(mergedInto, match.duplicate());
+				if (keep == duplicate || !tree.contains(keep)
+						|| !tree.contains(duplicate)) {
+					continue;
+				}
+				mergeInto(keep, duplicate);
+				mergedInto.put(duplicate, keep);
+				merged++;
+			}
+		} finally {
+			tree.endChange();
+		}
+		return merged;
+	}
+
+	/**
+	 * Finds the matches within one block.
+	 */
+	private List<Match> compare(Person[] members) {
+		List<Match> found = new ArrayList<>(0);
+		if (members.length < 2) {
+			return found;
+		}
+		int window = members.length;
+		if (members.length > MAX_BLOCK) {
+			Arrays.sort(members,
+					Comparator.comparing(person -> NameIndex.fold(person
+							.getName())));
+			window = WINDOW;
+		}
+		long[][] trigrams = new long[members.length][];
+		for (int i = 0; i < members.length; i++) {
+			trigrams[i] = NameIndex
+					.trigrams(NameIndex.fold(members[i].getName()));
+		}
+
+		for (int i = 0; i < members.length; i++) {
+			int end = Math.min(members.length, i + 1 + window);
+			for (int j = i + 1; j < end; j++) {
+				double score = score(members[i], members[j], trigrams[i],
+						trigrams[j]);
+				if (score >= minScore) {
+					// keep whoever joined the tree first
+					Person a = members[i];
+					Person b = members[j];
+					found.add(a.getRow() < b.getRow() ? new Match(a, b, score)
+							: new Match(b, a, score));
+				}
+			}
+		}
+		return found;
+	}
+
+	private static double score(Person a, Person b, long[] namesA,
+			long[] namesB) {
+		if (a == b || a.getGender() != b.getGender()
+				|| !agree(a.getDeathdate(), b.getDeathdate())
+				|| a.getMother() == b || a.getFather() == b
+				|| b.getMother() == a || b.getFather() == a
+				|| a.getPartners().contains(b)) {
+			return 0;
+		}
+		double name = NameIndex.similarity(namesA, namesB);
+
+		double dates = 0.5;
+		if (a.getBirthday() != null && b.getBirthday() != null) {
+			dates = a.getBirthday().equals(b.getBirthday()) ? 1
+					: a.getBirthday().getYear() == b.getBirthday().getYear()
+							? 0.5
+							: 0;
+		}
+
+		double relatives = 0.5;
+		if (shareRelative(a, b)) {
+			relatives = 1;
+		} else if ((a.getMother() != null || a.getFather() != null)
+				&& (b.getMother() != null || b.getFather() != null)) {
+			// both have known parents, and they are not the same
+			relatives = 0;
+		}
+		return NAME_WEIGHT * name + DATE_WEIGHT * dates
+				+ RELATIVE_WEIGHT * relatives;
+	}
+
+	/**
+	 * @return true if the dates are equal or either is unknown
+	 */
+	private static boolean agree(LocalDate a, LocalDate b) {
+		return a == null || b == null || a.equals(b);
+	}
+
+	private static boolean shareRelative(Person a, Person b) {
+		if (a.getMother() != null && a.getMother() == b.getMother()
+				|| a.getFather() != null && a.getFather() == b.getFather()) {
+			return true;
+		}
+		for (Person partner : a.getPartners()) {
+			if (b.getPartners().contains(partner)) {
+				return true;
+			}
+		}
+		for (Person child : a.getChildren()) {
+			if (b.getChildren().contains(child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The block of a person: a hash of the Soundex codes of the first and
+	 * last words of their name, mixed with their birth year.
+	 */
+	private static int blockKey(Person person) {
+		String codes = NameIndex.soundex(NameIndex.fold(person.getName()));
+		int space = codes.indexOf(' ');
+		String key = space < 0 ? codes
+				: codes.substring(0, space)
+						+ codes.substring(codes.lastIndexOf(' '));
+		int year = person.getBirthday() == null ? Integer.MIN_VALUE
+				: person.getBirthday().getYear();
+		return key.hashCode() * 31 + year;
+	}
+
+	private static Person follow(Map<Person, Person> mergedInto,
+			Person person) {
+		Person next;
+		while ((next = mergedInto.get(person)) != null) {
+			person = next;
+		}
+		return person;
+	}
+
+	/**
+	 * Moves everything known about a duplicate to the person kept, then takes
+	 * the duplicate out of the tree.
+	 */
+	private void mergeInto(Person keep, Person duplicate) {
+		if (keep.getName() == null || keep.getName().isBlank()) {
+			keep.setName(duplicate.getName());
+		}
+		if (keep.getBirthday() == null) {
+			keep.setBirthday(duplicate.getBirthday());
+		}
+		if (keep.getDeathdate() == null) {
+			keep.setDeathdate(duplicate.getDeathdate());
+		}
+
+		// parents: the duplicate leaves their children, the kept person
+		// takes any parent they lack
+		for (Person parent : new Person[] { duplicate.getMother(),
+				duplicate.getFather() }) {
+			if (parent == null) {
+				continue;
+			}
+			parent.getChildren().remove(duplicate);
+			tree.changed(parent);
+			if ((parent.getGender() == Sex.FEMALE ? keep.getMother()
+					: keep.getFather()) == null) {
+				parent.addChild(keep);
+			}
+		}
+		Person guardian = duplicate.getGuardian();
+		if (guardian != null) {
+			guardian.getChildren().remove(duplicate);
+			if (keep.getGuardian() == null) {
+				keep.setGuardian(guardian);
+				keep.setWasAdopted(true);
+				guardian.getChildren().add(keep);
+			}
+			tree.changed(guardian);
+		}
+
+		// children: point them at the kept person
+		for (Person child : duplicate.getChildren()) {
+			if (child.getMother() == duplicate) {
+				child.setMother(keep);
+			}
+			if (child.getFather() == duplicate) {
+				child.setFather(keep);
+			}
+			if (child.getGuardian() == duplicate) {
+				child.setGuardian(keep);
+			}
+			if (!keep.getChildren().contains(child)) {
+				keep.getChildren().add(child);
+			}
+		}
+
+		// partners: the kept person takes the duplicate's place
+		List<Person> partners = keep.getPartners();
+		for (Person partner : duplicate.getPartners()) {
+			List<Person> theirs = partner.getPartners();
+			int at = theirs.indexOf(duplicate);
+			if (theirs.contains(keep)) {
+				theirs.remove(at);
+			} else {
+				theirs.set(at, keep);
+			}
+			if (!partners.contains(partner)) {
+				// a current marriage stays the last partner
+				partners.add(keep.isMarried() ? partners.size() - 1
+						: partners.size(), partner);
+			}
+			tree.linked(keep, partner);
+			tree.changed(partner);
+		}
+		Person spouse = duplicate.getSpouse();
+		if (spouse != null && !keep.isMarried()) {
+			// the current spouse is the last partner
+			partners.remove(spouse);
+			partners.add(spouse);
+			keep.setMarried(true);
+		} else if (spouse != null && spouse != keep.getSpouse()) {
+			// the kept person stays with their own spouse, which ends the
+			// duplicate's marriage
+			spouse.setMarried(false);
+		}
+		tree.changed(keep);
+
+		if (tree.getHead().getNext() == duplicate) {
+			tree.getHead().setNext(keep);
+		}
+		tree.remove(duplicate);
+	}
+}
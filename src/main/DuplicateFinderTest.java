@@ -0,0 +1,116 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DuplicateFinderTest {
+	private FamilyTree tree;
+	private Person george;
+	private Person mary;
+	private Person john;
+	private Person jon;
+	private Person jane;
+	private Person tim;
+
+	/**
+	 * George and Mary have a son, John. A second import added him again as
+	 * Jon, with his wife Jane and their son Tim.
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		george = new Person("George Smith", "male", LocalDate.of(1900, 3, 1));
+		mary = new Person("Mary Jones", "female", LocalDate.of(1902, 7, 9));
+		john = new Person("John Smith", "male", LocalDate.of(1925, 1, 15));
+		jon = new Person("Jon Smith", "male", LocalDate.of(1925, 1, 15));
+		jane = new Person("Jane Doe", "female");
+		tim = new Person("Tim Smith", "male");
+
+		tree = new FamilyTree(george);
+		tree.addPerson(mary);
+		tree.marry(george, mary);
+		tree.addChild(george, mary, john);
+		tree.addChild(george, mary, jon);
+		tree.addPerson(jane);
+		tree.marry(jon, jane);
+		tree.addChild(jon, jane, tim);
+	}
+
+	@Test
+	void similarPeopleWithTheSameParentsAreFound() throws Exception {
+		// same name and birthday, but other parents
+		Person other = new Person("John Smith", "male",
+				LocalDate.of(1925, 1, 15));
+		Person father = new Person("Frank Brown", "male");
+		tree.addPerson(other);
+		assertTrue(tree.assignParent(father, other));
+
+		List<DuplicateFinder.Match> matches = new DuplicateFinder(tree)
+				.findDuplicates();
+
+		assertEquals(1, matches.size());
+		assertSame(john, matches.get(0).keep());
+		assertSame(jon, matches.get(0).duplicate());
+		assertEquals(0, new DuplicateFinder(tree).score(john, mary));
+		assertEquals(0, new DuplicateFinder(tree).score(george, john));
+	}
+
+	@Test
+	void mergeMovesRelativesToThePersonKept() {
+		DuplicateFinder finder = new DuplicateFinder(tree);
+		TreeSnapshot before = tree.snapshot();
+
+		assertEquals(1, finder.merge(finder.findDuplicates()));
+
+		assertFalse(tree.contains(jon));
+		assertFalse(tree.getPeople().contains(jon));
+		assertEquals(List.of(john), mary.getChildren());
+		assertSame(jane, john.getSpouse());
+		assertSame(john, jane.getSpouse());
+		assertSame(john, tim.getFather());
+		assertEquals(List.of(tim), john.getChildren());
+		assertTrue(tree.areInSameFamily(george, tim));
+		assertEquals(List.of(john), tree.findPeople("john smith"));
+		assertTrue(tree.findPeople("jon smith").isEmpty());
+
+		TreeSnapshot after = tree.snapshot();
+		assertTrue(after.getVersion() > before.getVersion());
+		assertNull(after.findPerson(jon.getId()));
+		assertEquals(tree.getPeople().size(), after.size());
+		assertEquals(List.of(tim.getId()), List.of(after
+				.getChildren(after.findPerson(john.getId())).get(0).getId()));
+	}
+
+	@Test
+	void mergeKeepsTheCurrentMarriageOfThePersonKept() throws Exception {
+		Person ann = new Person("Ann Brown", "female");
+		tree.addPerson(ann);
+		tree.marry(john, ann);
+		DuplicateFinder finder = new DuplicateFinder(tree);
+
+		assertEquals(1, finder.merge(finder.findDuplicates()));
+
+		assertEquals(List.of(jane, ann), john.getPartners());
+		assertSame(ann, john.getSpouse());
+		assertSame(john, ann.getSpouse());
+		assertEquals(List.of(john), jane.getPartners());
+		assertFalse(jane.isMarried());
+		assertSame(john, tim.getFather());
+	}
+
+	@Test
+	void chainsOfMatchesEndInOnePerson() throws Exception {
+		Person johnny = new Person("John Smith", "male",
+				LocalDate.of(1925, 1, 15));
+		tree.addChild(george, mary, johnny);
+		DuplicateFinder finder = new DuplicateFinder(tree);
+
+		assertEquals(2, finder.merge(finder.findDuplicates()));
+		assertEquals(List.of(john), mary.getChildren());
+		assertTrue(finder.findDuplicates().isEmpty());
+	}
+}
@@ -0,0 +1,217 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the people of a family tree into families: groups of people joined
+ * to each other, however distantly, by parent, child, adoption or marriage
+ * links. Families are kept in a union-find structure over the rows of the
+ * people, so asking whether two people are in the same family takes a few
+ * array reads, and two families are merged in constant time when a link
+ * between them is added. Links are never undone, so neither are merges.
+ * <p>
+ * The forest also keeps its roots: the people with no parent or guardian in
+ * the tree, from whom everyone else descends.
+ *
+ * @author Stephen Schroer
+ *
+ */
+class FamilyForest {
+	private Person[] people = new Person[16];
+
+	// row -> parent row in the union-find forest; a family's root is its own
+	private int[] parent = new int[16];
+
+	// row of a family's root -> number of people in the family
+	private int[] size = new int[16];
+
+	// row -> next row of the same family, round in a circle
+	private int[] next = new int[16];
+
+	private int count;
+	private int families;
+	private final Set<Person> roots = new LinkedHashSet<>();
+
+	/**
+	 * Adds a person as a family of their own.
+	 *
+	 * @param person
+	 *            the person joining the tree
+	 */
+	void add(Person person) {
+		if (count == people.length) {
+			int length = count * 2;
+			people = Arrays.copyOf(people, length);
+			parent = Arrays.copyOf(parent, length);
+			size = Arrays.copyOf(size, length);
+			next = Arrays.copyOf(next, length);
+		}
+		int row = count++;
+		person.setRow(row);
+		people[row] = person;
+		parent[row] = row;
+		size[row] = 1;
+		next[row] = row;
+		families++;
+		roots.add(person);
+	}
+
+	/**
+	 * @param person
+	 *            a person, may be null
+	 * @return true if the person has been added to this forest
+	 */
+	boolean contains(Person person) {
+		if (person == null) {
+			return false;
+		}
+		int row = person.getRow();
+		return row >= 0 && row < count && people[row] == person;
+	}
+
+	/**
+	 * Takes a person out of the forest. Their row stays behind, empty, as
+	 * families are never split; a family left with nobody in it is no longer
+	 * counted.
+	 *
+	 * @param person
+	 *            the person leaving the tree
+	 */
+	void remove(Person person) {
+		if (!contains(person)) {
+			return;
+		}
+		int row = person.getRow();
+		people[row] = null;
+		person.setRow(-1);
+		roots.remove(person);
+		if (--size[find(row)] == 0) {
+			families--;
+		}
+	}
+
+	/**
+	 * Joins the families of two people who became related. Does nothing if
+	 * either is not in the forest.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 */
+	void join(Person a, Person b) {
+		if (!contains(a) || !contains(b)) {
+			return;
+		}
+		int rootA = compress(a.getRow());
+		int rootB = compress(b.getRow());
+		if (rootA == rootB) {
+			return;
+		}
+		// the smaller family goes under the larger, so paths stay short
+		if (size[rootA] < size[rootB]) {
+			int swap = rootA;
+			rootA = rootB;
+			rootB = swap;
+		}
+		parent[rootB] = rootA;
+		size[rootA] += size[rootB];
+
+		// splice the two circles of members into one
+		int after = next[rootA];
+		next[rootA] = next[rootB];
+		next[rootB] = after;
+		families--;
+	}
+
+	/**
+	 * Checks if two people are in the same family. Only reads the forest, so
+	 * it can be called by several readers at once.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return true if both are in the forest and in the same family
+	 */
+	boolean sameFamily(Person a, Person b) {
+		return contains(a) && contains(b)
+				&& find(a.getRow()) == find(b.getRow());
+	}
+
+	/**
+	 * @return the number of separate families
+	 */
+	int families() {
+		return families;
+	}
+
+	/**
+	 * Lists the family of a person, without walking their relatives.
+	 *
+	 * @param person
+	 *            a person in the forest
+	 * @return everyone in the same family, starting with the person
+	 */
+	List<Person> familyOf(Person person) {
+		int start = person.getRow();
+		List<Person> family = new ArrayList<>(size[find(start)]);
+		int row = start;
+		do {
+			// rows of people who left stay in the circle
+			if (people[row] != null) {
+				family.add(people[row]);
+			}
+			row = next[row];
+		} while (row != start);
+		return family;
+	}
+
+	/**
+	 * Checks again whether a person is a root, after their parents or
+	 * guardian changed.
+	 *
+	 * @param person
+	 *            a person in the forest
+	 */
+	void parentsChanged(Person person) {
+		if (contains(person.getMother()) || contains(person.getFather())
+				|| contains(person.getGuardian())) {
+			roots.remove(person);
+		} else {
+			roots.add(person);
+		}
+	}
+
+	/**
+	 * @return the people with no parent or guardian in the forest
+	 */
+	List<Person> roots() {
+		return new ArrayList<>(roots);
+	}
+
+	private int find(int row) {
+		while (parent[row] != row) {
+			row = parent[row];
+		}
+		return row;
+	}
+
+	/**
+	 * Finds the root of a row's family, pointing every row on the way
+	 * straight at it.
+	 */
+	private int compress(int row) {
+		int root = find(row);
+		while (parent[row] != root) {
+			int up = parent[row];
+			parent[row] = root;
+			row = up;
+		}
+		return root;
+	}
+}
@@ -3,11 +3,17 @@ package main;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import main.TreeMetrics.Operation;
+import main.TreeMetrics.Probe;
 
 /**
  * This is the FamilyTree Object.
@@ -18,11 +24,61 @@ import java.util.Set;
 public class FamilyTree {
 	private Node<Person> head;
 
+	// Every person known to the tree, in the order they were registered
+	private final List<Person> people;
+
+	// Person ID -> person
+	private final Map<Integer, Person> byId;
+
+	// Exact, prefix, phonetic and fuzzy name lookups
+	private final NameIndex byName;
+
+	// (case-folded name, birthday) -> people with that name and birthday
+	private final Map<NameKey, List<Person>> byNameAndBirthday;
+
+	// Birth and death dates, and lifespans
+	private final DateIndex dates;
+
+	// Blood ancestors of each person, built as relatedness is asked about
+	private final AncestryIndex ancestry;
+
+	// Families of people linked in any way, and the people heading them
+	private final FamilyForest families;
+
+	// Generations below the earliest known ancestor of each person
+	private final GenerationIndex generations;
+
+	// What the operations of the tree cost, or null if not measured
+	private TreeMetrics metrics;
+
+	// Published versions for snapshots, kept once the first one is taken
+	private volatile TreeVersions versions;
+
+	// Journal the changes are written to, or null if they are not kept
+	private TreeJournal journal;
+
+	// Changes in progress; a new version is published when none are left
+	private int changing;
+
+	// People touched by the changes in progress, in the order first touched
+	private Set<Person> pending = new LinkedHashSet<>();
+
+	// People taken out of the tree by the changes in progress
+	private final List<Person> removed = new ArrayList<>();
+
 	/**
 	 * This is the familyTree constructor.
 	 */
 	public FamilyTree() {
 		head = new Node<>();
+		people = new ArrayList<>();
+		byId = new HashMap<>();
+		byName = new NameIndex();
+		byNameAndBirthday = new HashMap<>();
+		dates = new DateIndex();
+		ancestry = new AncestryIndex();
+		families = new FamilyForest();
+		generations = new GenerationIndex(people, this::contains);
 	}
 
 	/**
@@ -34,8 +90,93 @@ public class FamilyTree {
 	 *            family tree
 	 */
 	public FamilyTree(Person progenitor) {
-		head = new Node<>();
+		this();
+		head.setNext(progenitor);
+		register(progenitor);
+	}
+
+	/**
+	 * Constructs a FamilyTree with the given progenitor that also knows about
+	 * people who cannot be reached from the progenitor, such as a tree loaded
+	 * from storage. Each person is added in a single step, without walking
+	 * their relatives, so the relatives of every person must be among the
+	 * people given.
+	 *
+	 * @param progenitor
+	 *            the head of the family tree, may be null
+	 * @param everyone
+	 *            every person in the tree
+	 */
+	FamilyTree(Person progenitor, Iterable<Person> everyone) {
+		this();
 		head.setNext(progenitor);
+		for (Person person : everyone) {
+			add(person);
+		}
+		register(progenitor);
+	}
+
+	/**
+	 * @return the metrics the operations of the tree are counted in, or null
+	 *         if they are not measured
+	 */
+	public TreeMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Starts counting what the operations of the tree cost, or stops if
+	 * given null. The same metrics may be shared by several trees.
+	 *
+	 * @param metrics
+	 *            the metrics to count operations in, or null
+	 */
+	public void setMetrics(TreeMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Takes a snapshot of the tree as it is now, which can be read from any
+	 * thread, without locks, while this tree goes on changing.
+	 * <p>
+	 * The first snapshot records every person once. From then on the tree
+	 * publishes a new version after each change, replacing only the records
+	 * of the people it touched, so later snapshots are free. Changes made
+	 * straight to the lists returned by {@link Person#getChildren()} and
+	 * {@link Person#getPartners()} are only seen once the person is next
+	 * changed through the tree.
+	 *
+	 * @return the people of the tree as they are now
+	 */
+	public TreeSnapshot snapshot() {
+		if (versions == null) {
+			versions = startVersions(0);
+		}
+		return versions.current();
+	}
+
+	/**
+	 * Records every person once and publishes them as the version after the
+	 * given one.
+	 */
+	private TreeVersions startVersions(long version) {
+		TreeVersions started = new TreeVersions(version);
+		List<PersonRecord> records = new ArrayList<>(people.size());
+		for (Person person : people) {
+			started.added(person);
+			records.add(PersonRecord.of(person));
+		}
+		started.publish(records, idOf(head.getNext()));
+		return started;
+	}
+
+	/**
+	 * @return the latest snapshot, or null if none has been taken yet; safe
+	 *         to call from any thread
+	 */
+	TreeSnapshot latestSnapshot() {
+		TreeVersions published = versions;
+		return published == null ? null : published.current();
 	}
 
 	/**
@@ -46,8 +187,29 @@ public class FamilyTree {
 	}
 
 	/**
-	 * Finds a person in the family tree with the specified name and birthday
-	 * using breadth-first search.
+	 * Returns every person known to the tree, in the order they joined it.
+	 *
+	 * @return an unmodifiable view of the people in the tree
+	 */
+	public List<Person> getPeople() {
+		return Collections.unmodifiableList(people);
+	}
+
+	/**
+	 * Checks if a person is known to the tree.
+	 *
+	 * @param target
+	 *            the person to look for
+	 * @return true if the person has been registered with the tree, otherwise
+	 *         false
+	 */
+	public boolean contains(Person target) {
+		return target != null && byId.get(target.getId()) == target;
+	}
+
+	/**
+	 * Finds a person in the family tree with the specified name and birthday.
+	 * The name is matched ignoring case.
 	 *
 	 * @param name
 	 *            the name of the person to search for
@@ -56,60 +218,52 @@ public class FamilyTree {
 	 * @return the Person object if found, or null if not found
 	 */
 	public Person findPerson(String name, LocalDate birthday) {
-		// Create a queue for a breadth first search
-		Queue<Person> queue = new LinkedList<>();
-
-		queue.add(head.getNext());
-		if (!head.getNext().getPartners().isEmpty()) {
-			queue.addAll(head.getNext().getPartners());
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			List<Person> found = byNameAndBirthday
+					.get(new NameKey(NameIndex.fold(name), birthday));
+
+			return found == null ? null : found.get(0);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_PERSON);
 		}
-
-		while (!queue.isEmpty()) {
-			Person currentPerson = queue.poll();
-
-			// Checks if name and birthday match
-			if (currentPerson.getName().equalsIgnoreCase(name)
-					&& currentPerson.getBirthday().equals(birthday)) {
-				return currentPerson; // found person
-			}
-
-			// add children to the queue for further exploration
-			queue.addAll(currentPerson.getChildren());
-		}
-
-		// person not found
-		return null;
 	}
 
 	/**
-	 * Finds a person in the family tree matching the provided target person
-	 * using breadth-first search.
+	 * Finds the person in the family tree that is the provided target person.
 	 *
 	 * @param target
 	 *            the person object to search for
 	 * @return the Person object if found, or null if not found
 	 */
 	public Person findPerson(Person target) {
-		Queue<Person> queue = new LinkedList<>();
-
-		queue.add(head.getNext());
-		if (!head.getNext().getPartners().isEmpty()) {
-			queue.addAll(head.getNext().getPartners());
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return contains(target) ? target : null;
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_PERSON);
+		}
+	}
 
-			while (!queue.isEmpty()) {
-				Person currentPerson = queue.poll();
-				if (currentPerson.equals(target)) {
-					return currentPerson;
-				}
-				queue.addAll(currentPerson.getChildren());
-			}
+	/**
+	 * Finds the person in the family tree with the given ID.
+	 *
+	 * @param id
+	 *            the ID of the person to search for
+	 * @return the Person object if found, or null if not found
+	 */
+	public Person findPerson(int id) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return byId.get(id);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_PERSON);
 		}
-		return null;
 	}
 
 	/**
-	 * Finds people in the family tree with the specified name using
-	 * breadth-first search.
+	 * Finds people in the family tree with the specified name. The name is
+	 * matched ignoring case.
 	 *
 	 * @param name
 	 *            the name of the people to search for
@@ -117,27 +271,258 @@ public class FamilyTree {
 	 *         list if none are found
 	 */
 	public List<Person> findPeople(String name) {
-		List<Person> foundPeople = new ArrayList<>();
-		Queue<Person> queue = new LinkedList<>();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return new ArrayList<>(byName.find(name));
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_PEOPLE);
+		}
+	}
+
+	/**
+	 * Finds people with a word in their name that starts with the given
+	 * text, ignoring case, so "smi" finds "John Smith" and "Smithers Jones".
+	 *
+	 * @param prefix
+	 *            the start of a word of the name
+	 * @param limit
+	 *            the most people to return
+	 * @return the matching people, ordered by the matching word
+	 */
+	public List<Person> findPeopleByPrefix(String prefix, int limit) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return byName.findByPrefix(prefix, limit);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_BY_PREFIX);
+		}
+	}
 
-		queue.add(head.getNext());
-		if (!head.getNext().getPartners().isEmpty()) {
-			queue.addAll(head.getNext().getPartners());
+	/**
+	 * Finds people whose names sound like the given name, word for word, as
+	 * judged by Soundex: "Jon Smyth" sounds like "John Smith".
+	 *
+	 * @param name
+	 *            the name to sound out
+	 * @return the people with names that sound alike
+	 */
+	public List<Person> findPeopleSoundingLike(String name) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return byName.findSoundingLike(name);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_SOUNDING_LIKE);
+		}
+	}
 
-			while (!queue.isEmpty()) {
-				Person currentPerson = queue.poll();
+	/**
+	 * Finds the people whose names are spelled most like the given name, for
+	 * catching misspellings. Names that sound the same are included even if
+	 * they are spelled quite differently.
+	 *
+	 * @param name
+	 *            the name to match
+	 * @param limit
+	 *            the most people to return
+	 * @return the matching people, closest spelling first
+	 */
+	public List<Person> findSimilar(String name, int limit) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return byName.findSimilar(name, limit);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_SIMILAR);
+		}
+	}
 
-				if (currentPerson.getName().equalsIgnoreCase(name)) {
-					foundPeople.add(currentPerson); // Found a person with
-													// matching
-													// name
-				}
-				// Add children to the queue for further exploration
-				queue.addAll(currentPerson.getChildren());
+	/**
+	 * Finds the people born in a range of dates.
+	 *
+	 * @param from
+	 *            the first birthday to match, or null for no lower bound
+	 * @param to
+	 *            the last birthday to match, or null for no upper bound
+	 * @return the people born in the range, inclusive, earliest first
+	 */
+	public List<Person> findBornBetween(LocalDate from, LocalDate to) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return dates.bornBetween(from, to);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_BORN_BETWEEN);
+		}
+	}
+
+	/**
+	 * Finds the people who died in a range of dates.
+	 *
+	 * @param from
+	 *            the first deathdate to match, or null for no lower bound
+	 * @param to
+	 *            the last deathdate to match, or null for no upper bound
+	 * @return the people who died in the range, inclusive, earliest first
+	 */
+	public List<Person> findDiedBetween(LocalDate from, LocalDate to) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return dates.diedBetween(from, to);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_DIED_BETWEEN);
+		}
+	}
+
+	/**
+	 * Finds the people alive on a day: born on or before it and not dead by
+	 * then. People without a deathdate count as still alive, and people
+	 * without a birthday are never found.
+	 *
+	 * @param date
+	 *            the day
+	 * @return the people alive on the day, earliest born first
+	 */
+	public List<Person> findAliveOn(LocalDate date) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return dates.aliveOn(date);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_ALIVE_ON);
+		}
+	}
+
+	/**
+	 * Finds the descendants of a person, by birth or adoption, who were alive
+	 * on a day. Children are taken to be born after their parents, so the
+	 * search does not go below anyone born after the day.
+	 *
+	 * @param ancestor
+	 *            the person whose descendants are searched
+	 * @param date
+	 *            the day
+	 * @return the descendants alive on the day, or an empty list if the
+	 *         person is not in the tree
+	 */
+	public List<Person> findDescendantsAliveOn(Person ancestor,
+			LocalDate date) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			List<Person> found = new ArrayList<>();
+			if (!contains(ancestor)) {
+				return found;
+			}
+			Traversal.overChildren().forEach(ancestor.getChildren(),
+					person -> {
+						if (DateIndex.isAlive(person.getBirthday(),
+								person.getDeathdate(), date)) {
+							found.add(person);
+						}
+						return person.getBirthday() == null
+								|| !person.getBirthday().isAfter(date);
+					});
+			return found;
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_DESCENDANTS_ALIVE_ON);
+		}
+	}
+
+	/**
+	 * Returns the blood ancestors of a person, up to a number of generations
+	 * back. The ancestors are found as the stream is read, so a search like
+	 * "any living ancestor" stops at the first match.
+	 *
+	 * @param person
+	 *            the person whose ancestors are returned
+	 * @param generations
+	 *            how many generations to go back; 1 for parents, 2 for
+	 *            grandparents, {@link Integer#MAX_VALUE} for all
+	 * @param order
+	 *            nearest generations first, or one line at a time
+	 * @return the ancestors, each once, or an empty stream if the person is
+	 *         not in the tree
+	 */
+	public Stream<Person> ancestors(Person person, int generations,
+			Traversal.Order order) {
+		return contains(person)
+				? Traversal.overParents().stream(person, order, generations)
+				: Stream.empty();
+	}
+
+	/**
+	 * Returns the descendants of a person, by birth or adoption, up to a
+	 * number of generations down. The descendants are found as the stream is
+	 * read, so a search like "first adopted descendant" stops at the first
+	 * match.
+	 *
+	 * @param person
+	 *            the person whose descendants are returned
+	 * @param generations
+	 *            how many generations to go down; 1 for children, 2 for
+	 *            grandchildren, {@link Integer#MAX_VALUE} for all
+	 * @param order
+	 *            nearest generations first, or one line at a time
+	 * @return the descendants, each once, or an empty stream if the person
+	 *         is not in the tree
+	 */
+	public Stream<Person> descendants(Person person, int generations,
+			Traversal.Order order) {
+		return contains(person)
+				? Traversal.overChildren().stream(person, order, generations)
+				: Stream.empty();
+	}
+
+	/**
+	 * Finds every person in the family tree that matches a condition. The
+	 * people are split between the cores of the machine and tested in
+	 * parallel, so the condition must be safe to call from several threads
+	 * and the tree must not change during the search.
+	 *
+	 * @param match
+	 *            the condition to test, for example one from
+	 *            {@link PersonPredicates}
+	 * @return the matching people, in the order they joined the tree
+	 */
+	public List<Person> findAll(Predicate<? super Person> match) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return ParallelScan.findAll(people, match);
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_ALL);
+		}
+	}
+
+	/**
+	 * Adds a person to the family tree without relating them to anyone yet.
+	 * If the tree has no head, the person becomes its head.
+	 *
+	 * @param person
+	 *            the person to add
+	 * @return true if the person was added, false if they were already in the
+	 *         tree
+	 * @throws IllegalArgumentException
+	 *             if another person in the tree has the same ID
+	 */
+	public boolean addPerson(Person person) {
+		beginChange();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			if (contains(person)) {
+				return false;
+			}
+			if (byId.containsKey(person.getId())) {
+				throw new IllegalArgumentException(
+						"Another person in the tree has ID " + person.getId());
+			}
+			if (head.getNext() == null) {
+				head.setNext(person);
+			}
+			register(person);
+			return true;
+		} finally {
+			try {
+				endChange();
+			} finally {
+				TreeMetrics.end(probe, Operation.ADD_PERSON);
 			}
-			return foundPeople;
 		}
-		return null;
 	}
 
 	/**
@@ -158,18 +543,29 @@ public class FamilyTree {
 	 *         {@code false} otherwise.
 	 */
 	public boolean addChild(Person parent, Person currentSpouse, Person child) {
-		Person bioParent = findPerson(parent);
-		Person spouse = findPerson(currentSpouse);
-
-		if (bioParent != null && spouse != null) {
-			if (bioParent.getSpouse().equals(spouse)
-					&& spouse.getSpouse().equals(bioParent)) {
-				bioParent.addChild(child);
-				spouse.addChild(child);
-				return true;
+		beginChange();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			Person bioParent = findPerson(parent);
+			Person spouse = findPerson(currentSpouse);
+
+			if (bioParent != null && spouse != null) {
+				if (bioParent.getSpouse().equals(spouse)
+						&& spouse.getSpouse().equals(bioParent)) {
+					bioParent.addChild(child);
+					spouse.addChild(child);
+					register(child);
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			try {
+				endChange();
+			} finally {
+				TreeMetrics.end(probe, Operation.ADD_CHILD);
 			}
 		}
-		return false;
 	}
 
 	/**
@@ -184,17 +580,28 @@ public class FamilyTree {
 	 *         {@code false} otherwise.
 	 */
 	public boolean addChild(Person parent, Person child) {
-		Person bioParent = findPerson(parent);
+		beginChange();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			Person bioParent = findPerson(parent);
 
-		if (bioParent != null) {
-			Person unknownParent = parent.createOppositeGender(bioParent);
+			if (bioParent != null) {
+				Person unknownParent = parent.createOppositeGender(bioParent);
 
-			bioParent.addChild(child);
-			unknownParent.addChild(child);
+				bioParent.addChild(child);
+				unknownParent.addChild(child);
+				register(unknownParent);
 
-			return true;
+				return true;
+			}
+			return false;
+		} finally {
+			try {
+				endChange();
+			} finally {
+				TreeMetrics.end(probe, Operation.ADD_CHILD);
+			}
 		}
-		return false;
 	}
 
 	/**
@@ -209,21 +616,32 @@ public class FamilyTree {
 	 *         otherwise
 	 */
 	public boolean assignParent(Person parent, Person child) {
-		Person kid = findPerson(child);
-
-		if (kid != null
-				&& (kid.getFather() == null || kid.getMother() == null)) {
-			if (parent.getGender() == Sex.MALE) {
-				kid.setFather(parent);
+		beginChange();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			Person kid = findPerson(child);
+
+			if (kid != null
+					&& (kid.getFather() == null || kid.getMother() == null)) {
+				if (parent.getGender() == Sex.MALE) {
+					kid.setFather(parent);
+
+				} else {
+					kid.setMother(parent);
+				}
+				parent.addChild(child);
+				register(parent);
 
-			} else {
-				kid.setMother(parent);
+				return true;
+			}
+			return false;
+		} finally {
+			try {
+				endChange();
+			} finally {
+				TreeMetrics.end(probe, Operation.ASSIGN_PARENT);
 			}
-			parent.addChild(child);
-
-			return true;
 		}
-		return false;
 	}
 
 	/**
@@ -240,61 +658,72 @@ public class FamilyTree {
 	 * @return true if the marriage is successful, false otherwise.
 	 */
 	public boolean marry(Person spouseA, Person spouseB) {
-		Person groom = findPerson(spouseA);
-		Person bride = findPerson(spouseB);
-
-		// cannot self-marry
-		if (groom == bride) {
-			return false;
-		}
-
-		// Error handling if both spouses are not found
-		if (groom == null && bride == null) {
-			return false;
-		}
-
-		// Check if both spouses are already married to each other
-		if (groom != null && bride != null
-				&& groom.getPartners().contains(bride)
-				&& bride.getPartners().contains(groom)) {
+		beginChange();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			Person groom = findPerson(spouseA);
+			Person bride = findPerson(spouseB);
+
+			// cannot self-marry
+			if (groom == bride) {
+				return false;
+			}
 
-			/*
-			 * Remove existing marriage if spouses are already married to each
-			 * other
-			 */
-			groom.getPartners().remove(bride);
-			bride.getPartners().remove(groom);
+			// Error handling if both spouses are not found
+			if (groom == null && bride == null) {
+				return false;
+			}
 
-			/*
-			 * Adding them back in so they are located at the last index (are
-			 * current spouses)
-			 */
-			haveWedding(groom, bride);
-			return true;
+			// Check if both spouses are already married to each other
+			if (groom != null && bride != null
+					&& groom.getPartners().contains(bride)
+					&& bride.getPartners().contains(groom)) {
+
+				/*
+				 * Remove existing marriage if spouses are already married to
+				 * each other
+				 */
+				groom.getPartners().remove(bride);
+				bride.getPartners().remove(groom);
+
+				/*
+				 * Adding them back in so they are located at the last index
+				 * (are current spouses)
+				 */
+				haveWedding(groom, bride);
+				return true;
 
-			/*
-			 * If the groom is not null but the bride is null, create a new
-			 * spouse for the groom with the opposite gender of spouseB, using
-			 * spouseB's name, and proceed with the wedding
-			 */
-		} else if (groom != null && bride == null) {
-			haveWedding(groom,
-					groom.createOppositeGender(spouseB.getName(), groom));
-			return true;
+				/*
+				 * If the groom is not null but the bride is null, create a new
+				 * spouse for the groom with the opposite gender of spouseB,
+				 * using spouseB's name, and proceed with the wedding
+				 */
+			} else if (groom != null && bride == null) {
+				haveWedding(groom,
+						groom.createOppositeGender(spouseB.getName(), groom));
+				return true;
 
-			/*
-			 * If the groom is null but the bride is not null, create a new
-			 * spouse for the bride with the opposite gender of spouseA, using
-			 * spouseA's name, and proceed with the wedding
-			 */
-		} else if (groom == null && bride != null) {
-			haveWedding(bride.createOppositeGender(spouseA.getName(), bride),
-					bride);
-			return true;
+				/*
+				 * If the groom is null but the bride is not null, create a new
+				 * spouse for the bride with the opposite gender of spouseA,
+				 * using spouseA's name, and proceed with the wedding
+				 */
+			} else if (groom == null && bride != null) {
+				haveWedding(
+						bride.createOppositeGender(spouseA.getName(), bride),
+						bride);
+				return true;
 
-		} else {
-			haveWedding(groom, bride);
-			return true;
+			} else {
+				haveWedding(groom, bride);
+				return true;
+			}
+		} finally {
+			try {
+				endChange();
+			} finally {
+				TreeMetrics.end(probe, Operation.MARRY);
+			}
 		}
 	}
 
@@ -313,42 +742,210 @@ public class FamilyTree {
 
 		bride.getPartners().add(groom);
 		bride.setMarried(true);
+
+		register(groom);
+		register(bride);
+		families.join(groom, bride);
 	}
 
 	/**
-	 * Checks if two persons are blood-related within the family tree.
+	 * Checks if two persons are blood-related within the family tree, meaning
+	 * they share a common ancestor or one descends from the other. Adoption
+	 * does not make people blood-related.
 	 *
 	 * @param a
 	 *            the first person to check for blood relation
 	 * @param b
 	 *            the second person to check for blood relation
-	 * @return true if both persons are blood-related within the family tree,
+	 * @return true if both persons are in the family tree and blood-related,
 	 *         otherwise false
 	 */
 	public boolean areBloodRelated(Person a, Person b) {
-		return isFamilyMember(a) && isFamilyMember(b);
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return contains(a) && contains(b) && ancestry.shareAncestor(a, b);
+		} finally {
+			TreeMetrics.end(probe, Operation.ARE_BLOOD_RELATED);
+		}
 	}
 
 	/**
-	 * Checks if a given person is a member of the local family tree.
+	 * Checks if two persons belong to the same family: they are linked, however
+	 * distantly, by parent, child, adoption or marriage links. In-laws are in
+	 * the same family; two people whose families have never met are not.
 	 *
-	 * @param target
-	 *            the person to check for membership in the local family tree
-	 * @return true if the person is a member of the family tree, otherwise
-	 *         false
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return true if both persons are in the family tree and in the same
+	 *         family, otherwise false
 	 */
-	private boolean isFamilyMember(Person target) {
-		Queue<Person> queue = new LinkedList<>();
-		queue.add(head.getNext());
+	public boolean areInSameFamily(Person a, Person b) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return families.sameFamily(a, b);
+		} finally {
+			TreeMetrics.end(probe, Operation.ARE_IN_SAME_FAMILY);
+		}
+	}
 
-		while (!queue.isEmpty()) {
-			Person currentPerson = queue.poll();
-			if (currentPerson.equals(target)) {
-				return true;
+	/**
+	 * Lists everyone in the same family as a person, without walking the
+	 * tree.
+	 *
+	 * @param person
+	 *            the person whose family is listed
+	 * @return the family, starting with the person, or an empty list if the
+	 *         person is not in the tree
+	 */
+	public List<Person> getFamily(Person person) {
+		return families.contains(person) ? families.familyOf(person)
+				: Collections.emptyList();
+	}
+
+	/**
+	 * @return the number of separate families in the tree; people linked in
+	 *         any way are in the same family
+	 */
+	public int getFamilyCount() {
+		return families.families();
+	}
+
+	/**
+	 * Returns the roots of the tree: everyone with no parent or guardian in
+	 * it. Unlike the head, the roots reach every family, including people who
+	 * married in and the families of unknown parents.
+	 *
+	 * @return the people with no parent or guardian in the tree
+	 */
+	public List<Person> getRoots() {
+		return families.roots();
+	}
+
+	/**
+	 * Checks if one person is a blood ancestor of another: their parent,
+	 * grandparent, great-grandparent and so on.
+	 *
+	 * @param ancestor
+	 *            the possible ancestor
+	 * @param descendant
+	 *            the possible descendant
+	 * @return true if both persons are in the family tree and the first is an
+	 *         ancestor of the second, otherwise false
+	 */
+	public boolean isAncestor(Person ancestor, Person descendant) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return contains(ancestor) && contains(descendant)
+			// an ancestor is always on a higher generation
+					&& generations.depth(ancestor) < generations
+							.depth(descendant)
+					&& ancestry.isAncestor(ancestor, descendant);
+		} finally {
+			TreeMetrics.end(probe, Operation.IS_ANCESTOR);
+		}
+	}
+
+	/**
+	 * Counts the generations between a person and one of their blood
+	 * ancestors, along the shortest line of descent.
+	 *
+	 * @param ancestor
+	 *            the ancestor
+	 * @param descendant
+	 *            the descendant
+	 * @return 1 for a parent, 2 for a grandparent and so on, or -1 if either
+	 *         person is not in the tree or the first is not an ancestor of the
+	 *         second
+	 */
+	public int generationsBetween(Person ancestor, Person descendant) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			if (!contains(ancestor) || !contains(descendant)
+			// an ancestor is always on a higher generation
+					|| generations.depth(ancestor) >= generations
+							.depth(descendant)) {
+				return -1;
 			}
-			queue.addAll(currentPerson.getChildren());
+			return ancestry.generationsBetween(ancestor, descendant);
+		} finally {
+			TreeMetrics.end(probe, Operation.GENERATIONS_BETWEEN);
+		}
+	}
+
+	/**
+	 * Finds the earliest known blood ancestor of a person: the one at the top
+	 * of their longest line of mothers and fathers, or of the father's line
+	 * if two are as long.
+	 *
+	 * @param person
+	 *            the person whose ancestor is found
+	 * @return the ancestor, the person themselves if they have no parents in
+	 *         the tree, or null if they are not in the tree
+	 */
+	public Person findHighestRoot(Person person) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return contains(person) ? generations.highestRoot(person) : null;
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_HIGHEST_ROOT);
+		}
+	}
+
+	/**
+	 * Finds the person at the top of the longest line of descent in the tree,
+	 * the ancestor furthest back of anyone in it.
+	 *
+	 * @return the highest root of the tree, or null if the tree is empty
+	 */
+	public Person findHighestRoot() {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return generations.highestRoot();
+		} finally {
+			TreeMetrics.end(probe, Operation.FIND_HIGHEST_ROOT);
+		}
+	}
+
+	/**
+	 * Counts the generations between a person and their earliest known
+	 * ancestor, along their longest line of mothers and fathers.
+	 *
+	 * @param person
+	 *            the person
+	 * @return 0 if the person has no parents in the tree, 1 if only parents,
+	 *         2 if grandparents and so on, or -1 if the person is not in the
+	 *         tree
+	 */
+	public int getGeneration(Person person) {
+		return contains(person) ? generations.depth(person) : -1;
+	}
+
+	/**
+	 * Checks if two persons share a common ancestor at most the given number
+	 * of generations above each of them. A person counts as their own
+	 * ancestor, so a parent and child share an ancestor within one
+	 * generation.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @param generations
+	 *            how many generations to look back; 1 for parents, 2 for
+	 *            grandparents and so on
+	 * @return true if both persons are in the family tree and share an
+	 *         ancestor that close, otherwise false
+	 */
+	public boolean shareAncestor(Person a, Person b, int generations) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			return contains(a) && contains(b)
+					&& ancestry.shareAncestor(a, b, generations);
+		} finally {
+			TreeMetrics.end(probe, Operation.SHARE_ANCESTOR);
 		}
-		return false;
 	}
 
 	/**
@@ -363,20 +960,25 @@ public class FamilyTree {
 	 *         set if there are none.
 	 */
 	public Set<Person> getSiblings(Person target) {
-		Set<Person> siblings = new HashSet<>();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			Set<Person> siblings = new HashSet<>();
 
-		if (target.getFather() != null) {
-			siblings.addAll(target.getFather().getChildren());
-		}
+			if (target.getFather() != null) {
+				siblings.addAll(target.getFather().getChildren());
+			}
 
-		if (target.getMother() != null) {
-			siblings.addAll(target.getMother().getChildren());
+			if (target.getMother() != null) {
+				siblings.addAll(target.getMother().getChildren());
 
-		}
-		// remove target from siblings set
-		siblings.remove(target);
+			}
+			// remove target from siblings set
+			siblings.remove(target);
 
-		return siblings.isEmpty() ? Collections.emptySet() : siblings;
+			return siblings.isEmpty() ? Collections.emptySet() : siblings;
+		} finally {
+			TreeMetrics.end(probe, Operation.GET_SIBLINGS);
+		}
 	}
 
 	/**
@@ -389,24 +991,34 @@ public class FamilyTree {
 	 * @return true if the divorce was successfully processed, false otherwise
 	 */
 	public boolean divorce(Person target) {
-		Person divorcer = findPerson(target);
-
-		// Check if the divorcer is found
-		if (divorcer == null) {
-			return false;
-		}
-
-		// Check if the divorcer's spouse relationship is consistent
-		if (divorcer.getSpouse().getSpouse() != divorcer) {
-			return false;
-		}
+		beginChange();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			Person divorcer = findPerson(target);
+
+			// Check if the divorcer is found
+			if (divorcer == null) {
+				return false;
+			}
 
-		// Set the divorcer's married status and their partner's to false
-		divorcer.setMarried(false);
-		divorcer.getSpouse().setMarried(false);
+			// Check if the divorcer's spouse relationship is consistent
+			Person spouse = divorcer.getSpouse();
+			if (spouse == null || spouse.getSpouse() != divorcer) {
+				return false;
+			}
 
-		return true;
+			// Set the divorcer's married status and their partner's to false
+			divorcer.setMarried(false);
+			spouse.setMarried(false);
 
+			return true;
+		} finally {
+			try {
+				endChange();
+			} finally {
+				TreeMetrics.end(probe, Operation.DIVORCE);
+			}
+		}
 	}
 
 	/**
@@ -420,75 +1032,419 @@ public class FamilyTree {
 	 *         already related to the adoptive parent), false otherwise
 	 */
 	public boolean adopt(Person newParent, Person child) {
+		beginChange();
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			// checks to see if child is not related to Adopted Parent.
+			if (!child.isChildOf(newParent)) {
+
+				// set child's guardian to newParent and
+				child.setGuardian(newParent);
+
+				// add child to adopted parent's children list
+				newParent.getChildren().add(child);
+				changed(newParent);
+
+				// Change adopted status to true
+				child.setWasAdopted(true);
+
+				register(newParent);
+				register(child);
+				families.join(newParent, child);
+				families.parentsChanged(child);
+				return true;
+			}
 
-		// checks to see if child is not related to Adopted Parent.
-		if (!child.isChildOf(newParent)) {
+			// If the child is already related to the parent
+			return false;
+		} finally {
+			try {
+				endChange();
+			} finally {
+				TreeMetrics.end(probe, Operation.ADOPT);
+			}
+		}
+	}
 
-			// set child's guardian to newParent and
-			child.setGuardian(newParent);
+	/**
+	 * Describes how two persons are related by blood: their closest common
+	 * ancestors, how many generations each is below them, and the name of the
+	 * relationship, such as "aunt" or "second cousin once removed".
+	 *
+	 * @param a
+	 *            the person whose relationship is described
+	 * @param b
+	 *            the person they are related to
+	 * @return the relationship of the first person to the second, or null if
+	 *         either is not in the family tree
+	 */
+	public Relationship checkRelation(Person a, Person b) {
+		Probe probe = TreeMetrics.begin(metrics);
+		try {
+			if (!contains(a) || !contains(b)) {
+				return null;
+			}
+			return ancestry.relationship(a, b);
+		} finally {
+			TreeMetrics.end(probe, Operation.CHECK_RELATION);
+		}
+	}
 
-			// add child to adopted parent's children list
-			newParent.getChildren().add(child);
+	/**
+	 * Determines if two persons are closely related, meaning they share a
+	 * common ancestor no later than their great-grandparents.
+	 *
+	 * @param a
+	 *            The first person to check for relatedness.
+	 * @param b
+	 *            The second person to check for relatedness.
+	 * @return {@code true} if the persons are closely related, {@code false}
+	 *         otherwise.
+	 */
+	public boolean areCloselyRelated(Person a, Person b) {
+		return shareAncestor(a, b, 3);
+	}
 
-			// Change adopted status to true
-			child.setWasAdopted(true);
-			return true;
+	/**
+	 * Registers a person with the tree's indexes, together with every
+	 * partner and descendant reachable from them that is not yet known to the
+	 * tree. Registering a person that is already known does nothing.
+	 *
+	 * @param person
+	 *            the person to register
+	 */
+	void register(Person person) {
+		if (person == null || contains(person)) {
+			return;
 		}
+		// stop at people the tree already knows about
+		Traversal.overPartnersAndChildren().forEach(List.of(person),
+				this::add);
+	}
 
-		// If the child is already related to the parent
-		return false;
+	/**
+	 * Adds one person to the tree's indexes.
+	 *
+	 * @param person
+	 *            the person to add
+	 * @return true if the person was added, false if already known
+	 * @throws IllegalArgumentException
+	 *             if another person in the tree has the same ID
+	 */
+	private boolean add(Person person) {
+		Person known = byId.putIfAbsent(person.getId(), person);
+		if (known == person) {
+			return false;
+		}
+		if (known != null) {
+			throw new IllegalArgumentException(
+					"Another person in the tree has ID " + person.getId());
+		}
+		people.add(person);
+		person.setTree(this);
+		index(person, person.getName(), person.getBirthday());
+		dates.add(person, person.getBirthday(), person.getDeathdate());
+		joinFamilies(person);
+		generations.added(person);
+		if (versions != null) {
+			versions.added(person);
+		}
+		changed(person);
+		return true;
 	}
 
 	/**
-	 * Determines if two persons are closely related, meaning they share a common ancestor no later than their great-grandparents.
+	 * Puts a person joining the tree in the same family as the relatives
+	 * already in it.
 	 *
-	 * @param a The first person to check for relatedness.
-	 * @param b The second person to check for relatedness.
-	 * @return {@code true} if the persons are closely related, {@code false} otherwise.
+	 * @param person
+	 *            the new person
 	 */
-	public boolean areCloselyRelated(Person a, Person b) {
+	private void joinFamilies(Person person) {
+		families.add(person);
+		families.parentsChanged(person);
+		families.join(person, person.getMother());
+		families.join(person, person.getFather());
+		families.join(person, person.getGuardian());
+		for (Person partner : person.getPartners()) {
+			families.join(person, partner);
+		}
+		for (Person child : person.getChildren()) {
+			if (families.contains(child)) {
+				families.join(person, child);
+				families.parentsChanged(child);
+			}
+		}
+	}
 
-		Person one = findPerson(a);
-		Person two = findPerson(b);
+	/**
+	 * Takes a person out of the tree, for example once they have been merged
+	 * with a duplicate of themselves. Their relatives are left alone, so the
+	 * caller must first move every link to the person elsewhere.
+	 *
+	 * @param person
+	 *            the person to take out
+	 */
+	void remove(Person person) {
+		if (!contains(person)) {
+			return;
+		}
+		beginChange();
+		try {
+			byId.remove(person.getId());
+			unindex(person, person.getName(), person.getBirthday());
+			dates.remove(person, person.getBirthday(), person.getDeathdate());
+			ancestry.parentsChanged(person);
+			families.remove(person);
+			generations.removed(person);
+			if (head.getNext() == person) {
+				head.setNext(null);
+			}
+			person.setTree(null);
+			removed.add(person);
+		} finally {
+			endChange();
+		}
+	}
 
-		if (one == null || two == null) {
-			return false; // If either person is not found, they can't be
-							// related
+	/**
+	 * Starts a change that may touch several people. Snapshots taken before
+	 * the matching {@link #endChange()} do not see any of it.
+	 *
+	 * @throws java.io.UncheckedIOException
+	 *             if the tree's journal can no longer record changes; nothing
+	 *             has been changed then
+	 */
+	void beginChange() {
+		if (changing == 0) {
+			checkJournal();
 		}
+		changing++;
+	}
 
-		int count = 0;
+	/**
+	 * Fails if the tree's journal can no longer record changes, so that a
+	 * change is refused before it is made rather than reported as failed
+	 * after it was made.
+	 *
+	 * @throws java.io.UncheckedIOException
+	 *             if the journal could not be written
+	 */
+	void checkJournal() {
+		if (journal != null) {
+			journal.checkWritable();
+		}
+	}
 
-		while (count < 3) {
-			// Move up one generation for both persons on the father's side
-			Person relativeOf_a_father = one.getFather();
-			Person relativeOf_b_father = two.getFather();
+	/**
+	 * Ends a change started with {@link #beginChange()}, and publishes a new
+	 * version for snapshots if no other change is still in progress.
+	 */
+	void endChange() {
+		if (--changing == 0) {
+			publish();
+		}
+	}
 
-			// Move up one generation for both persons on the mother's side
-			Person relativeOf_a_mother = one.getMother();
-			Person relativeOf_b_mother = two.getMother();
+	/**
+	 * Notes that something recorded about a registered person changed, so
+	 * that later snapshots and the journal see it.
+	 *
+	 * @param person
+	 *            the changed person
+	 */
+	void changed(Person person) {
+		if (versions != null || journal != null) {
+			pending.add(person);
+			if (changing == 0) {
+				publish();
+			}
+		}
+	}
 
-			/*
-			 * Check for a common ancestor on both the father's and mother's
-			 * sides
-			 */
-			if (relativeOf_a_father.equals(relativeOf_b_father)
-					|| relativeOf_a_mother.equals(relativeOf_b_mother)) {
-				return true;
-				// If a common ancestor is found, they are closely related
+	/**
+	 * Records the people touched by the changes just finished, publishes them
+	 * as a new version for snapshots and writes them to the journal, along
+	 * with the people taken out of the tree.
+	 */
+	private void publish() {
+		int[] gone = new int[0];
+		if (!removed.isEmpty()) {
+			// one pass over everyone, however many people were taken out
+			people.removeIf(person -> !contains(person));
+			gone = removed.stream().filter(person -> !contains(person))
+					.mapToInt(Person::getId).toArray();
+			removed.clear();
+		}
+		if (pending.isEmpty() && gone.length == 0) {
+			return;
+		}
+		List<PersonRecord> records = new ArrayList<>(pending.size());
+		for (Person person : pending) {
+			if (contains(person)) {
+				records.add(PersonRecord.of(person));
 			}
+		}
+		// clearing costs as much as the set has ever held
+		if (pending.size() > 1024) {
+			pending = new LinkedHashSet<>();
+		} else {
+			pending.clear();
+		}
 
-			count++;
+		int headId = idOf(head.getNext());
+		if (versions != null) {
+			// rows cannot be taken out of a version, so start afresh
+			if (gone.length > 0) {
+				versions = startVersions(versions.current().getVersion());
+			} else {
+				versions.publish(records, headId);
+			}
 		}
+		if (journal != null) {
+			journal.append(records, gone, headId);
+		}
+	}
 
-		return false; /*
-						 * If no common ancestor is found up to the
-						 * great-grandparent level on either side, they are not
-						 * closely related
-						 */
+	/**
+	 * Starts or stops writing the changes made to this tree to a journal.
+	 *
+	 * @param journal
+	 *            the journal, or null to stop
+	 */
+	void setJournal(TreeJournal journal) {
+		this.journal = journal;
 	}
 
-	/*
-	 * checkRelation(), findHighestRoot(), generationsBeteween() method(s) to be
-	 * implemented in future.
+	private static int idOf(Person person) {
+		return person == null ? PersonRecord.NONE : person.getId();
+	}
+
+	/**
+	 * Forgets what is known about the ancestors of a registered person whose
+	 * mother or father changed, and of their descendants.
+	 *
+	 * @param person
+	 *            the person whose parents changed
+	 */
+	void parentsChanged(Person person) {
+		ancestry.parentsChanged(person);
+		families.join(person, person.getMother());
+		families.join(person, person.getFather());
+		families.parentsChanged(person);
+		generations.parentsChanged(person);
+		changed(person);
+	}
+
+	/**
+	 * Puts two registered people who were linked directly through their
+	 * lists of partners or children in the same family.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 */
+	void linked(Person a, Person b) {
+		families.join(a, b);
+	}
+
+	/**
+	 * Puts a registered person in the same family as their new guardian.
+	 *
+	 * @param person
+	 *            the person whose guardian changed
+	 */
+	void guardianChanged(Person person) {
+		families.join(person, person.getGuardian());
+		families.parentsChanged(person);
+		changed(person);
+	}
+
+	/**
+	 * Moves a registered person to their new name in the name indexes.
+	 *
+	 * @param person
+	 *            the person that was renamed
+	 * @param oldName
+	 *            the name the person was indexed under
+	 */
+	void nameChanged(Person person, String oldName) {
+		unindex(person, oldName, person.getBirthday());
+		index(person, person.getName(), person.getBirthday());
+		changed(person);
+	}
+
+	/**
+	 * Moves a registered person to their new birthday in the name and
+	 * birthday index and the date index.
+	 *
+	 * @param person
+	 *            the person whose birthday changed
+	 * @param oldBirthday
+	 *            the birthday the person was indexed under
+	 */
+	void birthdayChanged(Person person, LocalDate oldBirthday) {
+		unindex(person, person.getName(), oldBirthday);
+		index(person, person.getName(), person.getBirthday());
+		dates.remove(person, oldBirthday, person.getDeathdate());
+		dates.add(person, person.getBirthday(), person.getDeathdate());
+		changed(person);
+	}
+
+	/**
+	 * Moves a registered person to their new deathdate in the date index.
+	 *
+	 * @param person
+	 *            the person whose deathdate changed
+	 * @param oldDeathdate
+	 *            the deathdate the person was indexed under
+	 */
+	void deathdateChanged(Person person, LocalDate oldDeathdate) {
+		dates.remove(person, person.getBirthday(), oldDeathdate);
+		dates.add(person, person.getBirthday(), person.getDeathdate());
+		changed(person);
+	}
+
+	private void index(Person person, String name, LocalDate birthday) {
+		String folded = NameIndex.fold(name);
+
+		byName.add(person, name);
+		byNameAndBirthday
+				.computeIfAbsent(new NameKey(folded, birthday),
+						k -> new ArrayList<>(1))
+				.add(person);
+	}
+
+	private void unindex(Person person, String name, LocalDate birthday) {
+		byName.remove(person, name);
+		removeFrom(byNameAndBirthday,
+				new NameKey(NameIndex.fold(name), birthday), person);
+	}
+
+	/**
+	 * Removes a person from one bucket of an index, comparing by identity.
+	 */
+	private static <K> void removeFrom(Map<K, List<Person>> index, K key,
+			Person person) {
+		List<Person> bucket = index.get(key);
+		if (bucket == null) {
+			return;
+		}
+		for (int i = 0; i < bucket.size(); i++) {
+			if (bucket.get(i) == person) {
+				bucket.remove(i);
+				break;
+			}
+		}
+		if (bucket.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * Key of the name and birthday index.
 	 */
+	private record NameKey(String name, LocalDate birthday) {
+	}
 }
@@ -0,0 +1,301 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a whole family tree from person records and relationship edges in
+ * one pass. People are identified by an external key of the caller's
+ * choosing; edges name the people they join by those keys. Nothing is
+ * searched for while the tree is built: {@link #build()} checks the edges,
+ * wires mother, father, guardian, children and partners directly, and hands
+ * the people to a new tree, so building takes time proportional to the
+ * number of people plus the number of edges.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class FamilyTreeBuilder {
+	private static final int MAX_REPORTED_PROBLEMS = 10;
+
+	/**
+	 * The kinds of relationship an edge can describe.
+	 */
+	public enum Relation {
+		/**
+		 * The first person is a parent of the second. The parent's gender
+		 * decides whether they become the mother or the father.
+		 */
+		PARENT,
+
+		/**
+		 * The two people are or were partners, but are not married now.
+		 * Partnerships are kept in the order they are added.
+		 */
+		PARTNER,
+
+		/**
+		 * The two people are married now. The partnership is kept after any
+		 * others of either person, so it is their current marriage, as with
+		 * {@link FamilyTree#marry(Person, Person)}, and both are married. A
+		 * person can have one spouse.
+		 */
+		SPOUSE,
+
+		/**
+		 * The first person adopted the second and is their guardian, as with
+		 * {@link FamilyTree#adopt(Person, Person)}.
+		 */
+		GUARDIAN
+	}
+
+	/**
+	 * A person to add to the tree.
+	 *
+	 * @param key
+	 *            the external key of the person
+	 * @param name
+	 *            the name of the person
+	 * @param gender
+	 *            the gender of the person
+	 * @param birthday
+	 *            the birthday of the person, may be null
+	 * @param deathdate
+	 *            the deathdate of the person, may be null
+	 */
+	public record PersonRow(String key, String name, Sex gender,
+			LocalDate birthday, LocalDate deathdate) {
+	}
+
+	/**
+	 * A relationship between two people, given by their external keys.
+	 *
+	 * @param from
+	 *            the parent, guardian or first partner
+	 * @param to
+	 *            the child or second partner
+	 * @param relation
+	 *            the kind of relationship
+	 */
+	public record Edge(String from, String to, Relation relation) {
+	}
+
+	private final Map<String, Person> people = new HashMap<>();
+	private final List<Person> order = new ArrayList<>();
+	private final List<Edge> edges = new ArrayList<>();
+	// both partners of each SPOUSE edge, either way round
+	private final Map<Person, Person> spouses = new HashMap<>();
+	private String progenitor;
+
+	/**
+	 * Adds a batch of people.
+	 *
+	 * @param rows
+	 *            the people to add
+	 * @return this builder
+	 * @throws IllegalArgumentException
+	 *             if a key is null or already used
+	 */
+	public FamilyTreeBuilder addPeople(Collection<PersonRow> rows) {
+		for (PersonRow row : rows) {
+			addPerson(row.key(), row.name(), row.gender(), row.birthday(),
+					row.deathdate());
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a person.
+	 *
+	 * @param key
+	 *            the external key of the person
+	 * @param name
+	 *            the name of the person
+	 * @param gender
+	 *            the gender of the person
+	 * @param birthday
+	 *            the birthday of the person, may be null
+	 * @param deathdate
+	 *            the deathdate of the person, may be null
+	 * @return this builder
+	 * @throws IllegalArgumentException
+	 *             if the key is null or already used
+	 */
+	public FamilyTreeBuilder addPerson(String key, String name, Sex gender,
+			LocalDate birthday, LocalDate deathdate) {
+		if (key == null || gender == null) {
+			throw new IllegalArgumentException(
+					"A person needs a key and a gender");
+		}
+		Person person = new Person(name == null ? "" : name, gender);
+		if (people.putIfAbsent(key, person) != null) {
+			throw new IllegalArgumentException("Duplicate person key " + key);
+		}
+		person.setBirthday(birthday);
+		person.setDeathdate(deathdate);
+		order.add(person);
+		return this;
+	}
+
+	/**
+	 * Adds a batch of relationship edges. Edges are checked when the tree is
+	 * built, so they may name people that are added later.
+	 *
+	 * @param batch
+	 *            the edges to add
+	 * @return this builder
+	 */
+	public FamilyTreeBuilder addEdges(Collection<Edge> batch) {
+		edges.addAll(batch);
+		return this;
+	}
+
+	/**
+	 * Adds a relationship edge.
+	 *
+	 * @param from
+	 *            the parent, guardian or first partner
+	 * @param to
+	 *            the child or second partner
+	 * @param relation
+	 *            the kind of relationship
+	 * @return this builder
+	 */
+	public FamilyTreeBuilder addEdge(String from, String to,
+			Relation relation) {
+		edges.add(new Edge(from, to, relation));
+		return this;
+	}
+
+	/**
+	 * Chooses the head of the tree. Without this, the first person added
+	 * becomes the head.
+	 *
+	 * @param key
+	 *            the external key of the progenitor
+	 * @return this builder
+	 */
+	public FamilyTreeBuilder setProgenitor(String key) {
+		this.progenitor = key;
+		return this;
+	}
+
+	/**
+	 * Checks every edge and builds the tree. An edge is rejected if it names
+	 * an unknown person, joins a person to themselves, gives a child a second
+	 * mother, father or guardian, gives a person a second spouse, or repeats
+	 * an earlier edge, including a partnership given again from the other
+	 * partner. Only the two people of a SPOUSE edge are married.
+	 *
+	 * @return the new family tree
+	 * @throws IllegalArgumentException
+	 *             if any edge is rejected, listing the first problems found;
+	 *             the builder should not be used again afterwards
+	 */
+	public FamilyTree build() {
+		List<String> problems = new ArrayList<>();
+
+		for (Edge edge : edges) {
+			Person from = people.get(edge.from());
+			Person to = people.get(edge.to());
+
+			if (from == null || to == null || edge.relation() == null) {
+				problem(problems, edge, "names an unknown person");
+			} else if (from == to) {
+				problem(problems, edge, "joins a person to themselves");
+			} else {
+				link(problems, edge, from, to);
+			}
+		}
+
+		Person head = progenitor != null ? people.get(progenitor)
+				: order.isEmpty() ? null : order.get(0);
+		if (progenitor != null && head == null) {
+			problems.add("Unknown progenitor " + progenitor);
+		}
+		if (!problems.isEmpty()) {
+			throw new IllegalArgumentException(problems.size()
+					+ " invalid relationships: " + String.join("; ",
+							problems.subList(0, Math.min(problems.size(),
+									MAX_REPORTED_PROBLEMS))));
+		}
+
+		for (Map.Entry<Person, Person> couple : spouses.entrySet()) {
+			List<Person> partners = couple.getKey().getPartners();
+			partners.remove(couple.getValue());
+			partners.add(couple.getValue());
+			couple.getKey().setMarried(true);
+		}
+		return new FamilyTree(head, order);
+	}
+
+	/**
+	 * Wires one checked edge into the people it joins.
+	 */
+	private void link(List<String> problems, Edge edge, Person from,
+			Person to) {
+		switch (edge.relation()) {
+		case PARENT:
+			boolean mother = from.getGender() == Sex.FEMALE;
+			Person current = mother ? to.getMother() : to.getFather();
+			if (current != null) {
+				problem(problems, edge, current == from ? "is repeated"
+						: "gives a child a second "
+								+ (mother ? "mother" : "father"));
+				return;
+			}
+			if (mother) {
+				to.setMother(from);
+			} else {
+				to.setFather(from);
+			}
+			from.getChildren().add(to);
+			break;
+
+		case GUARDIAN:
+			if (to.getGuardian() != null) {
+				problem(problems, edge, to.getGuardian() == from
+						? "is repeated"
+						: "gives a child a second guardian");
+				return;
+			}
+			to.setGuardian(from);
+			to.setWasAdopted(true);
+			from.getChildren().add(to);
+			break;
+
+		case PARTNER:
+		case SPOUSE:
+			// either way round, the same partnership
+			if (from.getPartners().contains(to)) {
+				problem(problems, edge, "is repeated");
+				return;
+			}
+			if (edge.relation() == Relation.SPOUSE) {
+				Person married = spouses.containsKey(from) ? from
+						: spouses.containsKey(to) ? to : null;
+				if (married != null) {
+					problem(problems, edge, "gives "
+							+ (married == from ? edge.from() : edge.to())
+							+ " a second spouse");
+					return;
+				}
+				spouses.put(from, to);
+				spouses.put(to, from);
+			}
+			from.getPartners().add(to);
+			to.getPartners().add(from);
+			break;
+		}
+	}
+
+	private static void problem(List<String> problems, Edge edge,
+			String reason) {
+		problems.add(edge.relation() + " edge " + edge.from() + " -> "
+				+ edge.to() + " " + reason);
+	}
+}
@@ -2,18 +2,424 @@ package main;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 class FamilyTreeTest {
+	private FamilyTree tree;
+	private Person george;
+	private Person mary;
+	private Person john;
+	private Person anne;
 
+	/**
+	 * George and Mary have two children, John and Anne.
+	 */
 	@BeforeEach
 	void setUp() throws Exception {
+		george = new Person("George Smith", "male", LocalDate.of(1900, 3, 1),
+				LocalDate.of(1970, 5, 2));
+		mary = new Person("Mary Jones", "female", LocalDate.of(1902, 7, 9));
+		john = new Person("John Smith", "male", LocalDate.of(1925, 1, 15));
+		anne = new Person("Anne Smith", "female", LocalDate.of(1928, 11, 30));
+
+		tree = new FamilyTree(george);
+		tree.addPerson(mary);
+		assertTrue(tree.marry(george, mary));
+		assertTrue(tree.addChild(george, mary, john));
+		assertTrue(tree.addChild(george, mary, anne));
+	}
+
+	@Test
+	void findPersonByIdAndByPerson() {
+		assertSame(john, tree.findPerson(john.getId()));
+		assertSame(john, tree.findPerson(john));
+		assertNull(tree.findPerson(-1));
+	}
+
+	@Test
+	void peopleAreEqualByIdAndDeepEqualByDetails() throws Exception {
+		Person lucy = new Person("Lucy Smith", "female",
+				LocalDate.of(1950, 2, 3));
+		Person copy = new Person("Lucy Smith", "female",
+				LocalDate.of(1950, 2, 3));
+
+		assertNotEquals(lucy, copy);
+		assertTrue(lucy.deepEquals(copy));
+
+		lucy.setFather(john);
+		assertFalse(lucy.deepEquals(copy));
+		copy.setFather(john);
+		assertTrue(lucy.deepEquals(copy));
+
+		copy.setDeathdate(LocalDate.of(2000, 1, 1));
+		assertFalse(lucy.deepEquals(copy));
+	}
+
+	@Test
+	void findPersonByNameAndBirthdayIgnoresCase() {
+		assertSame(anne,
+				tree.findPerson("anne SMITH", LocalDate.of(1928, 11, 30)));
+		assertNull(tree.findPerson("Anne Smith", LocalDate.of(1928, 12, 1)));
+	}
+
+	@Test
+	void findPersonFollowsBirthdayChanges() {
+		anne.setBirthday(LocalDate.of(1929, 1, 1));
+
+		assertNull(tree.findPerson("Anne Smith", LocalDate.of(1928, 11, 30)));
+		assertSame(anne,
+				tree.findPerson("Anne Smith", LocalDate.of(1929, 1, 1)));
+	}
+
+	@Test
+	void findPeopleFollowsRenames() {
+		assertEquals(List.of(john), tree.findPeople("john smith"));
+
+		john.setName("Jack Smith");
+
+		assertTrue(tree.findPeople("John Smith").isEmpty());
+		assertEquals(List.of(john), tree.findPeople("Jack Smith"));
+	}
+
+	@Test
+	void addChildToCoupleSetsBothParents() {
+		assertSame(george, john.getFather());
+		assertSame(mary, john.getMother());
+		assertTrue(tree.contains(john));
+		assertEquals(4, tree.getPeople().size());
+	}
+
+	@Test
+	void addChildNeedsTheCurrentSpouse() throws Exception {
+		Person stranger = new Person("Stranger", "female");
+		tree.addPerson(stranger);
+
+		assertFalse(tree.addChild(george, stranger,
+				new Person("Nobody", "male")));
+	}
+
+	@Test
+	void addChildToOneParentCreatesTheOther() throws Exception {
+		Person child = new Person("Lucy Smith", "female");
+
+		assertTrue(tree.addChild(john, child));
+		assertSame(john, child.getFather());
+		assertNotNull(child.getMother());
+		assertTrue(tree.contains(child));
+		assertTrue(tree.contains(child.getMother()));
+	}
+
+	@Test
+	void marryMakesTheNewPartnerTheSpouse() throws Exception {
+		Person susan = new Person("Susan Brown", "female");
+		tree.addPerson(susan);
+
+		assertTrue(tree.marry(john, susan));
+		assertSame(susan, john.getSpouse());
+		assertSame(john, susan.getSpouse());
+		assertTrue(tree.contains(susan));
+	}
+
+	@Test
+	void siblingsShareAParent() {
+		assertEquals(Set.of(anne), tree.getSiblings(john));
+		assertTrue(tree.getSiblings(george).isEmpty());
+	}
+
+	@Test
+	void bloodRelationIgnoresMarriageAndAdoption() throws Exception {
+		Person adopted = new Person("Tom Smith", "male");
+		tree.addPerson(adopted);
+		tree.adopt(george, adopted);
+
+		assertTrue(tree.areBloodRelated(john, anne));
+		assertTrue(tree.areBloodRelated(george, anne));
+		assertFalse(tree.areBloodRelated(george, mary));
+		assertFalse(tree.areBloodRelated(adopted, john));
+	}
+
+	@Test
+	void sharedAncestorsAreFoundWithinAGenerationLimit() throws Exception {
+		Person susan = new Person("Susan Brown", "female");
+		tree.addPerson(susan);
+		tree.marry(john, susan);
+		Person peter = new Person("Peter Smith", "male");
+		tree.addChild(john, susan, peter);
+		Person lucy = new Person("Lucy Smith", "female");
+		tree.addChild(anne, lucy);
+
+		assertTrue(tree.shareAncestor(john, anne, 1));
+		assertTrue(tree.shareAncestor(john, peter, 1));
+		assertFalse(tree.shareAncestor(peter, lucy, 1));
+		assertTrue(tree.shareAncestor(peter, lucy, 2));
+		assertFalse(tree.shareAncestor(george, peter, 1));
+		assertTrue(tree.shareAncestor(george, peter, 2));
+		assertFalse(tree.shareAncestor(george, susan, 10));
+		assertTrue(tree.isAncestor(george, lucy));
+		assertFalse(tree.isAncestor(lucy, george));
 	}
 
 	@Test
-	void test() {
-		fail("Not yet implemented");
+	void relationshipsAreNamed() throws Exception {
+		Person susan = new Person("Susan Brown", "female");
+		tree.addPerson(susan);
+		tree.marry(john, susan);
+		Person peter = new Person("Peter Smith", "male");
+		tree.addChild(john, susan, peter);
+
+		assertEquals("grandfather", tree.checkRelation(george, peter).name());
+		assertEquals("aunt", tree.checkRelation(anne, peter).name());
+		assertEquals("sister", tree.checkRelation(anne, john).name());
 	}
 
+	@Test
+	void halfRelationsNeedBothParentsRecorded() throws Exception {
+		Person susan = new Person("Susan Brown", "female");
+		tree.addPerson(susan);
+		tree.marry(george, susan);
+		Person lucy = new Person("Lucy Smith", "female");
+		tree.addChild(george, susan, lucy);
+		Person tom = new Person("Tom Smith", "male");
+		tree.addPerson(tom);
+		tree.assignParent(george, tom);
+		Person peter = new Person("Peter Smith", "male");
+		tree.addChild(john, peter);
+
+		assertEquals("half-sister", tree.checkRelation(lucy, john).name());
+		assertEquals("half-aunt", tree.checkRelation(lucy, peter).name());
+		// Tom's mother is not known, so she may be Mary
+		assertEquals("brother", tree.checkRelation(tom, john).name());
+		assertFalse(tree.checkRelation(tom, lucy).isHalf());
+	}
+
+	@Test
+	void namesAreFoundByPrefixSoundAndSpelling() {
+		assertEquals(Set.of(george, john, anne),
+				Set.copyOf(tree.findPeopleByPrefix("smi", 10)));
+		assertEquals(List.of(john), tree.findPeopleByPrefix("john sm", 10));
+		assertEquals(2, tree.findPeopleByPrefix("smi", 2).size());
+		assertEquals(Set.of(john, mary),
+				Set.copyOf(tree.findPeopleByPrefix("j", 10)));
+		assertEquals(List.of(john), tree.findPeopleSoundingLike("Jon Smyth"));
+		assertEquals(john, tree.findSimilar("Jhon Smith", 1).get(0));
+	}
+
+	@Test
+	void datesAreFoundByRange() {
+		assertEquals(List.of(john, anne), tree.findBornBetween(
+				LocalDate.of(1920, 1, 1), LocalDate.of(1930, 1, 1)));
+		assertEquals(List.of(george), tree.findDiedBetween(null, null));
+	}
+
+	@Test
+	void aliveOnFollowsDeathdateChanges() {
+		LocalDate day = LocalDate.of(1960, 1, 1);
+		assertEquals(List.of(george, mary, john, anne), tree.findAliveOn(day));
+
+		mary.setDeathdate(LocalDate.of(1959, 6, 1));
+
+		assertEquals(List.of(george, john, anne), tree.findAliveOn(day));
+		assertEquals(List.of(john),
+				tree.findDescendantsAliveOn(george, LocalDate.of(1926, 1, 1)));
+	}
+
+	@Test
+	void descendantsAreWalkedInEitherOrder() throws Exception {
+		Person peter = new Person("Peter Smith", "male");
+		Person kate = new Person("Kate Brown", "female");
+		tree.addChild(john, peter);
+		tree.addChild(anne, kate);
+
+		assertEquals(List.of(john, anne, peter, kate), tree
+				.descendants(george, Integer.MAX_VALUE,
+						Traversal.Order.BREADTH_FIRST)
+				.toList());
+		assertEquals(List.of(john, peter, anne, kate), tree
+				.descendants(george, Integer.MAX_VALUE,
+						Traversal.Order.DEPTH_FIRST)
+				.toList());
+		assertEquals(List.of(john, anne), tree
+				.descendants(george, 1, Traversal.Order.DEPTH_FIRST).toList());
+		assertTrue(peter.ancestors().anyMatch(person -> person == mary));
+		assertEquals(0, tree.ancestors(new Person("Stranger", "male"),
+				Integer.MAX_VALUE, Traversal.Order.BREADTH_FIRST).count());
+	}
+
+	@Test
+	void streamsStopAtTheFirstMatch() {
+		int[] visited = new int[1];
+
+		assertEquals(john, george.descendants()
+				.peek(person -> visited[0]++)
+				.filter(person -> person.getBirthday() != null)
+				.findFirst().orElse(null));
+		assertEquals(1, visited[0]);
+	}
+
+	/**
+	 * A depth-first walk limited to three steps first reaches X three steps
+	 * away, then two steps away, and must still go on to Y.
+	 */
+	@Test
+	void depthFirstWalkKeepsTheShortestPath() throws Exception {
+		Person a = new Person("A", "male");
+		Person b = new Person("B", "male");
+		Person b2 = new Person("B2", "male");
+		Person c = new Person("C", "male");
+		Person x = new Person("X", "male");
+		Person y = new Person("Y", "male");
+		Map<Person, List<Person>> next = Map.of(a, List.of(b, c), b,
+				List.of(b2), b2, List.of(x), c, List.of(x), x, List.of(y));
+		Traversal traversal = new Traversal(
+				person -> next.getOrDefault(person, List.of()));
+
+		assertEquals(List.of(b, b2, x, c, y), traversal
+				.stream(a, Traversal.Order.DEPTH_FIRST, 3).toList());
+		assertEquals(List.of(b, c, b2, x, y), traversal
+				.stream(a, Traversal.Order.BREADTH_FIRST, 3).toList());
+	}
+
+	@Test
+	void familiesMergeAsPeopleAreLinked() throws Exception {
+		Person jane = new Person("Jane Doe", "female");
+		Person orphan = new Person("Oliver Twist", "male");
+		tree.addPerson(jane);
+		tree.addPerson(orphan);
+
+		assertEquals(3, tree.getFamilyCount());
+		assertTrue(tree.areInSameFamily(george, anne));
+		assertFalse(tree.areInSameFamily(john, jane));
+		assertEquals(List.of(orphan), tree.getFamily(orphan));
+
+		tree.marry(john, jane);
+		tree.adopt(jane, orphan);
+
+		assertEquals(1, tree.getFamilyCount());
+		assertTrue(tree.areInSameFamily(mary, orphan));
+		assertEquals(Set.of(george, mary, john, anne, jane, orphan),
+				Set.copyOf(tree.getFamily(anne)));
+		assertEquals(Set.of(george, mary, jane), Set.copyOf(tree.getRoots()));
+	}
+
+	@Test
+	void unknownParentsAreRootsOfTheFamily() throws Exception {
+		Person peter = new Person("Peter Smith", "male");
+		tree.addChild(anne, peter);
+		Person father = peter.getFather();
+
+		assertTrue(tree.getRoots().contains(father));
+		assertTrue(tree.areInSameFamily(father, george));
+		assertFalse(tree.areInSameFamily(father, new Person("Nobody", "male")));
+	}
+
+	@Test
+	void generationsAreCountedFromTheHighestRoot() throws Exception {
+		Person peter = new Person("Peter Smith", "male");
+		tree.addChild(anne, peter);
+
+		assertEquals(0, tree.getGeneration(george));
+		assertEquals(2, tree.getGeneration(peter));
+		assertEquals(-1, tree.getGeneration(new Person("Nobody", "male")));
+		assertSame(george, tree.findHighestRoot(john));
+		assertSame(george, tree.findHighestRoot(peter));
+		assertSame(peter.getFather(), tree.findHighestRoot(peter.getFather()));
+		assertSame(george, tree.findHighestRoot());
+		assertEquals(2, tree.generationsBetween(mary, peter));
+		assertEquals(-1, tree.generationsBetween(peter, george));
+		assertEquals(-1, tree.generationsBetween(john, peter));
+	}
+
+	@Test
+	void generationsFollowANewAncestor() throws Exception {
+		Person peter = new Person("Peter Smith", "male");
+		tree.addChild(anne, peter);
+		assertEquals(2, tree.getGeneration(peter));
+
+		Person william = new Person("William Smith", "male");
+		assertTrue(tree.assignParent(william, george));
+
+		assertEquals(1, tree.getGeneration(george));
+		assertEquals(3, tree.getGeneration(peter));
+		assertSame(william, tree.findHighestRoot(peter));
+		assertSame(mary, tree.findHighestRoot(mary));
+		assertSame(william, tree.findHighestRoot());
+		assertEquals(3, tree.generationsBetween(william, peter));
+	}
+
+	@Test
+	void builderRejectsASecondFather() {
+		FamilyTreeBuilder builder = new FamilyTreeBuilder()
+				.addPerson("f1", "Father", Sex.MALE, null, null)
+				.addPerson("f2", "Other Father", Sex.MALE, null, null)
+				.addPerson("c", "Child", Sex.FEMALE, null, null)
+				.addEdge("f1", "c", FamilyTreeBuilder.Relation.PARENT)
+				.addEdge("f2", "c", FamilyTreeBuilder.Relation.PARENT);
+
+		assertThrows(IllegalArgumentException.class, builder::build);
+	}
+
+	@Test
+	void builderRejectsARepeatedPartnership() {
+		FamilyTreeBuilder builder = new FamilyTreeBuilder()
+				.addPerson("h", "Husband", Sex.MALE, null, null)
+				.addPerson("w1", "First Wife", Sex.FEMALE, null, null)
+				.addPerson("w2", "Second Wife", Sex.FEMALE, null, null)
+				.addEdge("h", "w1", FamilyTreeBuilder.Relation.PARTNER)
+				.addEdge("h", "w2", FamilyTreeBuilder.Relation.PARTNER)
+				.addEdge("w1", "h", FamilyTreeBuilder.Relation.PARTNER);
+
+		IllegalArgumentException rejected = assertThrows(
+				IllegalArgumentException.class, builder::build);
+		assertTrue(rejected.getMessage()
+				.contains("PARTNER edge w1 -> h is repeated"));
+	}
+
+	@Test
+	void builderMarriesOnlySpouses() {
+		FamilyTree built = new FamilyTreeBuilder()
+				.addPerson("a", "Ann", Sex.FEMALE, null, null)
+				.addPerson("b", "Bob", Sex.MALE, null, null)
+				.addPerson("c", "Cath", Sex.FEMALE, null, null)
+				.addPerson("d", "Dan", Sex.MALE, null, null)
+				.addEdge("a", "b", FamilyTreeBuilder.Relation.PARTNER)
+				.addEdge("b", "c", FamilyTreeBuilder.Relation.SPOUSE)
+				.addEdge("c", "d", FamilyTreeBuilder.Relation.PARTNER)
+				.build();
+		Person ann = built.findPeople("Ann").get(0);
+		Person bob = built.findPeople("Bob").get(0);
+		Person cath = built.findPeople("Cath").get(0);
+		Person dan = built.findPeople("Dan").get(0);
+
+		assertFalse(ann.isMarried());
+		assertNull(ann.getSpouse());
+		assertFalse(built.divorce(ann));
+		assertSame(cath, bob.getSpouse());
+		assertSame(bob, cath.getSpouse());
+		// the marriage stays current though a partnership was added later
+		assertEquals(List.of(dan, bob), cath.getPartners());
+		assertFalse(dan.isMarried());
+		assertTrue(built.divorce(bob));
+		assertFalse(cath.isMarried());
+	}
+
+	@Test
+	void builderRejectsASecondSpouse() {
+		FamilyTreeBuilder builder = new FamilyTreeBuilder()
+				.addPerson("h", "Husband", Sex.MALE, null, null)
+				.addPerson("w1", "First Wife", Sex.FEMALE, null, null)
+				.addPerson("w2", "Second Wife", Sex.FEMALE, null, null)
+				.addEdge("h", "w1", FamilyTreeBuilder.Relation.SPOUSE)
+				.addEdge("w2", "h", FamilyTreeBuilder.Relation.SPOUSE);
+
+		IllegalArgumentException rejected = assertThrows(
+				IllegalArgumentException.class, builder::build);
+		assertTrue(rejected.getMessage()
+				.contains("SPOUSE edge w2 -> h gives h a second spouse"));
+	}
 }
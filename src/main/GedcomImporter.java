@@ -0,0 +1,602 @@
+package main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads individuals (INDI) and families (FAM) from a GEDCOM file into a
+ * family tree in one pass. Lines are parsed in place in a reusable character
+ * buffer; strings are only created for names and cross-reference IDs.
+ * <p>
+ * A family is linked as soon as all of its members have been read. Families
+ * that refer to people further down the file are held back until those
+ * people arrive, so apart from the tree itself the importer only keeps the
+ * cross-reference table, which holds every individual read, the families
+ * still waiting, and each married person's last marriage in the file.
+ * <p>
+ * A held-back family can be linked after a later one, and the marriage
+ * linked last becomes the current one. So once everything is linked, the
+ * last marriage in the file of anyone married out of order is made current
+ * again, and ended again if it was a divorce.
+ * <p>
+ * Husband and wife are married with {@link FamilyTree#marry(Person, Person)},
+ * children are added with
+ * {@link FamilyTree#addChild(Person, Person, Person)} (or
+ * {@link FamilyTree#assignParent(Person, Person)} for a single parent), and
+ * children adopted into a family (ADOP, or FAMC with PEDI adopted) are
+ * adopted with {@link FamilyTree#adopt(Person, Person)}. A person has only
+ * one adoptive parent, so the child is adopted by the husband or the wife as
+ * the ADOP line under the FAMC says, and by the husband if it says BOTH or
+ * nothing.
+ * Individuals whose sex is neither M nor F are skipped, as are dates that
+ * are not a full day, month and year.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class GedcomImporter {
+	private static final int BUFFER_SIZE = 1 << 16;
+	// Level 1 lines of an INDI record whose level 2 lines are read
+	private static final int BIRT = 1;
+	private static final int DEAT = 2;
+	private static final int ADOP = 3;
+	private static final int FAMC = 4;
+
+	private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR",
+			"MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+
+	private final FamilyTree tree;
+
+	// Cross-reference ID -> person read from the file. Kept for the whole
+	// import: a FAM record may refer to any INDI before it, and the FAMS
+	// and FAMC pointers that would say when a person is done are optional,
+	// so no entry can safely be dropped early. Costs O(records).
+	private final Map<String, Person> people = new HashMap<>();
+
+	// Cross-reference ID of a person not read yet -> families waiting on them
+	private final Map<String, List<Family>> waiting = new HashMap<>();
+
+	// Cross-reference ID of an adopted person -> how they were adopted
+	private final Map<String, Adoption> adoptions = new HashMap<>();
+
+	// Married person -> their marriage furthest down the file. Costs
+	// O(married people).
+	private final Map<Person, Marriage> lastMarriages = new HashMap<>();
+
+	// People whose current marriage was linked before an earlier one
+	private final Set<Person> marriedOutOfOrder = new HashSet<>();
+
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final CharBuffer text = CharBuffer.wrap(buffer);
+	private final StringBuilder nameBuilder = new StringBuilder();
+
+	// Fields of the line being parsed, as positions in the buffer
+	private int level;
+	private int xrefFrom;
+	private int xrefTo;
+	private int tagFrom;
+	private int tagTo;
+	private int valueFrom;
+	private int valueTo;
+
+	// The record being read
+	private Individual individual;
+	private Family family;
+	private int event;
+
+	private long records;
+	private int familyCount;
+	private int skipped;
+
+	/**
+	 * Creates an importer that adds people to the given tree. If the tree has
+	 * no head, the first person read becomes its head.
+	 *
+	 * @param tree
+	 *            the tree to import into
+	 */
+	public GedcomImporter(FamilyTree tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * Reads a GEDCOM file encoded as UTF-8.
+	 *
+	 * @param in
+	 *            the file contents
+	 * @return the number of INDI and FAM records read and how long it took
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public Throughput importFrom(InputStream in) throws IOException {
+		long start = System.nanoTime();
+		Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+
+		int filled = 0;
+		int lineStart = 0;
+		int read;
+		while ((read = reader.read(buffer, filled,
+				buffer.length - filled)) >= 0) {
+			filled += read;
+
+			for (int i = lineStart; i < filled; i++) {
+				if (buffer[i] == '\n' || buffer[i] == '\r') {
+					parseLine(lineStart, i);
+					lineStart = i + 1;
+				}
+			}
+			// keep the unfinished line at the start of the buffer
+			System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+			filled -= lineStart;
+			lineStart = 0;
+			if (filled == buffer.length) {
+				throw new IOException("GEDCOM line longer than "
+						+ buffer.length + " characters");
+			}
+		}
+		parseLine(0, filled);
+		endRecord();
+		linkRemainingFamilies();
+		restoreLastMarriages();
+
+		return new Throughput("records", records, System.nanoTime() - start);
+	}
+
+	/**
+	 * @return the number of INDI records that were skipped
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * @return the number of references to people that were never read
+	 */
+	public int getUnresolved() {
+		return waiting.size();
+	}
+
+	private void parseLine(int from, int to) {
+		int i = skipSpaces(from, to);
+		if (i == to) {
+			return;
+		}
+		// skip a byte order mark
+		if (buffer[i] == '\uFEFF') {
+			i++;
+		}
+
+		level = 0;
+		while (i < to && buffer[i] >= '0' && buffer[i] <= '9') {
+			level = level * 10 + buffer[i++] - '0';
+		}
+		i = skipSpaces(i, to);
+
+		xrefFrom = xrefTo = i;
+		if (i < to && buffer[i] == '@') {
+			xrefTo = nextSpace(i, to);
+			i = skipSpaces(xrefTo, to);
+		}
+		tagFrom = i;
+		tagTo = nextSpace(i, to);
+		valueFrom = tagTo < to ? tagTo + 1 : to;
+		valueTo = to;
+
+		if (level == 0) {
+			endRecord();
+			startRecord();
+		} else if (individual != null) {
+			individualLine();
+		} else if (family != null) {
+			familyLine();
+		}
+	}
+
+	private void startRecord() {
+		if (xrefTo == xrefFrom) {
+			return;
+		}
+		if (tagIs("INDI")) {
+			individual = new Individual(xref(xrefFrom, xrefTo));
+		} else if (tagIs("FAM")) {
+			family = new Family(xref(xrefFrom, xrefTo), familyCount++);
+		}
+	}
+
+	private void individualLine() {
+		if (level == 1) {
+			event = 0;
+			if (tagIs("NAME")) {
+				individual.name = parseName();
+			} else if (tagIs("SEX")) {
+				individual.sex = valueTo > valueFrom ? buffer[valueFrom] : 0;
+			} else if (tagIs("BIRT")) {
+				event = BIRT;
+			} else if (tagIs("DEAT")) {
+				event = DEAT;
+			} else if (tagIs("ADOP")) {
+				event = ADOP;
+			} else if (tagIs("FAMC")) {
+				event = FAMC;
+				individual.childOf = xref(valueFrom, valueTo);
+			}
+		} else if (level == 2) {
+			if (tagIs("DATE") && event == BIRT) {
+				individual.birthday = parseDate();
+			} else if (tagIs("DATE") && event == DEAT) {
+				individual.deathdate = parseDate();
+			} else if (tagIs("FAMC") && event == ADOP) {
+				individual.adoptedBy = xref(valueFrom, valueTo);
+			} else if (tagIs("PEDI") && event == FAMC
+					&& valueIs("adopted")) {
+				individual.adoptedBy = individual.childOf;
+			}
+		} else if (level == 3 && tagIs("ADOP") && event == ADOP) {
+			// HUSB, WIFE or BOTH
+			individual.adopter = valueTo > valueFrom
+					? Character.toUpperCase(buffer[valueFrom])
+					: 0;
+		}
+	}
+
+	private void familyLine() {
+		if (level != 1) {
+			return;
+		}
+		if (tagIs("HUSB")) {
+			family.husband = xref(valueFrom, valueTo);
+		} else if (tagIs("WIFE")) {
+			family.wife = xref(valueFrom, valueTo);
+		} else if (tagIs("CHIL")) {
+			family.children.add(xref(valueFrom, valueTo));
+		} else if (tagIs("DIV")) {
+			family.divorced = true;
+		}
+	}
+
+	private void endRecord() {
+		if (individual != null) {
+			records++;
+			addIndividual(individual);
+			individual = null;
+		} else if (family != null) {
+			records++;
+			addFamily(family);
+			family = null;
+		}
+		event = 0;
+	}
+
+	private void addIndividual(Individual read) {
+		Sex sex = read.sex == 'M' || read.sex == 'm' ? Sex.MALE
+				: read.sex == 'F' || read.sex == 'f' ? Sex.FEMALE : null;
+		if (sex == null) {
+			skipped++;
+			return;
+		}
+		Person person = new Person(read.name == null ? "" : read.name, sex);
+		person.setBirthday(read.birthday);
+		person.setDeathdate(read.deathdate);
+		tree.addPerson(person);
+
+		people.put(read.xref, person);
+		if (read.adoptedBy != null) {
+			adoptions.put(read.xref,
+					new Adoption(read.adoptedBy, read.adopter));
+		}
+
+		List<Family> families = waiting.remove(read.xref);
+		if (families != null) {
+			for (Family waitingFamily : families) {
+				if (--waitingFamily.unresolved == 0) {
+					linkFamily(waitingFamily);
+				}
+			}
+		}
+	}
+
+	private void addFamily(Family read) {
+		List<String> members = new ArrayList<>(read.children);
+		members.add(read.husband);
+		members.add(read.wife);
+
+		for (String member : members) {
+			if (member != null && !people.containsKey(member)) {
+				read.unresolved++;
+				waiting.computeIfAbsent(member, k -> new ArrayList<>(1))
+						.add(read);
+			}
+		}
+		if (read.unresolved == 0) {
+			linkFamily(read);
+		}
+	}
+
+	/**
+	 * Links the families that still wait on people who were never read,
+	 * leaving those people out.
+	 */
+	private void linkRemainingFamilies() {
+		List<Family> families = new ArrayList<>();
+		for (List<Family> waitingFamilies : waiting.values()) {
+			for (Family waitingFamily : waitingFamilies) {
+				if (waitingFamily.unresolved > 0) {
+					waitingFamily.unresolved = 0;
+					families.add(waitingFamily);
+				}
+			}
+		}
+		families.sort(
+				Comparator.comparingInt(waitingFamily -> waitingFamily.order));
+		for (Family waitingFamily : families) {
+			linkFamily(waitingFamily);
+		}
+	}
+
+	/**
+	 * Makes the last marriage in the file current again for everyone married
+	 * out of file order. Doing so also changes the marriages of the other
+	 * spouses, so theirs are made current too, in file order, so that each
+	 * person ends with their own last marriage.
+	 */
+	private void restoreLastMarriages() {
+		Set<Marriage> restored = new HashSet<>();
+		Deque<Person> people = new ArrayDeque<>(marriedOutOfOrder);
+		while (!people.isEmpty()) {
+			Marriage marriage = lastMarriages.get(people.pop());
+			if (restored.add(marriage)) {
+				people.push(marriage.husband());
+				people.push(marriage.wife());
+			}
+		}
+
+		List<Marriage> marriages = new ArrayList<>(restored);
+		marriages.sort(Comparator.comparingInt(Marriage::order));
+		for (Marriage marriage : marriages) {
+			tree.marry(marriage.husband(), marriage.wife());
+			if (marriage.divorced()) {
+				tree.divorce(marriage.husband());
+			}
+		}
+		marriedOutOfOrder.clear();
+	}
+
+	private void linkFamily(Family read) {
+		Person husband = read.husband == null ? null : people.get(read.husband);
+		Person wife = read.wife == null ? null : people.get(read.wife);
+
+		if (husband != null && wife != null) {
+			tree.marry(husband, wife);
+			Marriage marriage = new Marriage(read.order, husband, wife,
+					read.divorced);
+			for (Person spouse : List.of(husband, wife)) {
+				Marriage last = lastMarriages.get(spouse);
+				if (last == null || last.order() < read.order) {
+					lastMarriages.put(spouse, marriage);
+				} else {
+					marriedOutOfOrder.add(spouse);
+				}
+			}
+		}
+		for (String xref : read.children) {
+			Person child = people.get(xref);
+			if (child == null) {
+				continue;
+			}
+			Adoption adoption = adoptions.get(xref);
+			if (adoption != null && read.xref.equals(adoption.family)) {
+				adoptions.remove(xref);
+				Person adopter = adoption.adopter == 'W' && wife != null
+						|| husband == null ? wife : husband;
+				if (adopter != null) {
+					tree.adopt(adopter, child);
+				}
+			} else if (husband != null && wife != null) {
+				tree.addChild(husband, wife, child);
+			} else if (husband != null || wife != null) {
+				tree.assignParent(husband != null ? husband : wife, child);
+			}
+		}
+		if (read.divorced && husband != null && wife != null
+				&& husband.getSpouse() == wife) {
+			tree.divorce(husband);
+		}
+	}
+
+	/**
+	 * Reads a name such as "John /Smith/" as "John Smith".
+	 */
+	private String parseName() {
+		nameBuilder.setLength(0);
+		boolean space = false;
+
+		for (int i = valueFrom; i < valueTo; i++) {
+			char c = buffer[i];
+			if (c == '/' || c == ' ') {
+				space = nameBuilder.length() > 0;
+			} else {
+				if (space) {
+					nameBuilder.append(' ');
+					space = false;
+				}
+				nameBuilder.append(c);
+			}
+		}
+		return nameBuilder.toString();
+	}
+
+	/**
+	 * Reads a date written as "12 JAN 1900", or as "1900-01-12" which is
+	 * parsed like {@link Application#parseDate(String)}. Returns null for
+	 * anything else, including approximate and partial dates.
+	 */
+	private LocalDate parseDate() {
+		int from = skipSpaces(valueFrom, valueTo);
+		int to = valueTo;
+		while (to > from && buffer[to - 1] == ' ') {
+			to--;
+		}
+		try {
+			int dayTo = nextSpace(from, to);
+			int monthTo = nextSpace(dayTo + 1, to);
+			if (dayTo == to || monthTo == to) {
+				return Application.parseDate(text, from, to);
+			}
+
+			int day = parseNumber(from, dayTo);
+			int month = parseMonth(dayTo + 1, monthTo);
+			int year = parseNumber(monthTo + 1, to);
+			if (day < 0 || month < 0 || year < 0) {
+				return null;
+			}
+			return LocalDate.of(year, month, day);
+		} catch (DateTimeException e) {
+			return null;
+		}
+	}
+
+	private int parseNumber(int from, int to) {
+		if (from == to || to - from > 9) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			if (buffer[i] < '0' || buffer[i] > '9') {
+				return -1;
+			}
+			value = value * 10 + buffer[i] - '0';
+		}
+		return value;
+	}
+
+	private int parseMonth(int from, int to) {
+		if (to - from != 3) {
+			return -1;
+		}
+		for (int month = 0; month < MONTHS.length; month++) {
+			if (matches(from, to, MONTHS[month], true)) {
+				return month + 1;
+			}
+		}
+		return -1;
+	}
+
+	private boolean tagIs(String tag) {
+		return matches(tagFrom, tagTo, tag, false);
+	}
+
+	private boolean valueIs(String value) {
+		return matches(valueFrom, valueTo, value, true);
+	}
+
+	private boolean matches(int from, int to, String expected,
+			boolean ignoreCase) {
+		if (to - from != expected.length()) {
+			return false;
+		}
+		for (int i = 0; i < expected.length(); i++) {
+			char c = buffer[from + i];
+			char e = expected.charAt(i);
+			if (c != e && !(ignoreCase
+					&& Character.toUpperCase(c) == Character.toUpperCase(e))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String xref(int from, int to) {
+		from = skipSpaces(from, to);
+		while (to > from && buffer[to - 1] == ' ') {
+			to--;
+		}
+		return from == to ? null : new String(buffer, from, to - from);
+	}
+
+	private int skipSpaces(int from, int to) {
+		while (from < to && buffer[from] == ' ') {
+			from++;
+		}
+		return from;
+	}
+
+	private int nextSpace(int from, int to) {
+		while (from < to && buffer[from] != ' ') {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * An INDI record being read.
+	 */
+	private static class Individual {
+		final String xref;
+		String name;
+		char sex;
+		LocalDate birthday;
+		LocalDate deathdate;
+		String childOf;
+		String adoptedBy;
+		char adopter;
+
+		Individual(String xref) {
+			this.xref = xref;
+		}
+	}
+
+	/**
+	 * The family an individual was adopted into, and by whom: H for the
+	 * husband, W for the wife, anything else for both.
+	 */
+	private static class Adoption {
+		final String family;
+		final char adopter;
+
+		Adoption(String family, char adopter) {
+			this.family = family;
+			this.adopter = adopter;
+		}
+	}
+
+	/**
+	 * A FAM record that has been read but not necessarily linked yet.
+	 */
+	private static class Family {
+		final String xref;
+		// position among the FAM records of the file
+		final int order;
+		String husband;
+		String wife;
+		final List<String> children = new ArrayList<>(2);
+		boolean divorced;
+		int unresolved;
+
+		Family(String xref, int order) {
+			this.xref = xref;
+			this.order = order;
+		}
+	}
+
+	/**
+	 * A linked marriage and its position among the FAM records of the file.
+	 */
+	private record Marriage(int order, Person husband, Person wife,
+			boolean divorced) {
+	}
+}
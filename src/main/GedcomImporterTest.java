@@ -0,0 +1,97 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class GedcomImporterTest {
+	private static FamilyTree read(String gedcom) throws Exception {
+		FamilyTree tree = new FamilyTree();
+		GedcomImporter importer = new GedcomImporter(tree);
+		importer.importFrom(new ByteArrayInputStream(
+				gedcom.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(0, importer.getSkipped());
+		assertEquals(0, importer.getUnresolved());
+		return tree;
+	}
+
+	private static Person named(FamilyTree tree, String name) {
+		return tree.findPeople(name).get(0);
+	}
+
+	@Test
+	void laterMarriageStaysCurrentWhenTheFirstRefersForward()
+			throws Exception {
+		// the first family waits for Anne, who is read after the second
+		FamilyTree tree = read(String.join("\n",
+				"0 HEAD",
+				"0 @I1@ INDI",
+				"1 NAME John /Smith/",
+				"1 SEX M",
+				"0 @I3@ INDI",
+				"1 NAME Beth /Jones/",
+				"1 SEX F",
+				"0 @F1@ FAM",
+				"1 HUSB @I1@",
+				"1 WIFE @I2@",
+				"1 DIV",
+				"0 @F2@ FAM",
+				"1 HUSB @I1@",
+				"1 WIFE @I3@",
+				"0 @I2@ INDI",
+				"1 NAME Anne /Brown/",
+				"1 SEX F",
+				"0 TRLR", ""));
+		Person john = named(tree, "John Smith");
+		Person anne = named(tree, "Anne Brown");
+		Person beth = named(tree, "Beth Jones");
+
+		assertSame(beth, john.getSpouse());
+		assertSame(john, beth.getSpouse());
+		assertFalse(anne.isMarried());
+		assertTrue(john.getPartners().contains(anne));
+		assertTrue(anne.getPartners().contains(john));
+	}
+
+	@Test
+	void spousesOfARestoredMarriageKeepTheirOwnLastMarriage()
+			throws Exception {
+		// John's first marriage is linked last; Beth married again later
+		FamilyTree tree = read(String.join("\n",
+				"0 HEAD",
+				"0 @I1@ INDI",
+				"1 NAME John /Smith/",
+				"1 SEX M",
+				"0 @I3@ INDI",
+				"1 NAME Beth /Jones/",
+				"1 SEX F",
+				"0 @I4@ INDI",
+				"1 NAME Carl /White/",
+				"1 SEX M",
+				"0 @F1@ FAM",
+				"1 HUSB @I1@",
+				"1 WIFE @I2@",
+				"0 @F2@ FAM",
+				"1 HUSB @I1@",
+				"1 WIFE @I3@",
+				"1 DIV",
+				"0 @F3@ FAM",
+				"1 HUSB @I4@",
+				"1 WIFE @I3@",
+				"0 @I2@ INDI",
+				"1 NAME Anne /Brown/",
+				"1 SEX F",
+				"0 TRLR", ""));
+		Person john = named(tree, "John Smith");
+		Person beth = named(tree, "Beth Jones");
+		Person carl = named(tree, "Carl White");
+
+		assertFalse(john.isMarried());
+		assertSame(beth, john.getPartners().get(john.getPartners().size() - 1));
+		assertSame(carl, beth.getSpouse());
+		assertSame(beth, carl.getSpouse());
+	}
+}
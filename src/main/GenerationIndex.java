@@ -0,0 +1,265 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Predicate;
+
+/**
+ * Remembers, for every person of a family tree, how many generations they
+ * are below their earliest known blood ancestor and who that ancestor is,
+ * following the longest line of mothers and fathers. On a tie the father's
+ * line is followed. Answers are array reads by the person's row.
+ * <p>
+ * A person joining the tree below known parents, as every child does, is
+ * worked out from their parents straight away. A change that could move
+ * people already below the person, such as giving a parent to someone who
+ * has children, marks the index stale instead, and the next question works
+ * out everyone again in one topological pass over the parent links, parents
+ * before children. People in a loop of parents, which only bad data has,
+ * count as having none.
+ *
+ * @author Stephen Schroer
+ *
+ */
+class GenerationIndex {
+	private final List<Person> people;
+	private final Predicate<Person> inTree;
+
+	// row -> generations below the highest root, or -1 if not known
+	private int[] depths = new int[0];
+
+	// row -> highest root
+	private Person[] tops = new Person[0];
+
+	// the root of the longest line in the tree, and its length
+	private Person highest;
+	private int deepest = -1;
+
+	private boolean stale = true;
+
+	/**
+	 * Creates an index over the people of a tree.
+	 *
+	 * @param people
+	 *            the people of the tree, as the tree goes on changing them
+	 * @param inTree
+	 *            tells whether a person is in the tree
+	 */
+	GenerationIndex(List<Person> people, Predicate<Person> inTree) {
+		this.people = people;
+		this.inTree = inTree;
+	}
+
+	/**
+	 * Works out a person who joined the tree from their parents.
+	 *
+	 * @param person
+	 *            the new person, who has a row
+	 */
+	synchronized void added(Person person) {
+		update(person);
+	}
+
+	/**
+	 * Works out a person again after their mother or father changed.
+	 *
+	 * @param person
+	 *            the person whose parents changed
+	 */
+	synchronized void parentsChanged(Person person) {
+		update(person);
+	}
+
+	/**
+	 * Forgets a person who left the tree.
+	 *
+	 * @param person
+	 *            the person taken out
+	 */
+	synchronized void removed(Person person) {
+		// they may have been the highest root of anyone
+		stale = true;
+	}
+
+	/**
+	 * @param person
+	 *            a person in the tree
+	 * @return the generations between the person and their highest root; 0
+	 *         if they have no parents in the tree
+	 */
+	synchronized int depth(Person person) {
+		refresh();
+		return depths[person.getRow()];
+	}
+
+	/**
+	 * @param person
+	 *            a person in the tree
+	 * @return the earliest known blood ancestor along the person's longest
+	 *         line, or the person if they have no parents in the tree
+	 */
+	synchronized Person highestRoot(Person person) {
+		refresh();
+		return tops[person.getRow()];
+	}
+
+	/**
+	 * @return the root of the longest line of descent in the tree, or null
+	 *         if the tree is empty
+	 */
+	synchronized Person highestRoot() {
+		refresh();
+		return highest;
+	}
+
+	/**
+	 * Works out one person from their parents if nobody below them can be
+	 * affected; otherwise marks the index stale.
+	 */
+	private void update(Person person) {
+		if (stale) {
+			return;
+		}
+		for (Person parent : new Person[] { person.getFather(),
+				person.getMother() }) {
+			if (parent != null && inTree.test(parent) && depthOf(parent) < 0) {
+				stale = true;
+				return;
+			}
+		}
+		int row = person.getRow();
+		grow(row);
+		int before = depths[row];
+		Person topBefore = tops[row];
+		set(person);
+		// a parent may join the tree after their children were linked
+		if ((before != depths[row] || topBefore != tops[row])
+				&& (before >= 0 && before == deepest || hasChildren(person))) {
+			// everyone below the person, or the longest line, would have
+			// to follow
+			stale = true;
+		}
+	}
+
+	/**
+	 * @return the depth of a person, or -1 if not known
+	 */
+	private int depthOf(Person person) {
+		int row = person.getRow();
+		return row >= 0 && row < depths.length ? depths[row] : -1;
+	}
+
+	private boolean hasChildren(Person person) {
+		for (Person child : person.getChildren()) {
+			if (inTree.test(child) && (child.getMother() == person
+					|| child.getFather() == person)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Works out a person from their parents, who must already be known.
+	 */
+	private void set(Person person) {
+		int depth = 0;
+		Person top = person;
+		for (Person parent : new Person[] { person.getFather(),
+				person.getMother() }) {
+			if (parent != null && inTree.test(parent)
+					&& depthOf(parent) + 1 > depth) {
+				depth = depthOf(parent) + 1;
+				top = tops[parent.getRow()];
+			}
+		}
+		int row = person.getRow();
+		depths[row] = depth;
+		tops[row] = top;
+		if (depth > deepest) {
+			deepest = depth;
+			highest = top;
+		}
+	}
+
+	/**
+	 * Works out everyone again if the index is stale: people without parents
+	 * in the tree first, then each person once all their parents are done.
+	 */
+	private void refresh() {
+		if (!stale) {
+			return;
+		}
+		// people taken out during a change are only dropped from the list
+		// once it ends
+		List<Person> members = new ArrayList<>(people.size());
+		int rows = 0;
+		for (Person person : people) {
+			if (inTree.test(person)) {
+				members.add(person);
+				rows = Math.max(rows, person.getRow() + 1);
+			}
+		}
+		depths = new int[rows];
+		tops = new Person[rows];
+		Arrays.fill(depths, -1);
+		highest = null;
+		deepest = -1;
+
+		// row -> parents not yet worked out
+		int[] waiting = new int[rows];
+		Queue<Person> ready = new ArrayDeque<>();
+		for (Person person : members) {
+			int count = 0;
+			if (person.getFather() != null
+					&& inTree.test(person.getFather())) {
+				count++;
+			}
+			if (person.getMother() != null && inTree.test(person.getMother())
+					&& person.getMother() != person.getFather()) {
+				count++;
+			}
+			waiting[person.getRow()] = count;
+			if (count == 0) {
+				ready.add(person);
+			}
+		}
+
+		int done = 0;
+		while (!ready.isEmpty()) {
+			Person person = ready.poll();
+			set(person);
+			done++;
+			for (Person child : person.getChildren()) {
+				if (inTree.test(child) && (child.getMother() == person
+						|| child.getFather() == person)
+						&& depths[child.getRow()] < 0
+						&& --waiting[child.getRow()] == 0) {
+					ready.add(child);
+				}
+			}
+		}
+		if (done < members.size()) {
+			for (Person person : members) {
+				if (depths[person.getRow()] < 0) {
+					depths[person.getRow()] = 0;
+					tops[person.getRow()] = person;
+				}
+			}
+		}
+		stale = false;
+	}
+
+	private void grow(int row) {
+		if (row >= depths.length) {
+			int length = Math.max(16, Math.max(row + 1, depths.length * 2));
+			int from = depths.length;
+			depths = Arrays.copyOf(depths, length);
+			tops = Arrays.copyOf(tops, length);
+			Arrays.fill(depths, from, length, -1);
+		}
+	}
+}
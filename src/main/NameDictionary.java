@@ -0,0 +1,229 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores names as codes into one dictionary of words shared by every person,
+ * record and tree. Given names and surnames repeat endlessly in a family
+ * tree, so each distinct one is kept once and a name is held as two ints
+ * packed in a long: the code of everything before the last space, usually
+ * the given names, in the high half and the code of the surname in the low
+ * half. A name without a space has no surname code, and no name at all is
+ * {@link #NONE}.
+ * <p>
+ * Looking up a word already known reads a concurrent map; adding one takes a
+ * lock. Words are never taken out, so a code stays valid for good. Every word
+ * also knows the fold code of its case-folded form, so two names can be
+ * compared ignoring case without building either. Folded forms are numbered
+ * apart from the words and are not words themselves.
+ * <p>
+ * A person's name is coded when the person is made, before they join any
+ * tree, and codes are copied into records and snapshots, so the dictionary
+ * belongs to the process rather than to a tree. It grows with every distinct
+ * word encoded since the process started, at roughly 150 bytes plus twice
+ * the characters per word counting its folded form, and never shrinks. Once
+ * it holds {@link #MAX_WORDS} words no more are added: a name with a new word
+ * is given the code {@link #UNCODED} and its owner keeps the name as a plain
+ * string, which goes away with the owner.
+ *
+ * @author Stephen Schroer
+ *
+ */
+final class NameDictionary {
+	/**
+	 * The code of a missing name.
+	 */
+	static final long NONE = -1L;
+
+	/**
+	 * The code of a name that is kept as a plain string by its owner, because
+	 * the dictionary was full when it was encoded. Only the flag bit is set.
+	 */
+	static final long UNCODED = Long.MIN_VALUE;
+
+	/**
+	 * The most words the dictionary holds, a few hundred megabytes' worth.
+	 */
+	static final int MAX_WORDS = 1 << 22;
+
+	// code of a missing surname
+	private static final int NO_WORD = -1;
+	// code of a word that did not fit
+	private static final int NO_ROOM = -2;
+
+	private static final Map<String, Integer> codes = new ConcurrentHashMap<>();
+	// case-folded word -> fold code; only written under the lock
+	private static final Map<String, Integer> foldCodes = new ConcurrentHashMap<>();
+
+	// code -> word, and code -> fold code of the word; written under the lock
+	// before the code is put in the map
+	private static volatile String[] words = new String[1024];
+	private static volatile int[] folds = new int[1024];
+	private static int size;
+	private static int foldCount;
+	private static int capacity = MAX_WORDS;
+
+	private NameDictionary() {
+	}
+
+	/**
+	 * Encodes a name, adding any of its words not yet known.
+	 *
+	 * @param name
+	 *            the name, may be null
+	 * @return the code of the name, or {@link #UNCODED} if it has a new word
+	 *         and the dictionary is full
+	 */
+	static long encode(String name) {
+		if (name == null) {
+			return NONE;
+		}
+		int space = name.lastIndexOf(' ');
+		int given = code(space < 0 ? name : name.substring(0, space));
+		int surname = space < 0 ? NO_WORD : code(name.substring(space + 1));
+		if (given == NO_ROOM || surname == NO_ROOM) {
+			return UNCODED;
+		}
+		return pack(given, surname);
+	}
+
+	/**
+	 * Builds a name back from its code.
+	 *
+	 * @param name
+	 *            the code of the name, not {@link #UNCODED}
+	 * @return the name, or null for {@link #NONE}
+	 */
+	static String decode(long name) {
+		if (name == NONE) {
+			return null;
+		}
+		if (name == UNCODED) {
+			throw new IllegalArgumentException(
+					"The name is kept by its owner, not the dictionary");
+		}
+		String[] known = words;
+		String given = known[(int) (name >>> 32)];
+		int surname = (int) name;
+		return surname == NO_WORD ? given : given + ' ' + known[surname];
+	}
+
+	/**
+	 * Finds the code of the name, ignoring case, that every spelling of a
+	 * name in other cases shares: two names have the same folded code exactly
+	 * when {@link #fold(String)} gives the same text for them.
+	 *
+	 * @param name
+	 *            the code of a name
+	 * @return the code of the name folded, or {@link #NONE} or
+	 *         {@link #UNCODED} unchanged; names kept as strings are compared
+	 *         by folding the strings
+	 */
+	static long fold(long name) {
+		if (name == NONE || name == UNCODED) {
+			return name;
+		}
+		int[] folded = folds;
+		int surname = (int) name;
+		return pack(folded[(int) (name >>> 32)],
+				surname == NO_WORD ? NO_WORD : folded[surname]);
+	}
+
+	/**
+	 * Finds the folded code of a name without adding its words, as for a
+	 * search.
+	 *
+	 * @param name
+	 *            the name, may be null
+	 * @return the same as {@code fold(encode(name))}, or {@link #NONE} if no
+	 *         name known is equal to it ignoring case
+	 */
+	static long findFolded(String name) {
+		if (name == null) {
+			return NONE;
+		}
+		String folded = fold(name);
+		int space = folded.lastIndexOf(' ');
+		Integer given = foldCodes
+				.get(space < 0 ? folded : folded.substring(0, space));
+		Integer surname = space < 0 ? Integer.valueOf(NO_WORD)
+				: foldCodes.get(folded.substring(space + 1));
+		if (given == null || surname == null) {
+			return NONE;
+		}
+		return pack(given, surname);
+	}
+
+	/**
+	 * @return the number of distinct words known
+	 */
+	static synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Changes how many words the dictionary holds, for tests of a full
+	 * dictionary. Words already known stay known.
+	 *
+	 * @param words
+	 *            the most words to hold
+	 * @return the previous limit
+	 */
+	static synchronized int setCapacity(int words) {
+		int previous = capacity;
+		capacity = words;
+		return previous;
+	}
+
+	private static long pack(int given, int surname) {
+		return (long) given << 32 | surname & 0xFFFFFFFFL;
+	}
+
+	private static int code(String word) {
+		Integer code = codes.get(word);
+		return code != null ? code : add(word);
+	}
+
+	private static synchronized int add(String word) {
+		Integer known = codes.get(word);
+		if (known != null) {
+			return known;
+		}
+		if (size >= capacity) {
+			return NO_ROOM;
+		}
+		int code = size++;
+		if (code == words.length) {
+			words = Arrays.copyOf(words, code * 2);
+			folds = Arrays.copyOf(folds, code * 2);
+		}
+		words[code] = word;
+		String folded = fold(word);
+		Integer fold = foldCodes.get(folded);
+		if (fold == null) {
+			fold = foldCount++;
+			foldCodes.put(folded, fold);
+		}
+		folds[code] = fold;
+		codes.put(word, code);
+		return code;
+	}
+
+	/**
+	 * Folds each character the way {@link String#equalsIgnoreCase(String)}
+	 * compares them: to lower case after upper case. Every lookup that ignores
+	 * case folds with this, so they all agree on which names are the same.
+	 *
+	 * @param word
+	 *            the text to fold
+	 * @return the folded text
+	 */
+	static String fold(String word) {
+		StringBuilder folded = new StringBuilder(word.length());
+		word.codePoints().forEach(c -> folded.appendCodePoint(
+				Character.toLowerCase(Character.toUpperCase(c))));
+		return folded.toString();
+	}
+}
@@ -0,0 +1,102 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class NameDictionaryTest {
+	@Test
+	void namesAreBuiltBackExactly() {
+		for (String name : new String[] { "John Smith", "Mary Ann Smith",
+				"Cher", "", " ", "Smith ", " Smith", "Jo  Smith" }) {
+			assertEquals(name,
+					NameDictionary.decode(NameDictionary.encode(name)));
+		}
+		assertNull(NameDictionary.decode(NameDictionary.encode(null)));
+	}
+
+	@Test
+	void wordsAreSharedBetweenNames() throws Exception {
+		Person john = new Person("John Smith", "male");
+		Person jane = new Person("Jane Smith", "female");
+		int words = NameDictionary.size();
+
+		Person again = new Person("John Smith", "male");
+
+		assertEquals(words, NameDictionary.size());
+		assertEquals((int) john.getNameCode(), (int) jane.getNameCode());
+		assertEquals(john.getNameCode(), again.getNameCode());
+		assertEquals("John Smith", PersonRecord.of(again).getName());
+		assertTrue(again.toString().contains("name=John Smith,"));
+		assertTrue(PersonRecord.of(again).toString()
+				.contains("name=John Smith,"));
+	}
+
+	@Test
+	void namedIgnoresCase() throws Exception {
+		Person john = new Person("John McSmith", "male");
+
+		assertTrue(PersonPredicates.named("JOHN mcsmith").test(john));
+		assertFalse(PersonPredicates.named("John McSmit").test(john));
+		assertFalse(PersonPredicates.named(null).test(john));
+		assertFalse(PersonPredicates.named("John")
+				.test(new Person(null, Sex.MALE)));
+		assertEquals(NameDictionary.NONE,
+				NameDictionary.findFolded("Nobody Anywhere Xq"));
+	}
+
+	@Test
+	void everyLookupFoldsCaseTheSameWay() {
+		FamilyTree tree = new FamilyTree();
+		for (String name : new String[] { "\u0130lhan Kaya", "ilhan kaya",
+				"Ilhan Kaya", "Anna Wei\u017fs", "ANNA WEISS" }) {
+			tree.addPerson(new Person(name, Sex.FEMALE));
+		}
+
+		for (String name : new String[] { "ILHAN KAYA", "\u0130lhan kaya",
+				"anna weiss", "Anna Wei\u017fs" }) {
+			List<Person> found = tree.findPeople(name);
+			assertFalse(found.isEmpty(), name);
+			assertEquals(found, tree.findAll(PersonPredicates.named(name)),
+					name);
+		}
+		assertEquals(3, tree.findPeople("ilhan kaya").size());
+		assertEquals(2, tree.findAll(PersonPredicates.nameContains("weiss"))
+				.size());
+	}
+
+	@Test
+	void namesThatDoNotFitAreKeptAsStrings() throws Exception {
+		Person known = new Person("John Smith", "male");
+		String name = "Zebedee Quillfeather" + System.nanoTime();
+		FamilyTree tree = new FamilyTree();
+		Person person;
+		int capacity = NameDictionary.setCapacity(NameDictionary.size());
+		try {
+			person = new Person(name, Sex.MALE);
+			tree.addPerson(person);
+			assertEquals(NameDictionary.UNCODED, person.getNameCode());
+			assertNotEquals(NameDictionary.UNCODED,
+					new Person("John Smith", "male").getNameCode());
+
+			person.setName(name + " Jr");
+			assertEquals(NameDictionary.UNCODED, person.getNameCode());
+		} finally {
+			NameDictionary.setCapacity(capacity);
+		}
+
+		assertEquals(name + " Jr", person.getName());
+		assertEquals(name + " Jr", PersonRecord.of(person).getName());
+		assertTrue(PersonRecord.of(person).toString()
+				.contains("name=" + name + " Jr,"));
+		assertTrue(PersonPredicates.named(name.toUpperCase() + " JR")
+				.test(person));
+		assertFalse(PersonPredicates.named("John Smith").test(person));
+		assertFalse(PersonPredicates.named(name).test(person));
+		assertTrue(PersonPredicates.named("john smith").test(known));
+		assertEquals(List.of(person), tree.findPeople(name + " jr"));
+		assertFalse(person.deepEquals(new Person(name, Sex.MALE)));
+	}
+}
@@ -0,0 +1,658 @@
+package main;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Looks people up by name: exactly, by the start of any word of the name, by
+ * how the name sounds, and by similar spelling.
+ * <p>
+ * Every distinct name, case-folded, has one entry listing the people with
+ * that name, and every distinct word of those names has one word listing the
+ * names it appears in. They are reached through:
+ * <ul>
+ * <li>a map from each name to its entry, for exact lookups;</li>
+ * <li>a compressed trie over the words, for prefix search;</li>
+ * <li>a map from the Soundex codes of all words of a name, such as "J500
+ * S530" for "John Smith", to the names with those codes;</li>
+ * <li>a map from each trigram (three letters in a row) to the words that
+ * contain it, for finding words spelled almost the same way.</li>
+ * </ul>
+ * Trigrams are kept for words rather than whole names because there are far
+ * fewer distinct words than names: "john" is one word however many Johns
+ * there are, so the postings stay short.
+ * <p>
+ * Entries are never taken out of these structures. When the last person with
+ * a name is renamed the entry is left empty and skipped by searches, and it
+ * is reused if someone is given the name again.
+ *
+ * @author Stephen Schroer
+ *
+ */
+class NameIndex {
+	/**
+	 * Smallest spelling similarity, from 0 to 1, of a name returned by
+	 * {@link #findSimilar(String, int)} that does not also sound the same.
+	 */
+	static final double MIN_SIMILARITY = 0.5;
+
+	/**
+	 * Smallest spelling similarity of a word for it to stand in for a word of
+	 * the name searched for.
+	 */
+	static final double MIN_WORD_SIMILARITY = 0.6;
+
+	// Soundex digit for each letter a to z; 0 for vowels, h, w and y
+	private static final String SOUNDEX_CODES = "01230120022455012623010202";
+
+	private static final Pattern ACCENTS = Pattern
+			.compile("\\p{InCombiningDiacriticalMarks}+");
+
+	private final Map<String, Entry> names = new HashMap<>();
+	private final Map<String, Word> words = new HashMap<>();
+	private final Map<String, List<Entry>> bySound = new HashMap<>();
+	private final Map<Long, List<Word>> byTrigram = new HashMap<>();
+	private final Node trie = new Node("");
+
+	/**
+	 * Adds a person under a name.
+	 *
+	 * @param person
+	 *            the person to add
+	 * @param name
+	 *            the name to add them under
+	 */
+	void add(Person person, String name) {
+		String folded = fold(name);
+		Entry entry = names.get(folded);
+
+		if (entry == null) {
+			entry = new Entry(folded, trigrams(folded));
+			names.put(folded, entry);
+			bySound.computeIfAbsent(soundex(folded), k -> new ArrayList<>(1))
+					.add(entry);
+			for (String text : distinctWords(folded)) {
+				word(text).entries.add(entry);
+			}
+		}
+		entry.people.add(person);
+	}
+
+	/**
+	 * Removes a person from under a name, comparing by identity.
+	 *
+	 * @param person
+	 *            the person to remove
+	 * @param name
+	 *            the name they were added under
+	 */
+	void remove(Person person, String name) {
+		Entry entry = names.get(fold(name));
+		if (entry == null) {
+			return;
+		}
+		for (int i = 0; i < entry.people.size(); i++) {
+			if (entry.people.get(i) == person) {
+				entry.people.remove(i);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Finds the people with a name, ignoring case.
+	 *
+	 * @param name
+	 *            the name to look for
+	 * @return the people with the name, in the order they were added
+	 */
+	List<Person> find(String name) {
+		Entry entry = names.get(fold(name));
+		return entry == null ? Collections.emptyList() : entry.people;
+	}
+
+	/**
+	 * Finds people with a word in their name that starts with the given
+	 * text, ignoring case. Names are visited in alphabetical order of the
+	 * matching word.
+	 * <p>
+	 * A prefix of several words, such as "john sm", matches the start of
+	 * whole names. All but its last word must then appear in full, so only
+	 * the names of the rarest of them are read, or those of the words
+	 * starting with the last word if these are fewer.
+	 *
+	 * @param prefix
+	 *            the start of a word, may include spaces to match the start
+	 *            of a whole name
+	 * @param limit
+	 *            the most people to return
+	 * @return the matching people
+	 */
+	List<Person> findByPrefix(String prefix, int limit) {
+		List<String> parts = words(fold(prefix));
+		List<Person> found = new ArrayList<>();
+		if (limit <= 0 || parts.isEmpty()) {
+			return found;
+		}
+
+		List<Entry> narrowest = null;
+		for (String text : parts.subList(0, parts.size() - 1)) {
+			Word word = words.get(text);
+			if (word == null) {
+				return found;
+			}
+			if (narrowest == null || word.entries.size() < narrowest.size()) {
+				narrowest = word.entries;
+			}
+		}
+
+		Set<Entry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (narrowest == null) {
+			// every name under a word starting with a single word matches,
+			// so the walk stops as soon as the limit is filled
+			trie.collect(parts.get(0), word -> {
+				for (Entry entry : word.entries) {
+					if (seen.add(entry) && !take(entry, found, limit)) {
+						return false;
+					}
+				}
+				return true;
+			});
+			return found;
+		}
+
+		List<List<Entry>> starting = new ArrayList<>();
+		int bound = narrowest.size();
+		int[] size = { 0 };
+		trie.collect(parts.get(parts.size() - 1), word -> {
+			starting.add(word.entries);
+			size[0] += word.entries.size();
+			return size[0] < bound;
+		});
+		List<List<Entry>> sources = size[0] < bound ? starting
+				: List.of(narrowest);
+
+		for (List<Entry> entries : sources) {
+			for (Entry entry : entries) {
+				if (seen.add(entry) && startsWith(words(entry.name), parts)
+						&& !take(entry, found, limit)) {
+					return found;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Adds the people of an entry to a list, up to a limit.
+	 *
+	 * @return true if the list has room for more
+	 */
+	private static boolean take(Entry entry, List<Person> found, int limit) {
+		for (Person person : entry.people) {
+			found.add(person);
+			if (found.size() == limit) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds people whose name sounds like the given name: it has as many
+	 * words, and each word has the same Soundex code.
+	 *
+	 * @param name
+	 *            the name to sound out
+	 * @return the people with names that sound alike
+	 */
+	List<Person> findSoundingLike(String name) {
+		List<Person> found = new ArrayList<>();
+		for (Entry entry : bySound.getOrDefault(soundex(fold(name)),
+				Collections.emptyList())) {
+			found.addAll(entry.people);
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the people whose names are most like the given name, for
+	 * catching misspellings. Names are ranked by how many trigrams they share
+	 * with the given name (the Dice coefficient), and names that sound the
+	 * same are always included.
+	 * <p>
+	 * Candidates are found word by word. For each word of the given name, the
+	 * words spelled like it are found from the trigram postings; a word with
+	 * a similarity of at least {@link #MIN_WORD_SIMILARITY} must share a
+	 * minimum number of trigrams with it, so only the postings of its rarest
+	 * trigrams need to be read. The names containing the words similar to the
+	 * most selective word of the given name are then scored as whole names.
+	 *
+	 * @param name
+	 *            the name to match
+	 * @param limit
+	 *            the most people to return
+	 * @return the matching people, most similar first
+	 */
+	List<Person> findSimilar(String name, int limit) {
+		String folded = fold(name);
+		long[] query = trigrams(folded);
+		Map<Entry, Double> scores = new IdentityHashMap<>();
+
+		for (Entry entry : bySound.getOrDefault(soundex(folded),
+				Collections.emptyList())) {
+			scores.put(entry, similarity(query, entry.trigrams));
+		}
+
+		// the word whose look-alikes appear in the fewest names
+		List<Word> narrowest = Collections.emptyList();
+		int narrowestSize = Integer.MAX_VALUE;
+		for (String text : distinctWords(folded)) {
+			List<Word> alike = similarWords(text);
+			int size = 0;
+			for (Word word : alike) {
+				size += word.entries.size();
+			}
+			if (size < narrowestSize) {
+				narrowest = alike;
+				narrowestSize = size;
+			}
+		}
+		for (Word word : narrowest) {
+			for (Entry entry : word.entries) {
+				double score = similarity(query, entry.trigrams);
+				if (score >= MIN_SIMILARITY) {
+					scores.putIfAbsent(entry, score);
+				}
+			}
+		}
+
+		List<Entry> ranked = new ArrayList<>();
+		for (Entry entry : scores.keySet()) {
+			if (!entry.people.isEmpty()) {
+				ranked.add(entry);
+			}
+		}
+		ranked.sort((a, b) -> {
+			int order = Double.compare(scores.get(b), scores.get(a));
+			return order != 0 ? order : a.name.compareTo(b.name);
+		});
+
+		List<Person> found = new ArrayList<>();
+		for (Entry entry : ranked) {
+			for (Person person : entry.people) {
+				if (found.size() == limit) {
+					return found;
+				}
+				found.add(person);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the words spelled like the given word. A word with a Dice
+	 * similarity of at least {@link #MIN_WORD_SIMILARITY} shares at least
+	 * s * n / (2 - s) of the n trigrams of the given word, so it contains at
+	 * least one of the rarest n - that + 1 of them.
+	 */
+	private List<Word> similarWords(String text) {
+		long[] query = trigrams(text);
+		List<List<Word>> postings = new ArrayList<>(query.length);
+		for (long trigram : query) {
+			postings.add(
+					byTrigram.getOrDefault(trigram, Collections.emptyList()));
+		}
+		postings.sort((a, b) -> Integer.compare(a.size(), b.size()));
+		int minShared = (int) Math.ceil(MIN_WORD_SIMILARITY * query.length
+				/ (2 - MIN_WORD_SIMILARITY));
+
+		Set<Word> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<Word> alike = new ArrayList<>();
+		for (List<Word> posting : postings.subList(0,
+				query.length - Math.max(minShared, 1) + 1)) {
+			for (Word word : posting) {
+				if (seen.add(word) && similarity(query,
+						word.trigrams) >= MIN_WORD_SIMILARITY) {
+					alike.add(word);
+				}
+			}
+		}
+		return alike;
+	}
+
+	/**
+	 * Returns the word for some text, filing a new one in the trie and the
+	 * trigram postings if needed.
+	 */
+	private Word word(String text) {
+		Word word = words.get(text);
+		if (word == null) {
+			word = new Word(text, trigrams(text));
+			words.put(text, word);
+			trie.insert(text, word);
+			for (long trigram : word.trigrams) {
+				byTrigram.computeIfAbsent(trigram, k -> new ArrayList<>(2))
+						.add(word);
+			}
+		}
+		return word;
+	}
+
+	/**
+	 * Case-folds a name so that lookups behave like equalsIgnoreCase, the same
+	 * way as {@link NameDictionary#fold(String)}.
+	 */
+	static String fold(String name) {
+		return name == null ? "" : NameDictionary.fold(name);
+	}
+
+	/**
+	 * Computes the Soundex code of every word of a folded name, separated by
+	 * spaces. Accents are dropped first, and characters other than the letters
+	 * a to z are ignored.
+	 */
+	static String soundex(String folded) {
+		StringBuilder codes = new StringBuilder();
+		String plain = folded;
+
+		for (int i = 0; i < folded.length(); i++) {
+			if (folded.charAt(i) >= 0x80) {
+				plain = ACCENTS.matcher(
+						Normalizer.normalize(folded, Normalizer.Form.NFD))
+						.replaceAll("");
+				break;
+			}
+		}
+		for (String word : words(plain)) {
+			char[] code = { 0, '0', '0', '0' };
+			int length = 0;
+			char last = 0;
+
+			for (int i = 0; i < word.length() && length < 4; i++) {
+				char c = word.charAt(i);
+				if (c < 'a' || c > 'z') {
+					continue;
+				}
+				char digit = SOUNDEX_CODES.charAt(c - 'a');
+				if (length == 0) {
+					code[length++] = Character.toUpperCase(c);
+				} else if (digit != '0' && digit != last) {
+					code[length++] = digit;
+				}
+				// h and w do not separate letters with the same code
+				if (c != 'h' && c != 'w') {
+					last = digit;
+				}
+			}
+			if (length > 0) {
+				if (codes.length() > 0) {
+					codes.append(' ');
+				}
+				codes.append(code);
+			}
+		}
+		return codes.toString();
+	}
+
+	/**
+	 * Tells whether a name starts with the given words, the last of which may
+	 * be cut short.
+	 */
+	private static boolean startsWith(List<String> name, List<String> prefix) {
+		if (name.size() < prefix.size()) {
+			return false;
+		}
+		int last = prefix.size() - 1;
+		return name.subList(0, last).equals(prefix.subList(0, last))
+				&& name.get(last).startsWith(prefix.get(last));
+	}
+
+	/**
+	 * Splits a folded name into its words, each listed once.
+	 */
+	private static List<String> distinctWords(String folded) {
+		List<String> words = words(folded);
+		for (int i = words.size() - 1; i > 0; i--) {
+			if (words.indexOf(words.get(i)) < i) {
+				words.remove(i);
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Splits a folded name into its words.
+	 */
+	private static List<String> words(String folded) {
+		List<String> words = new ArrayList<>(2);
+		int start = -1;
+
+		for (int i = 0; i <= folded.length(); i++) {
+			boolean space = i == folded.length()
+					|| Character.isWhitespace(folded.charAt(i));
+			if (space && start >= 0) {
+				words.add(folded.substring(start, i));
+				start = -1;
+			} else if (!space && start < 0) {
+				start = i;
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Computes the distinct trigrams of a folded name, each packed into a
+	 * long, in ascending order. The name is padded with a space on both sides
+	 * so that its first and last letters count.
+	 */
+	static long[] trigrams(String folded) {
+		String padded = " " + folded + " ";
+		if (padded.length() < 3) {
+			return new long[0];
+		}
+		long[] trigrams = new long[padded.length() - 2];
+		for (int i = 0; i < trigrams.length; i++) {
+			trigrams[i] = (long) padded.charAt(i) << 32
+					| (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+		}
+		Arrays.sort(trigrams);
+
+		int count = 0;
+		for (int i = 0; i < trigrams.length; i++) {
+			if (count == 0 || trigrams[count - 1] != trigrams[i]) {
+				trigrams[count++] = trigrams[i];
+			}
+		}
+		return Arrays.copyOf(trigrams, count);
+	}
+
+	/**
+	 * The Dice coefficient of two sorted sets of trigrams.
+	 */
+	static double similarity(long[] a, long[] b) {
+		if (a.length + b.length == 0) {
+			return 1;
+		}
+		int shared = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				shared++;
+				i++;
+				j++;
+			}
+		}
+		return 2.0 * shared / (a.length + b.length);
+	}
+
+	/**
+	 * One distinct folded name and the people who have it.
+	 */
+	private static final class Entry {
+		final String name;
+		final long[] trigrams;
+		final List<Person> people = new ArrayList<>(1);
+
+		Entry(String name, long[] trigrams) {
+			this.name = name;
+			this.trigrams = trigrams;
+		}
+	}
+
+	/**
+	 * One distinct word and the names it appears in.
+	 */
+	private static final class Word {
+		final String text;
+		final long[] trigrams;
+		final List<Entry> entries = new ArrayList<>(1);
+
+		Word(String text, long[] trigrams) {
+			this.text = text;
+			this.trigrams = trigrams;
+		}
+	}
+
+	/**
+	 * Visitor of the words in the trie; returns false to stop.
+	 */
+	private interface WordVisitor {
+		boolean visit(Word word);
+	}
+
+	/**
+	 * A node of the compressed trie. Each edge into a node is labelled with
+	 * a run of characters, so chains of single children are stored as one
+	 * node. Children are kept sorted by their first character.
+	 */
+	private static final class Node {
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		String label;
+		Node[] children = NO_CHILDREN;
+		Word word;
+
+		Node(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * Files a word under its text, relative to this node.
+		 */
+		void insert(String text, Word word) {
+			Node node = this;
+			int at = 0;
+
+			while (at < text.length()) {
+				int index = node.find(text.charAt(at));
+				if (index < 0) {
+					Node leaf = new Node(text.substring(at));
+					leaf.word = word;
+					node.addChild(-index - 1, leaf);
+					return;
+				}
+				Node child = node.children[index];
+				int common = commonLength(child.label, text, at);
+				if (common < child.label.length()) {
+					// split the edge where the text leaves it
+					Node middle = new Node(child.label.substring(0, common));
+					child.label = child.label.substring(common);
+					middle.children = new Node[] { child };
+					node.children[index] = middle;
+					child = middle;
+				}
+				node = child;
+				at += common;
+			}
+			node.word = word;
+		}
+
+		/**
+		 * Visits every word starting with the prefix, in alphabetical order.
+		 */
+		void collect(String prefix, WordVisitor visitor) {
+			Node node = this;
+			int at = 0;
+
+			while (at < prefix.length()) {
+				int index = node.find(prefix.charAt(at));
+				if (index < 0) {
+					return;
+				}
+				node = node.children[index];
+				int common = commonLength(node.label, prefix, at);
+				if (common < node.label.length()
+						&& at + common < prefix.length()) {
+					return;
+				}
+				at += common;
+			}
+			node.visitAll(visitor);
+		}
+
+		private boolean visitAll(WordVisitor visitor) {
+			if (word != null && !visitor.visit(word)) {
+				return false;
+			}
+			for (Node child : children) {
+				if (!child.visitAll(visitor)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Binary search of the children by first character; returns
+		 * -(insertion point) - 1 if there is no such child.
+		 */
+		private int find(char first) {
+			int low = 0;
+			int high = children.length - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				char found = children[middle].label.charAt(0);
+				if (found < first) {
+					low = middle + 1;
+				} else if (found > first) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -low - 1;
+		}
+
+		private void addChild(int index, Node child) {
+			Node[] grown = new Node[children.length + 1];
+			System.arraycopy(children, 0, grown, 0, index);
+			grown[index] = child;
+			System.arraycopy(children, index, grown, index + 1,
+					children.length - index);
+			children = grown;
+		}
+
+		private static int commonLength(String label, String text, int at) {
+			int length = 0;
+			while (length < label.length() && at + length < text.length()
+					&& label.charAt(length) == text.charAt(at + length)) {
+				length++;
+			}
+			return length;
+		}
+	}
+}
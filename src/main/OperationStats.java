@@ -0,0 +1,141 @@
+package main;
+
+/**
+ * What one kind of family tree operation has cost since the counters were
+ * last reset, read from {@link TreeMetrics}. Latency percentiles come from a
+ * histogram with power-of-two buckets, so they are upper bounds that can be
+ * up to twice the true value.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class OperationStats {
+	private final String operation;
+	private final long calls;
+	private final long slowCalls;
+	private final long nodesVisited;
+	private final long maxQueue;
+	private final long equalsCalls;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long[] histogram;
+
+	OperationStats(String operation, long calls, long slowCalls,
+			long nodesVisited, long maxQueue, long equalsCalls,
+			long totalNanos, long maxNanos, long[] histogram) {
+		this.operation = operation;
+		this.calls = calls;
+		this.slowCalls = slowCalls;
+		this.nodesVisited = nodesVisited;
+		this.maxQueue = maxQueue;
+		this.equalsCalls = equalsCalls;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * @return the name of the operation
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return how many times the operation ran
+	 */
+	public long getCalls() {
+		return calls;
+	}
+
+	/**
+	 * @return how many times the operation was slower than the slow query
+	 *         threshold
+	 */
+	public long getSlowCalls() {
+		return slowCalls;
+	}
+
+	/**
+	 * @return the number of people visited by the walks of all calls
+	 */
+	public long getNodesVisited() {
+		return nodesVisited;
+	}
+
+	/**
+	 * @return the most people waiting in one walk's queue at once
+	 */
+	public long getMaxQueue() {
+		return maxQueue;
+	}
+
+	/**
+	 * @return the number of calls to {@link Person#equals(Object)}, or 0
+	 *         unless equals calls are counted
+	 */
+	public long getEqualsCalls() {
+		return equalsCalls;
+	}
+
+	/**
+	 * @return the average time taken, in microseconds
+	 */
+	public double getMeanMicros() {
+		return calls == 0 ? 0 : totalNanos / 1e3 / calls;
+	}
+
+	/**
+	 * @return the longest time taken, in microseconds
+	 */
+	public double getMaxMicros() {
+		return maxNanos / 1e3;
+	}
+
+	/**
+	 * @return the median time taken, in microseconds
+	 */
+	public double getP50Micros() {
+		return percentileMicros(0.5);
+	}
+
+	/**
+	 * @return the time 99% of calls took at most, in microseconds
+	 */
+	public double getP99Micros() {
+		return percentileMicros(0.99);
+	}
+
+	/**
+	 * Estimates the time that a given share of calls took at most.
+	 *
+	 * @param fraction
+	 *            the share of calls, between 0 and 1
+	 * @return the upper bound of the histogram bucket the share falls in, in
+	 *         microseconds
+	 */
+	public double percentileMicros(double fraction) {
+		long rank = (long) Math.ceil(fraction * calls);
+		long seen = 0;
+
+		for (int i = 0; i < histogram.length; i++) {
+			seen += histogram[i];
+			if (seen >= rank && seen > 0) {
+				// bucket i holds times below 2^(i + 1) nanoseconds
+				return Math.min(Math.scalb(1.0, i + 1), maxNanos) / 1e3;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s: %d calls (%d slow), mean %.1f us, p50 %.1f us, "
+						+ "p99 %.1f us, max %.1f us, %d visited, "
+						+ "queue %d, %d equals",
+				operation, calls, slowCalls, getMeanMicros(), getP50Micros(),
+				getP99Micros(), getMaxMicros(), nodesVisited, maxQueue,
+				equalsCalls);
+	}
+}
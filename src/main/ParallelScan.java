@@ -0,0 +1,107 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Tests every person of a tree against a condition on all cores. The rows to
+ * scan are split in halves as fork-join tasks until each piece is small
+ * enough to scan on one thread, and the matches of the pieces are joined in
+ * row order, so the result is the same as a sequential scan.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public final class ParallelScan {
+	// Rows scanned by one task; small enough to balance, large enough that
+	// splitting costs little next to scanning
+	private static final int LEAF_SIZE = 1 << 13;
+
+	private ParallelScan() {
+	}
+
+	/**
+	 * Finds every person in a list that matches a condition.
+	 *
+	 * @param people
+	 *            the people to scan; must not change during the scan
+	 * @param match
+	 *            the condition, called from several threads at once
+	 * @return the matching people, in list order
+	 */
+	public static List<Person> findAll(List<Person> people,
+			Predicate<? super Person> match) {
+		List<Person> rows = people instanceof RandomAccess ? people
+				: new ArrayList<>(people);
+		int[] found = findRows(rows.size(), row -> match.test(rows.get(row)));
+		List<Person> result = new ArrayList<>(found.length);
+
+		for (int row : found) {
+			result.add(rows.get(row));
+		}
+		return result;
+	}
+
+	/**
+	 * Finds every row number below the given size that matches.
+	 */
+	static int[] findRows(int size, IntPredicate match) {
+		if (size <= LEAF_SIZE) {
+			return new Scan(0, size, match).compute();
+		}
+		return ForkJoinPool.commonPool().invoke(new Scan(0, size, match));
+	}
+
+	/**
+	 * Scans a range of rows, splitting it while it is larger than a leaf.
+	 */
+	private static final class Scan extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final IntPredicate match;
+
+		Scan(int from, int to, IntPredicate match) {
+			this.from = from;
+			this.to = to;
+			this.match = match;
+		}
+
+		@Override
+		protected int[] compute() {
+			if (to - from <= LEAF_SIZE) {
+				int[] found = new int[Math.min(to - from, 16)];
+				int count = 0;
+
+				for (int row = from; row < to; row++) {
+					if (match.test(row)) {
+						if (count == found.length) {
+							found = Arrays.copyOf(found, Math.min(to - from,
+									found.length * 2));
+						}
+						found[count++] = row;
+					}
+				}
+				return count == found.length ? found
+						: Arrays.copyOf(found, count);
+			}
+
+			int middle = (from + to) >>> 1;
+			Scan left = new Scan(from, middle, match);
+			left.fork();
+			int[] right = new Scan(middle, to, match).compute();
+			int[] first = left.join();
+
+			int[] joined = Arrays.copyOf(first, first.length + right.length);
+			System.arraycopy(right, 0, joined, first.length, right.length);
+			return joined;
+		}
+	}
+}
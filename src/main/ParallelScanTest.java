@@ -0,0 +1,71 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelScanTest {
+	private static final int LEAF_SIZE = 1 << 13;
+
+	private static List<Person> people(int count) {
+		List<Person> people = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			people.add(new Person("Person " + (i % 100),
+					i % 2 == 0 ? Sex.MALE : Sex.FEMALE));
+		}
+		return people;
+	}
+
+	@Test
+	void rowsComeInTheOrderOfASequentialScan() {
+		IntPredicate match = row -> row % 3 == 0 || row % 7 == 1;
+
+		for (int size : new int[] { 0, 1, LEAF_SIZE - 1, LEAF_SIZE,
+				LEAF_SIZE + 1, 3 * LEAF_SIZE + 5, 100_000 }) {
+			assertArrayEquals(IntStream.range(0, size).filter(match).toArray(),
+					ParallelScan.findRows(size, match), "size " + size);
+		}
+	}
+
+	@Test
+	void everyRowOrNoneCanMatch() {
+		int size = 2 * LEAF_SIZE + 1;
+
+		assertArrayEquals(IntStream.range(0, size).toArray(),
+				ParallelScan.findRows(size, row -> true));
+		assertEquals(0, ParallelScan.findRows(size, row -> false).length);
+	}
+
+	@Test
+	void listsWithoutRandomAccessAreScannedInOrder() {
+		List<Person> people = new LinkedList<>(people(LEAF_SIZE + 100));
+		Predicate<Person> match = PersonPredicates.ofGender(Sex.FEMALE)
+				.and(PersonPredicates.nameContains("7"));
+
+		assertEquals(
+				people.stream().filter(match).collect(Collectors.toList()),
+				ParallelScan.findAll(people, match));
+	}
+
+	@Test
+	void namedFindsWhatFindPeopleFinds() {
+		FamilyTree tree = new FamilyTree();
+		for (String name : new String[] { "Anne", "ANNE", "anne", "Ann",
+				"Annette", "Marie", "MARIE" }) {
+			tree.addPerson(new Person(name, Sex.FEMALE));
+		}
+
+		for (String name : new String[] { "anne", "Ann", "marie", "Mary" }) {
+			assertEquals(tree.findPeople(name),
+					tree.findAll(PersonPredicates.named(name)), name);
+		}
+	}
+}
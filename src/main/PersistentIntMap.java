@@ -0,0 +1,179 @@
+package main;
+
+/**
+ * An immutable map from int keys to values, stored as a trie of 32-way nodes
+ * indexed by five bits of the key at a time. Changing a map copies only the
+ * nodes on the path to the changed key, and shares the rest with the map it
+ * was made from, so old versions stay valid and cost nothing to keep around.
+ * <p>
+ * Changes are made through an {@link Editor}, which copies each node at most
+ * once and then changes its own copies in place, so a batch of changes costs
+ * no more than making them to a mutable array.
+ *
+ * @author Stephen Schroer
+ *
+ * @param <V>
+ *            the type of the values
+ */
+final class PersistentIntMap<V> {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(
+			null, 0);
+
+	private final Node root;
+	// how far the key is shifted to index the root
+	private final int shift;
+
+	private PersistentIntMap(Node root, int shift) {
+		this.root = root;
+		this.shift = shift;
+	}
+
+	/**
+	 * @param <V>
+	 *            the type of the values
+	 * @return the map without any keys
+	 */
+	@SuppressWarnings("unchecked")
+	static <V> PersistentIntMap<V> empty() {
+		return (PersistentIntMap<V>) EMPTY;
+	}
+
+	/**
+	 * Looks up the value of a key. Keys are compared as unsigned numbers, so
+	 * negative keys are allowed.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the value of the key, or null if it has none
+	 */
+	V get(int key) {
+		return find(root, shift, key);
+	}
+
+	/**
+	 * @return an editor that starts from this map and leaves it unchanged
+	 */
+	Editor<V> edit() {
+		return new Editor<>(root, shift);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> V find(Node root, int shift, int key) {
+		if (!fits(key, shift)) {
+			return null;
+		}
+		Node node = root;
+		for (int level = shift; node != null; level -= BITS) {
+			Object slot = node.slots[(key >>> level) & MASK];
+			if (level == 0) {
+				return (V) slot;
+			}
+			node = (Node) slot;
+		}
+		return null;
+	}
+
+	private static boolean fits(int key, int shift) {
+		return shift + BITS >= Integer.SIZE || key >>> (shift + BITS) == 0;
+	}
+
+	/**
+	 * Makes changes to a copy of a map. An editor is used by one thread at a
+	 * time.
+	 *
+	 * @param <V>
+	 *            the type of the values
+	 */
+	static final class Editor<V> {
+		// marks the nodes this editor made, which it may change in place
+		private Object owner = new Object();
+		private Node root;
+		private int shift;
+
+		private Editor(Node root, int shift) {
+			this.root = root;
+			this.shift = shift;
+		}
+
+		/**
+		 * Looks up the value of a key, including changes not yet done.
+		 *
+		 * @param key
+		 *            the key
+		 * @return the value of the key, or null if it has none
+		 */
+		V get(int key) {
+			return find(root, shift, key);
+		}
+
+		/**
+		 * Sets the value of a key.
+		 *
+		 * @param key
+		 *            the key
+		 * @param value
+		 *            the new value, or null to remove the key
+		 * @return this editor
+		 */
+		Editor<V> put(int key, V value) {
+			if (root == null) {
+				root = new Node(owner);
+			}
+			while (!fits(key, shift)) {
+				// add a level above the root
+				Node above = new Node(owner);
+				above.slots[0] = root;
+				root = above;
+				shift += BITS;
+			}
+			root = owned(root);
+			Node node = root;
+			for (int level = shift; level > 0; level -= BITS) {
+				int index = (key >>> level) & MASK;
+				Node child = (Node) node.slots[index];
+				child = child == null ? new Node(owner) : owned(child);
+				node.slots[index] = child;
+				node = child;
+			}
+			node.slots[key & MASK] = value;
+			return this;
+		}
+
+		/**
+		 * Finishes editing. The editor can go on making changes afterwards
+		 * without affecting the map it returned.
+		 *
+		 * @return the map with the changes made so far
+		 */
+		PersistentIntMap<V> done() {
+			owner = new Object();
+			return root == null ? empty() : new PersistentIntMap<>(root, shift);
+		}
+
+		private Node owned(Node node) {
+			return node.owner == owner ? node : node.copy(owner);
+		}
+	}
+
+	private static final class Node {
+		final Object owner;
+		final Object[] slots;
+
+		Node(Object owner) {
+			this(owner, new Object[WIDTH]);
+		}
+
+		private Node(Object owner, Object[] slots) {
+			this.owner = owner;
+			this.slots = slots;
+		}
+
+		Node copy(Object newOwner) {
+			return new Node(newOwner, slots.clone());
+		}
+	}
+}
@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * This is the person object.
@@ -13,7 +15,14 @@ import java.util.Objects;
  *
  */
 public class Person {
-	private String name;
+	// Source of person IDs, shared by all trees so IDs never collide
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+	private final int id;
+	// given names and surname, coded in the shared NameDictionary
+	private long name;
+	// the name itself, only when the dictionary was too full to code it
+	private String spelled;
 	private final Sex gender;
 	private LocalDate birthday;
 	private LocalDate deathdate;
@@ -24,6 +33,9 @@ public class Person {
 	private boolean isMarried;
 	private final List<Person> children;
 	private final List<Person> partners;
+	private FamilyTree tree;
+	// position in the tree's families, or -1 before joining a tree
+	private int row = -1;
 
 	/**
 	 * This method creates a person who's sex is known.
@@ -32,7 +44,8 @@ public class Person {
 	 *            The gender of the person. Must be either "male" or "female".
 	 */
 	protected Person(Sex gender) {
-		name = "";
+		id = NEXT_ID.getAndIncrement();
+		spell("");
 		this.gender = gender;
 		birthday = null;
 		deathdate = null;
@@ -55,7 +68,8 @@ public class Person {
 	 *             If the gender provided is not "male" or "female".
 	 */
 	public Person(String name, String gender) throws GenderException {
-		this.name = name;
+		this.id = NEXT_ID.getAndIncrement();
+		spell(name);
 		this.gender = parseGender(gender);
 		this.birthday = null;
 		this.deathdate = null;
@@ -83,7 +97,8 @@ public class Person {
 	 */
 	public Person(String name, String gender, LocalDate birthday,
 			LocalDate deathdate) throws GenderException {
-		this.name = name;
+		this.id = NEXT_ID.getAndIncrement();
+		spell(name);
 		this.gender = parseGender(gender);
 		this.birthday = birthday;
 		this.deathdate = deathdate;
@@ -109,7 +124,8 @@ public class Person {
 	 */
 	public Person(String name, String gender, LocalDate birthday)
 			throws GenderException {
-		this.name = name;
+		this.id = NEXT_ID.getAndIncrement();
+		spell(name);
 		this.gender = parseGender(gender);
 		this.birthday = birthday;
 		this.deathdate = null;
@@ -132,7 +148,8 @@ public class Person {
 	 *            The gender of the person.
 	 */
 	protected Person(String name, Sex gender) {
-		this.name = name;
+		this.id = NEXT_ID.getAndIncrement();
+		spell(name);
 		this.gender = gender;
 		this.birthday = null;
 		this.deathdate = null;
@@ -144,10 +161,70 @@ public class Person {
 
 	}
 
+	/**
+	 * Recreates a person that was stored with the given ID. The person keeps
+	 * that ID only if no person created so far could have had it; otherwise,
+	 * for example when the same file is loaded twice, they get a new ID, so
+	 * two people never share one. People created afterwards get higher IDs.
+	 *
+	 * @param id
+	 *            The ID the person was stored with.
+	 * @param name
+	 *            The name of the person.
+	 * @param gender
+	 *            The gender of the person.
+	 */
+	Person(int id, String name, Sex gender) {
+		this.id = claimId(id);
+		spell(name);
+		this.gender = gender;
+		this.children = new ArrayList<>();
+		this.partners = new ArrayList<>();
+	}
+
+	/**
+	 * Takes the given ID if it is above every ID handed out so far, or else
+	 * the next free ID.
+	 *
+	 * @param id
+	 *            the ID wanted
+	 * @return the ID given
+	 */
+	private static int claimId(int id) {
+		while (true) {
+			int next = NEXT_ID.get();
+			if (id < next) {
+				return NEXT_ID.getAndIncrement();
+			}
+			if (NEXT_ID.compareAndSet(next, id + 1)) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Returns the ID of this person. IDs are assigned when the person is
+	 * created, never change and are never shared by two people.
+	 *
+	 * @return the id
+	 */
+	public int getId() {
+		return id;
+	}
+
 	/**
 	 * @return the name
 	 */
 	public String getName() {
+		return name == NameDictionary.UNCODED ? spelled
+				: NameDictionary.decode(name);
+	}
+
+	/**
+	 * @return the code of the name in the {@link NameDictionary}, or
+	 *         {@link NameDictionary#UNCODED} if only {@link #getName()} has it
+	 */
+	long getNameCode() {
 		return name;
 	}
 
@@ -156,7 +233,22 @@ public class Person {
 	 *            the name to set
 	 */
 	public void setName(String name) {
-		this.name = name;
+		checkWritable();
+		String oldName = getName();
+		spell(name);
+
+		if (tree != null) {
+			tree.nameChanged(this, oldName);
+		}
+	}
+
+	/**
+	 * Codes a name in the dictionary, keeping it as a string if it does not
+	 * fit.
+	 */
+	private void spell(String name) {
+		this.name = NameDictionary.encode(name);
+		spelled = this.name == NameDictionary.UNCODED ? name : null;
 	}
 
 	/**
@@ -204,7 +296,13 @@ public class Person {
 	 *            the birthday to set
 	 */
 	public void setBirthday(LocalDate birthday) {
+		checkWritable();
+		LocalDate oldBirthday = this.birthday;
 		this.birthday = birthday;
+
+		if (tree != null) {
+			tree.birthdayChanged(this, oldBirthday);
+		}
 	}
 
 	/**
@@ -219,7 +317,13 @@ public class Person {
 	 *            the deathdate to set
 	 */
 	public void setDeathdate(LocalDate deathdate) {
+		checkWritable();
+		LocalDate oldDeathdate = this.deathdate;
 		this.deathdate = deathdate;
+
+		if (tree != null) {
+			tree.deathdateChanged(this, oldDeathdate);
+		}
 	}
 
 	/**
@@ -234,7 +338,12 @@ public class Person {
 	 *            the mother to set
 	 */
 	public void setMother(Person mother) {
+		checkWritable();
 		this.mother = mother;
+
+		if (tree != null) {
+			tree.parentsChanged(this);
+		}
 	}
 
 	/**
@@ -249,7 +358,12 @@ public class Person {
 	 *            the father to set
 	 */
 	public void setFather(Person father) {
+		checkWritable();
 		this.father = father;
+
+		if (tree != null) {
+			tree.parentsChanged(this);
+		}
 	}
 
 	/**
@@ -259,19 +373,33 @@ public class Person {
 	 *         no parents, an empty list is returned.
 	 */
 	public List<Person> getParents() {
-		List<Person> parents = new ArrayList<>();
-
-		if (getFather() == null && getMother() == null) {
-			return Collections.emptyList();
-		}
-		if (getFather() != null) {
-			parents.add(getFather());
-		}
-		if (getMother() != null) {
-			parents.add(getMother());
+		if (father == null) {
+			return mother == null ? Collections.emptyList() : List.of(mother);
 		}
+		return mother == null ? List.of(father) : List.of(father, mother);
+	}
 
-		return parents;
+	/**
+	 * Returns the blood ancestors of this person, nearest first: parents,
+	 * then grandparents and so on. The ancestors are found as the stream is
+	 * read, so {@code ancestors().anyMatch(...)} stops at the first match.
+	 *
+	 * @return the ancestors, each once, in breadth-first order
+	 */
+	public Stream<Person> ancestors() {
+		return Traversal.overParents().stream(this,
+				Traversal.Order.BREADTH_FIRST, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the descendants of this person, by birth or adoption, nearest
+	 * first. The descendants are found as the stream is read.
+	 *
+	 * @return the descendants, each once, in breadth-first order
+	 */
+	public Stream<Person> descendants() {
+		return Traversal.overChildren().stream(this,
+				Traversal.Order.BREADTH_FIRST, Integer.MAX_VALUE);
 	}
 
 	/**
@@ -285,7 +413,11 @@ public class Person {
 	 * @param guardian the guardian to set
 	 */
 	public void setGuardian(Person guardian) {
+		checkWritable();
 		this.guardian = guardian;
+		if (tree != null) {
+			tree.guardianChanged(this);
+		}
 	}
 
 	/**
@@ -299,7 +431,11 @@ public class Person {
 	 * @param wasAdopted the wasAdopted to set
 	 */
 	public void setWasAdopted(boolean wasAdopted) {
+		checkWritable();
 		this.wasAdopted = wasAdopted;
+		if (tree != null) {
+			tree.changed(this);
+		}
 	}
 
 	/**
@@ -314,7 +450,11 @@ public class Person {
 	 *            the isMarried to set
 	 */
 	public void setMarried(boolean isMarried) {
+		checkWritable();
 		this.isMarried = isMarried;
+		if (tree != null) {
+			tree.changed(this);
+		}
 	}
 
 	/**
@@ -410,7 +550,15 @@ public class Person {
 	 *         already present in the list of children.
 	 */
 	public boolean addChild(Person child) {
-		if (!children.contains(child)) {
+		if (children.contains(child)) {
+			return false;
+		}
+		FamilyTree family = tree;
+		if (family != null) {
+			// snapshots see the parent and child change together
+			family.beginChange();
+		}
+		try {
 			children.add(child);
 			// Set this person as the parent of the child
 			if (gender == Sex.FEMALE) {
@@ -418,9 +566,57 @@ public class Person {
 			} else {
 				child.setFather(this);
 			}
+			// Children of a tree member become members of the same tree
+			if (family != null) {
+				family.changed(this);
+				family.register(child);
+			}
 			return true;
+		} finally {
+			if (family != null) {
+				family.endChange();
+			}
+		}
+	}
+
+	/**
+	 * Refuses a change to a person in a tree whose journal can no longer
+	 * record it, before anything is changed.
+	 */
+	private void checkWritable() {
+		if (tree != null) {
+			tree.checkJournal();
 		}
-		return false;
+	}
+
+	/**
+	 * @return the tree this person is registered with, or null if none
+	 */
+	FamilyTree getTree() {
+		return tree;
+	}
+
+	/**
+	 * @param tree
+	 *            the tree this person is registered with
+	 */
+	void setTree(FamilyTree tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * @return the row of this person in the families of their tree, or -1
+	 */
+	int getRow() {
+		return row;
+	}
+
+	/**
+	 * @param row
+	 *            the row of this person in the families of their tree
+	 */
+	void setRow(int row) {
+		this.row = row;
 	}
 
 	/**
@@ -436,23 +632,45 @@ public class Person {
 		return target.getChildren().contains(this);
 	}
 
+	/**
+	 * Describes this person. Relatives are shown by ID so the description
+	 * stays short however large the family is.
+	 */
 	@Override
 	public String toString() {
-		return "Person [name=" + name + ", gender=" + gender + ", birthday="
-				+ birthday + ", deathdate=" + deathdate + ", mother=" + mother
-				+ ", father=" + father + ", guardian=" + guardian
-				+ ", wasAdopted=" + wasAdopted + ", isMarried=" + isMarried
-				+ ", children=" + children + ", partners=" + partners + "]";
+		return "Person [id=" + id + ", name=" + getName() + ", gender=" + gender
+				+ ", birthday=" + birthday + ", deathdate=" + deathdate
+				+ ", mother=" + idOf(mother) + ", father=" + idOf(father)
+				+ ", guardian=" + idOf(guardian) + ", wasAdopted=" + wasAdopted
+				+ ", isMarried=" + isMarried + ", children=" + idsOf(children)
+				+ ", partners=" + idsOf(partners) + "]";
+	}
+
+	private static Integer idOf(Person person) {
+		return person == null ? null : person.id;
+	}
+
+	private static List<Integer> idsOf(List<Person> people) {
+		List<Integer> ids = new ArrayList<>(people.size());
+		for (Person person : people) {
+			ids.add(person.id);
+		}
+		return ids;
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(birthday, children, deathdate, father, gender,
-				guardian, isMarried, mother, name, partners, wasAdopted);
+		return Integer.hashCode(id);
 	}
 
+	/**
+	 * Two Person objects are equal if they have the same ID. Use
+	 * {@link #deepEquals(Person)} to compare what is recorded about them.
+	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (TreeMetrics.COUNT_EQUALS)
+			TreeMetrics.equalsCalled();
 		if (this == obj)
 			return true;
 		if (obj == null)
@@ -460,16 +678,35 @@ public class Person {
 		if (getClass() != obj.getClass())
 			return false;
 		Person other = (Person) obj;
+		return id == other.id;
+	}
+
+	/**
+	 * Compares everything recorded about two people, ignoring their IDs.
+	 * Relatives are compared by ID rather than recursively, so the comparison
+	 * is proportional to the number of children and partners.
+	 *
+	 * @param other
+	 *            the person to compare with
+	 * @return true if both people have the same details and the same
+	 *         relatives, otherwise false
+	 */
+	public boolean deepEquals(Person other) {
+		if (this == other)
+			return true;
+		if (other == null)
+			return false;
 		return Objects.equals(birthday, other.birthday)
-				&& Objects.equals(children, other.children)
 				&& Objects.equals(deathdate, other.deathdate)
-				&& Objects.equals(father, other.father)
 				&& gender == other.gender
-				&& Objects.equals(guardian, other.guardian)
 				&& isMarried == other.isMarried
+				&& name == other.name
+				&& Objects.equals(spelled, other.spelled)
+				&& wasAdopted == other.wasAdopted
+				&& Objects.equals(father, other.father)
 				&& Objects.equals(mother, other.mother)
-				&& Objects.equals(name, other.name)
-				&& Objects.equals(partners, other.partners)
-				&& wasAdopted == other.wasAdopted;
+				&& Objects.equals(guardian, other.guardian)
+				&& children.equals(other.children)
+				&& partners.equals(other.partners);
 	}
 }
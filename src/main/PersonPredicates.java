@@ -0,0 +1,102 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+/**
+ * Ready-made conditions on people for {@link FamilyTree#findAll(Predicate)}.
+ * They can be combined with {@link Predicate#and(Predicate)},
+ * {@link Predicate#or(Predicate)} and {@link Predicate#negate()}.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public final class PersonPredicates {
+	private PersonPredicates() {
+	}
+
+	/**
+	 * @param name
+	 *            the name to match, ignoring case
+	 * @return a condition met by people with exactly that name
+	 */
+	public static Predicate<Person> named(String name) {
+		if (name == null) {
+			return person -> false;
+		}
+		// compares name codes rather than building each person's name,
+		// except for names the dictionary was too full to code
+		long folded = NameDictionary.findFolded(name);
+		String text = NameDictionary.fold(name);
+		return person -> {
+			long code = person.getNameCode();
+			if (code == NameDictionary.UNCODED) {
+				return NameDictionary.fold(person.getName()).equals(text);
+			}
+			return folded != NameDictionary.NONE
+					&& NameDictionary.fold(code) == folded;
+		};
+	}
+
+	/**
+	 * @param part
+	 *            the text to look for, ignoring case
+	 * @return a condition met by people whose name contains the text
+	 */
+	public static Predicate<Person> nameContains(String part) {
+		String folded = NameDictionary.fold(part);
+		return person -> person.getName() != null
+				&& NameDictionary.fold(person.getName()).contains(folded);
+	}
+
+	/**
+	 * @param gender
+	 *            the gender to match
+	 * @return a condition met by people of that gender
+	 */
+	public static Predicate<Person> ofGender(Sex gender) {
+		return person -> person.getGender() == gender;
+	}
+
+	/**
+	 * @param from
+	 *            the first birthday to match, or null for no lower bound
+	 * @param to
+	 *            the last birthday to match, or null for no upper bound
+	 * @return a condition met by people born in the range, inclusive
+	 */
+	public static Predicate<Person> bornBetween(LocalDate from, LocalDate to) {
+		return person -> within(person.getBirthday(), from, to);
+	}
+
+	/**
+	 * @param from
+	 *            the first deathdate to match, or null for no lower bound
+	 * @param to
+	 *            the last deathdate to match, or null for no upper bound
+	 * @return a condition met by people who died in the range, inclusive
+	 */
+	public static Predicate<Person> diedBetween(LocalDate from, LocalDate to) {
+		return person -> within(person.getDeathdate(), from, to);
+	}
+
+	/**
+	 * @return a condition met by people who were adopted
+	 */
+	public static Predicate<Person> adopted() {
+		return Person::isWasAdopted;
+	}
+
+	/**
+	 * @return a condition met by people who are married
+	 */
+	public static Predicate<Person> married() {
+		return Person::isMarried;
+	}
+
+	private static boolean within(LocalDate date, LocalDate from,
+			LocalDate to) {
+		return date != null && (from == null || !date.isBefore(from))
+				&& (to == null || !date.isAfter(to));
+	}
+}
@@ -0,0 +1,198 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * What was recorded about a person at one point in time, as seen in a
+ * {@link TreeSnapshot}. Records never change; relatives are referred to by
+ * ID and looked up in the snapshot the record came from.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public final class PersonRecord {
+	/**
+	 * ID used when a relative is not known.
+	 */
+	public static final int NONE = -1;
+
+	private final int id;
+	private final long name;
+	// the name itself, only when the dictionary was too full to code it
+	private final String spelled;
+	private final Sex gender;
+	private final LocalDate birthday;
+	private final LocalDate deathdate;
+	private final int mother;
+	private final int father;
+	private final int guardian;
+	private final boolean wasAdopted;
+	private final boolean isMarried;
+	private final int[] children;
+	private final int[] partners;
+
+	PersonRecord(int id, String name, Sex gender, LocalDate birthday,
+			LocalDate deathdate, int mother, int father, int guardian,
+			boolean wasAdopted, boolean isMarried, int[] children,
+			int[] partners) {
+		this(id, NameDictionary.encode(name), name, gender, birthday,
+				deathdate, mother, father, guardian, wasAdopted, isMarried,
+				children, partners);
+	}
+
+	private PersonRecord(int id, long name, String spelled, Sex gender,
+			LocalDate birthday, LocalDate deathdate, int mother, int father,
+			int guardian, boolean wasAdopted, boolean isMarried,
+			int[] children, int[] partners) {
+		this.id = id;
+		this.name = name;
+		this.spelled = name == NameDictionary.UNCODED ? spelled : null;
+		this.gender = gender;
+		this.birthday = birthday;
+		this.deathdate = deathdate;
+		this.mother = mother;
+		this.father = father;
+		this.guardian = guardian;
+		this.wasAdopted = wasAdopted;
+		this.isMarried = isMarried;
+		this.children = children;
+		this.partners = partners;
+	}
+
+	/**
+	 * Records the current state of a person.
+	 *
+	 * @param person
+	 *            the person to record
+	 * @return a record of the person
+	 */
+	static PersonRecord of(Person person) {
+		long name = person.getNameCode();
+		return new PersonRecord(person.getId(), name,
+				name == NameDictionary.UNCODED ? person.getName() : null,
+				person.getGender(), person.getBirthday(),
+				person.getDeathdate(), idOf(person.getMother()),
+				idOf(person.getFather()), idOf(person.getGuardian()),
+				person.isWasAdopted(), person.isMarried(),
+				idsOf(person.getChildren()), idsOf(person.getPartners()));
+	}
+
+	/**
+	 * @return the ID
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name == NameDictionary.UNCODED ? spelled
+				: NameDictionary.decode(name);
+	}
+
+	/**
+	 * @return the gender
+	 */
+	public Sex getGender() {
+		return gender;
+	}
+
+	/**
+	 * @return the birthday, or null if not known
+	 */
+	public LocalDate getBirthday() {
+		return birthday;
+	}
+
+	/**
+	 * @return the deathdate, or null if still alive
+	 */
+	public LocalDate getDeathdate() {
+		return deathdate;
+	}
+
+	/**
+	 * @return the ID of the mother, or {@link #NONE}
+	 */
+	public int getMotherId() {
+		return mother;
+	}
+
+	/**
+	 * @return the ID of the father, or {@link #NONE}
+	 */
+	public int getFatherId() {
+		return father;
+	}
+
+	/**
+	 * @return the ID of the adoptive parent, or {@link #NONE}
+	 */
+	public int getGuardianId() {
+		return guardian;
+	}
+
+	/**
+	 * @return the wasAdopted
+	 */
+	public boolean isWasAdopted() {
+		return wasAdopted;
+	}
+
+	/**
+	 * @return the isMarried
+	 */
+	public boolean isMarried() {
+		return isMarried;
+	}
+
+	/**
+	 * @return a copy of the IDs of the children
+	 */
+	public int[] getChildIds() {
+		return children.clone();
+	}
+
+	/**
+	 * @return a copy of the IDs of the partners, the current spouse last
+	 */
+	public int[] getPartnerIds() {
+		return partners.clone();
+	}
+
+	/**
+	 * @return the IDs of the children, not to be changed
+	 */
+	int[] children() {
+		return children;
+	}
+
+	/**
+	 * @return the IDs of the partners, not to be changed
+	 */
+	int[] partners() {
+		return partners;
+	}
+
+	@Override
+	public String toString() {
+		return "PersonRecord [id=" + id + ", name=" + getName() + ", gender="
+				+ gender + ", birthday=" + birthday + ", deathdate="
+				+ deathdate + "]";
+	}
+
+	private static int idOf(Person person) {
+		return person == null ? NONE : person.getId();
+	}
+
+	private static int[] idsOf(List<Person> people) {
+		int[] ids = new int[people.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = people.get(i).getId();
+		}
+		return ids;
+	}
+}
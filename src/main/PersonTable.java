@@ -0,0 +1,285 @@
+package main;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A read-only family tree stored as rows of people. Relatives are referred to
+ * by row number, and rows are ordered by person ID.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public interface PersonTable {
+	/**
+	 * Row number used when a relative is not known.
+	 */
+	int NONE = -1;
+
+	/**
+	 * Epoch day used when a date is not known.
+	 */
+	int NO_DATE = Integer.MIN_VALUE;
+
+	/**
+	 * @return the number of people in the table
+	 */
+	int size();
+
+	/**
+	 * @return the row of the head of the tree, or {@link #NONE}
+	 */
+	int head();
+
+	/**
+	 * Finds the row of the person with the given ID.
+	 *
+	 * @param id
+	 *            the ID to look for
+	 * @return the row of the person, or {@link #NONE} if not stored
+	 */
+	int rowOf(int id);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the ID of the person in the row
+	 */
+	int id(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the name of the person in the row
+	 */
+	String name(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the gender of the person in the row
+	 */
+	Sex gender(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return true if the person in the row was adopted
+	 */
+	boolean isAdopted(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return true if the person in the row is married
+	 */
+	boolean isMarried(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the birthday as an epoch day, or {@link #NO_DATE}
+	 */
+	int birthEpochDay(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the deathdate as an epoch day, or {@link #NO_DATE}
+	 */
+	int deathEpochDay(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the row of the mother, or {@link #NONE}
+	 */
+	int mother(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the row of the father, or {@link #NONE}
+	 */
+	int father(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the row of the guardian, or {@link #NONE}
+	 */
+	int guardian(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the number of children of the person in the row
+	 */
+	int childCount(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @param index
+	 *            the position of the child, from 0 to childCount - 1
+	 * @return the row of the child
+	 */
+	int child(int row, int index);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the number of partners of the person in the row
+	 */
+	int partnerCount(int row);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @param index
+	 *            the position of the partner, from 0 to partnerCount - 1
+	 * @return the row of the partner
+	 */
+	int partner(int row, int index);
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the birthday of the person in the row, or null
+	 */
+	default LocalDate birthday(int row) {
+		return toDate(birthEpochDay(row));
+	}
+
+	/**
+	 * @param row
+	 *            a row of the table
+	 * @return the deathdate of the person in the row, or null
+	 */
+	default LocalDate deathdate(int row) {
+		return toDate(deathEpochDay(row));
+	}
+
+	/**
+	 * Retrieves the spouse of the person in a row. As with
+	 * {@link Person#getSpouse()}, the current spouse is the last partner.
+	 *
+	 * @param row
+	 *            a row of the table
+	 * @return the row of the spouse, or {@link #NONE} if not married
+	 */
+	default int spouse(int row) {
+		int count = partnerCount(row);
+		return isMarried(row) && count > 0 ? partner(row, count - 1) : NONE;
+	}
+
+	/**
+	 * Visits the descendants of a person once each, in breadth-first order,
+	 * starting with the person themselves.
+	 *
+	 * @param row
+	 *            the row to start from
+	 * @param visitor
+	 *            called with each row; returns false to stop the walk
+	 * @return the number of rows visited
+	 */
+	default int forEachDescendant(int row, IntPredicate visitor) {
+		// both sized to the walk, not the table
+		RowSet visited = new RowSet();
+		int[] queue = new int[16];
+		int first = 0;
+		int last = 0;
+
+		queue[last++] = row;
+		visited.add(row);
+		while (first < last) {
+			int current = queue[first++];
+			if (!visitor.test(current)) {
+				break;
+			}
+			for (int k = 0, count = childCount(current); k < count; k++) {
+				int next = child(current, k);
+				if (visited.add(next)) {
+					if (last == queue.length) {
+						queue = Arrays.copyOf(queue, last * 2);
+					}
+					queue[last++] = next;
+				}
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Finds every row that matches a condition, testing the rows on all cores
+	 * in parallel.
+	 *
+	 * @param match
+	 *            the condition on a row number, called from several threads
+	 *            at once
+	 * @return the matching rows, in ascending order
+	 */
+	default int[] findRows(IntPredicate match) {
+		return ParallelScan.findRows(size(), match);
+	}
+
+	/**
+	 * Recreates the Person objects held by this table as a new family tree.
+	 * People keep their stored IDs unless someone created earlier may have
+	 * had them, as when a table is loaded twice; those people get new IDs,
+	 * and their relatives are linked to them by row, not by ID.
+	 *
+	 * @return a family tree with the people of this table
+	 */
+	default FamilyTree toFamilyTree() {
+		Person[] people = new Person[size()];
+		for (int row = 0; row < people.length; row++) {
+			people[row] = new Person(id(row), name(row), gender(row));
+			people[row].setBirthday(birthday(row));
+			people[row].setDeathdate(deathdate(row));
+			people[row].setWasAdopted(isAdopted(row));
+			people[row].setMarried(isMarried(row));
+		}
+		for (int row = 0; row < people.length; row++) {
+			Person person = people[row];
+			int mother = mother(row);
+			int father = father(row);
+			int guardian = guardian(row);
+
+			person.setMother(mother == NONE ? null : people[mother]);
+			person.setFather(father == NONE ? null : people[father]);
+			person.setGuardian(guardian == NONE ? null : people[guardian]);
+			for (int k = 0, count = childCount(row); k < count; k++) {
+				person.getChildren().add(people[child(row, k)]);
+			}
+			for (int k = 0, count = partnerCount(row); k < count; k++) {
+				person.getPartners().add(people[partner(row, k)]);
+			}
+		}
+		return new FamilyTree(head() == NONE ? null : people[head()],
+				Arrays.asList(people));
+	}
+
+	/**
+	 * Converts a date to the epoch day stored in a table.
+	 *
+	 * @param date
+	 *            the date, may be null
+	 * @return the epoch day, or {@link #NO_DATE}
+	 */
+	static int toEpochDay(LocalDate date) {
+		return date == null ? NO_DATE : Math.toIntExact(date.toEpochDay());
+	}
+
+	/**
+	 * Converts an epoch day stored in a table back to a date.
+	 *
+	 * @param epochDay
+	 *            the epoch day, or {@link #NO_DATE}
+	 * @return the date, or null
+	 */
+	static LocalDate toDate(int epochDay) {
+		return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+	}
+}
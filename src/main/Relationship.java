@@ -0,0 +1,207 @@
+package main;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * How one person is related to another by blood, found through their
+ * closest common ancestors. The relationship reads from the first person to
+ * the second: if {@code from} is the father of {@code to}, the name is
+ * "father".
+ *
+ * @param from
+ *            the person the relationship is described for
+ * @param to
+ *            the person they are related to
+ * @param commonAncestors
+ *            the closest common ancestors, sorted by ID; empty if the two
+ *            people are not related by blood
+ * @param fromGenerations
+ *            the generations between {@code from} and the common ancestors,
+ *            or -1 if there are none
+ * @param toGenerations
+ *            the generations between {@code to} and the common ancestors, or
+ *            -1 if there are none
+ *
+ * @author Stephen Schroer
+ *
+ */
+public record Relationship(Person from, Person to,
+		List<Person> commonAncestors, int fromGenerations, int toGenerations) {
+	private static final String[] ORDINAL_WORDS = { "zeroth", "first",
+			"second", "third", "fourth", "fifth", "sixth", "seventh", "eighth",
+			"ninth", "tenth" };
+
+	/**
+	 * Creates a relationship, keeping an unmodifiable copy of the ancestors.
+	 */
+	public Relationship {
+		commonAncestors = List.copyOf(commonAncestors);
+	}
+
+	/**
+	 * @return true if the two people share an ancestor or one descends from
+	 *         the other
+	 */
+	public boolean isBloodRelated() {
+		return !commonAncestors.isEmpty();
+	}
+
+	/**
+	 * Checks whether the two people descend from only one of a couple, as
+	 * half siblings do. That is only known when the children of the common
+	 * ancestor they descend through have both parents recorded: a missing
+	 * parent may well be the one they share.
+	 *
+	 * @return true if the two people share one of their closest common
+	 *         ancestors and are known to have different ancestors in the
+	 *         other's place
+	 */
+	public boolean isHalf() {
+		if (commonAncestors.size() != 1 || fromGenerations <= 0
+				|| toGenerations <= 0) {
+			return false;
+		}
+		// with both parents recorded on each side, the other parents differ,
+		// or they would be a closest common ancestor too
+		Person ancestor = commonAncestors.get(0);
+		return haveBothParents(branches(from, fromGenerations, ancestor))
+				&& haveBothParents(branches(to, toGenerations, ancestor));
+	}
+
+	/**
+	 * Names what {@code from} is to {@code to}, for example "grandmother",
+	 * "half-brother", "2nd great-aunt" or "second cousin once removed". People
+	 * who are not related by blood are named by their partnership if they
+	 * have one, as "wife", "ex-husband" and so on.
+	 *
+	 * @return the name of the relationship, or "not related"
+	 */
+	public String name() {
+		if (!isBloodRelated()) {
+			return partnerName();
+		}
+		boolean female = from.getGender() == Sex.FEMALE;
+		String half = isHalf() ? "half-" : "";
+		int up = fromGenerations;
+		int down = toGenerations;
+
+		if (up == 0 && down == 0) {
+			return "self";
+		}
+		if (up == 0) {
+			return down == 1 ? (female ? "mother" : "father")
+					: greats(down - 2, female ? "grandmother" : "grandfather");
+		}
+		if (down == 0) {
+			return up == 1 ? (female ? "daughter" : "son")
+					: greats(up - 2, female ? "granddaughter" : "grandson");
+		}
+		if (up == 1 && down == 1) {
+			return half + (female ? "sister" : "brother");
+		}
+		if (up == 1) {
+			return half + greats(down - 2, female ? "aunt" : "uncle");
+		}
+		if (down == 1) {
+			return half + greats(up - 2, female ? "niece" : "nephew");
+		}
+
+		int degree = Math.min(up, down) - 1;
+		int removed = Math.abs(up - down);
+		String cousin = (isHalf() ? "half " : "") + ordinalWord(degree)
+				+ " cousin";
+		switch (removed) {
+		case 0:
+			return cousin;
+		case 1:
+			return cousin + " once removed";
+		case 2:
+			return cousin + " twice removed";
+		default:
+			return cousin + " " + removed + " times removed";
+		}
+	}
+
+	/**
+	 * Prefixes a name with the given number of "great"s, counting them once
+	 * there is more than one: "uncle", "great-uncle", "2nd great-uncle".
+	 */
+	private static String greats(int count, String name) {
+		if (count == 0) {
+			return name;
+		}
+		if (count == 1) {
+			return "great-" + name;
+		}
+		return ordinal(count) + " great-" + name;
+	}
+
+	private String partnerName() {
+		if (!to.getPartners().contains(from)) {
+			return "not related";
+		}
+		String partner = from.getGender() == Sex.FEMALE ? "wife" : "husband";
+		return from.isExOf(to) ? "ex-" + partner : partner;
+	}
+
+	/**
+	 * Finds the children of an ancestor that a person descends from, the
+	 * given number of generations up, the person themselves for one.
+	 */
+	private static Set<Person> branches(Person person, int generations,
+			Person ancestor) {
+		Set<Person> level = Set.of(person);
+		for (int i = 1; i < generations; i++) {
+			Set<Person> parents = new HashSet<>();
+			for (Person child : level) {
+				if (child.getMother() != null) {
+					parents.add(child.getMother());
+				}
+				if (child.getFather() != null) {
+					parents.add(child.getFather());
+				}
+			}
+			level = parents;
+		}
+		Set<Person> branches = new HashSet<>();
+		for (Person child : level) {
+			if (child.getMother() == ancestor
+					|| child.getFather() == ancestor) {
+				branches.add(child);
+			}
+		}
+		return branches;
+	}
+
+	private static boolean haveBothParents(Set<Person> people) {
+		for (Person person : people) {
+			if (person.getMother() == null || person.getFather() == null) {
+				return false;
+			}
+		}
+		return !people.isEmpty();
+	}
+
+	private static String ordinalWord(int n) {
+		return n < ORDINAL_WORDS.length ? ORDINAL_WORDS[n] : ordinal(n);
+	}
+
+	private static String ordinal(int n) {
+		int lastTwo = n % 100;
+		if (lastTwo >= 11 && lastTwo <= 13) {
+			return n + "th";
+		}
+		switch (n % 10) {
+		case 1:
+			return n + "st";
+		case 2:
+			return n + "nd";
+		case 3:
+			return n + "rd";
+		default:
+			return n + "th";
+		}
+	}
+}
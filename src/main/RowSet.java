@@ -0,0 +1,72 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A set of row numbers that grows with what is put in it rather than with
+ * the table the rows come from, so a walk over a few rows of a large table
+ * costs only those few. Rows are kept in an open-addressing hash table of
+ * ints with linear probing.
+ *
+ * @author Stephen Schroer
+ *
+ */
+final class RowSet {
+	private static final int EMPTY = -1;
+
+	private int[] slots = empty(16);
+	private int size;
+
+	/**
+	 * Adds a row to the set.
+	 *
+	 * @param row
+	 *            the row, not negative
+	 * @return true if the row was not in the set yet
+	 */
+	boolean add(int row) {
+		int mask = slots.length - 1;
+		int i = hash(row) & mask;
+		while (slots[i] != EMPTY) {
+			if (slots[i] == row) {
+				return false;
+			}
+			i = i + 1 & mask;
+		}
+		slots[i] = row;
+		// at most half full, so probes stay short
+		if (++size * 2 > slots.length) {
+			grow();
+		}
+		return true;
+	}
+
+	private void grow() {
+		int[] old = slots;
+		slots = empty(old.length * 2);
+		int mask = slots.length - 1;
+		for (int row : old) {
+			if (row != EMPTY) {
+				int i = hash(row) & mask;
+				while (slots[i] != EMPTY) {
+					i = i + 1 & mask;
+				}
+				slots[i] = row;
+			}
+		}
+	}
+
+	private static int[] empty(int capacity) {
+		int[] slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+		return slots;
+	}
+
+	/**
+	 * Spreads rows that are close together, as siblings' rows often are.
+	 */
+	private static int hash(int row) {
+		int h = row * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+}
@@ -0,0 +1,38 @@
+package main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for a family tree operation that took longer
+ * than the slow query threshold of its {@link TreeMetrics}. Recorded when
+ * {@code main.SlowQuery} is enabled in the recording settings.
+ *
+ * @author Stephen Schroer
+ *
+ */
+@Name("main.SlowQuery")
+@Label("Slow Family Tree Query")
+@Category("Family Tree")
+@Description("A family tree operation slower than the threshold")
+class SlowQueryEvent extends Event {
+	@Label("Operation")
+	String operation;
+
+	@Label("Elapsed")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+
+	@Label("People Visited")
+	long visited;
+
+	@Label("Queue High-Water Mark")
+	int maxQueue;
+
+	@Label("Equals Calls")
+	long equalsCalls;
+}
@@ -0,0 +1,54 @@
+package main;
+
+/**
+ * The number of records a bulk operation handled and how long it took.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class Throughput {
+	private final String unit;
+	private final long count;
+	private final long nanos;
+
+	/**
+	 * @param unit
+	 *            what was counted, for example "records"
+	 * @param count
+	 *            the number of records handled
+	 * @param nanos
+	 *            the time taken in nanoseconds
+	 */
+	public Throughput(String unit, long count, long nanos) {
+		this.unit = unit;
+		this.count = count;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * @return the number of records handled
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the time taken in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * @return the number of records handled per second
+	 */
+	public double perSecond() {
+		return nanos == 0 ? 0 : count * 1e9 / nanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d %s in %d ms (%.0f %s/second)", count, unit,
+				nanos / 1_000_000, perSecond(), unit);
+	}
+}
@@ -0,0 +1,389 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A breadth-first walk over the people of a family tree. Every walk keeps an
+ * identity-based visited set, so a person reachable along several paths (for
+ * example a child listed under both parents) is visited exactly once and the
+ * cost of a walk is linear in the number of people reached.
+ * <p>
+ * Walks can also be taken lazily, in breadth-first or depth-first order, as
+ * an {@link Iterator} or {@link Stream} that only goes as far as it is read,
+ * so a search that stops at the first match does not visit the rest.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class Traversal {
+	/**
+	 * The order people are reached in by a lazy walk.
+	 */
+	public enum Order {
+		/**
+		 * Generation by generation: everyone one step away, then everyone two
+		 * steps away and so on.
+		 */
+		BREADTH_FIRST,
+		/**
+		 * Down one line as far as it goes before the next.
+		 */
+		DEPTH_FIRST
+	}
+
+	/**
+	 * Hands the neighbours of a person, in order, to a sink, so walks do not
+	 * need a list of them.
+	 */
+	private interface Neighbours {
+		void each(Person person, Consumer<Person> sink);
+	}
+
+	private final Neighbours neighbours;
+
+	/**
+	 * Creates a traversal that moves from a person to the given neighbours.
+	 *
+	 * @param neighbours
+	 *            returns the people to visit after a given person
+	 */
+	public Traversal(Function<Person, ? extends Collection<Person>> neighbours) {
+		this((person, sink) -> neighbours.apply(person).forEach(sink));
+	}
+
+	private Traversal(Neighbours neighbours) {
+		this.neighbours = neighbours;
+	}
+
+	/**
+	 * @return a traversal that moves from a person to their children
+	 */
+	public static Traversal overChildren() {
+		return new Traversal(
+				(Neighbours) (person, sink) -> person.getChildren()
+						.forEach(sink));
+	}
+
+	/**
+	 * @return a traversal that moves from a person to their father and
+	 *         mother, the blood ancestors
+	 */
+	public static Traversal overParents() {
+		return new Traversal((Neighbours) (person, sink) -> {
+			if (person.getFather() != null) {
+				sink.accept(person.getFather());
+			}
+			if (person.getMother() != null) {
+				sink.accept(person.getMother());
+			}
+		});
+	}
+
+	/**
+	 * @return a traversal that moves from a person to their partners and
+	 *         children
+	 */
+	public static Traversal overPartnersAndChildren() {
+		return new Traversal((Neighbours) (person, sink) -> {
+			person.getPartners().forEach(sink);
+			person.getChildren().forEach(sink);
+		});
+	}
+
+	/**
+	 * Finds the first person, in breadth-first order, that matches.
+	 *
+	 * @param start
+	 *            the person to start from, may be null
+	 * @param match
+	 *            the condition the person must meet
+	 * @return the first matching person, or null if there is none
+	 */
+	public Person find(Person start, Predicate<? super Person> match) {
+		return find(start == null ? Collections.emptyList() : List.of(start),
+				match);
+	}
+
+	/**
+	 * Finds the first person, in breadth-first order, that matches.
+	 *
+	 * @param starts
+	 *            the people to start from
+	 * @param match
+	 *            the condition the person must meet
+	 * @return the first matching person, or null if there is none
+	 */
+	public Person find(Collection<Person> starts,
+			Predicate<? super Person> match) {
+		Person[] found = new Person[1];
+
+		forEach(starts, person -> {
+			if (found[0] == null && match.test(person)) {
+				found[0] = person;
+			}
+			return found[0] == null;
+		});
+		return found[0];
+	}
+
+	/**
+	 * Visits each reachable person once, in breadth-first order. The visitor
+	 * decides whether the walk continues past the person it was given.
+	 *
+	 * @param starts
+	 *            the people to start from
+	 * @param visitor
+	 *            called for each person; returns true to go on to the
+	 *            person's neighbours, false to stop there
+	 * @return the number of people visited
+	 */
+	public int forEach(Collection<Person> starts,
+			Predicate<? super Person> visitor) {
+		Set<Person> visited = Collections
+				.newSetFromMap(new IdentityHashMap<>());
+		Queue<Person> queue = new ArrayDeque<>();
+
+		for (Person start : starts) {
+			if (start != null && visited.add(start)) {
+				queue.add(start);
+			}
+		}
+
+		int count = 0;
+		int maxQueue = queue.size();
+		Consumer<Person> enqueue = next -> {
+			if (visited.add(next)) {
+				queue.add(next);
+			}
+		};
+		while (!queue.isEmpty()) {
+			Person currentPerson = queue.poll();
+			count++;
+
+			if (!visitor.test(currentPerson)) {
+				continue;
+			}
+			neighbours.each(currentPerson, enqueue);
+			maxQueue = Math.max(maxQueue, queue.size());
+		}
+		TreeMetrics.walked(count, maxQueue);
+		return count;
+	}
+
+	/**
+	 * Walks lazily from a person to the people reachable from them, each
+	 * returned once. The person themselves is not returned. Nothing is
+	 * visited until the iterator is read.
+	 * <p>
+	 * A depth-first walk with a step limit can reach someone again along a
+	 * shorter line, and then goes on from them again so as not to miss people
+	 * the limit cut off the first time. Each person is gone on from at most
+	 * once per distance they are reached at, so in the worst case such a walk
+	 * costs the step limit times as much as an unlimited one. Breadth-first
+	 * walks and unlimited walks go on from each person once.
+	 *
+	 * @param start
+	 *            the person to start from, may be null
+	 * @param order
+	 *            the order to return people in
+	 * @param steps
+	 *            how many steps from the person to go at most, for example 1
+	 *            for just the neighbours, or {@link Integer#MAX_VALUE} for no
+	 *            limit
+	 * @return the people reachable from the person
+	 */
+	public Iterator<Person> iterator(Person start, Order order, int steps) {
+		if (steps < 0) {
+			throw new IllegalArgumentException("steps must not be negative");
+		}
+		return new Walk(start, order == Order.DEPTH_FIRST, steps);
+	}
+
+	/**
+	 * Walks lazily from a person, like {@link #iterator(Person, Order, int)},
+	 * as a sequential stream. Operations like {@code findFirst} or
+	 * {@code anyMatch} stop the walk as soon as they have their answer.
+	 *
+	 * @param start
+	 *            the person to start from, may be null
+	 * @param order
+	 *            the order to return people in
+	 * @param steps
+	 *            how many steps from the person to go at most
+	 * @return the people reachable from the person
+	 */
+	public Stream<Person> stream(Person start, Order order, int steps) {
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(
+						iterator(start, order, steps),
+						Spliterator.ORDERED | Spliterator.DISTINCT
+								| Spliterator.NONNULL),
+				false);
+	}
+
+	/**
+	 * A lazy walk. The people waiting to be returned and their distance from
+	 * the start are kept in two arrays, used as a queue for breadth-first
+	 * walks and as a stack for depth-first ones.
+	 */
+	private final class Walk implements Iterator<Person>, Consumer<Person> {
+		private final Person start;
+		private final boolean depthFirst;
+		private final int steps;
+
+		// the fewest steps each person was reached in
+		private Map<Person, Integer> seen;
+		private Person[] people;
+		private int[] depths;
+		private int first;
+		private int end;
+		// the distance of the neighbours being added
+		private int depth;
+		private int maxWaiting;
+		private Person next;
+
+		Walk(Person start, boolean depthFirst, int steps) {
+			this.start = start;
+			this.depthFirst = depthFirst;
+			this.steps = steps;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = advance();
+			}
+			return next != null;
+		}
+
+		@Override
+		public Person next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Person person = next;
+			next = null;
+			return person;
+		}
+
+		private Person advance() {
+			if (seen == null) {
+				if (start == null || steps == 0) {
+					return null;
+				}
+				seen = new IdentityHashMap<>();
+				people = new Person[16];
+				depths = new int[16];
+				seen.put(start, ~0);
+				expand(start, 0);
+			}
+			while (first < end) {
+				Person person;
+				int at;
+				if (depthFirst) {
+					person = people[--end];
+					at = depths[end];
+					people[end] = null;
+				} else {
+					person = people[first];
+					at = depths[first];
+					people[first++] = null;
+				}
+
+				// a depth-first walk can reach someone again in fewer steps;
+				// the entry with the fewest steps returns and expands them
+				int best = seen.get(person);
+				boolean returned = best < 0;
+				if (at != (returned ? ~best : best)) {
+					continue;
+				}
+				if (!returned) {
+					seen.put(person, ~at);
+				}
+				if (at < steps) {
+					expand(person, at);
+				}
+				if (!returned) {
+					return person;
+				}
+			}
+			TreeMetrics.walked(seen.size(), maxWaiting);
+			people = null;
+			depths = null;
+			return null;
+		}
+
+		private void expand(Person person, int at) {
+			depth = at + 1;
+			int from = end;
+			neighbours.each(person, this);
+			maxWaiting = Math.max(maxWaiting, end - first);
+			if (depthFirst) {
+				// the first neighbour goes on top of the stack
+				for (int i = from, j = end - 1; i < j; i++, j--) {
+					Person swap = people[i];
+					people[i] = people[j];
+					people[j] = swap;
+					int swapDepth = depths[i];
+					depths[i] = depths[j];
+					depths[j] = swapDepth;
+				}
+			}
+		}
+
+		/**
+		 * Adds a neighbour of the person being expanded. The seen map holds
+		 * the fewest steps to each person, bitwise inverted once they have
+		 * been returned.
+		 */
+		@Override
+		public void accept(Person neighbour) {
+			Integer before = seen.get(neighbour);
+			if (before == null) {
+				seen.put(neighbour, depth);
+				push(neighbour, depth);
+			} else if (steps != Integer.MAX_VALUE
+					// without a limit, a shorter line reaches no one new
+					&& depth < (before < 0 ? ~before : before)) {
+				seen.put(neighbour, before < 0 ? ~depth : depth);
+				push(neighbour, depth);
+			}
+		}
+
+		private void push(Person person, int at) {
+			if (end == people.length) {
+				if (first > 0) {
+					// reuse the space before the head of the queue
+					System.arraycopy(people, first, people, 0, end - first);
+					System.arraycopy(depths, first, depths, 0, end - first);
+					Arrays.fill(people, end - first, end, null);
+					end -= first;
+					first = 0;
+				}
+				if (end > people.length / 2) {
+					people = Arrays.copyOf(people, people.length * 2);
+					depths = Arrays.copyOf(depths, depths.length * 2);
+				}
+			}
+			people[end] = person;
+			depths[end++] = at;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class TraversalTest {
+	private static final int GENERATIONS = 30;
+
+	/**
+	 * Builds a ladder of couples in which both children of each couple are
+	 * listed under both parents, so the number of paths from the top doubles
+	 * with every generation.
+	 */
+	private static List<Person> ladder() throws Exception {
+		List<Person> people = new ArrayList<>();
+		Person father = new Person("Father 0", "male");
+		Person mother = new Person("Mother 0", "female");
+		people.add(father);
+		people.add(mother);
+		for (int generation = 1; generation <= GENERATIONS; generation++) {
+			Person son = new Person("Father " + generation, "male");
+			Person daughter = new Person("Mother " + generation, "female");
+			father.addChild(son);
+			father.addChild(daughter);
+			mother.addChild(son);
+			mother.addChild(daughter);
+			people.add(son);
+			people.add(daughter);
+			father = son;
+			mother = daughter;
+		}
+		return people;
+	}
+
+	@Test
+	void sharedDescendantsAreVisitedOnce() throws Exception {
+		List<Person> people = ladder();
+		List<Person> visited = new ArrayList<>();
+
+		int count = Traversal.overChildren().forEach(List.of(people.get(0)),
+				visited::add);
+
+		assertEquals(people.size() - 1, count);
+		assertEquals(people.subList(2, people.size()),
+				visited.subList(1, visited.size()));
+	}
+
+	@Test
+	void visitorStopsTheWalkBelowAPerson() throws Exception {
+		List<Person> people = ladder();
+
+		int count = Traversal.overChildren().forEach(List.of(people.get(0)),
+				person -> !person.getName().endsWith(" 2"));
+
+		assertEquals(5, count);
+	}
+
+	@Test
+	void findReturnsTheFirstMatchInBreadthFirstOrder() throws Exception {
+		List<Person> people = ladder();
+
+		assertSame(people.get(6), Traversal.overChildren()
+				.find(people.get(0), person -> person.getName().endsWith("3")));
+		assertNull(Traversal.overChildren().find(people.get(0),
+				person -> person.getName().equals("Nobody")));
+		assertNull(Traversal.overChildren().find((Person) null,
+				person -> true));
+	}
+
+	/**
+	 * Builds a top person with children x and y, where x's line reaches u in
+	 * three steps and y reaches u in two; u has a child z.
+	 */
+	private static List<Person> shortcut() throws Exception {
+		List<Person> people = new ArrayList<>();
+		for (String name : new String[] { "top", "x", "y", "w", "u", "z" }) {
+			people.add(new Person(name, "male"));
+		}
+		people.get(0).addChild(people.get(1));
+		people.get(0).addChild(people.get(2));
+		people.get(1).addChild(people.get(3));
+		people.get(3).addChild(people.get(4));
+		people.get(2).addChild(people.get(4));
+		people.get(4).addChild(people.get(5));
+		return people;
+	}
+
+	private static List<String> names(Traversal.Order order, int steps)
+			throws Exception {
+		List<String> names = new ArrayList<>();
+		Traversal.overChildren()
+				.iterator(shortcut().get(0), order, steps)
+				.forEachRemaining(person -> names.add(person.getName()));
+		return names;
+	}
+
+	@Test
+	void depthFirstWalksGoOnFromAShorterLineWithinTheLimit()
+			throws Exception {
+		assertEquals(List.of("x", "w", "u", "y", "z"),
+				names(Traversal.Order.DEPTH_FIRST, 3));
+		assertEquals(List.of("x", "w", "y", "u"),
+				names(Traversal.Order.DEPTH_FIRST, 2));
+		assertEquals(List.of("x", "w", "u", "z", "y"),
+				names(Traversal.Order.DEPTH_FIRST, Integer.MAX_VALUE));
+		assertEquals(List.of("x", "y", "w", "u"),
+				names(Traversal.Order.BREADTH_FIRST, 2));
+		assertEquals(List.of(), names(Traversal.Order.DEPTH_FIRST, 0));
+	}
+
+	@Test
+	void unlimitedDepthFirstWalksReturnEveryoneOnce() throws Exception {
+		List<Person> people = ladder();
+
+		List<Person> walked = Traversal.overChildren()
+				.stream(people.get(0), Traversal.Order.DEPTH_FIRST,
+						Integer.MAX_VALUE)
+				.collect(Collectors.toList());
+
+		// everyone but the start and the other top parent
+		assertEquals(people.size() - 2, walked.size());
+		assertEquals(walked.size(), new HashSet<>(walked).size());
+		assertEquals(List.of(people.get(2), people.get(4)),
+				walked.subList(0, 2));
+	}
+}
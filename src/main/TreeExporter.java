@@ -0,0 +1,407 @@
+package main;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the people of a family tree as GEDCOM or as CSV tables. People are
+ * written one after another and refer to each other by ID, so the output
+ * never nests one person inside another. Text and numbers are encoded
+ * straight into the channel's buffer by a {@link ChannelWriter}.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class TreeExporter {
+	private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR",
+			"MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+
+	// Header lines of the CSV tables, shared with CsvTreeSink
+	static final String PERSON_HEADER = "id,name,sex,birthday,deathdate,"
+			+ "mother,father,guardian,adopted,married";
+	static final String RELATIONSHIP_HEADER = "from,to,type,position";
+
+	private final FamilyTree tree;
+
+	/**
+	 * Creates an exporter for the given tree.
+	 *
+	 * @param tree
+	 *            the tree to write
+	 */
+	public TreeExporter(FamilyTree tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * Writes the tree as a GEDCOM file. Every person becomes an INDI record
+	 * whose cross-reference is built from their ID, and every couple or
+	 * single parent becomes a FAM record. Partners who are no longer each
+	 * other's spouse are marked as divorced, and adopted children are listed
+	 * in a family of their guardian alone, with an ADOP event saying whether
+	 * the guardian is its husband or wife.
+	 *
+	 * @param channel
+	 *            the channel to write to, closed when done
+	 * @return the number of people written and how long it took
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public Throughput writeGedcom(WritableByteChannel channel)
+			throws IOException {
+		long start = System.nanoTime();
+		Map<Long, Family> families = findFamilies();
+
+		try (ChannelWriter out = new ChannelWriter(channel)) {
+			line(out, "0 HEAD");
+			line(out, "1 SOUR FamilyTree");
+			line(out, "1 GEDC");
+			line(out, "2 VERS 5.5.1");
+			line(out, "2 FORM LINEAGE-LINKED");
+			line(out, "1 CHAR UTF-8");
+
+			for (Person person : tree.getPeople()) {
+				out.writeUtf8("0 ");
+				xref(out, 'I', person.getId());
+				line(out, " INDI");
+
+				out.writeUtf8("1 NAME ");
+				name(out, person.getName());
+				line(out, "");
+				line(out, person.getGender() == Sex.FEMALE ? "1 SEX F"
+						: "1 SEX M");
+				event(out, "BIRT", person.getBirthday());
+				event(out, "DEAT", person.getDeathdate());
+
+				Family birthFamily = families
+						.get(key(person.getFather(), person.getMother()));
+				if (birthFamily != null) {
+					familyLink(out, "1 FAMC ", birthFamily);
+				}
+				if (person.isWasAdopted() && person.getGuardian() != null) {
+					Family adoptiveFamily = families
+							.get(adoptiveKey(person.getGuardian()));
+					line(out, "1 ADOP");
+					familyLink(out, "2 FAMC ", adoptiveFamily);
+					line(out, person.getGuardian().getGender() == Sex.FEMALE
+							? "3 ADOP WIFE"
+							: "3 ADOP HUSB");
+				}
+				for (Person partner : person.getPartners()) {
+					familyLink(out, "1 FAMS ",
+							families.get(partnerKey(person, partner)));
+				}
+			}
+
+			for (Family family : families.values()) {
+				out.writeUtf8("0 ");
+				xref(out, 'F', family.number);
+				line(out, " FAM");
+				if (family.husband != null) {
+					out.writeUtf8("1 HUSB ");
+					xref(out, 'I', family.husband.getId());
+					line(out, "");
+				}
+				if (family.wife != null) {
+					out.writeUtf8("1 WIFE ");
+					xref(out, 'I', family.wife.getId());
+					line(out, "");
+				}
+				for (Person child : family.children) {
+					out.writeUtf8("1 CHIL ");
+					xref(out, 'I', child.getId());
+					line(out, "");
+				}
+				if (family.divorced) {
+					line(out, "1 DIV Y");
+				}
+			}
+			line(out, "0 TRLR");
+		}
+		return new Throughput("people", tree.getPeople().size(),
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Writes the tree as two CSV tables. The person table has the columns
+	 * id, name, sex, birthday, deathdate, mother, father, guardian, adopted
+	 * and married, with relatives given by ID. The relationship table has the
+	 * columns from, to, type and position: a PARENT row for each parent of a
+	 * person, a GUARDIAN row for each guardian, and a PARTNER row for each
+	 * partner, where position is the partner's place in the person's list of
+	 * partners (the last one is the current spouse).
+	 *
+	 * @param people
+	 *            the channel for the person table, closed when done
+	 * @param relationships
+	 *            the channel for the relationship table, closed when done
+	 * @return the number of people written and how long it took
+	 * @throws IOException
+	 *             if a channel cannot be written
+	 */
+	public Throughput writeCsv(WritableByteChannel people,
+			WritableByteChannel relationships) throws IOException {
+		long start = System.nanoTime();
+
+		try (ChannelWriter personOut = new ChannelWriter(people);
+				ChannelWriter relationshipOut = new ChannelWriter(
+						relationships)) {
+			line(personOut, PERSON_HEADER);
+			line(relationshipOut, RELATIONSHIP_HEADER);
+
+			for (Person person : tree.getPeople()) {
+				personOut.writeNumber(person.getId());
+				personOut.writeByte(',');
+				csvText(personOut, person.getName());
+				personOut.writeByte(',');
+				personOut.writeUtf8(person.getGender() == Sex.FEMALE ? "F"
+						: "M");
+				personOut.writeByte(',');
+				isoDate(personOut, person.getBirthday());
+				personOut.writeByte(',');
+				isoDate(personOut, person.getDeathdate());
+				personOut.writeByte(',');
+				id(personOut, person.getMother());
+				personOut.writeByte(',');
+				id(personOut, person.getFather());
+				personOut.writeByte(',');
+				id(personOut, person.getGuardian());
+				personOut.writeByte(',');
+				personOut.writeUtf8(person.isWasAdopted() ? "true" : "false");
+				personOut.writeByte(',');
+				personOut.writeUtf8(person.isMarried() ? "true" : "false");
+				line(personOut, "");
+
+				relationship(relationshipOut, person.getFather(), person,
+						"PARENT", 0);
+				relationship(relationshipOut, person.getMother(), person,
+						"PARENT", 0);
+				relationship(relationshipOut, person.getGuardian(), person,
+						"GUARDIAN", 0);
+				List<Person> partners = person.getPartners();
+				for (int i = 0; i < partners.size(); i++) {
+					relationship(relationshipOut, person, partners.get(i),
+							"PARTNER", i);
+				}
+			}
+		}
+		return new Throughput("people", tree.getPeople().size(),
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Collects the families of the tree: one for every pair of partners, one
+	 * for every pair of parents (or single parent) with children, and one
+	 * for every guardian with adopted children. A guardian's family is the
+	 * same as that of any children they have as a single parent, so it can
+	 * hold both; each adopted child says so itself.
+	 */
+	private Map<Long, Family> findFamilies() {
+		Map<Long, Family> families = new LinkedHashMap<>();
+
+		for (Person person : tree.getPeople()) {
+			for (Person partner : person.getPartners()) {
+				if (person.getId() < partner.getId()) {
+					Family family = family(families,
+							partnerKey(person, partner), person, partner);
+					family.divorced = person.getSpouse() != partner
+							|| partner.getSpouse() != person;
+				}
+			}
+		}
+		for (Person person : tree.getPeople()) {
+			if (person.getFather() != null || person.getMother() != null) {
+				family(families, key(person.getFather(), person.getMother()),
+						person.getFather(), person.getMother()).children
+								.add(person);
+			}
+			if (person.isWasAdopted() && person.getGuardian() != null) {
+				Person guardian = person.getGuardian();
+				family(families, adoptiveKey(guardian), guardian,
+						null).children.add(person);
+			}
+		}
+		return families;
+	}
+
+	private static Family family(Map<Long, Family> families, long key,
+			Person a, Person b) {
+		return families.computeIfAbsent(key,
+				k -> new Family(families.size() + 1, a, b));
+	}
+
+	private static long adoptiveKey(Person guardian) {
+		return partnerKey(guardian, null);
+	}
+
+	private static long partnerKey(Person a, Person b) {
+		return husbandLast(a, b) ? key(b, a) : key(a, b);
+	}
+
+	/**
+	 * Checks if the second of two partners is the husband of the family, or
+	 * for two partners of the same gender, has the lower ID.
+	 */
+	private static boolean husbandLast(Person a, Person b) {
+		if (a == null || b == null) {
+			return a != null && a.getGender() == Sex.FEMALE
+					|| b != null && b.getGender() == Sex.MALE;
+		}
+		if (a.getGender() == b.getGender()) {
+			return a.getId() > b.getId();
+		}
+		return a.getGender() == Sex.FEMALE;
+	}
+
+	/**
+	 * Key of the family of two people, in the order father, mother.
+	 */
+	private static long key(Person a, Person b) {
+		long first = a == null ? 0 : a.getId() + 1L;
+		long second = b == null ? 0 : b.getId() + 1L;
+		return first << 32 | second;
+	}
+
+	private static void familyLink(ChannelWriter out, String prefix,
+			Family family) throws IOException {
+		if (family != null) {
+			out.writeUtf8(prefix);
+			xref(out, 'F', family.number);
+			line(out, "");
+		}
+	}
+
+	private static void event(ChannelWriter out, String tag, LocalDate date)
+			throws IOException {
+		if (date == null) {
+			return;
+		}
+		out.writeUtf8("1 ");
+		line(out, tag);
+		out.writeUtf8("2 DATE ");
+		out.writeNumber(date.getDayOfMonth());
+		out.writeByte(' ');
+		out.writeUtf8(MONTHS[date.getMonthValue() - 1]);
+		out.writeByte(' ');
+		out.writeNumber(date.getYear());
+		line(out, "");
+	}
+
+	/**
+	 * Writes a name as GEDCOM does, with the last word as the surname
+	 * between slashes.
+	 */
+	private static void name(ChannelWriter out, String name)
+			throws IOException {
+		if (name == null || name.isBlank()) {
+			return;
+		}
+		String trimmed = name.trim();
+		int surname = trimmed.lastIndexOf(' ') + 1;
+
+		out.writeUtf8(trimmed.subSequence(0, surname));
+		out.writeByte('/');
+		out.writeUtf8(trimmed.subSequence(surname, trimmed.length()));
+		out.writeByte('/');
+	}
+
+	private static void xref(ChannelWriter out, char kind, long number)
+			throws IOException {
+		out.writeByte('@');
+		out.writeByte(kind);
+		out.writeNumber(number);
+		out.writeByte('@');
+	}
+
+	private static void relationship(ChannelWriter out, Person from,
+			Person to, String type, int position) throws IOException {
+		if (from == null || to == null) {
+			return;
+		}
+		out.writeNumber(from.getId());
+		out.writeByte(',');
+		out.writeNumber(to.getId());
+		out.writeByte(',');
+		out.writeUtf8(type);
+		out.writeByte(',');
+		out.writeNumber(position);
+		line(out, "");
+	}
+
+	private static void id(ChannelWriter out, Person person)
+			throws IOException {
+		if (person != null) {
+			out.writeNumber(person.getId());
+		}
+	}
+
+	static void isoDate(ChannelWriter out, LocalDate date)
+			throws IOException {
+		if (date != null) {
+			out.writeNumber(date.getYear(), 4);
+			out.writeByte('-');
+			out.writeNumber(date.getMonthValue(), 2);
+			out.writeByte('-');
+			out.writeNumber(date.getDayOfMonth(), 2);
+		}
+	}
+
+	/**
+	 * Writes a CSV field, quoting it when it holds a comma, quote or line
+	 * break.
+	 */
+	static void csvText(ChannelWriter out, String text)
+			throws IOException {
+		if (text == null) {
+			return;
+		}
+		boolean quote = false;
+		for (int i = 0; i < text.length() && !quote; i++) {
+			char c = text.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			out.writeUtf8(text);
+			return;
+		}
+		out.writeByte('"');
+		int from = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '"') {
+				out.writeUtf8(text.subSequence(from, i + 1));
+				from = i;
+			}
+		}
+		out.writeUtf8(text.subSequence(from, text.length()));
+		out.writeByte('"');
+	}
+
+	static void line(ChannelWriter out, String text)
+			throws IOException {
+		out.writeUtf8(text);
+		out.writeByte('\n');
+	}
+
+	/**
+	 * A GEDCOM family: a couple or single parent and their children.
+	 */
+	private static class Family {
+		final int number;
+		final Person husband;
+		final Person wife;
+		final List<Person> children = new ArrayList<>(2);
+		boolean divorced;
+
+		Family(int number, Person a, Person b) {
+			boolean swap = husbandLast(a, b);
+			this.number = number;
+			this.husband = swap ? b : a;
+			this.wife = swap ? a : b;
+		}
+	}
+}
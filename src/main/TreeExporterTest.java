@@ -0,0 +1,110 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class TreeExporterTest {
+	private static FamilyTree generated() {
+		return new TreeGenerator().setSeed(42).setGenerations(6)
+				.setFounders(10).setRemarriageRate(0.3).setAdoptionRate(0.1)
+				.build();
+	}
+
+	private static FamilyTree roundTrip(FamilyTree tree) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new TreeExporter(tree).writeGedcom(Channels.newChannel(out));
+		FamilyTree read = new FamilyTree();
+		GedcomImporter importer = new GedcomImporter(read);
+		importer.importFrom(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(0, importer.getSkipped());
+		assertEquals(0, importer.getUnresolved());
+		return read;
+	}
+
+	@Test
+	void gedcomReadsBackAsTheSameTree() throws Exception {
+		FamilyTree tree = generated();
+		FamilyTree read = roundTrip(tree);
+
+		List<Person> people = tree.getPeople();
+		List<Person> copies = read.getPeople();
+		assertEquals(people.size(), copies.size());
+
+		// people are written and read in the same order
+		Map<Person, Person> copyOf = new HashMap<>();
+		for (int i = 0; i < people.size(); i++) {
+			copyOf.put(people.get(i), copies.get(i));
+		}
+		int adopted = 0;
+		int divorced = 0;
+		for (Person person : people) {
+			Person copy = copyOf.get(person);
+			String who = person.toString();
+			assertEquals(person.getName(), copy.getName(), who);
+			assertEquals(person.getGender(), copy.getGender(), who);
+			assertEquals(person.getBirthday(), copy.getBirthday(), who);
+			assertEquals(person.getDeathdate(), copy.getDeathdate(), who);
+			assertSame(copyOf.get(person.getMother()), copy.getMother(), who);
+			assertSame(copyOf.get(person.getFather()), copy.getFather(), who);
+			assertSame(copyOf.get(person.getGuardian()), copy.getGuardian(),
+					who);
+			assertEquals(person.isWasAdopted(), copy.isWasAdopted(), who);
+			assertSame(copyOf.get(person.getSpouse()), copy.getSpouse(), who);
+			assertEquals(person.getPartners().size(),
+					copy.getPartners().size(), who);
+			assertEquals(person.getChildren().size(),
+					copy.getChildren().size(), who);
+			if (person.isWasAdopted()) {
+				adopted++;
+			}
+			if (person.getPartners().size() > 1) {
+				divorced++;
+			}
+		}
+		assertTrue(adopted > 0);
+		assertTrue(divorced > 0);
+	}
+
+	@Test
+	void childrenLinkBackToTheirParents() throws Exception {
+		for (Person person : roundTrip(generated()).getPeople()) {
+			for (Person parent : new Person[] { person.getMother(),
+					person.getFather(), person.getGuardian() }) {
+				if (parent != null) {
+					assertTrue(parent.getChildren().contains(person),
+							person.toString());
+				}
+			}
+			for (Person child : person.getChildren()) {
+				assertTrue(child.getMother() == person
+						|| child.getFather() == person
+						|| child.getGuardian() == person, child.toString());
+			}
+		}
+	}
+
+	@Test
+	void divorcedCoupleIsReadBack() throws Exception {
+		Person george = new Person("George Smith", "male");
+		Person mary = new Person("Mary Jones", "female");
+		FamilyTree tree = new FamilyTree(george);
+		tree.addPerson(mary);
+		tree.marry(george, mary);
+		tree.divorce(george);
+
+		FamilyTree read = roundTrip(tree);
+
+		Person husband = read.getPeople().get(0);
+		assertEquals(1, husband.getPartners().size());
+		assertFalse(husband.isMarried());
+		assertFalse(husband.getPartners().get(0).isMarried());
+	}
+}
@@ -0,0 +1,497 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A family tree stored in a binary file that is read through memory mapping.
+ * Opening a file only maps it; the columns are read from the mapped pages as
+ * queries touch them, so even very large trees open without being loaded.
+ * <p>
+ * The file starts with a header (magic number, version, number of people, row
+ * of the head, and the offset and length of every section) followed by one
+ * section per column: IDs, flags, birthdays, deathdates, mothers, fathers,
+ * guardians, child offsets, children, partner offsets, partners (in marriage
+ * order), name offsets and the UTF-8 names. Rows are ordered by person ID and
+ * relatives are stored as row numbers. Numbers are little endian and sections
+ * are 8-byte aligned.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class TreeFile implements PersonTable {
+	private static final int MAGIC = 0x46545245; // "FTRE"
+	private static final int VERSION = 1;
+	private static final int SECTIONS = 13;
+	private static final int HEADER_SIZE = 4 * Integer.BYTES
+			+ SECTIONS * 2 * Long.BYTES;
+
+	// bits of the flags column
+	private static final byte FEMALE = 1;
+	private static final byte ADOPTED = 2;
+	private static final byte MARRIED = 4;
+
+	private final int size;
+	private final int head;
+	private final IntBuffer ids;
+	private final ByteBuffer flags;
+	private final IntBuffer birthdays;
+	private final IntBuffer deathdates;
+	private final IntBuffer mothers;
+	private final IntBuffer fathers;
+	private final IntBuffer guardians;
+	private final IntBuffer childStart;
+	private final IntBuffer children;
+	private final IntBuffer partnerStart;
+	private final IntBuffer partners;
+	private final LongBuffer nameStart;
+	private final ByteBuffer names;
+
+	private TreeFile(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				throw new IOException("Not a family tree file");
+			}
+		}
+		header.flip();
+
+		if (header.getInt() != MAGIC) {
+			throw new IOException("Not a family tree file");
+		}
+		int version = header.getInt();
+		if (version != VERSION) {
+			throw new IOException(
+					"Unsupported family tree file version " + version);
+		}
+		size = header.getInt();
+		head = header.getInt();
+
+		ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+		for (int i = 0; i < SECTIONS; i++) {
+			sections[i] = map(channel, header.getLong(), header.getLong());
+		}
+		ids = sections[0].asIntBuffer();
+		flags = sections[1];
+		birthdays = sections[2].asIntBuffer();
+		deathdates = sections[3].asIntBuffer();
+		mothers = sections[4].asIntBuffer();
+		fathers = sections[5].asIntBuffer();
+		guardians = sections[6].asIntBuffer();
+		childStart = sections[7].asIntBuffer();
+		children = sections[8].asIntBuffer();
+		partnerStart = sections[9].asIntBuffer();
+		partners = sections[10].asIntBuffer();
+		nameStart = sections[11].asLongBuffer();
+		names = sections[12];
+	}
+
+	/**
+	 * Opens a family tree file. The file stays mapped until the returned
+	 * object is garbage collected.
+	 *
+	 * @param path
+	 *            the file to open
+	 * @return the mapped family tree
+	 * @throws IOException
+	 *             if the file cannot be read or is not a family tree file
+	 */
+	public static TreeFile open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			return new TreeFile(channel);
+		}
+	}
+
+	/**
+	 * Writes a family tree to a file, replacing the file if it exists.
+	 *
+	 * @param tree
+	 *            the tree to write
+	 * @param path
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(FamilyTree tree, Path path) throws IOException {
+		write(new Rows(tree), path);
+	}
+
+	/**
+	 * Writes a table of people to a file, replacing the file if it exists.
+	 *
+	 * @param table
+	 *            the people to write
+	 * @param path
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(PersonTable table, Path path)
+			throws IOException {
+		int size = table.size();
+		long edges = 0;
+		long partnerships = 0;
+		long nameBytes = 0;
+		for (int row = 0; row < size; row++) {
+			edges += table.childCount(row);
+			partnerships += table.partnerCount(row);
+			nameBytes += ChannelWriter.utf8Length(table.name(row));
+		}
+
+		long[] lengths = { 4L * size, size, 4L * size, 4L * size, 4L * size,
+				4L * size, 4L * size, 4L * (size + 1), 4 * edges,
+				4L * (size + 1), 4 * partnerships, 8L * (size + 1),
+				nameBytes };
+		long[] offsets = new long[SECTIONS];
+		long offset = HEADER_SIZE;
+		for (int i = 0; i < SECTIONS; i++) {
+			offsets[i] = offset;
+			offset = align(offset + lengths[i]);
+		}
+
+		try (ChannelWriter out = new ChannelWriter(FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(size);
+			out.writeInt(table.head());
+			for (int i = 0; i < SECTIONS; i++) {
+				out.writeLong(offsets[i]);
+				out.writeLong(lengths[i]);
+			}
+
+			for (int row = 0; row < size; row++) {
+				out.writeInt(table.id(row));
+			}
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				out.writeByte((table.gender(row) == Sex.FEMALE ? FEMALE : 0)
+						| (table.isAdopted(row) ? ADOPTED : 0)
+						| (table.isMarried(row) ? MARRIED : 0));
+			}
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				out.writeInt(table.birthEpochDay(row));
+			}
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				out.writeInt(table.deathEpochDay(row));
+			}
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				out.writeInt(table.mother(row));
+			}
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				out.writeInt(table.father(row));
+			}
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				out.writeInt(table.guardian(row));
+			}
+			out.align(Long.BYTES);
+
+			int start = 0;
+			for (int row = 0; row < size; row++) {
+				out.writeInt(start);
+				start += table.childCount(row);
+			}
+			out.writeInt(start);
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				for (int k = 0, count = table.childCount(row); k < count; k++) {
+					out.writeInt(table.child(row, k));
+				}
+			}
+			out.align(Long.BYTES);
+
+			start = 0;
+			for (int row = 0; row < size; row++) {
+				out.writeInt(start);
+				start += table.partnerCount(row);
+			}
+			out.writeInt(start);
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				for (int k = 0, count = table
+						.partnerCount(row); k < count; k++) {
+					out.writeInt(table.partner(row, k));
+				}
+			}
+			out.align(Long.BYTES);
+
+			long nameOffset = 0;
+			for (int row = 0; row < size; row++) {
+				out.writeLong(nameOffset);
+				nameOffset += ChannelWriter.utf8Length(table.name(row));
+			}
+			out.writeLong(nameOffset);
+			out.align(Long.BYTES);
+			for (int row = 0; row < size; row++) {
+				out.writeUtf8(table.name(row));
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int head() {
+		return head;
+	}
+
+	@Override
+	public int rowOf(int id) {
+		int low = 0;
+		int high = size - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int found = ids.get(middle);
+
+			if (found < id) {
+				low = middle + 1;
+			} else if (found > id) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return NONE;
+	}
+
+	@Override
+	public int id(int row) {
+		return ids.get(row);
+	}
+
+	@Override
+	public String name(int row) {
+		int start = (int) nameStart.get(row);
+		byte[] bytes = new byte[(int) nameStart.get(row + 1) - start];
+		names.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public Sex gender(int row) {
+		return (flags.get(row) & FEMALE) != 0 ? Sex.FEMALE : Sex.MALE;
+	}
+
+	@Override
+	public boolean isAdopted(int row) {
+		return (flags.get(row) & ADOPTED) != 0;
+	}
+
+	@Override
+	public boolean isMarried(int row) {
+		return (flags.get(row) & MARRIED) != 0;
+	}
+
+	@Override
+	public int birthEpochDay(int row) {
+		return birthdays.get(row);
+	}
+
+	@Override
+	public int deathEpochDay(int row) {
+		return deathdates.get(row);
+	}
+
+	@Override
+	public int mother(int row) {
+		return mothers.get(row);
+	}
+
+	@Override
+	public int father(int row) {
+		return fathers.get(row);
+	}
+
+	@Override
+	public int guardian(int row) {
+		return guardians.get(row);
+	}
+
+	@Override
+	public int childCount(int row) {
+		return childStart.get(row + 1) - childStart.get(row);
+	}
+
+	@Override
+	public int child(int row, int index) {
+		return children.get(childStart.get(row) + index);
+	}
+
+	@Override
+	public int partnerCount(int row) {
+		return partnerStart.get(row + 1) - partnerStart.get(row);
+	}
+
+	@Override
+	public int partner(int row, int index) {
+		return partners.get(partnerStart.get(row) + index);
+	}
+
+	/**
+	 * Maps one section of the file. A single mapping is limited to 2 GB, which
+	 * holds the int columns of over 500 million people.
+	 */
+	private static ByteBuffer map(FileChannel channel, long offset,
+			long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Section of " + length
+					+ " bytes is too large to map");
+		}
+		MappedByteBuffer section = channel.map(MapMode.READ_ONLY, offset,
+				length);
+		return section.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long align(long offset) {
+		return (offset + Long.BYTES - 1) & -Long.BYTES;
+	}
+
+	/**
+	 * The people of a tree seen as rows to write, ordered by ID. Each row is
+	 * read from the Person object when it is written.
+	 */
+	private static final class Rows implements PersonTable {
+		private final Person[] people;
+		private final Map<Person, Integer> rows = new IdentityHashMap<>();
+		private final int head;
+
+		Rows(FamilyTree tree) {
+			people = tree.getPeople().toArray(new Person[0]);
+			Arrays.sort(people, Comparator.comparingInt(Person::getId));
+			for (int row = 0; row < people.length; row++) {
+				rows.put(people[row], row);
+			}
+			head = rowOf(tree.getHead().getNext());
+		}
+
+		private int rowOf(Person person) {
+			return person == null ? NONE : rows.getOrDefault(person, NONE);
+		}
+
+		@Override
+		public int size() {
+			return people.length;
+		}
+
+		@Override
+		public int head() {
+			return head;
+		}
+
+		@Override
+		public int rowOf(int id) {
+			int low = 0;
+			int high = people.length - 1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int found = people[middle].getId();
+
+				if (found < id) {
+					low = middle + 1;
+				} else if (found > id) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return NONE;
+		}
+
+		@Override
+		public int id(int row) {
+			return people[row].getId();
+		}
+
+		@Override
+		public String name(int row) {
+			return people[row].getName();
+		}
+
+		@Override
+		public Sex gender(int row) {
+			return people[row].getGender() == Sex.FEMALE ? Sex.FEMALE
+					: Sex.MALE;
+		}
+
+		@Override
+		public boolean isAdopted(int row) {
+			return people[row].isWasAdopted();
+		}
+
+		@Override
+		public boolean isMarried(int row) {
+			return people[row].isMarried();
+		}
+
+		@Override
+		public int birthEpochDay(int row) {
+			return PersonTable.toEpochDay(people[row].getBirthday());
+		}
+
+		@Override
+		public int deathEpochDay(int row) {
+			return PersonTable.toEpochDay(people[row].getDeathdate());
+		}
+
+		@Override
+		public int mother(int row) {
+			return rowOf(people[row].getMother());
+		}
+
+		@Override
+		public int father(int row) {
+			return rowOf(people[row].getFather());
+		}
+
+		@Override
+		public int guardian(int row) {
+			return rowOf(people[row].getGuardian());
+		}
+
+		@Override
+		public int childCount(int row) {
+			return people[row].getChildren().size();
+		}
+
+		@Override
+		public int child(int row, int index) {
+			return rowOf(people[row].getChildren().get(index));
+		}
+
+		@Override
+		public int partnerCount(int row) {
+			return people[row].getPartners().size();
+		}
+
+		@Override
+		public int partner(int row, int index) {
+			return rowOf(people[row].getPartners().get(index));
+		}
+	}
+}
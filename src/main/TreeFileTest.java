@@ -0,0 +1,177 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TreeFileTest {
+	@TempDir
+	Path directory;
+
+	/**
+	 * George and Mary have John and Anne. John marries Susan and then Carol,
+	 * who adopts Tom, and Anne has Lucy by an unknown father.
+	 */
+	private static FamilyTree sample() throws Exception {
+		Person george = new Person("George Smith", "male",
+				LocalDate.of(1900, 3, 1), LocalDate.of(1970, 5, 2));
+		FamilyTree tree = new FamilyTree(george);
+		tree.marry(george, new Person("Mary Jones", "female"));
+		Person mary = george.getSpouse();
+		Person john = new Person("John Smith", "male",
+				LocalDate.of(1925, 1, 15));
+		Person anne = new Person("Anne Smith", "female",
+				LocalDate.of(1928, 11, 30));
+		tree.addChild(george, mary, john);
+		tree.addChild(george, mary, anne);
+
+		tree.marry(john, new Person("Susan Brown", "female"));
+		tree.marry(john, new Person("Carol White", "female"));
+		Person carol = john.getSpouse();
+		tree.addChild(john, carol, new Person("Peter Smith", "male"));
+		tree.adopt(carol, new Person("Tom White", "male"));
+		tree.addChild(anne, new Person("Lucy Smith", "female"));
+		return tree;
+	}
+
+	private TreeFile written(FamilyTree tree) throws Exception {
+		Path path = directory.resolve("tree.bin");
+		TreeFile.write(tree, path);
+		return TreeFile.open(path);
+	}
+
+	@Test
+	void fileHoldsTheTree() throws Exception {
+		FamilyTree tree = sample();
+		TreeFile file = written(tree);
+		List<Person> people = tree.getPeople();
+		assertEquals(people.size(), file.size());
+		assertEquals(tree.getHead().getNext().getId(),
+				file.id(file.head()));
+
+		for (int row = 1; row < file.size(); row++) {
+			assertTrue(file.id(row - 1) < file.id(row), "rows sorted by ID");
+		}
+		for (Person person : people) {
+			int row = file.rowOf(person.getId());
+			String who = person.getName();
+			assertEquals(person.getName(), file.name(row), who);
+			assertEquals(person.getGender(), file.gender(row), who);
+			assertEquals(person.getBirthday(), file.birthday(row), who);
+			assertEquals(person.getDeathdate(), file.deathdate(row), who);
+			assertEquals(person.isWasAdopted(), file.isAdopted(row), who);
+			assertEquals(person.isMarried(), file.isMarried(row), who);
+			assertEquals(idOf(person.getMother()),
+					idOf(file, file.mother(row)), who);
+			assertEquals(idOf(person.getFather()),
+					idOf(file, file.father(row)), who);
+			assertEquals(idOf(person.getGuardian()),
+					idOf(file, file.guardian(row)), who);
+			assertEquals(idOf(person.getSpouse()),
+					idOf(file, file.spouse(row)), who);
+			assertEquals(person.getChildren().size(), file.childCount(row),
+					who);
+			for (int i = 0; i < file.childCount(row); i++) {
+				assertEquals(person.getChildren().get(i).getId(),
+						file.id(file.child(row, i)), who);
+			}
+			assertEquals(person.getPartners().size(), file.partnerCount(row),
+					who);
+			for (int i = 0; i < file.partnerCount(row); i++) {
+				assertEquals(person.getPartners().get(i).getId(),
+						file.id(file.partner(row, i)), who);
+			}
+		}
+		assertEquals(PersonTable.NONE, file.rowOf(-5));
+	}
+
+	@Test
+	void descendantsAreVisitedOnceEach() throws Exception {
+		FamilyTree tree = sample();
+		TreeFile file = written(tree);
+		for (Person person : tree.getPeople()) {
+			Set<Person> descendants = new HashSet<>();
+			Deque<Person> queue = new ArrayDeque<>(List.of(person));
+			while (!queue.isEmpty()) {
+				Person next = queue.poll();
+				if (descendants.add(next)) {
+					queue.addAll(next.getChildren());
+				}
+			}
+			Set<Integer> visited = new HashSet<>();
+			int count = file.forEachDescendant(file.rowOf(person.getId()),
+					row -> visited.add(file.id(row)));
+			assertEquals(descendants.size(), count, person.getName());
+			assertEquals(descendants.size(), visited.size(), person.getName());
+		}
+		assertEquals(1, file.forEachDescendant(file.head(), row -> false));
+	}
+
+	@Test
+	void fileBecomesTheSameFamilyTree() throws Exception {
+		FamilyTree tree = sample();
+		TreeFile file = written(tree);
+		FamilyTree read = file.toFamilyTree();
+
+		// the IDs of the people read are taken, so the copies get new ones,
+		// handed out in row order
+		List<Person> copies = new ArrayList<>(read.getPeople());
+		copies.sort(Comparator.comparingInt(Person::getId));
+		Map<Integer, Person> copyOf = new HashMap<>();
+		for (int row = 0; row < file.size(); row++) {
+			copyOf.put(file.id(row), copies.get(row));
+		}
+
+		for (Person person : tree.getPeople()) {
+			Person copy = copyOf.get(person.getId());
+			String who = person.toString();
+			assertNotNull(copy, who);
+			assertNotEquals(person.getId(), copy.getId(), who);
+			assertEquals(person.getName(), copy.getName(), who);
+			assertSame(copyOf.get(idOf(person.getMother())), copy.getMother(),
+					who);
+			assertSame(copyOf.get(idOf(person.getFather())), copy.getFather(),
+					who);
+			assertSame(copyOf.get(idOf(person.getGuardian())),
+					copy.getGuardian(), who);
+			assertSame(copyOf.get(idOf(person.getSpouse())), copy.getSpouse(),
+					who);
+		}
+	}
+
+	@Test
+	void peopleReadTwiceDoNotShareIds() throws Exception {
+		FamilyTree tree = sample();
+		TreeFile file = written(tree);
+
+		Set<Integer> ids = new HashSet<>();
+		for (FamilyTree each : List.of(tree, file.toFamilyTree(),
+				file.toFamilyTree())) {
+			for (Person person : each.getPeople()) {
+				assertTrue(ids.add(person.getId()), person.toString());
+			}
+		}
+		assertEquals(3 * tree.getPeople().size(), ids.size());
+	}
+
+	private static int idOf(Person person) {
+		return person == null ? -1 : person.getId();
+	}
+
+	private static int idOf(PersonTable table, int row) {
+		return row == PersonTable.NONE ? -1 : table.id(row);
+	}
+}
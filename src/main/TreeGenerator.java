@@ -0,0 +1,451 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Makes up family trees of any size for load and scale testing. The same
+ * settings and seed always give the same tree.
+ * <p>
+ * Every tree grows from a number of founders. A person may marry someone
+ * from outside the family, may divorce and marry again, and has children with
+ * each partner in turn; a person may also adopt a child from outside the
+ * family. Children carry their father's surname and have families of their
+ * own, down to the given number of generations. Nobody is born after the end
+ * date, and people whose deathdate would fall after it are still alive.
+ * <p>
+ * People are made one family line at a time and handed to a
+ * {@link TreeSink} as soon as they are complete, so the generator only ever
+ * holds the line it is working on. Trees too large for memory can be written
+ * straight to disk with a {@link CsvTreeSink}.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class TreeGenerator {
+	private static final int DAYS_PER_YEAR = 365;
+	private static final int MAX_PARTNERS = 3;
+	// Partners are born within this many years of each other
+	private static final int PARTNER_AGE_GAP = 5;
+
+	private static final String[] MALE_NAMES = { "John", "William", "James",
+			"George", "Charles", "Thomas", "Henry", "Robert", "Joseph",
+			"Edward", "Samuel", "David", "Frederick", "Richard", "Walter",
+			"Arthur", "Albert", "Harry", "Frank", "Peter", "Daniel", "Hugh",
+			"Matthew", "Isaac" };
+	private static final String[] FEMALE_NAMES = { "Mary", "Elizabeth",
+			"Sarah", "Anne", "Margaret", "Jane", "Catherine", "Emma", "Alice",
+			"Ellen", "Martha", "Hannah", "Susan", "Clara", "Grace", "Edith",
+			"Florence", "Ada", "Rose", "Agnes", "Lucy", "Harriet", "Ruth",
+			"Esther" };
+	private static final String[] SYLLABLES = { "al", "ash", "ber", "by",
+			"cro", "dal", "den", "ell", "ford", "gar", "gil", "ham", "hol",
+			"kin", "lan", "ley", "man", "mar", "mor", "ric", "rig", "ros",
+			"son", "ste", "tin", "ton", "van", "well", "wick", "win" };
+
+	private long seed = 1;
+	private int generations = 6;
+	private int founders = 1;
+	private int maxPeople = Integer.MAX_VALUE - MAX_PARTNERS;
+	private double[] fertility = { 0.15, 0.15, 0.30, 0.20, 0.10, 0.06,
+			0.04 };
+	private double marriageRate = 0.85;
+	private double remarriageRate = 0.1;
+	private double adoptionRate = 0.02;
+	private LocalDate firstBirthday = LocalDate.of(1700, 1, 1);
+	private LocalDate endDate = LocalDate.of(2024, 1, 1);
+	private int minParentAge = 18;
+	private int maxParentAge = 45;
+	private int minLifespan = 30;
+	private int maxLifespan = 95;
+
+	/**
+	 * @param seed
+	 *            the seed of every random choice
+	 * @return this generator
+	 */
+	public TreeGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param generations
+	 *            how many generations to make, counting the founders as the
+	 *            first
+	 * @return this generator
+	 */
+	public TreeGenerator setGenerations(int generations) {
+		require(generations >= 1, "generations must be at least 1");
+		this.generations = generations;
+		return this;
+	}
+
+	/**
+	 * @param founders
+	 *            how many unrelated people the tree grows from
+	 * @return this generator
+	 */
+	public TreeGenerator setFounders(int founders) {
+		require(founders >= 0, "founders must not be negative");
+		this.founders = founders;
+		return this;
+	}
+
+	/**
+	 * Stops the tree at a number of people, even if the last family line is
+	 * not finished.
+	 *
+	 * @param maxPeople
+	 *            the most people to make
+	 * @return this generator
+	 */
+	public TreeGenerator setMaxPeople(int maxPeople) {
+		require(maxPeople >= 0, "maxPeople must not be negative");
+		this.maxPeople = Math.min(maxPeople, Integer.MAX_VALUE - MAX_PARTNERS);
+		return this;
+	}
+
+	/**
+	 * Sets how many children each couple has.
+	 *
+	 * @param weights
+	 *            the relative chance of having no children, one child, two
+	 *            children and so on
+	 * @return this generator
+	 */
+	public TreeGenerator setFertility(double... weights) {
+		double total = 0;
+		for (double weight : weights) {
+			require(weight >= 0, "fertility weights must not be negative");
+			total += weight;
+		}
+		require(total > 0, "fertility needs a positive weight");
+		this.fertility = weights.clone();
+		return this;
+	}
+
+	/**
+	 * @param rate
+	 *            the chance that a person marries at all
+	 * @return this generator
+	 */
+	public TreeGenerator setMarriageRate(double rate) {
+		this.marriageRate = rate(rate);
+		return this;
+	}
+
+	/**
+	 * @param rate
+	 *            the chance that a married person divorces and marries
+	 *            again, asked again after every marriage up to three
+	 * @return this generator
+	 */
+	public TreeGenerator setRemarriageRate(double rate) {
+		this.remarriageRate = rate(rate);
+		return this;
+	}
+
+	/**
+	 * @param rate
+	 *            the chance that a person adopts a child
+	 * @return this generator
+	 */
+	public TreeGenerator setAdoptionRate(double rate) {
+		this.adoptionRate = rate(rate);
+		return this;
+	}
+
+	/**
+	 * @param firstBirthday
+	 *            the birthday of the earliest founder; the others are born
+	 *            within a generation of it
+	 * @param endDate
+	 *            the last day anyone is born on, and the day after which
+	 *            everybody is still alive
+	 * @return this generator
+	 */
+	public TreeGenerator setDates(LocalDate firstBirthday, LocalDate endDate) {
+		require(!firstBirthday.isAfter(endDate),
+				"the first birthday must not be after the end date");
+		this.firstBirthday = firstBirthday;
+		this.endDate = endDate;
+		return this;
+	}
+
+	/**
+	 * @param min
+	 *            the youngest age, in years, at which people have children
+	 * @param max
+	 *            the oldest age at which people have children
+	 * @return this generator
+	 */
+	public TreeGenerator setParentAge(int min, int max) {
+		require(0 < min && min <= max, "parent ages must be 0 < min <= max");
+		this.minParentAge = min;
+		this.maxParentAge = max;
+		return this;
+	}
+
+	/**
+	 * @param min
+	 *            the shortest life, in years
+	 * @param max
+	 *            the longest life, in years
+	 * @return this generator
+	 */
+	public TreeGenerator setLifespan(int min, int max) {
+		require(0 < min && min <= max, "lifespans must be 0 < min <= max");
+		this.minLifespan = min;
+		this.maxLifespan = max;
+		return this;
+	}
+
+	/**
+	 * Makes a tree and builds it in memory.
+	 *
+	 * @return the new tree
+	 */
+	public FamilyTree build() {
+		BuilderSink sink = new BuilderSink();
+		try {
+			generate(sink);
+		} catch (IOException e) {
+			// the builder sink writes nowhere
+			throw new UncheckedIOException(e);
+		}
+		return sink.build();
+	}
+
+	/**
+	 * Makes a tree and hands its people to a sink, which is not closed.
+	 *
+	 * @param sink
+	 *            the sink that receives the people
+	 * @return the number of people made and how long it took
+	 * @throws IOException
+	 *             if the sink cannot write a person
+	 */
+	public Throughput generate(TreeSink sink) throws IOException {
+		long start = System.nanoTime();
+		Run run = new Run(sink);
+
+		for (int i = 0; i < founders && run.count < maxPeople; i++) {
+			// founders are born within a generation of each other
+			int birthday = (int) firstBirthday.toEpochDay() + run.between(0,
+					(minParentAge + maxParentAge) / 2 * DAYS_PER_YEAR);
+			Sex gender = run.random.nextBoolean() ? Sex.MALE : Sex.FEMALE;
+			run.live(1, gender, run.surname(), Math.min(birthday, run.endDay),
+					0, 0, 0);
+		}
+		return new Throughput("people", run.count, System.nanoTime() - start);
+	}
+
+	private static double rate(double rate) {
+		require(rate >= 0 && rate <= 1, "rates must be between 0 and 1");
+		return rate;
+	}
+
+	private static void require(boolean condition, String message) {
+		if (!condition) {
+			throw new IllegalArgumentException(message);
+		}
+	}
+
+	/**
+	 * One run of the generator: its random choices and the people made so
+	 * far.
+	 */
+	private final class Run {
+		final Random random = new Random(seed);
+		final TreeSink sink;
+		final int endDay = (int) endDate.toEpochDay();
+		final double fertilityTotal;
+		int count;
+
+		Run(TreeSink sink) {
+			this.sink = sink;
+			double total = 0;
+			for (double weight : fertility) {
+				total += weight;
+			}
+			this.fertilityTotal = total;
+		}
+
+		/**
+		 * Makes a person, their partners, and then their children and
+		 * adopted child with all their descendants.
+		 */
+		void live(int generation, Sex gender, String surname, int birthday,
+				int mother, int father, int guardian) throws IOException {
+			int id = ++count;
+			String name = given(gender) + " " + surname;
+			int deathday = birthday + lifespan();
+
+			// partners are numbered right after the person, and the last
+			// one is the current spouse
+			int partnerCount = 0;
+			if (random.nextDouble() < marriageRate) {
+				partnerCount = 1;
+				while (partnerCount < MAX_PARTNERS
+						&& random.nextDouble() < remarriageRate) {
+					partnerCount++;
+				}
+			}
+			partnerCount = Math.min(partnerCount, maxPeople - count);
+			int[] partners = new int[partnerCount];
+			for (int i = 0; i < partnerCount; i++) {
+				partners[i] = ++count;
+			}
+
+			sink.person(new TreeSink.Row(id, name, gender, date(birthday),
+					deathdate(deathday), mother, father, guardian,
+					partnerCount > 0, partners));
+
+			Sex partnerGender = gender == Sex.MALE ? Sex.FEMALE : Sex.MALE;
+			int[] partnerBirthdays = new int[partnerCount];
+			String[] partnerSurnames = new String[partnerCount];
+			for (int i = 0; i < partnerCount; i++) {
+				partnerBirthdays[i] = Math.min(endDay, birthday + between(
+						-PARTNER_AGE_GAP * DAYS_PER_YEAR,
+						PARTNER_AGE_GAP * DAYS_PER_YEAR));
+				partnerSurnames[i] = surname();
+				sink.person(new TreeSink.Row(partners[i],
+						given(partnerGender) + " " + partnerSurnames[i],
+						partnerGender, date(partnerBirthdays[i]),
+						deathdate(partnerBirthdays[i] + lifespan()), 0, 0, 0,
+						i == partnerCount - 1, new int[] { id }));
+			}
+
+			if (generation == generations) {
+				return;
+			}
+			// each partnership has its share of the childbearing years
+			int years = maxParentAge - minParentAge + 1;
+			for (int i = 0; i < partnerCount; i++) {
+				boolean male = gender == Sex.MALE;
+				int motherBirthday = male ? partnerBirthdays[i] : birthday;
+				int from = minParentAge + years * i / partnerCount;
+				int to = minParentAge + years * (i + 1) / partnerCount;
+				String childSurname = male ? surname : partnerSurnames[i];
+
+				for (int child = children(); child > 0; child--) {
+					int childBirthday = motherBirthday
+							+ between(from * DAYS_PER_YEAR, to * DAYS_PER_YEAR);
+					if (childBirthday > endDay || count >= maxPeople) {
+						continue;
+					}
+					live(generation + 1,
+							random.nextBoolean() ? Sex.MALE : Sex.FEMALE,
+							childSurname, childBirthday,
+							male ? partners[i] : id, male ? id : partners[i],
+							0);
+				}
+			}
+			if (random.nextDouble() < adoptionRate && count < maxPeople) {
+				int childBirthday = birthday + between(
+						minParentAge * DAYS_PER_YEAR,
+						maxParentAge * DAYS_PER_YEAR);
+				if (childBirthday <= endDay) {
+					live(generation + 1,
+							random.nextBoolean() ? Sex.MALE : Sex.FEMALE,
+							gender == Sex.MALE || partnerCount == 0 ? surname
+									: partnerSurnames[partnerCount - 1],
+							childBirthday, 0, 0, id);
+				}
+			}
+		}
+
+		/**
+		 * Draws a number of children from the fertility weights.
+		 */
+		int children() {
+			double draw = random.nextDouble() * fertilityTotal;
+			for (int children = 0; children < fertility.length; children++) {
+				draw -= fertility[children];
+				if (draw < 0) {
+					return children;
+				}
+			}
+			return fertility.length - 1;
+		}
+
+		int lifespan() {
+			return between(minLifespan * DAYS_PER_YEAR,
+					maxLifespan * DAYS_PER_YEAR);
+		}
+
+		/**
+		 * Draws a whole number from min to max, inclusive.
+		 */
+		int between(int min, int max) {
+			return min + random.nextInt(max - min + 1);
+		}
+
+		String given(Sex gender) {
+			String[] names = gender == Sex.MALE ? MALE_NAMES : FEMALE_NAMES;
+			return names[random.nextInt(names.length)];
+		}
+
+		String surname() {
+			StringBuilder surname = new StringBuilder();
+			for (int i = 2 + random.nextInt(2); i > 0; i--) {
+				surname.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			}
+			surname.setCharAt(0, Character.toUpperCase(surname.charAt(0)));
+			return surname.toString();
+		}
+
+		LocalDate deathdate(int deathday) {
+			return deathday > endDay ? null : date(deathday);
+		}
+
+		LocalDate date(int day) {
+			return LocalDate.ofEpochDay(day);
+		}
+	}
+
+	/**
+	 * Feeds the people to a {@link FamilyTreeBuilder}. Every partnership is
+	 * added from the person who married into the family, whose only partner
+	 * is that person, so each person's partners keep their order. The last
+	 * partnership of someone still married is added as their spouse.
+	 */
+	private static final class BuilderSink implements TreeSink {
+		private final FamilyTreeBuilder builder = new FamilyTreeBuilder();
+
+		@Override
+		public void person(Row row) {
+			String key = Integer.toString(row.id());
+			builder.addPerson(key, row.name(), row.gender(), row.birthday(),
+					row.deathdate());
+			if (row.mother() != 0) {
+				builder.addEdge(Integer.toString(row.mother()), key,
+						FamilyTreeBuilder.Relation.PARENT);
+			}
+			if (row.father() != 0) {
+				builder.addEdge(Integer.toString(row.father()), key,
+						FamilyTreeBuilder.Relation.PARENT);
+			}
+			if (row.guardian() != 0) {
+				builder.addEdge(Integer.toString(row.guardian()), key,
+						FamilyTreeBuilder.Relation.GUARDIAN);
+			}
+			int[] partners = row.partners();
+			for (int i = 0; i < partners.length; i++) {
+				if (partners[i] < row.id()) {
+					builder.addEdge(Integer.toString(partners[i]), key,
+							row.married() && i == partners.length - 1
+									? FamilyTreeBuilder.Relation.SPOUSE
+									: FamilyTreeBuilder.Relation.PARTNER);
+				}
+			}
+		}
+
+		FamilyTree build() {
+			return builder.build();
+		}
+	}
+}
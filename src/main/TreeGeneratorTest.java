@@ -0,0 +1,83 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TreeGeneratorTest {
+	private static TreeGenerator generator() {
+		return new TreeGenerator().setSeed(42).setGenerations(6)
+				.setFounders(10).setRemarriageRate(0.3).setAdoptionRate(0.1);
+	}
+
+	@Test
+	void sameSeedGivesTheSameTree() throws Exception {
+		assertArrayEquals(csv(generator()), csv(generator()));
+		assertFalse(Arrays.equals(csv(generator()),
+				csv(generator().setSeed(43))));
+	}
+
+	@Test
+	void remarriedPeopleKeepTheirLastPartnerAsSpouse() {
+		List<Person> people = generator().build().getPeople();
+		int remarried = 0;
+
+		for (Person person : people) {
+			List<Person> partners = person.getPartners();
+			if (partners.size() > 1) {
+				remarried++;
+				assertSame(partners.get(partners.size() - 1),
+						person.getSpouse());
+				assertFalse(partners.get(0).isMarried(), "ex is divorced");
+			}
+		}
+		assertTrue(remarried > 0);
+	}
+
+	@Test
+	void adoptedChildrenHaveAGuardian() {
+		int adopted = 0;
+
+		for (Person person : generator().build().getPeople()) {
+			if (person.isWasAdopted()) {
+				adopted++;
+				assertTrue(person.getGuardian().getChildren().contains(person));
+				assertNull(person.getMother());
+			}
+		}
+		assertTrue(adopted > 0);
+	}
+
+	@Test
+	void limitsAreRespected() {
+		LocalDate end = LocalDate.of(1900, 1, 1);
+		FamilyTree tree = generator().setMaxPeople(500)
+				.setDates(LocalDate.of(1700, 1, 1), end).build();
+
+		assertEquals(500, tree.getPeople().size());
+		for (Person person : tree.getPeople()) {
+			assertFalse(person.getBirthday().isAfter(end));
+			if (person.getMother() != null) {
+				assertTrue(person.getBirthday()
+						.isAfter(person.getMother().getBirthday()));
+			}
+		}
+	}
+
+	private static byte[] csv(TreeGenerator generator) throws Exception {
+		ByteArrayOutputStream people = new ByteArrayOutputStream();
+		ByteArrayOutputStream relationships = new ByteArrayOutputStream();
+		try (CsvTreeSink sink = new CsvTreeSink(Channels.newChannel(people),
+				Channels.newChannel(relationships))) {
+			generator.generate(sink);
+		}
+		people.write(relationships.toByteArray());
+		return people.toByteArray();
+	}
+}
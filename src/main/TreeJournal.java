@@ -0,0 +1,805 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps a family tree on disk by writing every change made to it to an
+ * append-only log, so that the tree can be rebuilt when the program starts
+ * again.
+ * <p>
+ * Each completed change, such as a marriage, a new child or a new name, is
+ * written as one entry holding the new state of every person it touched, so
+ * replaying an entry twice does no harm and a change is never half replayed.
+ * Entries are collected in memory and written by a background thread, which
+ * forces them to disk together (group commit): a change returns as soon as it
+ * is in memory, and {@link #sync()} waits until everything changed so far is
+ * on disk. Changes made since the last force may be lost if the machine
+ * crashes, but never a part of a change.
+ * <p>
+ * The log is split into numbered segments. Once enough has been written,
+ * compaction starts a new segment, writes a snapshot of the tree to a
+ * checkpoint file and deletes the segments the checkpoint covers, so
+ * recovery only reads the checkpoint and the changes made after it.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class TreeJournal implements Closeable {
+	private static final int SEGMENT_MAGIC = 0x46544a4c; // "FTJL"
+	private static final int CHECKPOINT_MAGIC = 0x46544a43; // "FTJC"
+	private static final int VERSION = 1;
+	private static final String CHECKPOINT = "checkpoint";
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	// length and checksum before each entry
+	private static final int ENTRY_HEADER = 2 * Integer.BYTES;
+	private static final byte FEMALE = 1;
+	private static final byte ADOPTED = 2;
+	private static final byte MARRIED = 4;
+
+	// people per checkpoint entry
+	private static final int CHECKPOINT_CHUNK = 4096;
+	private static final int[] NO_IDS = new int[0];
+	// bytes waiting for the disk before changes wait for the writer
+	private static final int MAX_WAITING = 16 << 20;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final Path directory;
+	private final FamilyTree tree;
+	private final CRC32C checksum = new CRC32C();
+	private final Thread committer;
+	private final ExecutorService compactor;
+
+	// the fields below are guarded by this journal's monitor
+	private ByteBuffer filling = ByteBuffer.allocate(BUFFER_SIZE);
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+	private long appended;
+	private long durable;
+	private FileChannel segment;
+	private int segmentNumber;
+	private long sinceCheckpoint;
+	private long compactionBytes = 64 << 20;
+	private boolean rotating;
+	private boolean compacting;
+	private boolean closed;
+	private IOException compactionFailure;
+	// set by the writer under the monitor, also read by checkWritable
+	private volatile IOException failure;
+
+	private TreeJournal(Path directory, FamilyTree tree, int segmentNumber,
+			long sinceCheckpoint) throws IOException {
+		this.directory = directory;
+		this.tree = tree;
+		this.segmentNumber = segmentNumber;
+		this.sinceCheckpoint = sinceCheckpoint;
+		segment = createSegment(directory, segmentNumber);
+
+		// compaction writes checkpoints from snapshots
+		tree.snapshot();
+		tree.setJournal(this);
+
+		committer = new Thread(this::commitLoop, "tree-journal-commit");
+		committer.setDaemon(true);
+		committer.start();
+		compactor = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "tree-journal-compact");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Opens the journal in a directory, creating it if needed, and rebuilds
+	 * the tree from the last checkpoint and the changes logged after it. A
+	 * change that was only partly written when the program stopped is
+	 * dropped. If the IDs stored for the people are already taken in this
+	 * program, the people get new IDs and the log is compacted straight away
+	 * so that it names them by those.
+	 *
+	 * @param directory
+	 *            the directory holding the journal
+	 * @return the journal, which from now on records every change made to
+	 *         {@link #getTree()}
+	 * @throws IOException
+	 *             if the journal cannot be read or is damaged
+	 */
+	public static TreeJournal open(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		Replay replay = new Replay();
+
+		int first = 1;
+		Path checkpoint = directory.resolve(CHECKPOINT);
+		if (Files.exists(checkpoint)) {
+			first = replay.read(checkpoint, CHECKPOINT_MAGIC, false);
+		}
+
+		TreeMap<Integer, Path> segments = segments(directory);
+		long sinceCheckpoint = 0;
+		int next = first;
+		for (var entry : segments.entrySet()) {
+			if (entry.getKey() < first) {
+				// already in the checkpoint
+				Files.delete(entry.getValue());
+				continue;
+			}
+			boolean last = entry.getKey().equals(segments.lastKey());
+			replay.read(entry.getValue(), SEGMENT_MAGIC, last);
+			if (Files.exists(entry.getValue())) {
+				sinceCheckpoint += Files.size(entry.getValue());
+			}
+			next = entry.getKey() + 1;
+		}
+		FamilyTree tree = replay.toTree();
+		TreeJournal journal = new TreeJournal(directory, tree, next,
+				sinceCheckpoint);
+		if (replay.renumbered(tree)) {
+			// the log names these people by IDs they no longer have
+			try {
+				journal.compact();
+			} catch (IOException e) {
+				try {
+					journal.close();
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+				throw e;
+			}
+		}
+		return journal;
+	}
+
+	/**
+	 * @return the tree kept by this journal; change it from one thread at a
+	 *         time, or through a {@link ConcurrentFamilyTree}
+	 */
+	public FamilyTree getTree() {
+		return tree;
+	}
+
+	/**
+	 * Sets how many bytes are logged before the log is compacted into a
+	 * checkpoint in the background.
+	 *
+	 * @param bytes
+	 *            the size of the log that starts a compaction, or
+	 *            {@link Long#MAX_VALUE} to compact only when asked
+	 * @return this journal
+	 */
+	public synchronized TreeJournal setCompactionBytes(long bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("bytes must be positive");
+		}
+		compactionBytes = bytes;
+		return this;
+	}
+
+	/**
+	 * Waits until every change made so far is on disk. Threads that sync at
+	 * the same time share one force of the log.
+	 *
+	 * @throws IOException
+	 *             if the log could not be written
+	 */
+	public void sync() throws IOException {
+		synchronized (this) {
+			long target = appended;
+			boolean interrupted = false;
+			while (durable < target && failure == null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (failure != null) {
+				throw new IOException("Journal could not be written", failure);
+			}
+		}
+	}
+
+	/**
+	 * Writes a checkpoint of the tree as it is now and deletes the parts of
+	 * the log it replaces. Changes can go on while the checkpoint is written.
+	 *
+	 * @throws IOException
+	 *             if the checkpoint cannot be written
+	 */
+	public void compact() throws IOException {
+		synchronized (this) {
+			boolean interrupted = false;
+			while (compacting) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			compacting = true;
+		}
+		try {
+			checkpoint();
+		} finally {
+			synchronized (this) {
+				compacting = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Forces the remaining changes to disk and stops recording changes to
+	 * the tree.
+	 *
+	 * @throws IOException
+	 *             if the log could not be written, or the last background
+	 *             compaction failed
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+		}
+		try {
+			sync();
+		} finally {
+			tree.setJournal(null);
+			synchronized (this) {
+				closed = true;
+				notifyAll();
+			}
+			compactor.shutdown();
+			try {
+				committer.join();
+				compactor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			segment.close();
+		}
+		if (compactionFailure != null) {
+			throw new IOException("Compaction failed", compactionFailure);
+		}
+	}
+
+	/**
+	 * Fails if the log can no longer be written. Called by the tree before it
+	 * starts a change.
+	 *
+	 * @throws UncheckedIOException
+	 *             if writing the log failed
+	 */
+	void checkWritable() {
+		IOException failed = failure;
+		if (failed != null) {
+			throw new UncheckedIOException("Journal could not be written",
+					failed);
+		}
+	}
+
+	/**
+	 * Adds one completed change to the log. Called by the tree with the new
+	 * state of the people the change touched, after the change was made, so
+	 * it does not throw if the log has failed: the change is then left out,
+	 * {@link #sync()} and {@link #close()} report the failure and
+	 * {@link #checkWritable()} refuses further changes.
+	 *
+	 * @param records
+	 *            the people as they are after the change
+	 * @param removed
+	 *            the IDs of the people the change took out of the tree
+	 * @param head
+	 *            the ID of the head of the tree
+	 */
+	synchronized void append(List<PersonRecord> records, int[] removed,
+			int head) {
+		if (closed) {
+			throw new IllegalStateException("Journal is closed");
+		}
+		int size = ENTRY_HEADER + 3 * Integer.BYTES
+				+ removed.length * Integer.BYTES;
+		for (PersonRecord record : records) {
+			size += size(record);
+		}
+
+		// let the writer catch up rather than hold everything in memory
+		boolean interrupted = false;
+		while (filling.position() > 0
+				&& filling.position() + size > MAX_WAITING
+				&& failure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			return;
+		}
+
+		if (filling.remaining() < size) {
+			ByteBuffer larger = ByteBuffer.allocate(
+					Math.max(filling.capacity() * 2, filling.position() + size));
+			filling.flip();
+			filling = larger.put(filling);
+		}
+		int start = filling.position();
+		writeEntry(filling, records, removed, head, checksum);
+		appended += filling.position() - start;
+		notifyAll();
+	}
+
+	/**
+	 * Writes the waiting entries to the log and forces them to disk, again
+	 * and again, until the journal is closed. Entries that arrive during a
+	 * force are written together by the next one.
+	 */
+	private void commitLoop() {
+		while (true) {
+			ByteBuffer batch;
+			FileChannel channel;
+			long end;
+			boolean rotate;
+			synchronized (this) {
+				while (filling.position() == 0 && !rotating && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// only closing stops the writer
+					}
+				}
+				if (filling.position() == 0 && !rotating) {
+					return;
+				}
+				batch = filling;
+				filling = spare;
+				spare = null;
+				channel = segment;
+				end = appended;
+				rotate = rotating;
+			}
+
+			long written = batch.position();
+			FileChannel next = null;
+			try {
+				batch.flip();
+				while (batch.hasRemaining()) {
+					channel.write(batch);
+				}
+				channel.force(false);
+				if (rotate) {
+					next = createSegment(directory, segmentNumber + 1);
+				}
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					notifyAll();
+				}
+				return;
+			}
+
+			synchronized (this) {
+				batch.clear();
+				spare = batch.capacity() > BUFFER_SIZE
+						? ByteBuffer.allocate(BUFFER_SIZE)
+						: batch;
+				durable = end;
+				sinceCheckpoint += written;
+				if (rotate) {
+					closeQuietly(segment);
+					segment = next;
+					segmentNumber++;
+					sinceCheckpoint = 0;
+					rotating = false;
+				}
+				if (!compacting && !closed
+						&& sinceCheckpoint >= compactionBytes) {
+					compacting = true;
+					compactor.execute(this::compactInBackground);
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	private void compactInBackground() {
+		try {
+			checkpoint();
+		} catch (IOException e) {
+			// the log is kept, so nothing is lost; report it on close
+			compactionFailure = e;
+		} finally {
+			synchronized (this) {
+				compacting = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Starts a new segment, then writes everything logged before it as a
+	 * checkpoint. The snapshot is taken after the switch, so it holds at
+	 * least every change in the older segments; changes it also holds from
+	 * the new segment are simply replayed again on recovery.
+	 */
+	private void checkpoint() throws IOException {
+		int first;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			rotating = true;
+			notifyAll();
+			while (rotating && failure == null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					// the switch is quick; finish it
+				}
+			}
+			if (failure != null) {
+				throw new IOException("Journal could not be written", failure);
+			}
+			first = segmentNumber;
+		}
+		TreeSnapshot snapshot = tree.latestSnapshot();
+
+		Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+		try (FileChannel out = FileChannel.open(temporary,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			buffer.putInt(CHECKPOINT_MAGIC).putInt(VERSION).putInt(first);
+			int head = snapshot.getHead() == null ? PersonRecord.NONE
+					: snapshot.getHead().getId();
+			CRC32C crc = new CRC32C();
+			List<PersonRecord> people = snapshot.getPeople();
+
+			// at least one entry, to record the head of an empty tree
+			for (int from = 0; from == 0
+					|| from < people.size(); from += CHECKPOINT_CHUNK) {
+				List<PersonRecord> chunk = people.subList(from,
+						Math.min(from + CHECKPOINT_CHUNK, people.size()));
+				int size = ENTRY_HEADER + 3 * Integer.BYTES;
+				for (PersonRecord record : chunk) {
+					size += size(record);
+				}
+				if (buffer.remaining() < size) {
+					write(out, buffer);
+					if (buffer.capacity() < size) {
+						buffer = ByteBuffer.allocate(size);
+					}
+				}
+				writeEntry(buffer, chunk, NO_IDS, head, crc);
+			}
+			write(out, buffer);
+			out.force(true);
+		}
+		Files.move(temporary, directory.resolve(CHECKPOINT),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		for (var entry : segments(directory).entrySet()) {
+			if (entry.getKey() < first) {
+				Files.delete(entry.getValue());
+			}
+		}
+	}
+
+	private static void write(FileChannel out, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static FileChannel createSegment(Path directory, int number)
+			throws IOException {
+		Path path = directory.resolve(
+				String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES)
+				.putInt(SEGMENT_MAGIC).putInt(VERSION);
+		write(channel, header);
+		channel.force(true);
+		return channel;
+	}
+
+	private static TreeMap<Integer, Path> segments(Path directory)
+			throws IOException {
+		TreeMap<Integer, Path> segments = new TreeMap<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				segments.put(Integer.parseInt(name.substring(
+						SEGMENT_PREFIX.length(),
+						name.length() - SEGMENT_SUFFIX.length())), file);
+			}
+		}
+		return segments;
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// everything in it has been forced already
+		}
+	}
+
+	/**
+	 * @return the most bytes a person can take in an entry
+	 */
+	private static int size(PersonRecord record) {
+		// a char takes at most three bytes in UTF-8
+		return Integer.BYTES + 1 + 5 * Integer.BYTES + Integer.BYTES
+				+ (record.getName() == null ? 0
+						: 3 * record.getName().length())
+				+ Integer.BYTES * (2 + record.children().length
+						+ record.partners().length);
+	}
+
+	/**
+	 * Writes one entry: its length and checksum, then the head of the tree,
+	 * the people and the IDs of the people taken out.
+	 */
+	private static void writeEntry(ByteBuffer out, List<PersonRecord> records,
+			int[] removed, int head, CRC32C crc) {
+		int start = out.position();
+		out.position(start + ENTRY_HEADER);
+		out.putInt(head);
+		out.putInt(records.size());
+
+		for (PersonRecord record : records) {
+			out.putInt(record.getId());
+			out.put((byte) ((record.getGender() == Sex.FEMALE ? FEMALE : 0)
+					| (record.isWasAdopted() ? ADOPTED : 0)
+					| (record.isMarried() ? MARRIED : 0)));
+			out.putInt(PersonTable.toEpochDay(record.getBirthday()));
+			out.putInt(PersonTable.toEpochDay(record.getDeathdate()));
+			out.putInt(record.getMotherId());
+			out.putInt(record.getFatherId());
+			out.putInt(record.getGuardianId());
+			if (record.getName() == null) {
+				out.putInt(-1);
+			} else {
+				byte[] name = record.getName().getBytes(StandardCharsets.UTF_8);
+				out.putInt(name.length);
+				out.put(name);
+			}
+			putIds(out, record.children());
+			putIds(out, record.partners());
+		}
+		putIds(out, removed);
+
+		int end = out.position();
+		ByteBuffer payload = out.duplicate();
+		payload.position(start + ENTRY_HEADER).limit(end);
+		crc.reset();
+		crc.update(payload);
+		out.putInt(start, end - start - ENTRY_HEADER);
+		out.putInt(start + Integer.BYTES, (int) crc.getValue());
+	}
+
+	private static void putIds(ByteBuffer out, int[] ids) {
+		out.putInt(ids.length);
+		for (int id : ids) {
+			out.putInt(id);
+		}
+	}
+
+	/**
+	 * Rebuilds a tree from a checkpoint and log segments, keeping the latest
+	 * state of every person in the order they first appear.
+	 */
+	private static final class Replay {
+		private final PersistentIntMap.Editor<PersonRecord> rows = PersistentIntMap
+				.<PersonRecord>empty().edit();
+		private final PersistentIntMap.Editor<Integer> rowsById = PersistentIntMap
+				.<Integer>empty().edit();
+		private final CRC32C crc = new CRC32C();
+		// IDs of people taken out of the tree since they were recorded
+		private final Set<Integer> removed = new HashSet<>();
+		private int size;
+		private int head = PersonRecord.NONE;
+		// rows by ID of the people in the rebuilt tree
+		private PersistentIntMap<Integer> keptById;
+
+		/**
+		 * Replays the entries of a file. A damaged entry at the end of the
+		 * last segment was being written when the program stopped, so it is
+		 * cut off; anywhere else it is an error.
+		 *
+		 * @return the first segment not covered, for a checkpoint
+		 */
+		int read(Path path, int magic, boolean last) throws IOException {
+			long valid = 0;
+			int first = 0;
+			boolean created = true;
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(path),
+							1 << 16))) {
+				long length = Files.size(path);
+				try {
+					if (in.readInt() != magic || in.readInt() != VERSION) {
+						throw new IOException("Not a journal file: " + path);
+					}
+					valid = 2 * Integer.BYTES;
+					if (magic == CHECKPOINT_MAGIC) {
+						first = in.readInt();
+						valid += Integer.BYTES;
+					}
+				} catch (EOFException e) {
+					if (!last) {
+						throw new IOException("Truncated journal file " + path);
+					}
+					// the segment was being created
+					created = false;
+					length = valid = 0;
+				}
+
+				byte[] payload = new byte[0];
+				while (valid < length) {
+					try {
+						int size = in.readInt();
+						int expected = in.readInt();
+						if (size < 0 || size > length - valid - ENTRY_HEADER) {
+							break;
+						}
+						if (payload.length < size) {
+							payload = new byte[size];
+						}
+						in.readFully(payload, 0, size);
+						crc.reset();
+						crc.update(payload, 0, size);
+						if ((int) crc.getValue() != expected) {
+							break;
+						}
+						apply(ByteBuffer.wrap(payload, 0, size));
+						valid += ENTRY_HEADER + size;
+					} catch (EOFException e) {
+						break;
+					}
+				}
+				if (valid < length) {
+					if (!last) {
+						throw new IOException("Damaged journal file " + path
+								+ " at byte " + valid);
+					}
+				}
+			}
+			if (last && !created) {
+				Files.delete(path);
+			} else if (last) {
+				try (FileChannel channel = FileChannel.open(path,
+						StandardOpenOption.WRITE)) {
+					channel.truncate(valid);
+				}
+			}
+			return first;
+		}
+
+		private void apply(ByteBuffer entry) {
+			head = entry.getInt();
+			for (int count = entry.getInt(); count > 0; count--) {
+				int id = entry.getInt();
+				byte flags = entry.get();
+				int birthday = entry.getInt();
+				int deathdate = entry.getInt();
+				int mother = entry.getInt();
+				int father = entry.getInt();
+				int guardian = entry.getInt();
+				int nameLength = entry.getInt();
+				String name = null;
+				if (nameLength >= 0) {
+					name = new String(entry.array(),
+							entry.arrayOffset() + entry.position(), nameLength,
+							StandardCharsets.UTF_8);
+					entry.position(entry.position() + nameLength);
+				}
+				int[] children = ids(entry);
+				int[] partners = ids(entry);
+
+				removed.remove(id);
+				Integer row = rowsById.get(id);
+				if (row == null) {
+					row = size++;
+					rowsById.put(id, row);
+				}
+				rows.put(row, new PersonRecord(id, name,
+						(flags & FEMALE) != 0 ? Sex.FEMALE : Sex.MALE,
+						PersonTable.toDate(birthday),
+						PersonTable.toDate(deathdate), mother, father, guardian,
+						(flags & ADOPTED) != 0, (flags & MARRIED) != 0,
+						children, partners));
+			}
+			for (int id : ids(entry)) {
+				removed.add(id);
+			}
+		}
+
+		private static int[] ids(ByteBuffer entry) {
+			int[] ids = new int[entry.getInt()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = entry.getInt();
+			}
+			return ids;
+		}
+
+		FamilyTree toTree() {
+			PersistentIntMap<PersonRecord> kept = rows.done();
+			if (removed.isEmpty()) {
+				keptById = rowsById.done();
+				return new TreeSnapshot(0, size, head, kept, keptById)
+						.toFamilyTree();
+			}
+			// close up the rows of the people taken out
+			PersistentIntMap.Editor<PersonRecord> left = PersistentIntMap
+					.<PersonRecord>empty().edit();
+			PersistentIntMap.Editor<Integer> leftById = PersistentIntMap
+					.<Integer>empty().edit();
+			int count = 0;
+			for (int row = 0; row < size; row++) {
+				PersonRecord record = kept.get(row);
+				if (!removed.contains(record.getId())) {
+					leftById.put(record.getId(), count);
+					left.put(count++, record);
+				}
+			}
+			keptById = leftById.done();
+			return new TreeSnapshot(0, count, head, left.done(), keptById)
+					.toFamilyTree();
+		}
+
+		/**
+		 * Checks whether any person of the rebuilt tree got a new ID because
+		 * their stored one was taken, as when the journal is opened again in
+		 * the same program. A person keeps their ID only if it is free, so
+		 * the IDs were changed exactly when one of them was not stored.
+		 */
+		boolean renumbered(FamilyTree tree) {
+			for (Person person : tree.getPeople()) {
+				if (keptById.get(person.getId()) == null) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
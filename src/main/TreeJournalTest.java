@@ -0,0 +1,197 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.TreeMetrics.Operation;
+
+class TreeJournalTest {
+	@TempDir
+	Path directory;
+
+	/**
+	 * George and Mary marry and have a son, John.
+	 */
+	private static Person[] build(FamilyTree tree) throws Exception {
+		Person george = new Person("George Smith", "male",
+				LocalDate.of(1900, 3, 1));
+		Person mary = new Person("Mary Jones", "female",
+				LocalDate.of(1902, 7, 9));
+		Person john = new Person("John Smith", "male");
+		tree.addPerson(george);
+		tree.addPerson(mary);
+		tree.marry(george, mary);
+		tree.addChild(george, mary, john);
+		return new Person[] { george, mary, john };
+	}
+
+	@Test
+	void changesAreReplayedOnOpen() throws Exception {
+		Person[] family;
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			family = build(journal.getTree());
+			family[2].setName("Jack Smith");
+			family[1].setDeathdate(LocalDate.of(1980, 5, 5));
+		}
+
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			FamilyTree tree = journal.getTree();
+			assertEquals(3, tree.getPeople().size());
+			Person george = tree.getHead().getNext();
+			Person son = tree.findPeople("Jack Smith").get(0);
+			assertEquals("George Smith", george.getName());
+			assertEquals("Mary Jones", george.getSpouse().getName());
+			assertEquals(LocalDate.of(1980, 5, 5),
+					george.getSpouse().getDeathdate());
+			assertSame(george, son.getFather());
+
+			// the reopened tree goes on being recorded
+			tree.addChild(george, george.getSpouse(),
+					new Person("Anne Smith", "female"));
+		}
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			assertEquals(4, journal.getTree().getPeople().size());
+		}
+	}
+
+	@Test
+	void halfWrittenChangeIsDropped() throws Exception {
+		Person[] family;
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			family = build(journal.getTree());
+			journal.sync();
+			journal.getTree().addChild(family[0], family[1],
+					new Person("Anne Smith", "female"));
+		}
+
+		// cut the last change short, as a crash while writing would
+		Path segment = segments().get(segments().size() - 1);
+		try (FileChannel channel = FileChannel.open(segment,
+				StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			FamilyTree tree = journal.getTree();
+			assertEquals(3, tree.getPeople().size());
+			assertEquals(1, tree.getHead().getNext().getChildren().size());
+		}
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			assertEquals(3, journal.getTree().getPeople().size());
+		}
+	}
+
+	@Test
+	void compactionReplacesTheLog() throws Exception {
+		Person[] family;
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			family = build(journal.getTree());
+			journal.compact();
+			journal.getTree().findPerson(family[2].getId())
+					.setName("Jack Smith");
+			journal.compact();
+			journal.getTree().addChild(family[0], family[1],
+					new Person("Anne Smith", "female"));
+		}
+		assertTrue(Files.exists(directory.resolve("checkpoint")));
+		assertEquals(1, segments().size());
+
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			FamilyTree tree = journal.getTree();
+			assertEquals(4, tree.getPeople().size());
+			assertEquals(1, tree.findPeople("Jack Smith").size());
+			assertEquals("George Smith", tree.getPeople().get(0).getName());
+		}
+	}
+
+	@Test
+	void logIsCompactedInTheBackground() throws Exception {
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			journal.setCompactionBytes(4096);
+			Person[] family = build(journal.getTree());
+			for (int i = 0; i < 500; i++) {
+				journal.getTree().addChild(family[0], family[1],
+						new Person("Child " + i, "female"));
+				journal.sync();
+			}
+		}
+		assertTrue(Files.exists(directory.resolve("checkpoint")));
+
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			assertEquals(503, journal.getTree().getPeople().size());
+		}
+	}
+
+	@Test
+	void mergedDuplicatesStayRemoved() throws Exception {
+		Person[] family;
+		Person again = new Person("John Smith", "male");
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			family = build(journal.getTree());
+			journal.getTree().addChild(family[0], family[1], again);
+			DuplicateFinder finder = new DuplicateFinder(journal.getTree());
+			assertEquals(1, finder.merge(finder.findDuplicates()));
+		}
+
+		try (TreeJournal journal = TreeJournal.open(directory)) {
+			FamilyTree tree = journal.getTree();
+			assertEquals(3, tree.getPeople().size());
+			assertEquals(1, tree.findPeople("John Smith").size());
+			assertEquals(1, tree.getHead().getNext().getChildren().size());
+		}
+	}
+
+	@Test
+	void changesAreRefusedOnceTheLogFails() throws Exception {
+		TreeJournal journal = TreeJournal.open(directory);
+		FamilyTree tree = journal.getTree();
+		TreeMetrics metrics = new TreeMetrics();
+		tree.setMetrics(metrics);
+		Person[] family = build(tree);
+		journal.sync();
+
+		// close the log file under the writer, as a failing disk would
+		Field segment = TreeJournal.class.getDeclaredField("segment");
+		segment.setAccessible(true);
+		((FileChannel) segment.get(journal)).close();
+		family[2].setName("Jack Smith");
+		assertThrows(IOException.class, journal::sync);
+
+		// later changes fail before they change anything
+		assertThrows(UncheckedIOException.class, () -> tree.addChild(family[0],
+				family[1], new Person("Anne Smith", "female")));
+		assertThrows(UncheckedIOException.class,
+				() -> family[2].setName("John Smith"));
+		assertEquals(3, tree.getPeople().size());
+		assertEquals("Jack Smith", family[2].getName());
+
+		// without the journal the tree changes again, and is still measured
+		assertThrows(IOException.class, journal::close);
+		assertTrue(tree.addChild(family[0], family[1],
+				new Person("Anne Smith", "female")));
+		assertEquals(2, metrics.getOperation(Operation.ADD_CHILD).getCalls());
+	}
+
+	private List<Path> segments() throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files
+					.filter(file -> file.getFileName().toString()
+							.startsWith("journal-"))
+					.sorted().collect(Collectors.toList());
+		}
+	}
+}
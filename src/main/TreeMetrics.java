@@ -0,0 +1,295 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the operations of a family tree cost: how often each one ran,
+ * how many people its walks visited, how long the walk queues grew, how many
+ * times it compared people with {@link Person#equals(Object)}, and a
+ * histogram of how long it took. Queries slower than a threshold are also
+ * recorded as {@link SlowQueryEvent}s for Java Flight Recorder.
+ * <p>
+ * A tree collects nothing until it is given metrics with
+ * {@link FamilyTree#setMetrics(TreeMetrics)}, and an operation then only
+ * checks that its metrics are missing. Counting equals calls touches every
+ * comparison, so it is only compiled in when the JVM is started with
+ * {@code -Dfamilytree.metrics.equals=true}.
+ * <p>
+ * The counters can be read with {@link #getOperations()} or, once
+ * {@link #register(String) registered}, through JMX.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public class TreeMetrics implements TreeMetricsMXBean {
+	/**
+	 * Whether operations count their calls to {@link Person#equals(Object)}.
+	 */
+	static final boolean COUNT_EQUALS = Boolean
+			.getBoolean("familytree.metrics.equals");
+
+	/**
+	 * The operations of a family tree that are measured.
+	 */
+	public enum Operation {
+		FIND_PERSON, FIND_PEOPLE, FIND_BY_PREFIX, FIND_SOUNDING_LIKE,
+		FIND_SIMILAR, FIND_BORN_BETWEEN, FIND_DIED_BETWEEN, FIND_ALIVE_ON,
+		FIND_DESCENDANTS_ALIVE_ON, FIND_ALL, ADD_PERSON, ADD_CHILD,
+		ASSIGN_PARENT, MARRY, DIVORCE, ADOPT, ARE_BLOOD_RELATED, IS_ANCESTOR,
+		SHARE_ANCESTOR, GET_SIBLINGS, CHECK_RELATION, ARE_IN_SAME_FAMILY,
+		GENERATIONS_BETWEEN, FIND_HIGHEST_ROOT
+	}
+
+	// latencies are bucketed by powers of two nanoseconds
+	private static final int BUCKETS = 64;
+
+	// the operation running on each thread, if it is being measured
+	private static final ThreadLocal<Probe> CURRENT = new ThreadLocal<>();
+
+	// how many metrics are enabled; walks skip reporting while it is zero
+	private static final AtomicInteger ENABLED = new AtomicInteger();
+
+	private final Counters[] counters;
+	private volatile boolean enabled;
+	private volatile long slowNanos = Duration.ofMillis(100).toNanos();
+
+	/**
+	 * Creates enabled metrics with all counters at zero.
+	 */
+	public TreeMetrics() {
+		counters = new Counters[Operation.values().length];
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = new Counters();
+		}
+		setEnabled(true);
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server as
+	 * {@code main:type=TreeMetrics,name=}<i>name</i>.
+	 *
+	 * @param name
+	 *            the name that tells these metrics apart from others
+	 * @return the name they were registered under
+	 * @throws JMException
+	 *             if the name is taken or not valid
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("main:type=TreeMetrics,name="
+				+ ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				objectName);
+		return objectName;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public synchronized void setEnabled(boolean enabled) {
+		if (this.enabled != enabled) {
+			this.enabled = enabled;
+			ENABLED.addAndGet(enabled ? 1 : -1);
+		}
+	}
+
+	@Override
+	public long getSlowQueryMillis() {
+		return Duration.ofNanos(slowNanos).toMillis();
+	}
+
+	@Override
+	public void setSlowQueryMillis(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("negative threshold");
+		}
+		slowNanos = Duration.ofMillis(millis).toNanos();
+	}
+
+	@Override
+	public List<OperationStats> getOperations() {
+		List<OperationStats> stats = new ArrayList<>();
+		for (Operation operation : Operation.values()) {
+			OperationStats one = getOperation(operation);
+			if (one.getCalls() > 0) {
+				stats.add(one);
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Reads the counters of one operation.
+	 *
+	 * @param operation
+	 *            the operation
+	 * @return what the operation has cost so far
+	 */
+	public OperationStats getOperation(Operation operation) {
+		Counters c = counters[operation.ordinal()];
+		long[] histogram = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram[i] = c.latency[i].sum();
+		}
+		return new OperationStats(operation.name(), c.calls.sum(),
+				c.slow.sum(), c.visited.sum(), c.maxQueue.get(),
+				c.equalsCalls.sum(), c.nanos.sum(), c.maxNanos.get(),
+				histogram);
+	}
+
+	@Override
+	public void reset() {
+		for (Counters c : counters) {
+			c.reset();
+		}
+	}
+
+	/**
+	 * Starts measuring an operation on the current thread. An operation
+	 * called from inside another one is counted as part of the outer one.
+	 *
+	 * @param metrics
+	 *            the metrics of the tree, may be null
+	 * @return the probe to pass to {@link #end(Probe, Operation)}, or null if
+	 *         nothing is measured
+	 */
+	static Probe begin(TreeMetrics metrics) {
+		if (metrics == null || !metrics.enabled || CURRENT.get() != null) {
+			return null;
+		}
+		Probe probe = new Probe(metrics);
+		CURRENT.set(probe);
+		probe.start = System.nanoTime();
+		return probe;
+	}
+
+	/**
+	 * Finishes measuring an operation and adds it to the counters.
+	 *
+	 * @param probe
+	 *            the probe returned by {@link #begin(TreeMetrics)}, may be
+	 *            null
+	 * @param operation
+	 *            the operation that ran
+	 */
+	static void end(Probe probe, Operation operation) {
+		if (probe == null) {
+			return;
+		}
+		long nanos = System.nanoTime() - probe.start;
+		CURRENT.set(null);
+		probe.metrics.record(operation, probe, nanos);
+	}
+
+	/**
+	 * Reports a walk made by the operation running on this thread.
+	 *
+	 * @param visited
+	 *            the number of people the walk visited
+	 * @param maxQueue
+	 *            the most people waiting in the walk's queue or stack at once
+	 */
+	static void walked(int visited, int maxQueue) {
+		if (ENABLED.get() == 0) {
+			return;
+		}
+		Probe probe = CURRENT.get();
+		if (probe != null) {
+			probe.visited += visited;
+			probe.maxQueue = Math.max(probe.maxQueue, maxQueue);
+		}
+	}
+
+	/**
+	 * Counts a call to {@link Person#equals(Object)}. Only called when
+	 * {@link #COUNT_EQUALS} is set.
+	 */
+	static void equalsCalled() {
+		Probe probe = CURRENT.get();
+		if (probe != null) {
+			probe.equalsCalls++;
+		}
+	}
+
+	private void record(Operation operation, Probe probe, long nanos) {
+		Counters c = counters[operation.ordinal()];
+		c.calls.increment();
+		c.visited.add(probe.visited);
+		c.maxQueue.accumulate(probe.maxQueue);
+		c.equalsCalls.add(probe.equalsCalls);
+		c.nanos.add(nanos);
+		c.maxNanos.accumulate(nanos);
+		c.latency[BUCKETS - 1 - Long.numberOfLeadingZeros(nanos | 1)]
+				.increment();
+
+		if (nanos >= slowNanos) {
+			c.slow.increment();
+			SlowQueryEvent event = new SlowQueryEvent();
+			if (event.isEnabled()) {
+				event.operation = operation.name();
+				event.elapsed = nanos;
+				event.visited = probe.visited;
+				event.maxQueue = probe.maxQueue;
+				event.equalsCalls = probe.equalsCalls;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * What one running operation has cost so far. Only touched by the thread
+	 * running it.
+	 */
+	static final class Probe {
+		private final TreeMetrics metrics;
+		private long start;
+		private long visited;
+		private int maxQueue;
+		private long equalsCalls;
+
+		private Probe(TreeMetrics metrics) {
+			this.metrics = metrics;
+		}
+	}
+
+	private static final class Counters {
+		final LongAdder calls = new LongAdder();
+		final LongAdder slow = new LongAdder();
+		final LongAdder visited = new LongAdder();
+		final LongAccumulator maxQueue = new LongAccumulator(Math::max, 0);
+		final LongAdder equalsCalls = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		final LongAdder[] latency = new LongAdder[BUCKETS];
+
+		Counters() {
+			for (int i = 0; i < BUCKETS; i++) {
+				latency[i] = new LongAdder();
+			}
+		}
+
+		void reset() {
+			calls.reset();
+			slow.reset();
+			visited.reset();
+			maxQueue.reset();
+			equalsCalls.reset();
+			nanos.reset();
+			maxNanos.reset();
+			for (LongAdder bucket : latency) {
+				bucket.reset();
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package main;
+
+import java.util.List;
+
+/**
+ * The management interface of {@link TreeMetrics}, as shown in JConsole and
+ * other JMX clients.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public interface TreeMetricsMXBean {
+	/**
+	 * @return true if operations are being measured
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Starts or stops measuring operations. The counters are kept while
+	 * measuring is stopped.
+	 *
+	 * @param enabled
+	 *            true to measure operations
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * @return how long an operation may take, in milliseconds, before it is
+	 *         recorded as a slow query
+	 */
+	long getSlowQueryMillis();
+
+	/**
+	 * @param millis
+	 *            how long an operation may take, in milliseconds, before it
+	 *            is recorded as a slow query
+	 */
+	void setSlowQueryMillis(long millis);
+
+	/**
+	 * @return the counters of every operation that has run at least once
+	 */
+	List<OperationStats> getOperations();
+
+	/**
+	 * Sets every counter back to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,115 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.TreeMetrics.Operation;
+
+class TreeMetricsTest {
+	private FamilyTree tree;
+	private Person grandfather;
+	private Person grandchild;
+	private TreeMetrics metrics;
+
+	/**
+	 * Three generations of fathers and sons, each with a mother.
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		grandfather = new Person("Adam Grey", "male", LocalDate.of(1900, 1, 1));
+		Person son = new Person("Ben Grey", "male", LocalDate.of(1930, 1, 1));
+		grandchild = new Person("Carl Grey", "male", LocalDate.of(1960, 1, 1));
+
+		tree = new FamilyTree(grandfather);
+		assertTrue(tree.addChild(grandfather, son));
+		assertTrue(tree.addChild(son, grandchild));
+		metrics = new TreeMetrics();
+		tree.setMetrics(metrics);
+	}
+
+	@Test
+	void operationsAreCountedWithTheirWalks() {
+		tree.findDescendantsAliveOn(grandfather, LocalDate.of(1970, 1, 1));
+		tree.findDescendantsAliveOn(grandfather, LocalDate.of(1970, 1, 1));
+		assertTrue(tree.isAncestor(grandfather, grandchild));
+
+		OperationStats walk = metrics
+				.getOperation(Operation.FIND_DESCENDANTS_ALIVE_ON);
+		assertEquals(2, walk.getCalls());
+		assertEquals(4, walk.getNodesVisited());
+		assertEquals(1, walk.getMaxQueue());
+		assertTrue(walk.getP99Micros() >= walk.getP50Micros());
+		assertTrue(walk.getMaxMicros() > 0);
+		assertEquals(1, metrics.getOperation(Operation.IS_ANCESTOR).getCalls());
+		assertEquals(2, metrics.getOperations().size());
+	}
+
+	@Test
+	void lookupsAndSmallChangesAreCounted() throws Exception {
+		Person wife = new Person("Dora Grey", "female");
+		Person orphan = new Person("Eve Grey", "female");
+		tree.addPerson(orphan);
+		tree.marry(grandfather, wife);
+		assertTrue(tree.divorce(grandfather));
+		assertTrue(tree.assignParent(wife, orphan));
+		tree.findPerson(grandchild.getId());
+		tree.findPerson(grandchild);
+		tree.findPerson("Carl Grey", LocalDate.of(1960, 1, 1));
+		tree.findPeople("Carl Grey");
+
+		assertEquals(3, metrics.getOperation(Operation.FIND_PERSON).getCalls());
+		assertEquals(1, metrics.getOperation(Operation.FIND_PEOPLE).getCalls());
+		assertEquals(1, metrics.getOperation(Operation.DIVORCE).getCalls());
+		assertEquals(1,
+				metrics.getOperation(Operation.ASSIGN_PARENT).getCalls());
+		// the lookups made inside a change count as part of the change
+		assertEquals(1, metrics.getOperation(Operation.MARRY).getCalls());
+	}
+
+	@Test
+	void nothingIsCountedWhenDisabled() {
+		metrics.setEnabled(false);
+		tree.getSiblings(grandchild);
+		tree.setMetrics(null);
+		tree.getSiblings(grandchild);
+
+		assertTrue(metrics.getOperations().isEmpty());
+	}
+
+	@Test
+	void slowQueriesAreCountedAgainstTheThreshold() {
+		metrics.setSlowQueryMillis(0);
+		tree.findAliveOn(LocalDate.of(1950, 1, 1));
+
+		assertEquals(1,
+				metrics.getOperation(Operation.FIND_ALIVE_ON).getSlowCalls());
+		metrics.reset();
+		assertEquals(0, metrics.getOperation(Operation.FIND_ALIVE_ON).getCalls());
+	}
+
+	@Test
+	void countersAreReadableThroughJmx() throws Exception {
+		tree.getSiblings(grandchild);
+		ObjectName name = metrics.register("test");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		try {
+			CompositeData[] operations = (CompositeData[]) server
+					.getAttribute(name, "Operations");
+			assertEquals(1, operations.length);
+			assertEquals("GET_SIBLINGS", operations[0].get("operation"));
+			assertEquals(1L, operations[0].get("calls"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
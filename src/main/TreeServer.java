@@ -0,0 +1,490 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a family tree over HTTP, answering in JSON. The endpoints are:
+ * <ul>
+ * <li>{@code GET /people?name=} people with a name, ignoring case, or
+ * {@code ?prefix=&limit=} people with a word of their name starting with the
+ * prefix;</li>
+ * <li>{@code POST /people?name=&gender=&birthday=&deathdate=} adds a
+ * person;</li>
+ * <li>{@code GET /people/{id}} a person;</li>
+ * <li>{@code GET /people/{id}/siblings} their brothers and sisters;</li>
+ * <li>{@code GET /people/{id}/ancestors?generations=&order=&limit=} and
+ * {@code /descendants}, nearest first, breadth-first unless the order is
+ * {@code depth};</li>
+ * <li>{@code POST /people/{id}/children?name=&gender=&birthday=&spouse=}
+ * adds a child, with the current spouse if one is given;</li>
+ * <li>{@code POST /people/{id}/parents?parent=} gives a person a parent
+ * already in the tree;</li>
+ * <li>{@code POST /marriages?a=&b=} marries two people;</li>
+ * <li>{@code GET /relation?a=&b=} how the first person is related to the
+ * second.</li>
+ * </ul>
+ * Parameters may also be sent as a form in the body of a POST. People are
+ * written as objects with their ID, name, gender, dates and the IDs of their
+ * parents and spouse. Unknown people are 404, bad parameters 400, and
+ * changes the tree refuses 409.
+ * <p>
+ * Connections are multiplexed by the server's dispatcher thread and each
+ * request runs on a thread of its own, a virtual thread where the runtime
+ * has them, so tens of thousands of open connections cost no more than the
+ * requests actually in flight. On older runtimes requests share a small
+ * pool of platform threads; queries never block on anything but the tree's
+ * locks, so a few threads per core keep up.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public final class TreeServer implements Closeable {
+	/**
+	 * Most ancestors or descendants listed unless a limit is given.
+	 */
+	public static final int DEFAULT_LIMIT = 1000;
+
+	// connections waiting to be accepted
+	private static final int BACKLOG = 4096;
+
+	// idle keep-alive connections kept open, instead of the JDK's 200
+	private static final String MAX_IDLE =
+			"sun.net.httpserver.maxIdleConnections";
+	private static final String MAX_IDLE_CONNECTIONS = "65536";
+
+	private final ConcurrentFamilyTree tree;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	private TreeServer(ConcurrentFamilyTree tree, HttpServer server,
+			ExecutorService executor) {
+		this.tree = tree;
+		this.server = server;
+		this.executor = executor;
+	}
+
+	/**
+	 * Starts serving a tree.
+	 *
+	 * @param tree
+	 *            the tree to serve
+	 * @param port
+	 *            the port to listen on, or 0 for any free port
+	 * @return the running server
+	 * @throws IOException
+	 *             if the port cannot be opened
+	 */
+	public static TreeServer start(ConcurrentFamilyTree tree, int port)
+			throws IOException {
+		// only read when the first server is made
+		if (System.getProperty(MAX_IDLE) == null) {
+			System.setProperty(MAX_IDLE, MAX_IDLE_CONNECTIONS);
+		}
+		HttpServer server = HttpServer.create(new InetSocketAddress(port),
+				BACKLOG);
+		ExecutorService executor = newExecutor();
+		TreeServer treeServer = new TreeServer(tree, server, executor);
+		server.createContext("/", treeServer::handle);
+		server.setExecutor(executor);
+		server.start();
+		return treeServer;
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return true if each request runs on a virtual thread of its own
+	 */
+	public boolean usesVirtualThreads() {
+		return !(executor instanceof ThreadPoolExecutor);
+	}
+
+	/**
+	 * Stops the server, letting requests in flight finish for up to a second.
+	 */
+	@Override
+	public void close() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * Makes a virtual thread per task executor if the runtime has virtual
+	 * threads, which this code is compiled without, or else a fixed pool.
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			int threads = 4 * Runtime.getRuntime().availableProcessors();
+			return Executors.newFixedThreadPool(threads, task -> {
+				Thread thread = new Thread(task, "tree-server");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * An answer that is not 200, thrown from anywhere in a request.
+	 */
+	private static final class HttpError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+
+		HttpError(int status, String message) {
+			super(message, null, false, false);
+			this.status = status;
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		int status = 200;
+		String body;
+		try {
+			Map<String, String> params = params(exchange);
+			body = route(exchange.getRequestMethod(),
+					exchange.getRequestURI().getPath().split("/"), params);
+			if (exchange.getRequestMethod().equals("POST")) {
+				status = 201;
+			}
+		} catch (HttpError e) {
+			status = e.status;
+			body = "{\"error\":" + quote(e.getMessage()) + "}";
+		} catch (IllegalArgumentException e) {
+			// such as a negative number of generations
+			status = 400;
+			body = "{\"error\":" + quote(e.getMessage()) + "}";
+		} catch (RuntimeException e) {
+			status = 500;
+			body = "{\"error\":" + quote(String.valueOf(e)) + "}";
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type",
+				"application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private String route(String method, String[] path,
+			Map<String, String> params) {
+		String resource = path.length > 1 ? path[1] : "";
+		if (resource.equals("people") && path.length == 2) {
+			return method.equals("POST") ? addPerson(params)
+					: get(method, () -> findPeople(params));
+		}
+		if (resource.equals("people") && path.length == 3) {
+			return get(method, () -> read(tree -> json(
+					person(tree, path[2]), new StringBuilder()).toString()));
+		}
+		if (resource.equals("people") && path.length == 4) {
+			switch (path[3]) {
+			case "siblings":
+				return get(method, () -> read(tree -> list(
+						tree.getSiblings(person(tree, path[2])))));
+			case "ancestors":
+			case "descendants":
+				return get(method, () -> relatives(path[2], path[3], params));
+			case "children":
+				return post(method, () -> addChild(path[2], params));
+			case "parents":
+				return post(method, () -> change(tree -> refused(
+						tree.assignParent(person(tree, params, "parent"),
+								person(tree, path[2])),
+						json(person(tree, path[2]), new StringBuilder()))));
+			default:
+				break;
+			}
+		}
+		if (resource.equals("marriages") && path.length == 2) {
+			return post(method, () -> change(tree -> {
+				Person a = person(tree, params, "a");
+				Person b = person(tree, params, "b");
+				return refused(tree.marry(a, b), list(List.of(a, b)));
+			}));
+		}
+		if (resource.equals("relation") && path.length == 2) {
+			return get(method, () -> relation(params));
+		}
+		throw new HttpError(404, "no such resource");
+	}
+
+	private String findPeople(Map<String, String> params) {
+		if (params.containsKey("prefix")) {
+			int limit = number(params, "limit", DEFAULT_LIMIT);
+			return read(tree -> list(tree.findPeopleByPrefix(
+					params.get("prefix"), limit)));
+		}
+		String name = required(params, "name");
+		return read(tree -> list(tree.findPeople(name)));
+	}
+
+	private String addPerson(Map<String, String> params) {
+		Person person = newPerson(params);
+		return change(tree -> refused(tree.addPerson(person),
+				json(person, new StringBuilder())));
+	}
+
+	private String addChild(String parentId, Map<String, String> params) {
+		Person child = newPerson(params);
+		return change(tree -> {
+			Person parent = person(tree, parentId);
+			boolean added = params.containsKey("spouse")
+					? tree.addChild(parent, person(tree, params, "spouse"),
+							child)
+					: tree.addChild(parent, child);
+			return refused(added, json(child, new StringBuilder()));
+		});
+	}
+
+	private String relatives(String id, String direction,
+			Map<String, String> params) {
+		int generations = number(params, "generations", Integer.MAX_VALUE);
+		int limit = number(params, "limit", DEFAULT_LIMIT);
+		Traversal.Order order = "depth".equals(params.get("order"))
+				? Traversal.Order.DEPTH_FIRST
+				: Traversal.Order.BREADTH_FIRST;
+		return read(tree -> {
+			Person person = person(tree, id);
+			try (Stream<Person> relatives = direction.equals("ancestors")
+					? tree.ancestors(person, generations, order)
+					: tree.descendants(person, generations, order)) {
+				return list(relatives.limit(limit).toList());
+			}
+		});
+	}
+
+	private String relation(Map<String, String> params) {
+		return read(tree -> {
+			Person a = person(tree, params, "a");
+			Person b = person(tree, params, "b");
+			Relationship relationship = tree.checkRelation(a, b);
+			StringBuilder json = new StringBuilder();
+			json.append("{\"from\":").append(a.getId()).append(",\"to\":")
+					.append(b.getId()).append(",\"relation\":")
+					.append(quote(relationship.name()))
+					.append(",\"bloodRelated\":")
+					.append(relationship.isBloodRelated())
+					.append(",\"sameFamily\":")
+					.append(tree.areInSameFamily(a, b))
+					.append(",\"commonAncestors\":[");
+			for (Person ancestor : relationship.commonAncestors()) {
+				if (json.charAt(json.length() - 1) != '[') {
+					json.append(',');
+				}
+				json.append(ancestor.getId());
+			}
+			return json.append("]}").toString();
+		});
+	}
+
+	private String read(Function<FamilyTree, String> query) {
+		return tree.read(query);
+	}
+
+	private String change(Function<FamilyTree, String> change) {
+		AtomicReference<String> result = new AtomicReference<>();
+		tree.write(tree -> result.set(change.apply(tree)));
+		return result.get();
+	}
+
+	private static String get(String method,
+			Supplier<String> answer) {
+		if (!method.equals("GET")) {
+			throw new HttpError(405, "use GET");
+		}
+		return answer.get();
+	}
+
+	private static String post(String method,
+			Supplier<String> answer) {
+		if (!method.equals("POST")) {
+			throw new HttpError(405, "use POST");
+		}
+		return answer.get();
+	}
+
+	private static String refused(boolean done, CharSequence json) {
+		if (!done) {
+			throw new HttpError(409, "the tree refused the change");
+		}
+		return json.toString();
+	}
+
+	private static Person newPerson(Map<String, String> params) {
+		try {
+			return new Person(required(params, "name"),
+					required(params, "gender"), date(params, "birthday"),
+					date(params, "deathdate"));
+		} catch (GenderException e) {
+			throw new HttpError(400, e.getMessage());
+		}
+	}
+
+	private static Person person(FamilyTree tree, Map<String, String> params,
+			String name) {
+		return person(tree, required(params, name));
+	}
+
+	private static Person person(FamilyTree tree, String id) {
+		Person person;
+		try {
+			person = tree.findPerson(Integer.parseInt(id));
+		} catch (NumberFormatException e) {
+			throw new HttpError(400, "not an ID: " + id);
+		}
+		if (person == null) {
+			throw new HttpError(404, "no person " + id);
+		}
+		return person;
+	}
+
+	private static String required(Map<String, String> params, String name) {
+		String value = params.get(name);
+		if (value == null) {
+			throw new HttpError(400, "missing " + name);
+		}
+		return value;
+	}
+
+	private static int number(Map<String, String> params, String name,
+			int otherwise) {
+		String value = params.get(name);
+		try {
+			return value == null ? otherwise : Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new HttpError(400, name + " is not a number: " + value);
+		}
+	}
+
+	private static LocalDate date(Map<String, String> params, String name) {
+		String value = params.get(name);
+		if (value == null) {
+			return null;
+		}
+		try {
+			LocalDate date = Application.parseDate(value, 0, value.length());
+			if (date != null) {
+				return date;
+			}
+		} catch (DateTimeException e) {
+			// reported below
+		}
+		throw new HttpError(400, name + " is not a YYYY-MM-DD date: " + value);
+	}
+
+	/**
+	 * Reads the query string and, for a form, the body into one map.
+	 */
+	private static Map<String, String> params(HttpExchange exchange)
+			throws IOException {
+		Map<String, String> params = new HashMap<>();
+		parse(exchange.getRequestURI().getRawQuery(), params);
+		String type = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (type != null
+				&& type.startsWith("application/x-www-form-urlencoded")) {
+			try (InputStream in = exchange.getRequestBody()) {
+				parse(new String(in.readAllBytes(), StandardCharsets.UTF_8),
+						params);
+			}
+		}
+		return params;
+	}
+
+	private static void parse(String query, Map<String, String> params) {
+		if (query == null || query.isEmpty()) {
+			return;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			try {
+				params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+						URLDecoder.decode(value, StandardCharsets.UTF_8));
+			} catch (IllegalArgumentException e) {
+				throw new HttpError(400, "bad query: " + pair);
+			}
+		}
+	}
+
+	private static String list(Collection<Person> people) {
+		StringBuilder json = new StringBuilder("[");
+		for (Person person : people) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			json(person, json);
+		}
+		return json.append(']').toString();
+	}
+
+	private static StringBuilder json(Person person, StringBuilder json) {
+		json.append("{\"id\":").append(person.getId()).append(",\"name\":")
+				.append(quote(person.getName())).append(",\"gender\":")
+				.append(quote(person.getGender().name()))
+				.append(",\"birthday\":").append(quote(person.getBirthday()))
+				.append(",\"deathdate\":").append(quote(person.getDeathdate()))
+				.append(",\"mother\":").append(id(person.getMother()))
+				.append(",\"father\":").append(id(person.getFather()))
+				.append(",\"spouse\":").append(id(person.getSpouse()));
+		return json.append('}');
+	}
+
+	private static String id(Person person) {
+		return person == null ? "null" : String.valueOf(person.getId());
+	}
+
+	/**
+	 * Writes a value as a JSON string, or null.
+	 */
+	private static String quote(Object value) {
+		if (value == null) {
+			return "null";
+		}
+		String text = value.toString();
+		StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+}
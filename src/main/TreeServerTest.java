@@ -0,0 +1,123 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TreeServerTest {
+	private final HttpClient client = HttpClient.newHttpClient();
+	private ConcurrentFamilyTree tree;
+	private TreeServer server;
+	private Person george;
+	private Person mary;
+	private Person john;
+	private Person anne;
+
+	/**
+	 * George and Mary have two children, John and Anne.
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		george = new Person("George Smith", "male", LocalDate.of(1900, 3, 1));
+		mary = new Person("Mary Jones", "female", LocalDate.of(1902, 7, 9));
+		john = new Person("John Smith", "male", LocalDate.of(1925, 1, 15));
+		anne = new Person("Anne Smith", "female");
+
+		tree = new ConcurrentFamilyTree(new FamilyTree(george));
+		tree.addPerson(mary);
+		tree.marry(george, mary);
+		tree.addChild(george, mary, john);
+		tree.addChild(george, mary, anne);
+		server = TreeServer.start(tree, 0);
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.close();
+	}
+
+	@Test
+	void queriesAnswerInJson() throws Exception {
+		HttpResponse<String> person = get("/people/" + john.getId());
+		assertEquals(200, person.statusCode());
+		assertEquals("{\"id\":" + john.getId()
+				+ ",\"name\":\"John Smith\",\"gender\":\"MALE\","
+				+ "\"birthday\":\"1925-01-15\",\"deathdate\":null,"
+				+ "\"mother\":" + mary.getId() + ",\"father\":"
+				+ george.getId() + ",\"spouse\":null}", person.body());
+
+		assertTrue(get("/people/" + john.getId() + "/siblings").body()
+				.startsWith("[{\"id\":" + anne.getId() + ","));
+		assertTrue(get("/people?name=anne%20smith").body()
+				.contains("\"id\":" + anne.getId() + ","));
+		assertEquals(2, count(get("/people/" + anne.getId() + "/ancestors")
+				.body()));
+		assertEquals(2, count(get("/people/" + george.getId()
+				+ "/descendants?generations=1&order=depth").body()));
+		assertTrue(get("/relation?a=" + george.getId() + "&b=" + anne.getId())
+				.body().contains("\"relation\":\"father\""));
+	}
+
+	@Test
+	void changesAreMadeThroughPosts() throws Exception {
+		HttpResponse<String> child = post("/people/" + anne.getId()
+				+ "/children?name=Peter%20Smith&gender=male"
+				+ "&birthday=1950-04-01");
+		assertEquals(201, child.statusCode());
+		Person peter = tree.findPeople("Peter Smith").get(0);
+		assertSame(anne, peter.getMother());
+
+		Person jane = new Person("Jane Doe", "female");
+		tree.addPerson(jane);
+		assertEquals(201, post("/marriages?a=" + john.getId() + "&b="
+				+ jane.getId()).statusCode());
+		assertSame(jane, tree.read(t -> john.getSpouse()));
+
+		// nobody can marry themselves
+		assertEquals(409, post("/marriages?a=" + george.getId() + "&b="
+				+ george.getId()).statusCode());
+	}
+
+	@Test
+	void mistakesAreReported() throws Exception {
+		assertEquals(404, get("/people/-5").statusCode());
+		assertEquals(400, get("/people/five").statusCode());
+		assertEquals(400, get("/people").statusCode());
+		assertEquals(404, get("/nowhere").statusCode());
+		assertEquals(405, post("/people/" + john.getId()).statusCode());
+		assertEquals(400, post("/people?name=X&gender=other").statusCode());
+		assertEquals(400, post("/people?name=X&gender=male&birthday=1-2")
+				.statusCode());
+		assertTrue(get("/people/-5").body().startsWith("{\"error\":"));
+	}
+
+	private HttpResponse<String> get(String path) throws Exception {
+		return client.send(HttpRequest.newBuilder(uri(path)).build(),
+				HttpResponse.BodyHandlers.ofString());
+	}
+
+	private HttpResponse<String> post(String path) throws Exception {
+		return client.send(HttpRequest.newBuilder(uri(path))
+				.POST(HttpRequest.BodyPublishers.noBody()).build(),
+				HttpResponse.BodyHandlers.ofString());
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://localhost:" + server.getPort() + path);
+	}
+
+	/**
+	 * @return the number of people in a JSON list
+	 */
+	private static int count(String json) {
+		return json.split("\"id\":", -1).length - 1;
+	}
+}
@@ -0,0 +1,67 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Receives the people of a family tree one at a time, as a
+ * {@link TreeGenerator} makes them, so that a tree never has to be held in
+ * memory as a whole. People are numbered from 1, and 0 stands for nobody.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public interface TreeSink extends Closeable {
+	/**
+	 * One person and the people they are linked to. Parents and guardians
+	 * always come before their children. Partners are listed in the order
+	 * the partnerships began, so the last one is the current spouse if the
+	 * person is married; they may come before or after the person.
+	 *
+	 * @param id
+	 *            the number of the person
+	 * @param name
+	 *            the name of the person
+	 * @param gender
+	 *            the gender of the person
+	 * @param birthday
+	 *            the birthday of the person
+	 * @param deathdate
+	 *            the deathdate of the person, or null if still alive
+	 * @param mother
+	 *            the number of the mother, or 0
+	 * @param father
+	 *            the number of the father, or 0
+	 * @param guardian
+	 *            the number of the adoptive parent, or 0
+	 * @param married
+	 *            whether the person is married to their last partner
+	 * @param partners
+	 *            the numbers of the partners, earliest first
+	 */
+	record Row(int id, String name, Sex gender, LocalDate birthday,
+			LocalDate deathdate, int mother, int father, int guardian,
+			boolean married, int[] partners) {
+	}
+
+	/**
+	 * Receives the next person.
+	 *
+	 * @param row
+	 *            the person
+	 * @throws IOException
+	 *             if the person cannot be written
+	 */
+	void person(Row row) throws IOException;
+
+	/**
+	 * Finishes writing. Does nothing unless the sink writes somewhere.
+	 *
+	 * @throws IOException
+	 *             if the last people cannot be written
+	 */
+	@Override
+	default void close() throws IOException {
+	}
+}
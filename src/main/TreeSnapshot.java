@@ -0,0 +1,336 @@
+package main;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A family tree as it was at one point in time. Snapshots never change, so
+ * they can be read from any thread, without locks, while the tree they came
+ * from goes on changing; a reader sees either all of a marriage or new child
+ * or none of it.
+ * <p>
+ * Taking a snapshot costs nothing: every change to the tree publishes a new
+ * version that shares all unchanged people with the previous one. See
+ * {@link FamilyTree#snapshot()}.
+ *
+ * @author Stephen Schroer
+ *
+ */
+public final class TreeSnapshot {
+	private final long version;
+	private final int size;
+	private final int head;
+	private final PersistentIntMap<PersonRecord> rows;
+	private final PersistentIntMap<Integer> rowsById;
+
+	TreeSnapshot(long version, int size, int head,
+			PersistentIntMap<PersonRecord> rows,
+			PersistentIntMap<Integer> rowsById) {
+		this.version = version;
+		this.size = size;
+		this.head = head;
+		this.rows = rows;
+		this.rowsById = rowsById;
+	}
+
+	/**
+	 * @return the number of changes published before this snapshot; a later
+	 *         snapshot of the same tree has a higher version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the number of people in the tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the head of the tree, or null if it had none
+	 */
+	public PersonRecord getHead() {
+		return findPerson(head);
+	}
+
+	/**
+	 * Returns every person in the tree, in the order they joined it. The
+	 * list is a view that looks people up as they are read, so getting it is
+	 * free.
+	 *
+	 * @return an unmodifiable list of the people in the tree
+	 */
+	public List<PersonRecord> getPeople() {
+		return new People();
+	}
+
+	/**
+	 * Finds a person by ID.
+	 *
+	 * @param id
+	 *            the ID to look for
+	 * @return the person with the ID, or null if not in the tree
+	 */
+	public PersonRecord findPerson(int id) {
+		if (id == PersonRecord.NONE) {
+			return null;
+		}
+		Integer row = rowsById.get(id);
+		return row == null ? null : rows.get(row);
+	}
+
+	/**
+	 * @param person
+	 *            a person of this snapshot
+	 * @return the mother, or null if not known or not in the tree
+	 */
+	public PersonRecord getMother(PersonRecord person) {
+		return findPerson(person.getMotherId());
+	}
+
+	/**
+	 * @param person
+	 *            a person of this snapshot
+	 * @return the father, or null if not known or not in the tree
+	 */
+	public PersonRecord getFather(PersonRecord person) {
+		return findPerson(person.getFatherId());
+	}
+
+	/**
+	 * @param person
+	 *            a person of this snapshot
+	 * @return the adoptive parent, or null if not known or not in the tree
+	 */
+	public PersonRecord getGuardian(PersonRecord person) {
+		return findPerson(person.getGuardianId());
+	}
+
+	/**
+	 * @param person
+	 *            a person of this snapshot
+	 * @return the children in the tree
+	 */
+	public List<PersonRecord> getChildren(PersonRecord person) {
+		return find(person.children());
+	}
+
+	/**
+	 * @param person
+	 *            a person of this snapshot
+	 * @return the partners in the tree, the current spouse last
+	 */
+	public List<PersonRecord> getPartners(PersonRecord person) {
+		return find(person.partners());
+	}
+
+	/**
+	 * @param person
+	 *            a person of this snapshot
+	 * @return the spouse if the person is married, otherwise null
+	 */
+	public PersonRecord getSpouse(PersonRecord person) {
+		int[] partners = person.partners();
+		return person.isMarried() && partners.length > 0
+				? findPerson(partners[partners.length - 1])
+				: null;
+	}
+
+	/**
+	 * Finds the people who share a mother or father with a person.
+	 *
+	 * @param person
+	 *            a person of this snapshot
+	 * @return the siblings, or an empty set if there are none
+	 */
+	public Set<PersonRecord> getSiblings(PersonRecord person) {
+		Set<PersonRecord> siblings = new HashSet<>();
+		for (int parent : new int[] { person.getMotherId(),
+				person.getFatherId() }) {
+			PersonRecord found = findPerson(parent);
+			if (found != null) {
+				siblings.addAll(getChildren(found));
+			}
+		}
+		siblings.remove(findPerson(person.getId()));
+		return siblings.isEmpty() ? Collections.emptySet() : siblings;
+	}
+
+	/**
+	 * Checks if one person is a blood ancestor of another.
+	 *
+	 * @param ancestor
+	 *            the possible ancestor
+	 * @param descendant
+	 *            the possible descendant
+	 * @return true if the ancestor is a parent, grandparent and so on of the
+	 *         descendant
+	 */
+	public boolean isAncestor(PersonRecord ancestor,
+			PersonRecord descendant) {
+		return ancestor.getId() != descendant.getId()
+				&& ancestors(descendant).containsKey(ancestor.getId());
+	}
+
+	/**
+	 * Checks if two people are blood-related: they share a common ancestor,
+	 * or one descends from the other. Adoption does not count.
+	 *
+	 * @param a
+	 *            the first person
+	 * @param b
+	 *            the second person
+	 * @return true if the two people are blood-related
+	 */
+	public boolean areBloodRelated(PersonRecord a, PersonRecord b) {
+		Map<Integer, Integer> ofA = ancestors(a);
+		for (int id : ancestors(b).keySet()) {
+			if (ofA.containsKey(id)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Visits the descendants of a person, by birth or adoption, once each in
+	 * breadth-first order. The visitor decides whether the walk continues
+	 * past the person it was given.
+	 *
+	 * @param person
+	 *            the person whose descendants are visited
+	 * @param visitor
+	 *            called for each descendant; returns true to go on to their
+	 *            children
+	 * @return the number of descendants visited
+	 */
+	public int forEachDescendant(PersonRecord person,
+			Predicate<? super PersonRecord> visitor) {
+		Set<Integer> visited = new HashSet<>();
+		Queue<PersonRecord> queue = new ArrayDeque<>();
+		visited.add(person.getId());
+		queue.add(person);
+
+		int count = 0;
+		while (!queue.isEmpty()) {
+			PersonRecord current = queue.poll();
+			if (current != person) {
+				count++;
+				if (!visitor.test(current)) {
+					continue;
+				}
+			}
+			for (int child : current.children()) {
+				PersonRecord next = findPerson(child);
+				if (next != null && visited.add(child)) {
+					queue.add(next);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Recreates the people of this snapshot as a new family tree that can be
+	 * searched and changed on its own. This copies every person. Two people
+	 * never share an ID, so the copies get new IDs unless their stored IDs
+	 * are unused in this program, as when a journal is recovered at start.
+	 *
+	 * @return a family tree with the people of this snapshot
+	 */
+	public FamilyTree toFamilyTree() {
+		Map<Integer, Person> people = new HashMap<>(size * 2);
+		List<Person> everyone = new ArrayList<>(size);
+		for (PersonRecord record : getPeople()) {
+			Person person = new Person(record.getId(), record.getName(),
+					record.getGender());
+			person.setBirthday(record.getBirthday());
+			person.setDeathdate(record.getDeathdate());
+			person.setWasAdopted(record.isWasAdopted());
+			person.setMarried(record.isMarried());
+			people.put(record.getId(), person);
+			everyone.add(person);
+		}
+		for (PersonRecord record : getPeople()) {
+			Person person = people.get(record.getId());
+			person.setMother(people.get(record.getMotherId()));
+			person.setFather(people.get(record.getFatherId()));
+			person.setGuardian(people.get(record.getGuardianId()));
+			for (int child : record.children()) {
+				if (people.containsKey(child)) {
+					person.getChildren().add(people.get(child));
+				}
+			}
+			for (int partner : record.partners()) {
+				if (people.containsKey(partner)) {
+					person.getPartners().add(people.get(partner));
+				}
+			}
+		}
+		return new FamilyTree(people.get(head), everyone);
+	}
+
+	/**
+	 * Finds the blood ancestors of a person in this snapshot, by ID, with the
+	 * fewest generations to each. The person is included at zero.
+	 */
+	private Map<Integer, Integer> ancestors(PersonRecord person) {
+		Map<Integer, Integer> found = new HashMap<>();
+		Queue<PersonRecord> queue = new ArrayDeque<>();
+		found.put(person.getId(), 0);
+		queue.add(person);
+
+		while (!queue.isEmpty()) {
+			PersonRecord current = queue.poll();
+			int depth = found.get(current.getId());
+			for (int parent : new int[] { current.getMotherId(),
+					current.getFatherId() }) {
+				PersonRecord next = findPerson(parent);
+				if (next != null && !found.containsKey(parent)) {
+					found.put(parent, depth + 1);
+					queue.add(next);
+				}
+			}
+		}
+		return found;
+	}
+
+	private List<PersonRecord> find(int[] ids) {
+		List<PersonRecord> found = new ArrayList<>(ids.length);
+		for (int id : ids) {
+			PersonRecord person = findPerson(id);
+			if (person != null) {
+				found.add(person);
+			}
+		}
+		return found;
+	}
+
+	private final class People extends AbstractList<PersonRecord>
+			implements RandomAccess {
+		@Override
+		public PersonRecord get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException(index);
+			}
+			return rows.get(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
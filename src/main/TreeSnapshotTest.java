@@ -0,0 +1,189 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TreeSnapshotTest {
+	private FamilyTree tree;
+	private Person george;
+	private Person mary;
+	private Person john;
+
+	/**
+	 * George and Mary have a son, John.
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		george = new Person("George Smith", "male", LocalDate.of(1900, 3, 1));
+		mary = new Person("Mary Jones", "female", LocalDate.of(1902, 7, 9));
+		john = new Person("John Smith", "male", LocalDate.of(1925, 1, 15));
+
+		tree = new FamilyTree(george);
+		tree.addPerson(mary);
+		tree.marry(george, mary);
+		tree.addChild(george, mary, john);
+	}
+
+	@Test
+	void snapshotsDoNotSeeLaterChanges() throws Exception {
+		TreeSnapshot before = tree.snapshot();
+		Person anne = new Person("Anne Smith", "female");
+		tree.addChild(george, mary, anne);
+		john.setName("Jack Smith");
+		TreeSnapshot after = tree.snapshot();
+
+		assertEquals(3, before.size());
+		assertEquals("John Smith", before.findPerson(john.getId()).getName());
+		assertNull(before.findPerson(anne.getId()));
+		assertEquals(1, before.getChildren(before.findPerson(george.getId()))
+				.size());
+
+		assertTrue(after.getVersion() > before.getVersion());
+		assertEquals(4, after.size());
+		assertEquals("Jack Smith", after.findPerson(john.getId()).getName());
+		PersonRecord sister = after.findPerson(anne.getId());
+		assertEquals(Set.of(after.findPerson(john.getId())),
+				after.getSiblings(sister));
+		assertSame(after.findPerson(mary.getId()), after.getMother(sister));
+	}
+
+	@Test
+	void unchangedPeopleAreShared() throws Exception {
+		TreeSnapshot before = tree.snapshot();
+		john.setDeathdate(LocalDate.of(1990, 1, 1));
+		TreeSnapshot after = tree.snapshot();
+
+		assertSame(before.findPerson(george.getId()),
+				after.findPerson(george.getId()));
+		assertNotSame(before.findPerson(john.getId()),
+				after.findPerson(john.getId()));
+		assertSame(after, tree.snapshot());
+	}
+
+	@Test
+	void relativesAreFollowedInTheSnapshot() throws Exception {
+		Person grandson = new Person("Peter Smith", "male");
+		tree.addChild(john, grandson);
+		TreeSnapshot snapshot = tree.snapshot();
+		PersonRecord top = snapshot.findPerson(george.getId());
+		PersonRecord bottom = snapshot.findPerson(grandson.getId());
+
+		assertSame(top, snapshot.getHead());
+		assertSame(snapshot.findPerson(mary.getId()),
+				snapshot.getSpouse(top));
+		assertTrue(snapshot.isAncestor(top, bottom));
+		assertFalse(snapshot.isAncestor(bottom, top));
+		assertTrue(snapshot.areBloodRelated(bottom,
+				snapshot.findPerson(mary.getId())));
+		assertEquals(2, snapshot.forEachDescendant(top, person -> true));
+	}
+
+	@Test
+	void snapshotCanBeTurnedBackIntoATree() {
+		FamilyTree copy = tree.snapshot().toFamilyTree();
+
+		assertEquals(3, copy.getPeople().size());
+		Person son = copy.findPerson("John Smith", LocalDate.of(1925, 1, 15));
+		Person father = copy.getHead().getNext();
+		assertNotEquals(john.getId(), son.getId());
+		assertNotEquals(george.getId(), father.getId());
+		assertSame(father, son.getFather());
+		assertSame(son.getMother(), father.getSpouse());
+		assertEquals("Mary Jones", son.getMother().getName());
+		assertNull(copy.findPerson(john.getId()));
+	}
+
+	/**
+	 * A reader checks every snapshot while a writer keeps marrying people
+	 * and adding children, which each touch two or three people.
+	 */
+	@Test
+	void readersNeverSeeHalfAChange() throws Exception {
+		ConcurrentFamilyTree shared = new ConcurrentFamilyTree(tree);
+		shared.snapshot();
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<String> broken = new AtomicReference<>();
+
+		Thread reader = new Thread(() -> {
+			while (!done.get() && broken.get() == null) {
+				broken.compareAndSet(null, check(shared.snapshot()));
+			}
+		});
+		reader.start();
+		try {
+			Person parent = john;
+			for (int i = 0; i < 300; i++) {
+				Person partner = new Person("Partner " + i,
+						parent.getGender() == Sex.MALE ? "female" : "male");
+				Person child = new Person("Child " + i, "male");
+				Person from = parent;
+				shared.write(t -> {
+					t.addPerson(partner);
+					t.marry(from, partner);
+					t.addChild(from, partner, child);
+				});
+				parent = i % 3 == 0 ? child : parent;
+			}
+		} finally {
+			done.set(true);
+			reader.join();
+		}
+		assertNull(broken.get());
+		assertNull(check(shared.snapshot()));
+	}
+
+	@Test
+	void persistentMapKeepsOldVersions() {
+		PersistentIntMap.Editor<String> editor = PersistentIntMap
+				.<String>empty().edit();
+		PersistentIntMap<String> first = editor.put(1, "a").put(-7, "b")
+				.done();
+		PersistentIntMap<String> second = editor.put(1, "c").put(40_000, "d")
+				.done();
+
+		assertEquals("a", first.get(1));
+		assertEquals("b", first.get(-7));
+		assertNull(first.get(40_000));
+		assertEquals("c", second.get(1));
+		assertEquals("d", second.get(40_000));
+		assertEquals("b", second.get(-7));
+	}
+
+	/**
+	 * Checks that the relatives in a snapshot agree with each other.
+	 *
+	 * @return a description of the first problem, or null if there is none
+	 */
+	private static String check(TreeSnapshot snapshot) {
+		List<PersonRecord> people = snapshot.getPeople();
+		for (PersonRecord person : people) {
+			for (PersonRecord child : snapshot.getChildren(person)) {
+				if (child.getMotherId() != person.getId()
+						&& child.getFatherId() != person.getId()
+						&& child.getGuardianId() != person.getId()) {
+					return child + " is not a child of " + person;
+				}
+			}
+			for (int child : person.getChildIds()) {
+				if (snapshot.findPerson(child) == null) {
+					return "child " + child + " of " + person + " missing";
+				}
+			}
+			// an earlier partner stays married to someone who remarried
+			PersonRecord spouse = snapshot.getSpouse(person);
+			if (person.isMarried() && (spouse == null
+					|| !snapshot.getPartners(spouse).contains(person))) {
+				return person + " is not a partner of " + spouse;
+			}
+		}
+		return null;
+	}
+}
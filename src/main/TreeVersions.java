@@ -0,0 +1,76 @@
+package main;
+
+import java.util.List;
+
+/**
+ * Keeps the published versions of a family tree. Once a change to the tree
+ * is complete, the records of the people it touched are replaced in
+ * persistent maps and the result is published as the current
+ * {@link TreeSnapshot}. Only the writer of the tree calls this class; readers
+ * only read {@link #current()}.
+ *
+ * @author Stephen Schroer
+ *
+ */
+class TreeVersions {
+	// row -> record, rows in the order people joined the tree
+	private final PersistentIntMap.Editor<PersonRecord> rows = PersistentIntMap
+			.<PersonRecord>empty().edit();
+
+	// person ID -> row
+	private final PersistentIntMap.Editor<Integer> rowsById = PersistentIntMap
+			.<Integer>empty().edit();
+
+	private int size;
+	private long version;
+	private volatile TreeSnapshot current;
+
+	/**
+	 * Starts publishing versions after the given one.
+	 *
+	 * @param version
+	 *            the version the first published version follows
+	 */
+	TreeVersions(long version) {
+		this.version = version;
+	}
+
+	/**
+	 * Gives a person joining the tree the next row.
+	 *
+	 * @param person
+	 *            the new person
+	 */
+	void added(Person person) {
+		if (rowsById.get(person.getId()) == null) {
+			rowsById.put(person.getId(), size++);
+		}
+	}
+
+	/**
+	 * Publishes a new version with the given people replaced.
+	 *
+	 * @param records
+	 *            the new records of the people that changed
+	 * @param head
+	 *            the ID of the head of the tree, or {@link PersonRecord#NONE}
+	 */
+	void publish(List<PersonRecord> records, int head) {
+		for (PersonRecord record : records) {
+			Integer row = rowsById.get(record.getId());
+			// people who have not joined the tree are recorded when they do
+			if (row != null) {
+				rows.put(row, record);
+			}
+		}
+		current = new TreeSnapshot(++version, size, head, rows.done(),
+				rowsById.done());
+	}
+
+	/**
+	 * @return the latest published version
+	 */
+	TreeSnapshot current() {
+		return current;
+	}
+}